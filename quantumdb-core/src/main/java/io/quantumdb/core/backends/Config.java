@@ -21,6 +21,18 @@ public class Config {
 	private static final String CATALOG = "catalog";
 	private static final String PASSWORD = "password";
 	private static final String DRIVER = "driver";
+	private static final String BACKFILL_STRATEGY = "backfill_strategy";
+	private static final String BACKFILL_WORKERS = "backfill_workers";
+	private static final String BACKFILL_GOVERNOR = "backfill_governor";
+	private static final String BACKFILL_TARGET_LATENCY = "backfill_target_latency";
+	private static final String BACKFILL_MAX_RECORDS_PER_SECOND = "backfill_max_records_per_second";
+	private static final String BACKFILL_MAX_BYTES_PER_SECOND = "backfill_max_bytes_per_second";
+	private static final String BACKFILL_MAX_WAL_RATE = "backfill_max_wal_rate";
+	private static final String BACKFILL_MAX_REPLICA_LAG = "backfill_max_replica_lag";
+	private static final String BACKFILL_BULK_LOAD = "backfill_bulk_load";
+	private static final String FORK_WORKERS = "fork_workers";
+	private static final String INDEX_WORKERS = "index_workers";
+	private static final String SYNC_MODE = "sync_mode";
 
 	private static final String FILE = ".quantumdb";
 
@@ -88,6 +100,145 @@ public class Config {
 		return this;
 	}
 
+	public String getBackfillStrategy() {
+		return properties.getProperty(BACKFILL_STRATEGY);
+	}
+
+	public Config setBackfillStrategy(String backfillStrategy) {
+		properties.setProperty(BACKFILL_STRATEGY, backfillStrategy);
+		return this;
+	}
+
+	public int getBackfillWorkers() {
+		return Integer.parseInt(properties.getProperty(BACKFILL_WORKERS, "1"));
+	}
+
+	public Config setBackfillWorkers(int backfillWorkers) {
+		properties.setProperty(BACKFILL_WORKERS, Integer.toString(backfillWorkers));
+		return this;
+	}
+
+	public String getBackfillGovernor() {
+		return properties.getProperty(BACKFILL_GOVERNOR);
+	}
+
+	public Config setBackfillGovernor(String backfillGovernor) {
+		properties.setProperty(BACKFILL_GOVERNOR, backfillGovernor);
+		return this;
+	}
+
+	/**
+	 * @return The number of milliseconds each batch of migrated records should ideally take.
+	 */
+	public long getBackfillTargetLatency() {
+		return Long.parseLong(properties.getProperty(BACKFILL_TARGET_LATENCY, "500"));
+	}
+
+	public Config setBackfillTargetLatency(long backfillTargetLatency) {
+		properties.setProperty(BACKFILL_TARGET_LATENCY, Long.toString(backfillTargetLatency));
+		return this;
+	}
+
+	/**
+	 * @return The maximum number of records migrated per second across all tables, or 0 for no limit.
+	 */
+	public long getBackfillMaxRecordsPerSecond() {
+		return Long.parseLong(properties.getProperty(BACKFILL_MAX_RECORDS_PER_SECOND, "0"));
+	}
+
+	public Config setBackfillMaxRecordsPerSecond(long backfillMaxRecordsPerSecond) {
+		properties.setProperty(BACKFILL_MAX_RECORDS_PER_SECOND, Long.toString(backfillMaxRecordsPerSecond));
+		return this;
+	}
+
+	/**
+	 * @return The maximum number of bytes migrated per second across all tables, or 0 for no limit.
+	 */
+	public long getBackfillMaxBytesPerSecond() {
+		return Long.parseLong(properties.getProperty(BACKFILL_MAX_BYTES_PER_SECOND, "0"));
+	}
+
+	public Config setBackfillMaxBytesPerSecond(long backfillMaxBytesPerSecond) {
+		properties.setProperty(BACKFILL_MAX_BYTES_PER_SECOND, Long.toString(backfillMaxBytesPerSecond));
+		return this;
+	}
+
+	/**
+	 * @return The WAL generation rate in bytes per second above which data migration backs off, or 0 for no limit.
+	 */
+	public long getBackfillMaxWalRate() {
+		return Long.parseLong(properties.getProperty(BACKFILL_MAX_WAL_RATE, "0"));
+	}
+
+	public Config setBackfillMaxWalRate(long backfillMaxWalRate) {
+		properties.setProperty(BACKFILL_MAX_WAL_RATE, Long.toString(backfillMaxWalRate));
+		return this;
+	}
+
+	/**
+	 * @return The replica lag in bytes above which data migration backs off, or 0 for no limit.
+	 */
+	public long getBackfillMaxReplicaLag() {
+		return Long.parseLong(properties.getProperty(BACKFILL_MAX_REPLICA_LAG, Long.toString(64 * 1024 * 1024)));
+	}
+
+	public Config setBackfillMaxReplicaLag(long backfillMaxReplicaLag) {
+		properties.setProperty(BACKFILL_MAX_REPLICA_LAG, Long.toString(backfillMaxReplicaLag));
+		return this;
+	}
+
+	/**
+	 * @return True if newly created ghost tables should be populated using the COPY protocol, instead of in batches.
+	 */
+	public boolean isBackfillBulkLoad() {
+		return Boolean.parseBoolean(properties.getProperty(BACKFILL_BULK_LOAD, "false"));
+	}
+
+	public Config setBackfillBulkLoad(boolean backfillBulkLoad) {
+		properties.setProperty(BACKFILL_BULK_LOAD, Boolean.toString(backfillBulkLoad));
+		return this;
+	}
+
+	/**
+	 * @return The maximum number of independent steps of a migration plan which may be executed at the same time.
+	 */
+	public int getForkWorkers() {
+		return Integer.parseInt(properties.getProperty(FORK_WORKERS, "4"));
+	}
+
+	public Config setForkWorkers(int forkWorkers) {
+		properties.setProperty(FORK_WORKERS, Integer.toString(forkWorkers));
+		return this;
+	}
+
+	/**
+	 * @return The maximum number of indexes on ghost tables which may be built at the same time.
+	 */
+	public int getIndexWorkers() {
+		return Integer.parseInt(properties.getProperty(INDEX_WORKERS, "2"));
+	}
+
+	public Config setIndexWorkers(int indexWorkers) {
+		properties.setProperty(INDEX_WORKERS, Integer.toString(indexWorkers));
+		return this;
+	}
+
+	/**
+	 * @return Either "row" to synchronize ghost tables using row-level triggers, "statement" to use
+	 * statement-level triggers with transition tables (PostgreSQL 10+), "queue" to only record changes in a queue
+	 * table while forking, from which they are applied to the ghost tables in batches, "logical" to decode changes
+	 * from a logical replication slot while forking (PostgreSQL 10+ with "wal_level = logical") instead of using
+	 * triggers, or NULL for the default.
+	 */
+	public String getSyncMode() {
+		return properties.getProperty(SYNC_MODE);
+	}
+
+	public Config setSyncMode(String syncMode) {
+		properties.setProperty(SYNC_MODE, syncMode);
+		return this;
+	}
+
 	public void persist() throws IOException {
 		try (FileWriter fileWriter = new FileWriter(FILE)) {
 			properties.store(fileWriter, null);
@@ -0,0 +1,116 @@
+package io.quantumdb.core.backends.planner;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.quantumdb.core.schema.definitions.Table;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Executes the Steps of a Plan on a bounded pool of workers. Every Step whose dependencies have been executed is
+ * started as soon as a worker is available, so the total time it takes to execute a Plan is determined by its
+ * longest chain of dependent Steps rather than the sum of all Steps. Steps which operate on the same table are never
+ * executed at the same time, but their order is only determined by their dependencies: when several Steps can be
+ * started, the ones appearing earlier in the Plan are started first, but a Step is not held back for an earlier Step
+ * on the same table which is still waiting for its own dependencies.
+ */
+@Slf4j
+public class StepScheduler {
+
+	@FunctionalInterface
+	public interface StepExecutor {
+		void execute(Step step) throws Exception;
+	}
+
+	private final Plan plan;
+	private final int workers;
+
+	public StepScheduler(Plan plan, int workers) {
+		checkArgument(workers > 0, "You must specify at least one worker!");
+		this.plan = plan;
+		this.workers = workers;
+	}
+
+	/**
+	 * Executes all Steps of the Plan using the specified StepExecutor, and marks each of them as executed once the
+	 * StepExecutor has completed successfully. When a Step fails no new Steps are started, and the first failure is
+	 * rethrown once all running Steps have completed.
+	 *
+	 * @throws ExecutionException When the StepExecutor failed to execute a Step.
+	 * @throws InterruptedException When the calling thread was interrupted.
+	 */
+	public void run(StepExecutor executor) throws ExecutionException, InterruptedException {
+		ThreadFactory threadFactory = new ThreadFactoryBuilder()
+				.setNameFormat("step-executor-%d")
+				.build();
+
+		ExecutorService pool = Executors.newFixedThreadPool(workers, threadFactory);
+		CompletionService<Step> completionService = new ExecutorCompletionService<>(pool);
+
+		Map<Future<Step>, Step> running = Maps.newHashMap();
+		Set<Table> busy = Sets.newHashSet();
+		ExecutionException failure = null;
+
+		try {
+			while (true) {
+				if (failure == null) {
+					for (Step step : plan.getSteps()) {
+						if (running.size() >= workers) {
+							break;
+						}
+
+						Set<Table> tables = step.getOperation().getTables();
+						if (step.canBeExecuted() && !running.containsValue(step) && Collections.disjoint(busy, tables)) {
+							log.debug("Scheduling step: {}", step);
+							running.put(completionService.submit(() -> {
+								executor.execute(step);
+								return step;
+							}), step);
+							busy.addAll(tables);
+						}
+					}
+				}
+
+				if (running.isEmpty()) {
+					break;
+				}
+
+				Future<Step> future = completionService.take();
+				Step step = running.remove(future);
+				busy.removeAll(step.getOperation().getTables());
+
+				try {
+					future.get();
+					step.markAsExecuted();
+				}
+				catch (ExecutionException e) {
+					log.error("Could not execute step: " + step, e.getCause());
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+}
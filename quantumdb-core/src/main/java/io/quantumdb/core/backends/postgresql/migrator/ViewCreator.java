@@ -12,11 +12,21 @@ import io.quantumdb.core.utils.QueryBuilder;
 import io.quantumdb.core.versioning.RefLog;
 import io.quantumdb.core.versioning.Version;
 import io.quantumdb.query.rewriter.PostgresqlQueryRewriter;
+import io.quantumdb.query.rewriter.TemplateCache;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class ViewCreator {
 
+	private final TemplateCache templates;
+
+	/**
+	 * @param templates The cache of compiled view queries, which may be shared with the ViewCreators of other versions.
+	 */
+	public ViewCreator(TemplateCache templates) {
+		this.templates = templates;
+	}
+
 	public void create(Connection connection, Collection<View> views, RefLog refLog, Version version) throws SQLException {
 		Map<String, String> mapping = Maps.newHashMap();
 		refLog.getViewRefs(version).forEach(ref -> mapping.put(ref.getName(), ref.getRefId()));
@@ -44,7 +54,7 @@ public class ViewCreator {
 			queryBuilder.append("RECURSIVE ");
 		}
 
-		String rewrittenQuery = rewriter.rewrite(view.getQuery());
+		String rewrittenQuery = rewriter.rewrite(templates.get(view.getQuery()));
 		System.out.println(rewrittenQuery);
 
 		queryBuilder.append("VIEW " + view.getName() + " AS (" + rewrittenQuery + ")");
@@ -67,7 +67,24 @@ public class QuantumTables {
 
 			// Creates the "active_versions" table which describes which versions are active at this time.
 			"CREATE TABLE quantumdb.active_versions (version_id VARCHAR(10), PRIMARY KEY (version_id));",
-			"ALTER TABLE quantumdb.active_versions ADD CONSTRAINT active_versions_version_id FOREIGN KEY (version_id) REFERENCES quantumdb.changelog (version_id) ON DELETE CASCADE;"
+			"ALTER TABLE quantumdb.active_versions ADD CONSTRAINT active_versions_version_id FOREIGN KEY (version_id) REFERENCES quantumdb.changelog (version_id) ON DELETE CASCADE;",
+
+			// Creates the "fork_progress" table which describes which steps of a fork, which has not yet completed, have already been executed.
+			"CREATE TABLE quantumdb.fork_progress (version_id VARCHAR(10) NOT NULL, ref_id VARCHAR(255) NOT NULL, step VARCHAR(16) NOT NULL, subject TEXT NOT NULL, details TEXT, PRIMARY KEY (version_id, ref_id, step, subject));",
+			"ALTER TABLE quantumdb.fork_progress ADD CONSTRAINT fork_progress_version_id FOREIGN KEY (version_id) REFERENCES quantumdb.changelog (version_id) ON DELETE CASCADE;",
+
+			// Creates the "backfill_checkpoints" table which describes up to which identity each key range of a table has been copied to its ghost table.
+			"CREATE TABLE quantumdb.backfill_checkpoints (version_id VARCHAR(10) NOT NULL, source_ref_id VARCHAR(255) NOT NULL, target_ref_id VARCHAR(255) NOT NULL, columns TEXT NOT NULL, range_index INT NOT NULL, lower_bound TEXT, upper_bound TEXT, last_processed_id TEXT, completed BOOLEAN NOT NULL DEFAULT FALSE, updated TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(), PRIMARY KEY (version_id, source_ref_id, target_ref_id, columns, range_index));",
+			"ALTER TABLE quantumdb.backfill_checkpoints ADD CONSTRAINT backfill_checkpoints_version_id FOREIGN KEY (version_id) REFERENCES quantumdb.changelog (version_id) ON DELETE CASCADE;",
+
+			// All synchronizers of a source table share the function and trigger of that table's dispatcher.
+			"ALTER TABLE quantumdb.synchronizers DROP CONSTRAINT synchronizers_unique_function_name;",
+			"ALTER TABLE quantumdb.synchronizers DROP CONSTRAINT synchronizers_unique_trigger_name;",
+
+			// Creates the "sync_queue" table which holds the changes to source tables which have not yet been applied to their target tables (when using the "queue" sync mode).
+			"CREATE SEQUENCE quantumdb.sync_queue_id;",
+			"CREATE TABLE quantumdb.sync_queue (id BIGINT NOT NULL DEFAULT NEXTVAL('quantumdb.sync_queue_id'), source_ref_id VARCHAR(255) NOT NULL, operation VARCHAR(16) NOT NULL, identity TEXT NOT NULL, created TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(), PRIMARY KEY (id));",
+			"CREATE INDEX sync_queue_source_ref_id ON quantumdb.sync_queue (source_ref_id, id);"
 	);
 
 	public static int prepare(Connection connection) throws SQLException {
@@ -29,6 +29,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 
+/**
+ * Keeps track of which tables exist in which versions, and how their columns relate to each other. All methods of
+ * the RefLog are synchronized, so that it can be used by multiple threads executing a migration plan concurrently.
+ */
 @Slf4j
 @ToString
 @EqualsAndHashCode
@@ -129,8 +133,8 @@ public class RefLog {
 		private TableRef(RefLog refLog, String name, String refId, Version version, Collection<ColumnRef> columns) {
 			super(refLog, name, refId, version);
 			this.columns = Maps.newLinkedHashMap();
-			this.outboundSyncs = Sets.newHashSet();
-			this.inboundSyncs = Sets.newHashSet();
+			this.outboundSyncs = Sets.newConcurrentHashSet();
+			this.inboundSyncs = Sets.newConcurrentHashSet();
 
 			columns.forEach(column -> {
 				column.table = this;
@@ -249,8 +253,8 @@ public class RefLog {
 
 		public ColumnRef(String name, Collection<ColumnRef> basedOn) {
 			this.name = name;
-			this.basedOn = Sets.newHashSet(basedOn);
-			this.basisFor = Sets.newHashSet();
+			this.basedOn = Sets.newConcurrentHashSet(basedOn);
+			this.basisFor = Sets.newConcurrentHashSet();
 
 			basedOn.forEach(column -> column.basisFor.add(this));
 		}
@@ -440,7 +444,7 @@ public class RefLog {
 	 * @param version The current version of the database.
 	 * @return The constructed RefLog object.
 	 */
-	public RefLog bootstrap(Catalog catalog, Version version) {
+	public synchronized RefLog bootstrap(Catalog catalog, Version version) {
 		checkArgument(catalog != null, "You must specify a catalog!");
 		checkArgument(version != null && version.getParent() == null, "You must specify a root version!");
 
@@ -466,7 +470,7 @@ public class RefLog {
 	 * @param version The next Version to fork to.
 	 * @return The same RefLog instance.
 	 */
-	public RefLog fork(Version version) {
+	public synchronized RefLog fork(Version version) {
 		checkArgument(version != null, "You must specify a version!");
 		checkArgument(version.getParent() != null, "You cannot fork to a root version!");
 
@@ -481,7 +485,7 @@ public class RefLog {
 	/**
 	 * @return a Collection of TableRef objects currently registered with this RefLog object.
 	 */
-	public Collection<TableRef> getTableRefs() {
+	public synchronized Collection<TableRef> getTableRefs() {
 		return ImmutableSet.copyOf(refMapping.values().stream()
 				.filter(ref -> ref instanceof TableRef)
 				.map(ref -> (TableRef) ref)
@@ -492,7 +496,7 @@ public class RefLog {
 	 * @return a Collection of TableRef objects currently registered with this RefLog object that are present in
 	 * the specified version.
 	 */
-	public Collection<TableRef> getTableRefs(Version version) {
+	public synchronized Collection<TableRef> getTableRefs(Version version) {
 		checkArgument(version != null, "You must specify a version!");
 		return ImmutableSet.copyOf(refMapping.get(version).stream()
 				.filter(ref -> ref instanceof TableRef)
@@ -509,7 +513,7 @@ public class RefLog {
 	 * @return The retrieved TableRef object.
 	 * @throws IllegalArgumentException When no TableRef matches the specified criteria.
 	 */
-	public TableRef getTableRef(Version version, String tableName) {
+	public synchronized TableRef getTableRef(Version version, String tableName) {
 		checkArgument(version != null, "You must specify a version!");
 		checkArgument(!isNullOrEmpty(tableName), "You must specify a table name!");
 
@@ -530,7 +534,7 @@ public class RefLog {
 	 * @return The retrieved TableRef object.
 	 * @throws IllegalArgumentException When no TableRef matches the specified criteria.
 	 */
-	public TableRef getTableRefById(String refId) {
+	public synchronized TableRef getTableRefById(String refId) {
 		checkArgument(!isNullOrEmpty(refId), "You must specify a table ID!");
 
 		return refMapping.values().stream()
@@ -552,7 +556,7 @@ public class RefLog {
 	 * @param refId The table ID of the TableRef which will replace the old TableRef.
 	 * @return The created TableRef object.
 	 */
-	public TableRef replaceTable(Version version, String sourceTableName, String targetTableName, String refId) {
+	public synchronized TableRef replaceTable(Version version, String sourceTableName, String targetTableName, String refId) {
 		checkArgument(version != null, "You must specify a version!");
 		checkArgument(!isNullOrEmpty(sourceTableName), "You must specify a source table name!");
 		checkArgument(!isNullOrEmpty(targetTableName), "You must specify a target table name!");
@@ -573,7 +577,7 @@ public class RefLog {
 	 * @param tableName The name of the table which the TableRef represents.
 	 * @return The dropped TableRef object.
 	 */
-	public TableRef dropTable(Version version, String tableName) {
+	public synchronized TableRef dropTable(Version version, String tableName) {
 		checkArgument(version != null, "You must specify a version!");
 		checkArgument(!isNullOrEmpty(tableName), "You must specify a table name!");
 
@@ -593,7 +597,7 @@ public class RefLog {
 	 *
 	 * @param tableRef The TableRef object to drop from the RefLog.
 	 */
-	public void dropTable(TableRef tableRef) {
+	public synchronized void dropTable(TableRef tableRef) {
 		checkArgument(tableRef != null, "You must specify a TableRef!");
 
 		List<Version> versions = refMapping.entries().stream()
@@ -614,7 +618,7 @@ public class RefLog {
 	 * @param columns The columns present in the table.
 	 * @return The constructed TableRef object.
 	 */
-	public TableRef addTable(String name, String refId, Version version, ColumnRef... columns) {
+	public synchronized TableRef addTable(String name, String refId, Version version, ColumnRef... columns) {
 		return addTable(name, refId, version, Lists.newArrayList(columns));
 	}
 
@@ -627,7 +631,7 @@ public class RefLog {
 	 * @param columns The columns present in the table.
 	 * @return The constructed TableRef object.
 	 */
-	public TableRef addTable(String name, String refId, Version version, Collection<ColumnRef> columns) {
+	public synchronized TableRef addTable(String name, String refId, Version version, Collection<ColumnRef> columns) {
 		checkArgument(!isNullOrEmpty(name), "You must specify a 'name'!");
 		checkArgument(!isNullOrEmpty(refId), "You must specify a 'refId'!");
 		checkArgument(version != null, "You must specify a 'version'!");
@@ -648,7 +652,7 @@ public class RefLog {
 	/**
 	 * @return a Collection of ViewRef objects currently registered with this RefLog object.
 	 */
-	public Collection<ViewRef> getViewRefs() {
+	public synchronized Collection<ViewRef> getViewRefs() {
 		return ImmutableSet.copyOf(refMapping.values().stream()
 				.filter(ref -> ref instanceof ViewRef)
 				.map(ref -> (ViewRef) ref)
@@ -659,7 +663,7 @@ public class RefLog {
 	 * @return a Collection of ViewRef objects currently registered with this RefLog object that are present in
 	 * the specified version.
 	 */
-	public Collection<ViewRef> getViewRefs(Version version) {
+	public synchronized Collection<ViewRef> getViewRefs(Version version) {
 		checkArgument(version != null, "You must specify a version!");
 		return ImmutableSet.copyOf(refMapping.get(version).stream()
 				.filter(ref -> ref instanceof ViewRef)
@@ -676,7 +680,7 @@ public class RefLog {
 	 * @return The retrieved ViewRef object.
 	 * @throws IllegalArgumentException When no ViewRef matches the specified criteria.
 	 */
-	public ViewRef getViewRef(Version version, String viewName) {
+	public synchronized ViewRef getViewRef(Version version, String viewName) {
 		checkArgument(version != null, "You must specify a version!");
 		checkArgument(!isNullOrEmpty(viewName), "You must specify a view name!");
 
@@ -697,7 +701,7 @@ public class RefLog {
 	 * @return The retrieved ViewRef object.
 	 * @throws IllegalArgumentException When no ViewRef matches the specified criteria.
 	 */
-	public ViewRef getViewRefById(String refId) {
+	public synchronized ViewRef getViewRefById(String refId) {
 		checkArgument(!isNullOrEmpty(refId), "You must specify a view ID!");
 
 		return refMapping.values().stream()
@@ -717,7 +721,7 @@ public class RefLog {
 	 * @param refId The view ID of the ViewRef which will replace the old ViewRef.
 	 * @return The created ViewRef object.
 	 */
-	public ViewRef replaceView(Version version, String sourceViewName, String targetViewName, String refId) {
+	public synchronized ViewRef replaceView(Version version, String sourceViewName, String targetViewName, String refId) {
 		checkArgument(version != null, "You must specify a version!");
 		checkArgument(!isNullOrEmpty(sourceViewName), "You must specify a source view name!");
 		checkArgument(!isNullOrEmpty(targetViewName), "You must specify a target view name!");
@@ -736,7 +740,7 @@ public class RefLog {
 	 * @param viewName The name of the view which the ViewRef represents.
 	 * @return The dropped ViewRef object.
 	 */
-	public ViewRef dropView(Version version, String viewName) {
+	public synchronized ViewRef dropView(Version version, String viewName) {
 		checkArgument(version != null, "You must specify a version!");
 		checkArgument(!isNullOrEmpty(viewName), "You must specify a view name!");
 
@@ -756,7 +760,7 @@ public class RefLog {
 	 *
 	 * @param viewRef The ViewRef object to drop from the RefLog.
 	 */
-	public void dropView(ViewRef viewRef) {
+	public synchronized void dropView(ViewRef viewRef) {
 		checkArgument(viewRef != null, "You must specify a ViewRef!");
 
 		List<Version> versions = refMapping.entries().stream()
@@ -776,7 +780,7 @@ public class RefLog {
 	 * @param version The version at which this view exists.
 	 * @return The constructed ViewRef object.
 	 */
-	public ViewRef addView(String name, String refId, Version version) {
+	public synchronized ViewRef addView(String name, String refId, Version version) {
 		checkArgument(!isNullOrEmpty(name), "You must specify a 'name'!");
 		checkArgument(!isNullOrEmpty(refId), "You must specify a 'refId'!");
 		checkArgument(version != null, "You must specify a 'version'!");
@@ -802,7 +806,7 @@ public class RefLog {
 	 * @param columns The column mapping from the source table, to the target table.
 	 * @return The constructed SyncRef object.
 	 */
-	public SyncRef addSync(String name, String functionName, Map<ColumnRef, ColumnRef> columns) {
+	public synchronized SyncRef addSync(String name, String functionName, Map<ColumnRef, ColumnRef> columns) {
 		long matches = refMapping.values().stream()
 				.filter(table -> table.getName().equals(name))
 				.count();
@@ -815,7 +819,7 @@ public class RefLog {
 	}
 
 
-	public Multimap<TableRef, TableRef> getTableMapping(Version from, Version to) {
+	public synchronized Multimap<TableRef, TableRef> getTableMapping(Version from, Version to) {
 		return getTableMapping(from, to, true);
 	}
 
@@ -827,7 +831,7 @@ public class RefLog {
 	 * @param to The final version.
 	 * @return The mapping between TableRefs between these two versions.
 	 */
-	public Multimap<TableRef, TableRef> getTableMapping(Version from, Version to, boolean filterUnchanged) {
+	public synchronized Multimap<TableRef, TableRef> getTableMapping(Version from, Version to, boolean filterUnchanged) {
 		Multimap<TableRef, TableRef> mapping = HashMultimap.create();
 		getTableRefs(from).forEach(tableRef -> {
 			Set<TableRef> targets = Sets.newHashSet();
@@ -859,7 +863,7 @@ public class RefLog {
 	 * @param to The target TableRef.
 	 * @return The column mapping between the two TableRefs.
 	 */
-	public Map<ColumnRef, ColumnRef> getColumnMapping(TableRef from, TableRef to) {
+	public synchronized Map<ColumnRef, ColumnRef> getColumnMapping(TableRef from, TableRef to) {
 		boolean forwards = isForwards(from, to);
 
 		Multimap<ColumnRef, ColumnRef> mapping = HashMultimap.create();
@@ -913,7 +917,7 @@ public class RefLog {
 		return forwards;
 	}
 
-	public void setVersionState(Version version, boolean active) {
+	public synchronized void setVersionState(Version version, boolean active) {
 		if (active) {
 			activeVersions.add(version);
 		}
@@ -925,7 +929,7 @@ public class RefLog {
 	/**
 	 * @return An ImmutableSet of Versions covered by this RefLog.
 	 */
-	public ImmutableSet<Version> getVersions() {
+	public synchronized ImmutableSet<Version> getVersions() {
 		return ImmutableSet.copyOf(activeVersions);
 	}
 
@@ -0,0 +1,107 @@
+package io.quantumdb.core.backends.planner;
+
+import static io.quantumdb.core.schema.definitions.Column.Hint.IDENTITY;
+import static io.quantumdb.core.schema.definitions.TestTypes.bigint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.quantumdb.core.schema.definitions.Column;
+import io.quantumdb.core.schema.definitions.Table;
+import io.quantumdb.core.versioning.RefLog;
+import org.junit.Test;
+
+public class StepSchedulerTest {
+
+	@Test
+	public void testDependentStepsAreExecutedInOrder() throws Exception {
+		Step first = Step.copy(createTable("users"), Sets.newLinkedHashSet(Lists.newArrayList("id")));
+		Step second = Step.copy(createTable("messages"), Sets.newLinkedHashSet(Lists.newArrayList("id")), first);
+		Plan plan = createPlan(second, first);
+
+		List<Step> executed = Lists.newCopyOnWriteArrayList();
+		new StepScheduler(plan, 4).run(executed::add);
+
+		assertEquals(Lists.newArrayList(first, second), executed);
+		assertTrue(plan.isExecuted());
+	}
+
+	@Test(timeout = 10_000)
+	public void testIndependentStepsAreExecutedConcurrently() throws Exception {
+		Step first = Step.copy(createTable("users"), Sets.newLinkedHashSet(Lists.newArrayList("id")));
+		Step second = Step.copy(createTable("messages"), Sets.newLinkedHashSet(Lists.newArrayList("id")));
+		Plan plan = createPlan(first, second);
+
+		// Each step waits for the other one to start, which can only succeed if both run at the same time.
+		CountDownLatch latch = new CountDownLatch(2);
+		new StepScheduler(plan, 2).run(step -> {
+			latch.countDown();
+			if (!latch.await(5, TimeUnit.SECONDS)) {
+				throw new IllegalStateException("Steps were not executed concurrently");
+			}
+		});
+
+		assertTrue(plan.isExecuted());
+	}
+
+	@Test
+	public void testStepsOnSameTableAreNotExecutedConcurrently() throws Exception {
+		Table users = createTable("users");
+		Step first = Step.copy(users, Sets.newLinkedHashSet(Lists.newArrayList("id")));
+		Step second = Step.copy(users, Sets.newLinkedHashSet(Lists.newArrayList("name")));
+		Plan plan = createPlan(first, second);
+
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maximum = new AtomicInteger();
+		new StepScheduler(plan, 2).run(step -> {
+			maximum.accumulateAndGet(running.incrementAndGet(), Math::max);
+			Thread.sleep(50);
+			running.decrementAndGet();
+		});
+
+		assertEquals(1, maximum.get());
+		assertTrue(plan.isExecuted());
+	}
+
+	@Test
+	public void testFailingStepPreventsDependentStepsFromBeingExecuted() throws Exception {
+		Step first = Step.copy(createTable("users"), Sets.newLinkedHashSet(Lists.newArrayList("id")));
+		Step second = Step.copy(createTable("messages"), Sets.newLinkedHashSet(Lists.newArrayList("id")), first);
+		Plan plan = createPlan(first, second);
+
+		List<Step> executed = Lists.newCopyOnWriteArrayList();
+		try {
+			new StepScheduler(plan, 2).run(step -> {
+				executed.add(step);
+				throw new IllegalStateException("Failure");
+			});
+			fail("Expected an ExecutionException");
+		}
+		catch (ExecutionException e) {
+			assertEquals("Failure", e.getCause().getMessage());
+		}
+
+		assertEquals(Lists.newArrayList(first), executed);
+		assertFalse(first.isExecuted());
+		assertFalse(second.isExecuted());
+	}
+
+	private Table createTable(String name) {
+		return new Table(name)
+				.addColumn(new Column("id", bigint(), IDENTITY));
+	}
+
+	private Plan createPlan(Step... steps) {
+		return new Plan(Lists.newArrayList(steps), new RefLog(), Sets.newHashSet(), Sets.newHashSet());
+	}
+
+}
@@ -0,0 +1,126 @@
+package io.quantumdb.driver;
+
+import lombok.Getter;
+
+/**
+ * Describes an INSERT statement which inserts a single row of parameters, such as "INSERT INTO users (id, name) VALUES
+ * (?, ?)". When such a statement is executed as a batch, the rows of the batch can be inserted using multi-row INSERT
+ * statements ("... VALUES (?, ?), (?, ?), ..."), which requires far fewer round-trips and executions on the server.
+ * Statements with a RETURNING or ON CONFLICT clause, or with values other than parameters, are not eligible.
+ */
+class BatchInsert {
+
+	private static final int MAX_ROWS = 128;
+	private static final int MAX_PARAMETERS = Short.MAX_VALUE;
+
+	/**
+	 * @return The BatchInsert describing the specified SQL statement, or NULL if the statement cannot be batched into
+	 * multi-row INSERT statements.
+	 */
+	static BatchInsert parse(String sql) {
+		int index = skipWhitespace(sql, 0);
+		if (!sql.regionMatches(true, index, "insert", 0, 6)) {
+			return null;
+		}
+		int afterInsert = index + 6;
+		index = skipWhitespace(sql, afterInsert);
+		if (index == afterInsert || !sql.regionMatches(true, index, "into", 0, 4)) {
+			return null;
+		}
+
+		// Find the VALUES keyword which follows the table name and the (optional) list of columns.
+		int depth = 0;
+		int valuesStart = -1;
+		for (index += 4; index < sql.length() && valuesStart < 0; index++) {
+			char c = sql.charAt(index);
+			if (c == '?' || c == '\'' || c == '$' || c == ';' || sql.startsWith("--", index)
+					|| sql.startsWith("/*", index)) {
+				return null;
+			}
+			else if (c == '(') {
+				depth++;
+			}
+			else if (c == ')') {
+				depth--;
+			}
+			else if (depth == 0 && Character.isWhitespace(c) && sql.regionMatches(true, index + 1, "values", 0, 6)) {
+				valuesStart = index + 1;
+			}
+		}
+		if (valuesStart < 0) {
+			return null;
+		}
+
+		int tupleStart = skipWhitespace(sql, valuesStart + 6);
+		if (!sql.startsWith("(", tupleStart)) {
+			return null;
+		}
+
+		// The values must consist of parameters only.
+		int parameters = 0;
+		index = tupleStart + 1;
+		while (true) {
+			index = skipWhitespace(sql, index);
+			if (!sql.startsWith("?", index)) {
+				return null;
+			}
+			parameters++;
+			index = skipWhitespace(sql, index + 1);
+			if (sql.startsWith(")", index)) {
+				break;
+			}
+			else if (!sql.startsWith(",", index)) {
+				return null;
+			}
+			index++;
+		}
+
+		int tupleEnd = index + 1;
+		index = skipWhitespace(sql, tupleEnd);
+		if (sql.startsWith(";", index)) {
+			index = skipWhitespace(sql, index + 1);
+		}
+		if (index != sql.length()) {
+			return null;
+		}
+
+		String prefix = sql.substring(skipWhitespace(sql, 0), valuesStart + 6);
+		return new BatchInsert(prefix, sql.substring(tupleStart, tupleEnd), parameters);
+	}
+
+	private static int skipWhitespace(String sql, int index) {
+		while (index < sql.length() && Character.isWhitespace(sql.charAt(index))) {
+			index++;
+		}
+		return index;
+	}
+
+	private final String prefix;
+	private final String values;
+
+	@Getter
+	private final int parameterCount;
+
+	@Getter
+	private final int maxRows;
+
+	private BatchInsert(String prefix, String values, int parameterCount) {
+		this.prefix = prefix;
+		this.values = values;
+		this.parameterCount = parameterCount;
+		this.maxRows = Math.max(1, Math.min(MAX_ROWS, MAX_PARAMETERS / parameterCount));
+	}
+
+	/**
+	 * @return The INSERT statement which inserts the specified number of rows.
+	 */
+	String toSql(int rows) {
+		StringBuilder builder = new StringBuilder(prefix.length() + (values.length() + 2) * rows);
+		builder.append(prefix).append(' ').append(values);
+		for (int i = 1; i < rows; i++) {
+			builder.append(", ").append(values);
+		}
+		return builder.toString();
+	}
+
+}
@@ -5,11 +5,12 @@ import java.sql.DriverManager;
 import java.sql.DriverPropertyInfo;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
-import io.quantumdb.query.rewriter.PostgresqlQueryRewriter;
-import io.quantumdb.query.rewriter.QueryRewriter;
+import com.google.common.collect.Maps;
 
 public class Driver implements java.sql.Driver {
 
@@ -22,6 +23,50 @@ public class Driver implements java.sql.Driver {
 		}
 	}
 
+	private static final RewriteCache REWRITE_CACHE = RewriteCache.fromSystemProperties();
+
+	/**
+	 * @return The cache of rewritten SQL statements which is shared by all connections opened through this Driver.
+	 */
+	public static RewriteCache getRewriteCache() {
+		return REWRITE_CACHE;
+	}
+
+	private static final MappingRegistry MAPPING_REGISTRY = MappingRegistry.fromSystemProperties();
+
+	/**
+	 * @return The registry of table mappings per version which is shared by all connections opened through this
+	 * Driver.
+	 */
+	public static MappingRegistry getMappingRegistry() {
+		return MAPPING_REGISTRY;
+	}
+
+	private static final DriverMetrics METRICS = DriverMetrics.fromSystemProperties(REWRITE_CACHE);
+
+	/**
+	 * @return The metrics of all connections opened through this Driver, with which DriverListeners can be registered.
+	 */
+	public static DriverMetrics getMetrics() {
+		return METRICS;
+	}
+
+	private static final Map<String, MappingListener> MAPPING_LISTENERS = Maps.newHashMap();
+
+	/**
+	 * Starts the MappingListener of the database to which the specified URL connects, unless it is already running.
+	 * The listener connects using the specified URL and credentials.
+	 */
+	static synchronized void startMappingListener(java.sql.Driver delegate, String url, Properties info) {
+		boolean enabled = Boolean.parseBoolean(System.getProperty(MappingListener.ENABLED_PROPERTY, "true"));
+		String database = MappingRegistry.getDatabase(url);
+		if (enabled && !MAPPING_LISTENERS.containsKey(database)) {
+			MappingListener mappingListener = new MappingListener(MAPPING_REGISTRY, delegate, url, info);
+			MAPPING_LISTENERS.put(database, mappingListener);
+			mappingListener.start();
+		}
+	}
+
 	private java.sql.Driver delegate;
 	private Transformer transformer;
 
@@ -44,23 +89,22 @@ public class Driver implements java.sql.Driver {
 		}
 
 		String version = parseVersion(url);
+		String applicationName = info.getProperty("ApplicationName");
 		if (version != null) {
-			String applicationName = info.getProperty("ApplicationName");
-			if (applicationName != null && !applicationName.equals("")) {
-				applicationName += " - " + version;
-			}
-			else {
-				applicationName = "QuantumDB driver - " + version;
-			}
-			info.setProperty("ApplicationName", applicationName);
+			info.setProperty("ApplicationName", getApplicationName(applicationName, version));
 		}
 
 		this.delegate = DriverManager.getDriver(url);
 		Connection connection = delegate.connect(url, info);
-		QueryRewriter queryRewriter = new PostgresqlQueryRewriter();
-		this.transformer = new Transformer(connection, queryRewriter, version);
+		String database = MappingRegistry.getDatabase(url);
+		AtomicReference<VersionMapping> mapping = MAPPING_REGISTRY.get(connection, database, version);
+		this.transformer = new Transformer(mapping, REWRITE_CACHE, METRICS);
+
+		if (version != null) {
+			startMappingListener(delegate, url, info);
+		}
 
-		return new ProxyConnection(connection, transformer);
+		return new ProxyConnection(connection, transformer, MAPPING_REGISTRY, database, applicationName);
 	}
 
 	@Override
@@ -97,7 +141,21 @@ public class Driver implements java.sql.Driver {
 		return transformer.getRefId(tableName);
 	}
 
-	private String parseVersion(String url) {
+	/**
+	 * @return The application name which identifies connections of the specified version in pg_stat_activity, based
+	 * on the application name specified by the user (if any).
+	 */
+	static String getApplicationName(String applicationName, String version) {
+		if (applicationName == null || applicationName.equals("")) {
+			applicationName = "QuantumDB driver";
+		}
+		if (version == null) {
+			return applicationName;
+		}
+		return applicationName + " - " + version;
+	}
+
+	static String parseVersion(String url) {
 		String[] lookups = new String[] { "?version=", "&version=" };
 
 		int index = -1;
@@ -0,0 +1,30 @@
+package io.quantumdb.driver;
+
+/**
+ * Receives events from all connections opened through the Driver or a QuantumDataSource, for instance to feed them
+ * into a metrics library. Listeners are registered with DriverMetrics, and are invoked synchronously on the thread
+ * which uses the connection, so they should return quickly. Versions are NULL for connections which do not rewrite
+ * their queries.
+ */
+public interface DriverListener {
+
+	/**
+	 * Invoked after a query was rewritten (or found not to require rewriting) for the specified version.
+	 */
+	default void onRewrite(String version, String query, String rewrittenQuery, long nanos) {
+	}
+
+	/**
+	 * Invoked after a statement was executed. The SQL statement is NULL when it is not known, for instance when a
+	 * batch of statements was executed.
+	 */
+	default void onExecute(String version, String sql, long nanos) {
+	}
+
+	default void onConnectionOpened(String version) {
+	}
+
+	default void onConnectionClosed(String version) {
+	}
+
+}
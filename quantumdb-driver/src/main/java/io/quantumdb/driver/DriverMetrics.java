@@ -0,0 +1,300 @@
+package io.quantumdb.driver;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import io.quantumdb.query.rewriter.RewriteTemplate;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Measures how much latency the driver adds to, and how much traffic passes through the connections opened through
+ * the Driver or a QuantumDataSource: the time spent rewriting queries, the time spent executing statements, the number
+ * of statements executed and connections opened per version, and the effectiveness of the RewriteCache. The metrics
+ * are exposed through JMX (unless the "quantumdb.metrics.jmx" system property is set to false), and events can be
+ * observed by registering a DriverListener.
+ *
+ * All metrics are recorded using striped counters, so that connections do not contend with each other. Counting the
+ * statements per table requires the tables referenced by every statement, which is why it must be enabled explicitly
+ * through the "quantumdb.metrics.tableStatistics" system property. Statements are counted per table each time they are
+ * executed, using the cached template of the original query, regardless of whether the query had to be rewritten.
+ */
+@Slf4j
+public class DriverMetrics implements DriverMetricsMXBean {
+
+	static final String JMX_PROPERTY = "quantumdb.metrics.jmx";
+	static final String TABLE_STATISTICS_PROPERTY = "quantumdb.metrics.tableStatistics";
+	static final String OBJECT_NAME = "io.quantumdb:type=DriverMetrics";
+
+	private static final String NO_VERSION = "(none)";
+
+	static DriverMetrics fromSystemProperties(RewriteCache rewriteCache) {
+		boolean tableStatistics = Boolean.getBoolean(TABLE_STATISTICS_PROPERTY);
+		DriverMetrics metrics = new DriverMetrics(rewriteCache, tableStatistics);
+		if (Boolean.parseBoolean(System.getProperty(JMX_PROPERTY, "true"))) {
+			metrics.register();
+		}
+		return metrics;
+	}
+
+	/**
+	 * Holds the counters of a single version, so that connections only have to look them up when they switch
+	 * versions.
+	 */
+	static class VersionStatistics {
+		private final String version;
+		private final LongAdder statements = new LongAdder();
+		private final LongAdder connections = new LongAdder();
+
+		private VersionStatistics(String version) {
+			this.version = version;
+		}
+	}
+
+	private final RewriteCache rewriteCache;
+	private final Histogram rewrites;
+	private final Histogram executions;
+	private final Map<String, VersionStatistics> versions;
+	private final Map<String, LongAdder> tables;
+	private final List<DriverListener> listeners;
+
+	@Getter
+	private final boolean tableStatisticsEnabled;
+
+	/**
+	 * @param rewriteCache The RewriteCache whose statistics are exposed.
+	 * @param tableStatisticsEnabled True if statements should be counted per table.
+	 */
+	public DriverMetrics(RewriteCache rewriteCache, boolean tableStatisticsEnabled) {
+		this.rewriteCache = rewriteCache;
+		this.tableStatisticsEnabled = tableStatisticsEnabled;
+		this.rewrites = new Histogram();
+		this.executions = new Histogram();
+		this.versions = new ConcurrentHashMap<>();
+		this.tables = new ConcurrentHashMap<>();
+		this.listeners = new CopyOnWriteArrayList<>();
+	}
+
+	public void addListener(DriverListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(DriverListener listener) {
+		listeners.remove(listener);
+	}
+
+	VersionStatistics getVersionStatistics(String version) {
+		String key = version == null ? NO_VERSION : version;
+		return versions.computeIfAbsent(key, k -> new VersionStatistics(version));
+	}
+
+	void recordRewrite(VersionStatistics statistics, String query, String rewrittenQuery, long nanos) {
+		rewrites.record(nanos);
+		if (listeners.isEmpty()) {
+			return;
+		}
+		for (DriverListener listener : listeners) {
+			try {
+				listener.onRewrite(statistics.version, query, rewrittenQuery, nanos);
+			}
+			catch (RuntimeException e) {
+				log.warn("DriverListener failed: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	void recordTables(RewriteTemplate template) {
+		int slots = template.getSlotCount();
+		if (slots == 1) {
+			increment(template.getTableName(0));
+		}
+		else if (slots > 1) {
+			for (String table : Sets.newHashSet(names(template))) {
+				increment(table);
+			}
+		}
+	}
+
+	void recordExecution(VersionStatistics statistics, String sql, long nanos) {
+		executions.record(nanos);
+		statistics.statements.increment();
+		if (listeners.isEmpty()) {
+			return;
+		}
+		for (DriverListener listener : listeners) {
+			try {
+				listener.onExecute(statistics.version, sql, nanos);
+			}
+			catch (RuntimeException e) {
+				log.warn("DriverListener failed: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	void recordConnectionOpened(VersionStatistics statistics) {
+		statistics.connections.increment();
+		for (DriverListener listener : listeners) {
+			try {
+				listener.onConnectionOpened(statistics.version);
+			}
+			catch (RuntimeException e) {
+				log.warn("DriverListener failed: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	void recordConnectionClosed(VersionStatistics statistics) {
+		statistics.connections.decrement();
+		for (DriverListener listener : listeners) {
+			try {
+				listener.onConnectionClosed(statistics.version);
+			}
+			catch (RuntimeException e) {
+				log.warn("DriverListener failed: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	@Override
+	public long getRewriteCount() {
+		return rewrites.getCount();
+	}
+
+	@Override
+	public double getRewriteTimeMean() {
+		return rewrites.getMean() / 1_000;
+	}
+
+	@Override
+	public long getRewriteTime50thPercentile() {
+		return toMicros(rewrites.getPercentile(50));
+	}
+
+	@Override
+	public long getRewriteTime99thPercentile() {
+		return toMicros(rewrites.getPercentile(99));
+	}
+
+	@Override
+	public long getRewriteTimeMax() {
+		return toMicros(rewrites.getMax());
+	}
+
+	@Override
+	public long getExecutionCount() {
+		return executions.getCount();
+	}
+
+	@Override
+	public double getExecutionTimeMean() {
+		return executions.getMean() / 1_000;
+	}
+
+	@Override
+	public long getExecutionTime50thPercentile() {
+		return toMicros(executions.getPercentile(50));
+	}
+
+	@Override
+	public long getExecutionTime99thPercentile() {
+		return toMicros(executions.getPercentile(99));
+	}
+
+	@Override
+	public long getExecutionTimeMax() {
+		return toMicros(executions.getMax());
+	}
+
+	@Override
+	public double getRewriteCacheHitRate() {
+		return rewriteCache.getStats().hitRate();
+	}
+
+	@Override
+	public long getRewriteCacheSkipCount() {
+		return rewriteCache.getSkipCount();
+	}
+
+	@Override
+	public long getRewriteCacheEvictionCount() {
+		return rewriteCache.getEvictionCount();
+	}
+
+	@Override
+	public double getTemplateCacheHitRate() {
+		return rewriteCache.getTemplateStats().hitRate();
+	}
+
+	@Override
+	public Map<String, Long> getStatementsPerVersion() {
+		ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+		versions.forEach((version, statistics) -> builder.put(version, statistics.statements.sum()));
+		return builder.build();
+	}
+
+	@Override
+	public Map<String, Long> getStatementsPerTable() {
+		ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+		tables.forEach((table, count) -> builder.put(table, count.sum()));
+		return builder.build();
+	}
+
+	@Override
+	public Map<String, Long> getConnectionsPerVersion() {
+		ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+		versions.forEach((version, statistics) -> builder.put(version, statistics.connections.sum()));
+		return builder.build();
+	}
+
+	/**
+	 * Resets all histograms and statement counters. The number of open connections per version is retained.
+	 */
+	@Override
+	public void reset() {
+		rewrites.reset();
+		executions.reset();
+		tables.clear();
+		versions.values().forEach(statistics -> statistics.statements.reset());
+	}
+
+	private void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+			}
+		}
+		catch (JMException | RuntimeException e) {
+			log.warn("Could not register driver metrics with JMX: " + e.getMessage(), e);
+		}
+	}
+
+	private void increment(String table) {
+		tables.computeIfAbsent(table, key -> new LongAdder()).increment();
+	}
+
+	private static String[] names(RewriteTemplate template) {
+		String[] names = new String[template.getSlotCount()];
+		for (int slot = 0; slot < names.length; slot++) {
+			names[slot] = template.getTableName(slot);
+		}
+		return names;
+	}
+
+	private static long toMicros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+}
@@ -0,0 +1,47 @@
+package io.quantumdb.driver;
+
+import java.util.Map;
+
+/**
+ * Exposes the DriverMetrics through JMX, under the name "io.quantumdb:type=DriverMetrics". Durations are expressed in
+ * microseconds.
+ */
+public interface DriverMetricsMXBean {
+
+	long getRewriteCount();
+
+	double getRewriteTimeMean();
+
+	long getRewriteTime50thPercentile();
+
+	long getRewriteTime99thPercentile();
+
+	long getRewriteTimeMax();
+
+	long getExecutionCount();
+
+	double getExecutionTimeMean();
+
+	long getExecutionTime50thPercentile();
+
+	long getExecutionTime99thPercentile();
+
+	long getExecutionTimeMax();
+
+	double getRewriteCacheHitRate();
+
+	long getRewriteCacheSkipCount();
+
+	long getRewriteCacheEvictionCount();
+
+	double getTemplateCacheHitRate();
+
+	Map<String, Long> getStatementsPerVersion();
+
+	Map<String, Long> getStatementsPerTable();
+
+	Map<String, Long> getConnectionsPerVersion();
+
+	void reset();
+
+}
@@ -0,0 +1,108 @@
+package io.quantumdb.driver;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations (in nanoseconds), which can be updated concurrently without locking. Durations are counted
+ * in buckets whose width grows exponentially: every power of two is divided into 8 buckets, so that percentiles are
+ * estimated with an error of at most 12.5%, while the histogram only uses a fixed amount of memory.
+ */
+class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final LongAdder[] buckets;
+	private final LongAdder count;
+	private final LongAdder sum;
+	private final LongAccumulator max;
+
+	Histogram() {
+		this.buckets = new LongAdder[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+		this.count = new LongAdder();
+		this.sum = new LongAdder();
+		this.max = new LongAccumulator(Math::max, 0);
+	}
+
+	void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets[indexOf(nanos)].increment();
+		count.increment();
+		sum.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	long getCount() {
+		return count.sum();
+	}
+
+	long getMax() {
+		return max.get();
+	}
+
+	double getMean() {
+		long count = this.count.sum();
+		return count == 0 ? 0 : (double) sum.sum() / count;
+	}
+
+	/**
+	 * @param percentile The percentile to estimate, between 0 and 100.
+	 * @return The estimated duration (in nanoseconds) below which the specified percentage of durations lie.
+	 */
+	long getPercentile(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long threshold = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= threshold && seen > 0) {
+				return Math.min(upperBoundOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	void reset() {
+		for (LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int mantissa = (int) (value >>> exponent) & (SUB_BUCKETS - 1);
+		return (exponent + 1) * SUB_BUCKETS + mantissa;
+	}
+
+	static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS - 1;
+		long mantissa = (index % SUB_BUCKETS) + SUB_BUCKETS;
+		return ((mantissa + 1) << exponent) - 1;
+	}
+
+}
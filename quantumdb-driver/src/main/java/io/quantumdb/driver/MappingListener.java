@@ -0,0 +1,131 @@
+package io.quantumdb.driver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * Listens on a connection of its own for notifications on the "quantumdb" channel, which the migrator sends for every
+ * version whose table mapping changed, and refreshes the mapping of that version in the MappingRegistry. This way all
+ * connections of a version pick up changes to its mapping, without having to be reopened. Every database to which
+ * the Driver connects has a MappingListener of its own, which only refreshes the mappings of that database.
+ *
+ * Should the listening connection be lost, notifications may be missed. Once a new connection has been established,
+ * all mappings in the registry are therefore refreshed.
+ */
+@Slf4j
+class MappingListener implements Runnable {
+
+	static final String CHANNEL = "quantumdb";
+	static final String ENABLED_PROPERTY = "quantumdb.mappings.listen";
+
+	private static final long POLL_INTERVAL = 500;
+	private static final long RECONNECT_INTERVAL = 5_000;
+
+	private final MappingRegistry registry;
+	private final java.sql.Driver delegate;
+	private final String database;
+	private final String url;
+	private final Properties info;
+
+	private volatile boolean running;
+	private Thread thread;
+
+	MappingListener(MappingRegistry registry, java.sql.Driver delegate, String url, Properties info) {
+		this.registry = registry;
+		this.delegate = delegate;
+		this.database = MappingRegistry.getDatabase(url);
+		this.url = url;
+		this.info = new Properties();
+		this.info.putAll(info);
+		this.info.setProperty("ApplicationName", "QuantumDB driver - mapping listener");
+	}
+
+	synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+
+		running = true;
+		thread = new Thread(this, "quantumdb-mapping-listener");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	synchronized void stop() {
+		if (thread == null) {
+			return;
+		}
+
+		running = false;
+		thread.interrupt();
+		thread = null;
+	}
+
+	@Override
+	public void run() {
+		boolean reconnected = false;
+		while (running) {
+			try (Connection connection = delegate.connect(url, info)) {
+				connection.setAutoCommit(true);
+				try (Statement statement = connection.createStatement()) {
+					statement.execute("LISTEN " + CHANNEL + ";");
+				}
+
+				if (reconnected) {
+					registry.refreshAll(connection, database);
+				}
+				reconnected = true;
+
+				listen(connection);
+			}
+			catch (SQLException e) {
+				log.warn("Lost connection used to listen for changed table mappings of database: " + database + ": "
+						+ e.getMessage(), e);
+				if (!sleep(RECONNECT_INTERVAL)) {
+					return;
+				}
+			}
+		}
+	}
+
+	private void listen(Connection connection) throws SQLException {
+		PGConnection pgConnection = connection.unwrap(PGConnection.class);
+		while (running) {
+			if (!sleep(POLL_INTERVAL)) {
+				return;
+			}
+
+			// The PostgreSQL driver only receives notifications while it is reading the result of a query.
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("SELECT 1;");
+			}
+
+			PGNotification[] notifications = pgConnection.getNotifications();
+			if (notifications == null) {
+				continue;
+			}
+
+			for (PGNotification notification : notifications) {
+				registry.refresh(connection, database, notification.getParameter());
+			}
+		}
+	}
+
+	private boolean sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+			return true;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,184 @@
+package io.quantumdb.driver;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Holds the table mappings of all versions which are used by connections opened through the Driver. The mapping of a
+ * version is loaded by the first connection which uses that version, and then shared by all other connections of
+ * that version, so that opening a connection does not require a query on the meta tables. Since a single Driver may
+ * connect to several databases, each of which has its own versions, mappings are identified by both the database
+ * (the JDBC URL without its parameters, see getDatabase()) and the version.
+ *
+ * Connections hold a reference to the mapping of their version, rather than the mapping itself. When the mapping of a
+ * version is refreshed (for instance by the MappingListener) and its tables have changed, the reference is atomically
+ * updated to the new mapping, and all connections of that version use it for the next query they rewrite. As a safeguard, mappings are also
+ * reloaded by the next connection to use them after a period of time, which can be configured through the
+ * "quantumdb.mappings.expireAfterWrite" system property (in seconds, where 0 means that mappings are never reloaded
+ * unless they are refreshed or invalidated).
+ */
+@Slf4j
+public class MappingRegistry {
+
+	static final String EXPIRY_PROPERTY = "quantumdb.mappings.expireAfterWrite";
+
+	private static final long DEFAULT_EXPIRY = 60;
+	private static final AtomicReference<VersionMapping> EMPTY = new AtomicReference<>(VersionMapping.EMPTY);
+
+	static MappingRegistry fromSystemProperties() {
+		return new MappingRegistry(Long.getLong(EXPIRY_PROPERTY, DEFAULT_EXPIRY));
+	}
+
+	/**
+	 * @return The URL of the database to which the specified JDBC URL connects, without any of its parameters. This
+	 * identifies the mappings of that database, regardless of the version and credentials specified in the URL.
+	 */
+	static String getDatabase(String url) {
+		if (url.startsWith("jdbc:quantumdb:")) {
+			url = "jdbc:" + url.substring(15);
+		}
+		int index = url.indexOf('?');
+		return index == -1 ? url : url.substring(0, index);
+	}
+
+	private final Map<String, Map<String, AtomicReference<VersionMapping>>> references;
+	private final long expireAfterWrite;
+
+	/**
+	 * @param expireAfterWrite The number of seconds after which a mapping is reloaded, or 0 to retain mappings until
+	 *                         they are refreshed or invalidated.
+	 */
+	public MappingRegistry(long expireAfterWrite) {
+		this.references = new ConcurrentHashMap<>();
+		this.expireAfterWrite = TimeUnit.SECONDS.toMillis(expireAfterWrite);
+	}
+
+	/**
+	 * Returns the reference to the mapping of the specified version, and loads the mapping using the specified
+	 * Connection (to the specified database) if it has not been loaded yet, or if it has expired. Concurrent requests
+	 * for a version which is not loaded yet, wait for a single load to complete.
+	 */
+	AtomicReference<VersionMapping> get(Connection connection, String database, String version) throws SQLException {
+		if (version == null || version.isEmpty()) {
+			return EMPTY;
+		}
+
+		AtomicReference<VersionMapping> reference = references.computeIfAbsent(database, key -> new ConcurrentHashMap<>())
+				.computeIfAbsent(version, key -> new AtomicReference<>());
+		if (isLoaded(reference.get())) {
+			return reference;
+		}
+
+		synchronized (reference) {
+			if (!isLoaded(reference.get())) {
+				reload(reference, connection, version);
+			}
+		}
+		return reference;
+	}
+
+	/**
+	 * Reloads the mapping of the specified version using the specified Connection (to the specified database), if it
+	 * is used by any connection.
+	 */
+	void refresh(Connection connection, String database, String version) throws SQLException {
+		Map<String, AtomicReference<VersionMapping>> versions = references.get(database);
+		AtomicReference<VersionMapping> reference = versions == null ? null : versions.get(version);
+		if (reference == null) {
+			return;
+		}
+
+		synchronized (reference) {
+			reload(reference, connection, version);
+		}
+		log.debug("Refreshed table mapping of version: {} of database: {}", version, database);
+	}
+
+	/**
+	 * Reloads the mappings of all versions of the specified database which are used by any connection, using the
+	 * specified Connection (to that database).
+	 */
+	void refreshAll(Connection connection, String database) throws SQLException {
+		Map<String, AtomicReference<VersionMapping>> versions = references.get(database);
+		if (versions == null) {
+			return;
+		}
+
+		for (String version : ImmutableList.copyOf(versions.keySet())) {
+			refresh(connection, database, version);
+		}
+	}
+
+	/**
+	 * Discards the mapping of the specified version in every database, so that it is loaded again by the next
+	 * connection to use it. Connections which were opened before, retain the discarded mapping.
+	 */
+	public void invalidate(String version) {
+		references.values().forEach(versions -> versions.remove(version));
+	}
+
+	/**
+	 * Discards the mappings of all versions.
+	 */
+	public void invalidateAll() {
+		references.clear();
+	}
+
+	private boolean isLoaded(VersionMapping mapping) {
+		if (mapping == null) {
+			return false;
+		}
+		return expireAfterWrite <= 0 || System.currentTimeMillis() - mapping.getLoaded() < expireAfterWrite;
+	}
+
+	/**
+	 * Loads the mapping of the specified version, and only replaces the current mapping if its tables differ from the
+	 * loaded ones. Otherwise the current mapping is retained (and marked as loaded again), since the caches of the
+	 * Driver identify mappings by instance, and would otherwise discard everything they cached for it.
+	 */
+	private void reload(AtomicReference<VersionMapping> reference, Connection connection, String version)
+			throws SQLException {
+		ImmutableMap<String, String> tableMapping = load(connection, version);
+		VersionMapping current = reference.get();
+		if (current != null && current.getTableMapping().equals(tableMapping)) {
+			current.renew();
+		}
+		else {
+			reference.set(new VersionMapping(version, tableMapping));
+		}
+	}
+
+	private ImmutableMap<String, String> load(Connection connection, String version) throws SQLException {
+		String query = new StringBuilder()
+				.append("SELECT ref_id, table_name ")
+				.append("FROM quantumdb.ref_versions ")
+				.append("WHERE version_id = ?;")
+				.toString();
+
+		ImmutableMap.Builder<String, String> tableMapping = ImmutableMap.builder();
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, version);
+
+			try (ResultSet resultSet = statement.executeQuery()) {
+				while (resultSet.next()) {
+					String refId = resultSet.getString("ref_id");
+					String tableName = resultSet.getString("table_name");
+					tableMapping.put(tableName, refId);
+				}
+			}
+		}
+
+		return tableMapping.build();
+	}
+
+}
@@ -892,6 +892,7 @@ public class ProxyCallableStatement implements CallableStatement {
 
 	@Override
 	public void close() throws SQLException {
+		connection.untrack(this);
 		statement.close();
 	}
 
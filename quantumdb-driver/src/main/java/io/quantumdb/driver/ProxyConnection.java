@@ -8,6 +8,7 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.NClob;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
@@ -17,35 +18,257 @@ import java.sql.Statement;
 import java.sql.Struct;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.Executor;
-
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import io.quantumdb.driver.StatementCache.Key;
+import org.postgresql.PGConnection;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.ProtocolConnection;
+
+/**
+ * A Connection which rewrites the queries of its statements for a particular version of the database schema. The
+ * version can be switched between transactions, either through setVersion(), or by setting the "quantumdb.version"
+ * client info property. Since the mappings of versions are shared through the MappingRegistry, switching to a
+ * version whose mapping is already loaded does not require any query on the meta tables. The application name of the
+ * connection is updated as well, so that the connection is counted as a client of its new version.
+ *
+ * Switching versions only affects SQL which is rewritten after the switch: the queries which are passed to a Statement
+ * (including those passed to the execute methods of a PreparedStatement), and statements which are prepared after the
+ * switch. PreparedStatements and CallableStatements which were prepared before the switch keep executing the SQL as it
+ * was rewritten for the version they were prepared for, and should be prepared again after switching.
+ *
+ * PreparedStatements which are closed by the application are retained in a StatementCache, and handed out again when
+ * the same statement is prepared again.
+ *
+ * Statements which are still open when the connection is closed, are closed along with it (and PreparedStatements are
+ * then offered to the StatementCache), so that they can no longer be used once the underlying connection has been
+ * returned to a pool and handed out to someone else.
+ */
 public class ProxyConnection implements Connection {
 
+	private static final int DEFAULT = StatementCache.DEFAULT;
+
+	public static final String VERSION_PROPERTY = "quantumdb.version";
+
+	/**
+	 * Decides what happens to the underlying connection when a ProxyConnection is closed.
+	 */
+	interface Releaser {
+		void release(ProxyConnection connection) throws SQLException;
+	}
+
+	private interface Preparer {
+		PreparedStatement prepare(String transformedSql) throws SQLException;
+	}
+
 	private final Connection connection;
 	private final Transformer transformer;
-
-	ProxyConnection(Connection connection, Transformer transformer) {
+	private final MappingRegistry registry;
+	private final String database;
+	private final StatementCache statementCache;
+	private final String applicationName;
+	private final Releaser releaser;
+	private final Set<Statement> openStatements;
+
+	private volatile boolean closed;
+	private boolean sessionModified;
+
+	/**
+	 * @param database The database to which the connection is connected (see MappingRegistry.getDatabase()).
+	 * @param applicationName The application name specified by the user, from which the application name of the
+	 *                        connection is derived for each version.
+	 */
+	ProxyConnection(Connection connection, Transformer transformer, MappingRegistry registry, String database,
+			String applicationName) {
+		this(connection, transformer, registry, database, StatementCache.fromSystemProperties(), applicationName,
+				proxy -> {
+					proxy.getStatementCache().clear();
+					proxy.getDelegate().close();
+				});
+	}
+
+	/**
+	 * @param statementCache The cache of PreparedStatements of the underlying connection.
+	 * @param releaser Is invoked when this connection is closed, for instance to return the underlying connection to
+	 *                 a pool rather than closing it.
+	 */
+	ProxyConnection(Connection connection, Transformer transformer, MappingRegistry registry, String database,
+			StatementCache statementCache, String applicationName, Releaser releaser) {
 		this.connection = connection;
 		this.transformer = transformer;
+		this.registry = registry;
+		this.database = database;
+		this.statementCache = statementCache;
+		this.applicationName = applicationName;
+		this.releaser = releaser;
+		this.openStatements = Sets.newConcurrentHashSet();
+		transformer.getMetrics().recordConnectionOpened(transformer.getStatistics());
+	}
+
+	Connection getDelegate() {
+		return connection;
+	}
+
+	StatementCache getStatementCache() {
+		return statementCache;
+	}
+
+	/**
+	 * @return True if the read-only mode, transaction isolation, catalog or schema of the underlying connection have
+	 * been changed through this connection.
+	 */
+	boolean isSessionModified() {
+		return sessionModified;
+	}
+
+	private <T extends Statement> T track(T statement) {
+		openStatements.add(statement);
+		return statement;
+	}
+
+	/**
+	 * Is invoked by the statements of this connection when they are closed.
+	 */
+	void untrack(Statement statement) {
+		openStatements.remove(statement);
+	}
+
+	/**
+	 * @return The version for which queries are rewritten, or NULL if queries are not rewritten.
+	 */
+	public String getVersion() {
+		return transformer.getVersion();
+	}
+
+	/**
+	 * Switches the version for which subsequent queries are rewritten. This applies to the queries which are passed to
+	 * already created Statements, but not to PreparedStatements and CallableStatements which have already been
+	 * prepared, since their SQL was rewritten when they were prepared. This may only be done when no transaction is in
+	 * progress.
+	 *
+	 * @param version The version to switch to, or NULL to no longer rewrite queries.
+	 */
+	public void setVersion(String version) throws SQLException {
+		if (closed) {
+			throw new SQLException("This connection has been closed.");
+		}
+		if (version != null && version.isEmpty()) {
+			version = null;
+		}
+
+		String current = getVersion();
+		if (version == null ? current == null : version.equals(current)) {
+			return;
+		}
+		if (isTransactionInProgress()) {
+			throw new SQLException("Cannot switch to version: " + version + " while a transaction is in progress.");
+		}
+
+		AtomicReference<VersionMapping> mapping = registry.get(connection, database, version);
+		connection.setClientInfo("ApplicationName", Driver.getApplicationName(applicationName, version));
+		DriverMetrics metrics = transformer.getMetrics();
+		metrics.recordConnectionClosed(transformer.getStatistics());
+		transformer.setReference(mapping);
+		metrics.recordConnectionOpened(transformer.getStatistics());
+	}
+
+	private boolean isTransactionInProgress() throws SQLException {
+		if (connection.getAutoCommit() || !connection.isWrapperFor(BaseConnection.class)) {
+			return false;
+		}
+		int state = connection.unwrap(BaseConnection.class).getTransactionState();
+		return state != ProtocolConnection.TRANSACTION_IDLE;
 	}
 
 	@Override
 	public Statement createStatement() throws SQLException {
-		return new ProxyStatement(this, connection.createStatement(), transformer);
+		return track(new ProxyStatement(this, connection.createStatement(), transformer));
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		return prepareStatement(sql, DEFAULT, DEFAULT, DEFAULT, DEFAULT, connection::prepareStatement);
+	}
+
+	private PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+			int resultSetHoldability, int autoGeneratedKeys, Preparer preparer) throws SQLException {
+
+		VersionMapping mapping = transformer.getMapping();
 		String transformedSql = transformer.rewriteQuery(sql);
-		PreparedStatement statement = connection.prepareStatement(transformedSql);
-		return new ProxyPreparedStatement(this, statement, transformer);
+		Key key = new Key(transformedSql, resultSetType, resultSetConcurrency, resultSetHoldability, autoGeneratedKeys);
+		return prepareTransformedStatement(sql, key, mapping, preparer);
+	}
+
+	/**
+	 * Prepares a statement whose SQL has already been rewritten with the specified mapping. Executions of the returned
+	 * statement are not counted per table, since the original SQL statement is not known.
+	 */
+	ProxyPreparedStatement prepareTransformedStatement(String transformedSql, VersionMapping mapping)
+			throws SQLException {
+
+		Key key = new Key(transformedSql, DEFAULT, DEFAULT, DEFAULT, DEFAULT);
+		return prepareTransformedStatement(null, key, mapping, connection::prepareStatement);
+	}
+
+	private ProxyPreparedStatement prepareTransformedStatement(String sql, Key key, VersionMapping mapping,
+			Preparer preparer) throws SQLException {
+
+		PreparedStatement statement = statementCache.take(key, mapping);
+		if (statement == null) {
+			statement = preparer.prepare(key.getSql());
+		}
+		return track(new ProxyPreparedStatement(this, statement, transformer, sql, key, mapping));
+	}
+
+	/**
+	 * @return A ProxyCopyManager which loads and unloads data using the COPY protocol, after rewriting the table names
+	 * in the COPY statements for the version of this connection.
+	 */
+	public ProxyCopyManager getCopyManager() throws SQLException {
+		return new ProxyCopyManager(connection.unwrap(PGConnection.class).getCopyAPI(), transformer);
+	}
+
+	/**
+	 * Offers a PreparedStatement which was closed by the application to the StatementCache of this connection, after
+	 * clearing its parameters and batch, and restoring its settings.
+	 *
+	 * @return True if the statement is retained by the StatementCache, or false if it should be closed.
+	 */
+	boolean recycle(Key key, VersionMapping mapping, PreparedStatement statement, boolean modified)
+			throws SQLException {
+
+		if (closed || connection.isClosed()) {
+			return false;
+		}
+
+		ResultSet resultSet = statement.getResultSet();
+		if (resultSet != null) {
+			resultSet.close();
+		}
+		statement.clearParameters();
+		statement.clearBatch();
+		statement.clearWarnings();
+		if (modified) {
+			statement.setMaxRows(0);
+			statement.setMaxFieldSize(0);
+			statement.setFetchSize(0);
+			statement.setFetchDirection(ResultSet.FETCH_FORWARD);
+			statement.setQueryTimeout(0);
+			statement.setEscapeProcessing(true);
+		}
+		return statementCache.offer(key, mapping, statement);
 	}
 
 	@Override
 	public CallableStatement prepareCall(String sql) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
 		CallableStatement statement = connection.prepareCall(transformedSql);
-		return new ProxyCallableStatement(this, statement, transformer);
+		return track(new ProxyCallableStatement(this, statement, transformer));
 	}
 
 	@Override
@@ -76,12 +299,43 @@ public class ProxyConnection implements Connection {
 
 	@Override
 	public void close() throws SQLException {
-		connection.close();
+		if (!closed) {
+			try {
+				closeStatements();
+			}
+			finally {
+				closed = true;
+				transformer.getMetrics().recordConnectionClosed(transformer.getStatistics());
+				releaser.release(this);
+			}
+		}
+	}
+
+	private void closeStatements() throws SQLException {
+		SQLException failure = null;
+		for (Statement statement : ImmutableList.copyOf(openStatements)) {
+			try {
+				statement.close();
+			}
+			catch (SQLException e) {
+				if (failure == null) {
+					failure = e;
+				}
+				else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		openStatements.clear();
+
+		if (failure != null) {
+			throw failure;
+		}
 	}
 
 	@Override
 	public boolean isClosed() throws SQLException {
-		return connection.isClosed();
+		return closed || connection.isClosed();
 	}
 
 	@Override
@@ -92,6 +346,7 @@ public class ProxyConnection implements Connection {
 
 	@Override
 	public void setReadOnly(boolean readOnly) throws SQLException {
+		sessionModified = true;
 		connection.setReadOnly(readOnly);
 	}
 
@@ -102,6 +357,7 @@ public class ProxyConnection implements Connection {
 
 	@Override
 	public void setCatalog(String catalog) throws SQLException {
+		sessionModified = true;
 		connection.setCatalog(catalog);
 	}
 
@@ -112,6 +368,7 @@ public class ProxyConnection implements Connection {
 
 	@Override
 	public void setTransactionIsolation(int level) throws SQLException {
+		sessionModified = true;
 		connection.setTransactionIsolation(level);
 	}
 
@@ -133,23 +390,22 @@ public class ProxyConnection implements Connection {
 	@Override
 	public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
 		Statement statement = connection.createStatement(resultSetType, resultSetConcurrency);
-		return new ProxyStatement(this, statement, transformer);
+		return track(new ProxyStatement(this, statement, transformer));
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
 			throws SQLException {
 
-		String transformedSql = transformer.rewriteQuery(sql);
-		PreparedStatement statement = connection.prepareStatement(transformedSql, resultSetType, resultSetConcurrency);
-		return new ProxyPreparedStatement(this, statement, transformer);
+		return prepareStatement(sql, resultSetType, resultSetConcurrency, DEFAULT, DEFAULT,
+				transformedSql -> connection.prepareStatement(transformedSql, resultSetType, resultSetConcurrency));
 	}
 
 	@Override
 	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
 		CallableStatement statement = connection.prepareCall(transformedSql, resultSetType, resultSetConcurrency);
-		return new ProxyCallableStatement(this, statement, transformer);
+		return track(new ProxyCallableStatement(this, statement, transformer));
 	}
 
 	@Override
@@ -197,18 +453,16 @@ public class ProxyConnection implements Connection {
 			int resultSetHoldability) throws SQLException {
 
 		Statement statement = connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
-		return new ProxyStatement(this, statement, transformer);
+		return track(new ProxyStatement(this, statement, transformer));
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
 			int resultSetHoldability) throws SQLException {
 
-		String transformedSql = transformer.rewriteQuery(sql);
-		PreparedStatement statement = connection.prepareStatement(transformedSql, resultSetType, resultSetConcurrency,
-				resultSetHoldability);
-
-		return new ProxyPreparedStatement(this, statement, transformer);
+		return prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability, DEFAULT,
+				transformedSql -> connection.prepareStatement(transformedSql, resultSetType, resultSetConcurrency,
+						resultSetHoldability));
 	}
 
 	@Override
@@ -219,28 +473,27 @@ public class ProxyConnection implements Connection {
 		CallableStatement transformedStatement = connection.prepareCall(transformedSql, resultSetType,
 				resultSetConcurrency, resultSetHoldability);
 
-		return new ProxyCallableStatement(this, transformedStatement, transformer);
+		return track(new ProxyCallableStatement(this, transformedStatement, transformer));
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-		String transformedSql = transformer.rewriteQuery(sql);
-		PreparedStatement transformedStatement = connection.prepareStatement(transformedSql, autoGeneratedKeys);
-		return new ProxyPreparedStatement(this, transformedStatement, transformer);
+		return prepareStatement(sql, DEFAULT, DEFAULT, DEFAULT, autoGeneratedKeys,
+				transformedSql -> connection.prepareStatement(transformedSql, autoGeneratedKeys));
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
 		PreparedStatement transformedStatement = connection.prepareStatement(transformedSql, columnIndexes);
-		return new ProxyPreparedStatement(this, transformedStatement, transformer);
+		return track(new ProxyPreparedStatement(this, transformedStatement, transformer, sql));
 	}
 
 	@Override
 	public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
 		PreparedStatement transformedStatement = connection.prepareStatement(transformedSql, columnNames);
-		return new ProxyPreparedStatement(this, transformedStatement, transformer);
+		return track(new ProxyPreparedStatement(this, transformedStatement, transformer, sql));
 	}
 
 	@Override
@@ -270,22 +523,51 @@ public class ProxyConnection implements Connection {
 
 	@Override
 	public void setClientInfo(String name, String value) throws SQLClientInfoException {
-		connection.setClientInfo(name, value);
+		if (!VERSION_PROPERTY.equals(name)) {
+			connection.setClientInfo(name, value);
+			return;
+		}
+
+		try {
+			setVersion(value);
+		}
+		catch (SQLClientInfoException e) {
+			throw e;
+		}
+		catch (SQLException e) {
+			throw new SQLClientInfoException(e.getMessage(), ImmutableMap.of(), e);
+		}
 	}
 
 	@Override
 	public void setClientInfo(Properties properties) throws SQLClientInfoException {
-		connection.setClientInfo(properties);
+		if (!properties.containsKey(VERSION_PROPERTY)) {
+			connection.setClientInfo(properties);
+			return;
+		}
+
+		Properties remainder = new Properties();
+		remainder.putAll(properties);
+		setClientInfo(VERSION_PROPERTY, (String) remainder.remove(VERSION_PROPERTY));
+		connection.setClientInfo(remainder);
 	}
 
 	@Override
 	public String getClientInfo(String name) throws SQLException {
+		if (VERSION_PROPERTY.equals(name)) {
+			return getVersion();
+		}
 		return connection.getClientInfo(name);
 	}
 
 	@Override
 	public Properties getClientInfo() throws SQLException {
-		return connection.getClientInfo();
+		Properties properties = connection.getClientInfo();
+		String version = getVersion();
+		if (version != null) {
+			properties.setProperty(VERSION_PROPERTY, version);
+		}
+		return properties;
 	}
 
 	@Override
@@ -300,6 +582,7 @@ public class ProxyConnection implements Connection {
 
 	@Override
 	public void setSchema(String schema) throws SQLException {
+		sessionModified = true;
 		connection.setSchema(schema);
 	}
 
@@ -323,14 +606,21 @@ public class ProxyConnection implements Connection {
 		return connection.getNetworkTimeout();
 	}
 
+	/**
+	 * Note that queries which are executed directly on the unwrapped connection are not rewritten. Use
+	 * getCopyManager() rather than the CopyManager of the unwrapped PGConnection to use the COPY protocol.
+	 */
 	@Override
 	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
 		return connection.unwrap(iface);
 	}
 
 	@Override
 	public boolean isWrapperFor(Class<?> iface) throws SQLException {
-		return connection.isWrapperFor(iface);
+		return iface.isInstance(this) || connection.isWrapperFor(iface);
 	}
 
 }
@@ -0,0 +1,64 @@
+package io.quantumdb.driver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.SQLException;
+
+import org.postgresql.copy.CopyManager;
+
+/**
+ * Loads data into, and unloads data from the database using the COPY protocol of PostgreSQL, which is considerably
+ * faster than inserting rows one statement at a time. The table names in "COPY ... FROM STDIN" and "COPY ... TO STDOUT"
+ * statements are rewritten for the version of the ProxyConnection which created this ProxyCopyManager, after which
+ * the data is streamed through the CopyManager of the PostgreSQL driver.
+ */
+public class ProxyCopyManager {
+
+	private final CopyManager copyManager;
+	private final Transformer transformer;
+
+	ProxyCopyManager(CopyManager copyManager, Transformer transformer) {
+		this.copyManager = copyManager;
+		this.transformer = transformer;
+	}
+
+	/**
+	 * Executes a "COPY ... FROM STDIN" statement, and streams the data from the specified InputStream.
+	 *
+	 * @return The number of rows which were loaded.
+	 */
+	public long copyIn(String sql, InputStream from) throws SQLException, IOException {
+		return copyManager.copyIn(transformer.rewriteQuery(sql), from);
+	}
+
+	/**
+	 * Executes a "COPY ... FROM STDIN" statement, and streams the data from the specified Reader.
+	 *
+	 * @return The number of rows which were loaded.
+	 */
+	public long copyIn(String sql, Reader from) throws SQLException, IOException {
+		return copyManager.copyIn(transformer.rewriteQuery(sql), from);
+	}
+
+	/**
+	 * Executes a "COPY ... TO STDOUT" statement, and streams the data to the specified OutputStream.
+	 *
+	 * @return The number of rows which were unloaded.
+	 */
+	public long copyOut(String sql, OutputStream to) throws SQLException, IOException {
+		return copyManager.copyOut(transformer.rewriteQuery(sql), to);
+	}
+
+	/**
+	 * Executes a "COPY ... TO STDOUT" statement, and streams the data to the specified Writer.
+	 *
+	 * @return The number of rows which were unloaded.
+	 */
+	public long copyOut(String sql, Writer to) throws SQLException, IOException {
+		return copyManager.copyOut(transformer.rewriteQuery(sql), to);
+	}
+
+}
@@ -5,6 +5,7 @@ import java.io.Reader;
 import java.math.BigDecimal;
 import java.net.URL;
 import java.sql.Array;
+import java.sql.BatchUpdateException;
 import java.sql.Blob;
 import java.sql.Clob;
 import java.sql.Connection;
@@ -21,433 +22,656 @@ import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Calendar;
-
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A handle to a PreparedStatement of the underlying connection. When the handle is closed, the PreparedStatement is
+ * offered to the StatementCache of the ProxyConnection, so that it can be reused when the same statement is prepared
+ * again. The handle itself can no longer be used after it has been closed.
+ *
+ * When the statement is a single row INSERT statement (see BatchInsert), the parameters of batched rows are retained
+ * by the handle, and the batch is executed using multi-row INSERT statements.
+ */
 public class ProxyPreparedStatement implements PreparedStatement {
 
+	/**
+	 * Sets the value of a parameter, so that it can be set again on another statement.
+	 */
+	private interface Parameter {
+		void apply(PreparedStatement statement, int index) throws SQLException;
+	}
+
 	private final ProxyConnection connection;
 	private final PreparedStatement statement;
 	private final Transformer transformer;
-
-	ProxyPreparedStatement(ProxyConnection connection, PreparedStatement statement, Transformer transformer) {
+	private final String query;
+	private final StatementCache.Key key;
+	private final VersionMapping mapping;
+
+	private final BatchInsert batchInsert;
+	private final Parameter[] parameters;
+	private final List<Parameter[]> batch;
+
+	private boolean closed;
+	private boolean modified;
+
+	/**
+	 * @param query The original SQL statement, or NULL if it is not known.
+	 */
+	ProxyPreparedStatement(ProxyConnection connection, PreparedStatement statement, Transformer transformer,
+			String query) {
+		this(connection, statement, transformer, query, null, null);
+	}
+
+	/**
+	 * @param query The original SQL statement, or NULL if it is not known.
+	 * @param key The key under which the PreparedStatement can be cached, or NULL if it cannot be cached.
+	 * @param mapping The mapping with which the SQL statement was rewritten.
+	 */
+	ProxyPreparedStatement(ProxyConnection connection, PreparedStatement statement, Transformer transformer,
+			String query, StatementCache.Key key, VersionMapping mapping) {
 		this.connection = connection;
 		this.statement = statement;
 		this.transformer = transformer;
+		this.query = query;
+		this.key = key;
+		this.mapping = mapping;
+
+		if (key != null && key.getAutoGeneratedKeys() != RETURN_GENERATED_KEYS) {
+			this.batchInsert = BatchInsert.parse(key.getSql());
+		}
+		else {
+			this.batchInsert = null;
+		}
+		this.parameters = batchInsert != null ? new Parameter[batchInsert.getParameterCount()] : null;
+		this.batch = batchInsert != null ? Lists.newArrayList() : null;
+	}
+
+	/**
+	 * @return The rewritten SQL statement, or NULL if it is not known.
+	 */
+	private String getSql() {
+		return key != null ? key.getSql() : null;
+	}
+
+	private PreparedStatement getStatement() throws SQLException {
+		if (closed) {
+			throw new SQLException("This statement has been closed.");
+		}
+		return statement;
 	}
 
 	@Override
 	public ResultSet executeQuery() throws SQLException {
-		return statement.executeQuery();
+		long start = System.nanoTime();
+		try {
+			return getStatement().executeQuery();
+		}
+		finally {
+			transformer.recordExecution(query, getSql(), start);
+		}
 	}
 
 	@Override
 	public int executeUpdate() throws SQLException {
-		return statement.executeUpdate();
+		long start = System.nanoTime();
+		try {
+			return getStatement().executeUpdate();
+		}
+		finally {
+			transformer.recordExecution(query, getSql(), start);
+		}
 	}
 
 	@Override
 	public void setNull(int parameterIndex, int sqlType) throws SQLException {
-		statement.setNull(parameterIndex, sqlType);
+		set(parameterIndex, (target, index) -> target.setNull(index, sqlType));
 	}
 
 	@Override
 	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
-		statement.setBoolean(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setBoolean(index, x));
 	}
 
 	@Override
 	public void setByte(int parameterIndex, byte x) throws SQLException {
-		statement.setByte(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setByte(index, x));
 	}
 
 	@Override
 	public void setShort(int parameterIndex, short x) throws SQLException {
-		statement.setShort(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setShort(index, x));
 	}
 
 	@Override
 	public void setInt(int parameterIndex, int x) throws SQLException {
-		statement.setInt(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setInt(index, x));
 	}
 
 	@Override
 	public void setLong(int parameterIndex, long x) throws SQLException {
-		statement.setLong(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setLong(index, x));
 	}
 
 	@Override
 	public void setFloat(int parameterIndex, float x) throws SQLException {
-		statement.setFloat(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setFloat(index, x));
 	}
 
 	@Override
 	public void setDouble(int parameterIndex, double x) throws SQLException {
-		statement.setDouble(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setDouble(index, x));
 	}
 
 	@Override
 	public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
-		statement.setBigDecimal(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setBigDecimal(index, x));
 	}
 
 	@Override
 	public void setString(int parameterIndex, String x) throws SQLException {
-		statement.setString(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setString(index, x));
 	}
 
 	@Override
 	public void setBytes(int parameterIndex, byte[] x) throws SQLException {
-		statement.setBytes(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setBytes(index, x));
 	}
 
 	@Override
 	public void setDate(int parameterIndex, Date x) throws SQLException {
-		statement.setDate(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setDate(index, x));
 	}
 
 	@Override
 	public void setTime(int parameterIndex, Time x) throws SQLException {
-		statement.setTime(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setTime(index, x));
 	}
 
 	@Override
 	public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
-		statement.setTimestamp(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setTimestamp(index, x));
 	}
 
 	@Override
 	public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
-		statement.setAsciiStream(parameterIndex, x, length);
+		set(parameterIndex, (target, index) -> target.setAsciiStream(index, x, length));
 	}
 
 	@Override
 	@Deprecated
 	public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
-		statement.setUnicodeStream(parameterIndex, x, length);
+		set(parameterIndex, (target, index) -> target.setUnicodeStream(index, x, length));
 	}
 
 	@Override
 	public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
-		statement.setBinaryStream(parameterIndex, x, length);
+		set(parameterIndex, (target, index) -> target.setBinaryStream(index, x, length));
 	}
 
 	@Override
 	public void clearParameters() throws SQLException {
-		statement.clearParameters();
+		getStatement().clearParameters();
+		if (parameters != null) {
+			Arrays.fill(parameters, null);
+		}
 	}
 
 	@Override
 	public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
-		statement.setObject(parameterIndex, x, targetSqlType);
+		set(parameterIndex, (target, index) -> target.setObject(index, x, targetSqlType));
 	}
 
 	@Override
 	public void setObject(int parameterIndex, Object x) throws SQLException {
-		statement.setObject(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setObject(index, x));
 	}
 
 	@Override
 	public boolean execute() throws SQLException {
-		return statement.execute();
+		long start = System.nanoTime();
+		try {
+			return getStatement().execute();
+		}
+		finally {
+			transformer.recordExecution(query, getSql(), start);
+		}
 	}
 
 	@Override
 	public void addBatch() throws SQLException {
-		statement.addBatch();
+		if (batchInsert == null) {
+			getStatement().addBatch();
+			return;
+		}
+
+		getStatement();
+		batch.add(parameters.clone());
 	}
 
 	@Override
 	public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
-		statement.setCharacterStream(parameterIndex, reader, length);
+		set(parameterIndex, (target, index) -> target.setCharacterStream(index, reader, length));
 	}
 
 	@Override
 	public void setRef(int parameterIndex, Ref x) throws SQLException {
-		statement.setRef(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setRef(index, x));
 	}
 
 	@Override
 	public void setBlob(int parameterIndex, Blob x) throws SQLException {
-		statement.setBlob(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setBlob(index, x));
 	}
 
 	@Override
 	public void setClob(int parameterIndex, Clob x) throws SQLException {
-		statement.setClob(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setClob(index, x));
 	}
 
 	@Override
 	public void setArray(int parameterIndex, Array x) throws SQLException {
-		statement.setArray(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setArray(index, x));
 	}
 
 	@Override
 	public ResultSetMetaData getMetaData() throws SQLException {
-		return statement.getMetaData();
+		return getStatement().getMetaData();
 	}
 
 	@Override
 	public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
-		statement.setDate(parameterIndex, x, cal);
+		set(parameterIndex, (target, index) -> target.setDate(index, x, cal));
 	}
 
 	@Override
 	public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
-		statement.setTime(parameterIndex, x, cal);
+		set(parameterIndex, (target, index) -> target.setTime(index, x, cal));
 	}
 
 	@Override
 	public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
-		statement.setTimestamp(parameterIndex, x, cal);
+		set(parameterIndex, (target, index) -> target.setTimestamp(index, x, cal));
 	}
 
 	@Override
 	public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
-		statement.setNull(parameterIndex, sqlType, typeName);
+		set(parameterIndex, (target, index) -> target.setNull(index, sqlType, typeName));
 	}
 
 	@Override
 	public void setURL(int parameterIndex, URL x) throws SQLException {
-		statement.setURL(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setURL(index, x));
 	}
 
 	@Override
 	public ParameterMetaData getParameterMetaData() throws SQLException {
-		return statement.getParameterMetaData();
+		return getStatement().getParameterMetaData();
 	}
 
 	@Override
 	public void setRowId(int parameterIndex, RowId x) throws SQLException {
-		statement.setRowId(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setRowId(index, x));
 	}
 
 	@Override
 	public void setNString(int parameterIndex, String value) throws SQLException {
-		statement.setNString(parameterIndex, value);
+		set(parameterIndex, (target, index) -> target.setNString(index, value));
 	}
 
 	@Override
 	public void setNCharacterStream(int parameterIndex, Reader value, long length) throws SQLException {
-		statement.setNCharacterStream(parameterIndex, value, length);
+		set(parameterIndex, (target, index) -> target.setNCharacterStream(index, value, length));
 	}
 
 	@Override
 	public void setNClob(int parameterIndex, NClob value) throws SQLException {
-		statement.setNClob(parameterIndex, value);
+		set(parameterIndex, (target, index) -> target.setNClob(index, value));
 	}
 
 	@Override
 	public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
-		statement.setClob(parameterIndex, reader, length);
+		set(parameterIndex, (target, index) -> target.setClob(index, reader, length));
 	}
 
 	@Override
 	public void setBlob(int parameterIndex, InputStream inputStream, long length) throws SQLException {
-		statement.setBlob(parameterIndex, inputStream, length);
+		set(parameterIndex, (target, index) -> target.setBlob(index, inputStream, length));
 	}
 
 	@Override
 	public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
-		statement.setNClob(parameterIndex, reader, length);
+		set(parameterIndex, (target, index) -> target.setNClob(index, reader, length));
 	}
 
 	@Override
 	public void setSQLXML(int parameterIndex, SQLXML xmlObject) throws SQLException {
-		statement.setSQLXML(parameterIndex, xmlObject);
+		set(parameterIndex, (target, index) -> target.setSQLXML(index, xmlObject));
 	}
 
 	@Override
 	public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
-		statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+		set(parameterIndex, (target, index) -> target.setObject(index, x, targetSqlType, scaleOrLength));
 	}
 
 	@Override
 	public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
-		statement.setAsciiStream(parameterIndex, x, length);
+		set(parameterIndex, (target, index) -> target.setAsciiStream(index, x, length));
 	}
 
 	@Override
 	public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
-		statement.setBinaryStream(parameterIndex, x, length);
+		set(parameterIndex, (target, index) -> target.setBinaryStream(index, x, length));
 	}
 
 	@Override
 	public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
-		statement.setCharacterStream(parameterIndex, reader, length);
+		set(parameterIndex, (target, index) -> target.setCharacterStream(index, reader, length));
 	}
 
 	@Override
 	public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
-		statement.setAsciiStream(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setAsciiStream(index, x));
 	}
 
 	@Override
 	public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
-		statement.setBinaryStream(parameterIndex, x);
+		set(parameterIndex, (target, index) -> target.setBinaryStream(index, x));
 	}
 
 	@Override
 	public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
-		statement.setCharacterStream(parameterIndex, reader);
+		set(parameterIndex, (target, index) -> target.setCharacterStream(index, reader));
 	}
 
 	@Override
 	public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
-		statement.setNCharacterStream(parameterIndex, value);
+		set(parameterIndex, (target, index) -> target.setNCharacterStream(index, value));
 	}
 
 	@Override
 	public void setClob(int parameterIndex, Reader reader) throws SQLException {
-		statement.setClob(parameterIndex, reader);
+		set(parameterIndex, (target, index) -> target.setClob(index, reader));
 	}
 
 	@Override
 	public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
-		statement.setBlob(parameterIndex, inputStream);
+		set(parameterIndex, (target, index) -> target.setBlob(index, inputStream));
 	}
 
 	@Override
 	public void setNClob(int parameterIndex, Reader reader) throws SQLException {
-		statement.setNClob(parameterIndex, reader);
+		set(parameterIndex, (target, index) -> target.setNClob(index, reader));
 	}
 
 	@Override
 	public ResultSet executeQuery(String sql) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.executeQuery(transformedSql);
+		long start = System.nanoTime();
+		try {
+			return getStatement().executeQuery(transformedSql);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public int executeUpdate(String sql) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.executeUpdate(transformedSql);
+		long start = System.nanoTime();
+		try {
+			return getStatement().executeUpdate(transformedSql);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public void close() throws SQLException {
-		statement.close();
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+		connection.untrack(this);
+		boolean recycled = false;
+		try {
+			recycled = key != null && statement.isPoolable() && connection.recycle(key, mapping, statement, modified);
+		}
+		finally {
+			if (!recycled) {
+				statement.close();
+			}
+		}
 	}
 
 	@Override
 	public int getMaxFieldSize() throws SQLException {
-		return statement.getMaxFieldSize();
+		return getStatement().getMaxFieldSize();
 	}
 
 	@Override
 	public void setMaxFieldSize(int max) throws SQLException {
-		statement.setMaxFieldSize(max);
+		modified = true;
+		getStatement().setMaxFieldSize(max);
 	}
 
 	@Override
 	public int getMaxRows() throws SQLException {
-		return statement.getMaxRows();
+		return getStatement().getMaxRows();
 	}
 
 	@Override
 	public void setMaxRows(int max) throws SQLException {
-		statement.setMaxRows(max);
+		modified = true;
+		getStatement().setMaxRows(max);
 	}
 
 	@Override
 	public void setEscapeProcessing(boolean enable) throws SQLException {
-		statement.setEscapeProcessing(enable);
+		modified = true;
+		getStatement().setEscapeProcessing(enable);
 	}
 
 	@Override
 	public int getQueryTimeout() throws SQLException {
-		return statement.getQueryTimeout();
+		return getStatement().getQueryTimeout();
 	}
 
 	@Override
 	public void setQueryTimeout(int seconds) throws SQLException {
-		statement.setQueryTimeout(seconds);
+		modified = true;
+		getStatement().setQueryTimeout(seconds);
 	}
 
 	@Override
 	public void cancel() throws SQLException {
-		statement.cancel();
+		getStatement().cancel();
 	}
 
 	@Override
 	public SQLWarning getWarnings() throws SQLException {
-		return statement.getWarnings();
+		return getStatement().getWarnings();
 	}
 
 	@Override
 	public void clearWarnings() throws SQLException {
-		statement.clearWarnings();
+		getStatement().clearWarnings();
 	}
 
 	@Override
 	public void setCursorName(String name) throws SQLException {
-		statement.setCursorName(name);
+		getStatement().setCursorName(name);
 	}
 
 	@Override
 	public boolean execute(String sql) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.execute(transformedSql);
+		long start = System.nanoTime();
+		try {
+			return getStatement().execute(transformedSql);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public ResultSet getResultSet() throws SQLException {
-		return statement.getResultSet();
+		return getStatement().getResultSet();
 	}
 
 	@Override
 	public int getUpdateCount() throws SQLException {
-		return statement.getUpdateCount();
+		return getStatement().getUpdateCount();
 	}
 
 	@Override
 	public boolean getMoreResults() throws SQLException {
-		return statement.getMoreResults();
+		return getStatement().getMoreResults();
 	}
 
 	@Override
 	public void setFetchDirection(int direction) throws SQLException {
-		statement.setFetchDirection(direction);
+		modified = true;
+		getStatement().setFetchDirection(direction);
 	}
 
 	@Override
 	public int getFetchDirection() throws SQLException {
-		return statement.getFetchDirection();
+		return getStatement().getFetchDirection();
 	}
 
 	@Override
 	public void setFetchSize(int rows) throws SQLException {
-		statement.setFetchSize(rows);
+		modified = true;
+		getStatement().setFetchSize(rows);
 	}
 
 	@Override
 	public int getFetchSize() throws SQLException {
-		return statement.getFetchSize();
+		return getStatement().getFetchSize();
 	}
 
 	@Override
 	public int getResultSetConcurrency() throws SQLException {
-		return statement.getResultSetConcurrency();
+		return getStatement().getResultSetConcurrency();
 	}
 
 	@Override
 	public int getResultSetType() throws SQLException {
-		return statement.getResultSetType();
+		return getStatement().getResultSetType();
 	}
 
 	@Override
 	public void addBatch(String sql) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		statement.addBatch(transformedSql);
+		getStatement().addBatch(transformedSql);
 	}
 
 	@Override
 	public void clearBatch() throws SQLException {
-		statement.clearBatch();
+		getStatement().clearBatch();
+		if (batch != null) {
+			batch.clear();
+		}
 	}
 
 	@Override
 	public int[] executeBatch() throws SQLException {
-		return statement.executeBatch();
+		long start = System.nanoTime();
+		try {
+			if (batchInsert == null) {
+				return getStatement().executeBatch();
+			}
+
+			List<Parameter[]> rows = Lists.newArrayList(batch);
+			batch.clear();
+			return executeBatchInsert(getStatement(), rows);
+		}
+		finally {
+			transformer.recordExecution(query, getSql(), start);
+		}
+	}
+
+	/**
+	 * Inserts the rows of a batch using as few multi-row INSERT statements as possible. When the connection is in
+	 * auto-commit mode, all rows are inserted in a single transaction, just like a regular batch.
+	 */
+	private int[] executeBatchInsert(PreparedStatement statement, List<Parameter[]> rows) throws SQLException {
+		int[] counts = new int[rows.size()];
+		if (rows.isEmpty()) {
+			return counts;
+		}
+
+		boolean singleTransaction = rows.size() > batchInsert.getMaxRows() && connection.getAutoCommit();
+		if (singleTransaction) {
+			connection.setAutoCommit(false);
+		}
+
+		int offset = 0;
+		try {
+			while (offset < rows.size()) {
+				int size = Math.min(batchInsert.getMaxRows(), rows.size() - offset);
+				int count;
+				if (size == 1) {
+					bind(statement, rows.get(offset), 0);
+					count = statement.executeUpdate();
+				}
+				else {
+					String sql = batchInsert.toSql(size);
+					try (ProxyPreparedStatement multiRow = connection.prepareTransformedStatement(sql, mapping)) {
+						// Use the underlying statement, as the whole batch is recorded as a single execution.
+						PreparedStatement target = multiRow.getStatement();
+						for (int row = 0; row < size; row++) {
+							bind(target, rows.get(offset + row), row * batchInsert.getParameterCount());
+						}
+						count = target.executeUpdate();
+					}
+				}
+
+				Arrays.fill(counts, offset, offset + size, count == size ? 1 : SUCCESS_NO_INFO);
+				offset += size;
+			}
+			if (singleTransaction) {
+				connection.commit();
+			}
+		}
+		catch (SQLException e) {
+			if (singleTransaction) {
+				connection.rollback();
+			}
+			throw new BatchUpdateException(e.getMessage(), e.getSQLState(), e.getErrorCode(),
+					Arrays.copyOf(counts, offset), e);
+		}
+		finally {
+			if (singleTransaction) {
+				connection.setAutoCommit(true);
+			}
+		}
+		return counts;
+	}
+
+	private void bind(PreparedStatement target, Parameter[] row, int offset) throws SQLException {
+		for (int i = 0; i < row.length; i++) {
+			if (row[i] == null) {
+				throw new SQLException("No value specified for parameter " + (i + 1) + ".");
+			}
+			row[i].apply(target, offset + i + 1);
+		}
+	}
+
+	private void set(int parameterIndex, Parameter parameter) throws SQLException {
+		parameter.apply(getStatement(), parameterIndex);
+		if (parameters != null && parameterIndex > 0 && parameterIndex <= parameters.length) {
+			parameters[parameterIndex - 1] = parameter;
+		}
 	}
 
 	@Override
@@ -457,87 +681,123 @@ public class ProxyPreparedStatement implements PreparedStatement {
 
 	@Override
 	public boolean getMoreResults(int current) throws SQLException {
-		return statement.getMoreResults(current);
+		return getStatement().getMoreResults(current);
 	}
 
 	@Override
 	public ResultSet getGeneratedKeys() throws SQLException {
-		return statement.getGeneratedKeys();
+		return getStatement().getGeneratedKeys();
 	}
 
 	@Override
 	public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.executeUpdate(transformedSql, autoGeneratedKeys);
+		long start = System.nanoTime();
+		try {
+			return getStatement().executeUpdate(transformedSql, autoGeneratedKeys);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.executeUpdate(transformedSql, columnIndexes);
+		long start = System.nanoTime();
+		try {
+			return getStatement().executeUpdate(transformedSql, columnIndexes);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public int executeUpdate(String sql, String[] columnNames) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.executeUpdate(transformedSql, columnNames);
+		long start = System.nanoTime();
+		try {
+			return getStatement().executeUpdate(transformedSql, columnNames);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.execute(transformedSql, autoGeneratedKeys);
+		long start = System.nanoTime();
+		try {
+			return getStatement().execute(transformedSql, autoGeneratedKeys);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public boolean execute(String sql, int[] columnIndexes) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.execute(transformedSql, columnIndexes);
+		long start = System.nanoTime();
+		try {
+			return getStatement().execute(transformedSql, columnIndexes);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public boolean execute(String sql, String[] columnNames) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.execute(transformedSql, columnNames);
+		long start = System.nanoTime();
+		try {
+			return getStatement().execute(transformedSql, columnNames);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public int getResultSetHoldability() throws SQLException {
-		return statement.getResultSetHoldability();
+		return getStatement().getResultSetHoldability();
 	}
 
 	@Override
 	public boolean isClosed() throws SQLException {
-		return statement.isClosed();
+		return closed || statement.isClosed();
 	}
 
 	@Override
 	public void setPoolable(boolean poolable) throws SQLException {
-		statement.setPoolable(poolable);
+		getStatement().setPoolable(poolable);
 	}
 
 	@Override
 	public boolean isPoolable() throws SQLException {
-		return statement.isPoolable();
+		return getStatement().isPoolable();
 	}
 
 	@Override
 	public void closeOnCompletion() throws SQLException {
-		statement.closeOnCompletion();
+		getStatement().closeOnCompletion();
 	}
 
 	@Override
 	public boolean isCloseOnCompletion() throws SQLException {
-		return statement.isCloseOnCompletion();
+		return getStatement().isCloseOnCompletion();
 	}
 
 	@Override
 	public <T> T unwrap(Class<T> iface) throws SQLException {
-		return statement.unwrap(iface);
+		return getStatement().unwrap(iface);
 	}
 
 	@Override
 	public boolean isWrapperFor(Class<?> iface) throws SQLException {
-		return statement.isWrapperFor(iface);
+		return getStatement().isWrapperFor(iface);
 	}
 }
@@ -5,33 +5,51 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
+import java.util.List;
+
+import com.google.common.collect.Lists;
 
 public class ProxyStatement implements Statement {
 
 	private final ProxyConnection connection;
 	private final Statement statement;
 	private final Transformer transformer;
+	private final List<String> batch;
 
 	ProxyStatement(ProxyConnection connection, Statement statement, Transformer transformer) {
 		this.connection = connection;
 		this.statement = statement;
 		this.transformer = transformer;
+		this.batch = Lists.newArrayList();
 	}
 
 	@Override
 	public ResultSet executeQuery(String sql) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.executeQuery(transformedSql);
+		long start = System.nanoTime();
+		try {
+			return statement.executeQuery(transformedSql);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public int executeUpdate(String sql) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.executeUpdate(transformedSql);
+		long start = System.nanoTime();
+		try {
+			return statement.executeUpdate(transformedSql);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public void close() throws SQLException {
+		connection.untrack(this);
 		statement.close();
 	}
 
@@ -93,7 +111,13 @@ public class ProxyStatement implements Statement {
 	@Override
 	public boolean execute(String sql) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.execute(transformedSql);
+		long start = System.nanoTime();
+		try {
+			return statement.execute(transformedSql);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
@@ -145,16 +169,26 @@ public class ProxyStatement implements Statement {
 	public void addBatch(String sql) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
 		statement.addBatch(transformedSql);
+		batch.add(sql);
 	}
 
 	@Override
 	public void clearBatch() throws SQLException {
 		statement.clearBatch();
+		batch.clear();
 	}
 
 	@Override
 	public int[] executeBatch() throws SQLException {
-		return statement.executeBatch();
+		long start = System.nanoTime();
+		try {
+			return statement.executeBatch();
+		}
+		finally {
+			batch.forEach(transformer::recordTables);
+			batch.clear();
+			transformer.recordExecution(null, null, start);
+		}
 	}
 
 	@Override
@@ -175,37 +209,73 @@ public class ProxyStatement implements Statement {
 	@Override
 	public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.executeUpdate(transformedSql, autoGeneratedKeys);
+		long start = System.nanoTime();
+		try {
+			return statement.executeUpdate(transformedSql, autoGeneratedKeys);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.executeUpdate(transformedSql, columnIndexes);
+		long start = System.nanoTime();
+		try {
+			return statement.executeUpdate(transformedSql, columnIndexes);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public int executeUpdate(String sql, String[] columnNames) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.executeUpdate(transformedSql, columnNames);
+		long start = System.nanoTime();
+		try {
+			return statement.executeUpdate(transformedSql, columnNames);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.execute(transformedSql, autoGeneratedKeys);
+		long start = System.nanoTime();
+		try {
+			return statement.execute(transformedSql, autoGeneratedKeys);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public boolean execute(String sql, int[] columnIndexes) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.execute(transformedSql, columnIndexes);
+		long start = System.nanoTime();
+		try {
+			return statement.execute(transformedSql, columnIndexes);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
 	public boolean execute(String sql, String[] columnNames) throws SQLException {
 		String transformedSql = transformer.rewriteQuery(sql);
-		return statement.execute(transformedSql, columnNames);
+		long start = System.nanoTime();
+		try {
+			return statement.execute(transformedSql, columnNames);
+		}
+		finally {
+			transformer.recordExecution(sql, transformedSql, start);
+		}
 	}
 
 	@Override
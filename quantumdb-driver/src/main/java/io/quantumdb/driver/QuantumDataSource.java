@@ -0,0 +1,371 @@
+package io.quantumdb.driver;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A DataSource which pools physical connections to the database, and hands out ProxyConnections which rewrite their
+ * queries for a particular version. The version is chosen whenever a connection is requested, rather than when the
+ * pool is created, so that a single pool can serve the versions on both sides of a deployment. Idle physical
+ * connections are not tied to any version, and are reused for whichever version is requested next.
+ *
+ * The DataSource is configured through its setters, using the same URL as the Driver ("jdbc:quantumdb:postgresql://
+ * host:port/database"). The "version" parameter of the URL, if any, is used as the default version, which is used by
+ * getConnection(). Physical connections are identified in pg_stat_activity by an application name which ends with the
+ * version they are checked out for. When a physical connection is returned to the pool, its application name is reset
+ * to one without a version, so that idle connections don't count as clients of the version they were last used for,
+ * which would prevent that version from being dropped. This costs an extra round trip whenever a connection of a
+ * version is returned, but unlike evicting idle connections after a while, it doesn't hold up dropping a version.
+ *
+ * The version of a connection may also be switched while it is checked out (see ProxyConnection.setVersion()), for
+ * instance to select the version per transaction rather than per checkout.
+ *
+ * When a ProxyConnection is closed, its open statements are closed, an open transaction is rolled back, auto-commit is
+ * enabled again, and the read-only mode, transaction isolation, catalog and schema are restored to what they were
+ * when the physical connection was opened (if the application changed any of them through the ProxyConnection). The
+ * physical connection is then returned to the pool, along with its cached PreparedStatements. Physical connections
+ * which were idle for a while are validated before they are handed out again.
+ */
+@Slf4j
+public class QuantumDataSource implements DataSource, AutoCloseable {
+
+	private static final int DEFAULT_MAX_POOL_SIZE = 10;
+	private static final long DEFAULT_CONNECTION_TIMEOUT = 30_000;
+	private static final long VALIDATION_INTERVAL = 5_000;
+	private static final int VALIDATION_TIMEOUT = 5;
+
+	/**
+	 * Opens new physical connections to the database.
+	 */
+	interface ConnectionFactory {
+		Connection connect() throws SQLException;
+	}
+
+	private static class PhysicalConnection {
+		private final Connection connection;
+		private final StatementCache statementCache;
+		private final boolean readOnly;
+		private final int transactionIsolation;
+		private final String catalog;
+		private final String schema;
+		private String applicationName;
+		private long lastUsed;
+
+		private PhysicalConnection(Connection connection) throws SQLException {
+			this.connection = connection;
+			this.statementCache = StatementCache.fromSystemProperties();
+			this.readOnly = connection.isReadOnly();
+			this.transactionIsolation = connection.getTransactionIsolation();
+			this.catalog = connection.getCatalog();
+			this.schema = connection.getSchema();
+			this.lastUsed = System.currentTimeMillis();
+		}
+
+		/**
+		 * Restores the session settings which the connection had when it was opened.
+		 */
+		private void restoreSession() throws SQLException {
+			connection.setReadOnly(readOnly);
+			connection.setTransactionIsolation(transactionIsolation);
+			connection.setCatalog(catalog);
+			connection.setSchema(schema);
+		}
+	}
+
+	@Getter
+	@Setter
+	private String url;
+
+	@Getter
+	@Setter
+	private String user;
+
+	@Setter
+	private String password;
+
+	@Getter
+	@Setter
+	private String applicationName;
+
+	@Getter
+	@Setter
+	private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+
+	/**
+	 * The number of milliseconds to wait for a connection, when all connections of the pool are in use.
+	 */
+	@Getter
+	@Setter
+	private long connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
+
+	private final ConnectionFactory factory;
+	private final MappingRegistry registry;
+	private final RewriteCache rewriteCache;
+	private final DriverMetrics metrics;
+	private final LinkedBlockingDeque<PhysicalConnection> idle;
+
+	private volatile Semaphore permits;
+	private volatile boolean closed;
+	private PrintWriter logWriter;
+
+	public QuantumDataSource() {
+		this.factory = this::connectToDatabase;
+		this.registry = Driver.getMappingRegistry();
+		this.rewriteCache = Driver.getRewriteCache();
+		this.metrics = Driver.getMetrics();
+		this.idle = new LinkedBlockingDeque<>();
+	}
+
+	QuantumDataSource(ConnectionFactory factory, MappingRegistry registry, RewriteCache rewriteCache,
+			DriverMetrics metrics) {
+		this.factory = factory;
+		this.registry = registry;
+		this.rewriteCache = rewriteCache;
+		this.metrics = metrics;
+		this.idle = new LinkedBlockingDeque<>();
+	}
+
+	/**
+	 * @return A connection which rewrites its queries for the version specified in the URL of this DataSource, or
+	 * which does not rewrite its queries at all if the URL does not specify a version.
+	 */
+	@Override
+	public Connection getConnection() throws SQLException {
+		return getConnectionForVersion(url == null ? null : Driver.parseVersion(url));
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Connections of a pool cannot use different credentials.");
+	}
+
+	/**
+	 * @param version The version for which the returned connection rewrites its queries, or NULL to not rewrite
+	 *                queries at all.
+	 * @return A connection from the pool. The connection is returned to the pool when it is closed.
+	 */
+	public Connection getConnectionForVersion(String version) throws SQLException {
+		Semaphore permits = getPermits();
+		try {
+			if (!permits.tryAcquire(connectionTimeout, TimeUnit.MILLISECONDS)) {
+				throw new SQLTimeoutException("Timed out after " + connectionTimeout + " ms while waiting for one of "
+						+ maxPoolSize + " connection(s) to become available.");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection to become available.", e);
+		}
+
+		PhysicalConnection physical = null;
+		try {
+			physical = checkOut();
+			String name = Driver.getApplicationName(applicationName, version);
+			if (!name.equals(physical.applicationName)) {
+				physical.connection.setClientInfo("ApplicationName", name);
+				physical.applicationName = name;
+			}
+
+			String database = MappingRegistry.getDatabase(url);
+			AtomicReference<VersionMapping> mapping = registry.get(physical.connection, database, version);
+			Transformer transformer = new Transformer(mapping, rewriteCache, metrics);
+			PhysicalConnection checkedOut = physical;
+			return new ProxyConnection(physical.connection, transformer, registry, database,
+					physical.statementCache, applicationName, proxy -> {
+						checkedOut.applicationName = Driver.getApplicationName(applicationName, proxy.getVersion());
+						checkIn(checkedOut, proxy.isSessionModified());
+					});
+		}
+		catch (SQLException | RuntimeException e) {
+			if (physical != null) {
+				discard(physical);
+			}
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return The number of physical connections which are currently not in use.
+	 */
+	public int getIdleConnections() {
+		return idle.size();
+	}
+
+	/**
+	 * Closes all idle physical connections, and any physical connection which is returned to the pool after this.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		PhysicalConnection physical;
+		while ((physical = idle.pollFirst()) != null) {
+			discard(physical);
+		}
+	}
+
+	private Semaphore getPermits() {
+		Semaphore permits = this.permits;
+		if (permits == null) {
+			synchronized (this) {
+				if (this.permits == null) {
+					this.permits = new Semaphore(maxPoolSize, true);
+				}
+				permits = this.permits;
+			}
+		}
+		return permits;
+	}
+
+	private PhysicalConnection checkOut() throws SQLException {
+		if (closed) {
+			throw new SQLException("This DataSource has been closed.");
+		}
+
+		// Prefer the most recently used connections, so that surplus connections remain idle for long.
+		PhysicalConnection physical;
+		while ((physical = idle.pollFirst()) != null) {
+			long idleTime = System.currentTimeMillis() - physical.lastUsed;
+			if (idleTime < VALIDATION_INTERVAL || physical.connection.isValid(VALIDATION_TIMEOUT)) {
+				return physical;
+			}
+			log.debug("Discarding invalid pooled connection.");
+			discard(physical);
+		}
+
+		Connection connection = factory.connect();
+		try {
+			return new PhysicalConnection(connection);
+		}
+		catch (SQLException | RuntimeException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	private void checkIn(PhysicalConnection physical, boolean sessionModified) {
+		try {
+			Connection connection = physical.connection;
+			if (closed || connection.isClosed()) {
+				discard(physical);
+				return;
+			}
+
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			if (sessionModified) {
+				physical.restoreSession();
+			}
+
+			String name = Driver.getApplicationName(applicationName, null);
+			if (!name.equals(physical.applicationName)) {
+				connection.setClientInfo("ApplicationName", name);
+				physical.applicationName = name;
+			}
+			connection.clearWarnings();
+			physical.lastUsed = System.currentTimeMillis();
+			idle.offerFirst(physical);
+		}
+		catch (SQLException e) {
+			log.warn("Could not return connection to the pool: " + e.getMessage(), e);
+			discard(physical);
+		}
+		finally {
+			permits.release();
+		}
+	}
+
+	private void discard(PhysicalConnection physical) {
+		try {
+			physical.connection.close();
+		}
+		catch (SQLException e) {
+			log.debug("Could not close connection: " + e.getMessage(), e);
+		}
+	}
+
+	private Connection connectToDatabase() throws SQLException {
+		if (url == null || !url.startsWith("jdbc:quantumdb:")) {
+			throw new SQLException("You must specify a 'url' which starts with: jdbc:quantumdb:");
+		}
+
+		try {
+			Class.forName("org.postgresql.Driver");
+		}
+		catch (ClassNotFoundException e) {
+			throw new SQLException("Could not locate delegate driver.", e);
+		}
+
+		String delegateUrl = url.substring(0, 4) + ":" + url.substring(15, url.length());
+		Properties info = new Properties();
+		if (user != null) {
+			info.setProperty("user", user);
+		}
+		if (password != null) {
+			info.setProperty("password", password);
+		}
+
+		java.sql.Driver delegate = DriverManager.getDriver(delegateUrl);
+		if (Driver.parseVersion(url) != null) {
+			Driver.startMappingListener(delegate, delegateUrl, info);
+		}
+		return delegate.connect(delegateUrl, info);
+	}
+
+	@Override
+	public synchronized PrintWriter getLogWriter() throws SQLException {
+		return logWriter;
+	}
+
+	@Override
+	public synchronized void setLogWriter(PrintWriter out) throws SQLException {
+		this.logWriter = out;
+	}
+
+	@Override
+	public void setLoginTimeout(int seconds) throws SQLException {
+		this.connectionTimeout = TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	@Override
+	public int getLoginTimeout() throws SQLException {
+		return (int) TimeUnit.MILLISECONDS.toSeconds(connectionTimeout);
+	}
+
+	@Override
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) {
+			return iface.cast(this);
+		}
+		throw new SQLException("Cannot unwrap to: " + iface.getName());
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+
+}
@@ -0,0 +1,178 @@
+package io.quantumdb.driver;
+
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.quantumdb.query.rewriter.PostgresqlAstQueryRewriter;
+import io.quantumdb.query.rewriter.PostgresqlQueryRewriter;
+import io.quantumdb.query.rewriter.QueryRewriter;
+import io.quantumdb.query.rewriter.RewriteTemplate;
+import io.quantumdb.query.rewriter.TemplateCache;
+import lombok.Data;
+
+/**
+ * Caches rewritten SQL statements by the version they were rewritten for, and the original SQL statement. A single
+ * RewriteCache is shared by all connections opened through the Driver, so that every distinct statement is only
+ * rewritten once per version, regardless of which connection executes it. Since statements are cached by the
+ * VersionMapping they were rewritten with, statements rewritten with an outdated mapping of a version are never
+ * returned to connections which use a newer mapping of that version.
+ *
+ * Statements which are not cached yet are rewritten from their compiled templates, which are cached by their SQL text
+ * alone. A statement therefore only has to be parsed once, even when it is used by connections of several versions.
+ * Statements which cannot refer to any table whose name differs in their version are not cached at all, since they
+ * are used as is. How often this happens is counted as the number of skipped statements.
+ *
+ * The capacity of the cache is expressed in characters (of both the original and the rewritten statement), so that
+ * a few very large statements cannot exhaust the memory of the application. The capacity and the time after which
+ * unused statements expire can be configured through the "quantumdb.rewriteCache.capacity" and
+ * "quantumdb.rewriteCache.expireAfterAccess" (in seconds) system properties. Setting the "quantumdb.rewriter" system
+ * property to "ast" makes the Driver rewrite statements using the (experimental) PostgresqlAstQueryRewriter.
+ */
+public class RewriteCache {
+
+	static final String CAPACITY_PROPERTY = "quantumdb.rewriteCache.capacity";
+	static final String EXPIRY_PROPERTY = "quantumdb.rewriteCache.expireAfterAccess";
+	static final String REWRITER_PROPERTY = "quantumdb.rewriter";
+
+	private static final long DEFAULT_CAPACITY = 16 * 1024 * 1024;
+	private static final long DEFAULT_EXPIRY = 60 * 60;
+
+	static RewriteCache fromSystemProperties() {
+		long capacity = Long.getLong(CAPACITY_PROPERTY, DEFAULT_CAPACITY);
+		long expiry = Long.getLong(EXPIRY_PROPERTY, DEFAULT_EXPIRY);
+		return new RewriteCache(createRewriter(), capacity, expiry);
+	}
+
+	/**
+	 * @return A new QueryRewriter of the kind which is selected by the "quantumdb.rewriter" system property.
+	 */
+	static QueryRewriter createRewriter() {
+		if ("ast".equalsIgnoreCase(System.getProperty(REWRITER_PROPERTY))) {
+			return new PostgresqlAstQueryRewriter();
+		}
+		return new PostgresqlQueryRewriter();
+	}
+
+	@Data
+	private static class Key {
+		private final VersionMapping mapping;
+		private final String query;
+	}
+
+	private final Cache<Key, String> cache;
+	private final TemplateCache templates;
+	private final LongAdder skipped;
+
+	/**
+	 * @param capacity The maximum number of characters of all cached statements combined. A capacity of 0 disables
+	 *                 the cache.
+	 * @param expireAfterAccess The number of seconds after which a statement which was not used is evicted, or 0 to
+	 *                          retain statements until they are evicted to make room for other statements.
+	 */
+	public RewriteCache(long capacity, long expireAfterAccess) {
+		this(new PostgresqlQueryRewriter(), capacity, expireAfterAccess);
+	}
+
+	/**
+	 * @param compiler The QueryRewriter which compiles statements into templates.
+	 * @param capacity The maximum number of characters of all cached statements combined. A capacity of 0 disables
+	 *                 the cache.
+	 * @param expireAfterAccess The number of seconds after which a statement which was not used is evicted, or 0 to
+	 *                          retain statements until they are evicted to make room for other statements.
+	 */
+	public RewriteCache(QueryRewriter compiler, long capacity, long expireAfterAccess) {
+		CacheBuilder<Key, String> builder = CacheBuilder.newBuilder()
+				.maximumWeight(capacity)
+				.weigher((Key key, String value) -> key.getQuery().length() + value.length())
+				.recordStats();
+
+		if (expireAfterAccess > 0) {
+			builder.expireAfterAccess(expireAfterAccess, TimeUnit.SECONDS);
+		}
+
+		this.cache = builder.build();
+		this.templates = new TemplateCache(compiler, capacity);
+		this.skipped = new LongAdder();
+	}
+
+	/**
+	 * @return The compiled template of the specified query.
+	 */
+	RewriteTemplate getTemplate(String query) {
+		return templates.get(query);
+	}
+
+	/**
+	 * Returns the cached rewritten statement for the specified mapping and query, or rewrites it using the specified
+	 * rewriter, and caches the result.
+	 */
+	String get(VersionMapping mapping, String query, Callable<String> rewriter) throws SQLException {
+		try {
+			return cache.get(new Key(mapping, query), rewriter);
+		}
+		catch (ExecutionException | UncheckedExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			}
+			else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new SQLException("Could not rewrite query: " + query, cause);
+		}
+	}
+
+	/**
+	 * Removes all cached statements.
+	 */
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * Records that a statement was used as is, without consulting the cache.
+	 */
+	void recordSkip() {
+		skipped.increment();
+	}
+
+	/**
+	 * @return The number of statements which were used as is, since they could not refer to any table whose name
+	 * differs in their version.
+	 */
+	public long getSkipCount() {
+		return skipped.sum();
+	}
+
+	public long getHitCount() {
+		return cache.stats().hitCount();
+	}
+
+	public long getMissCount() {
+		return cache.stats().missCount();
+	}
+
+	public long getEvictionCount() {
+		return cache.stats().evictionCount();
+	}
+
+	public long getSize() {
+		return cache.size();
+	}
+
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	public CacheStats getTemplateStats() {
+		return templates.getStats();
+	}
+
+}
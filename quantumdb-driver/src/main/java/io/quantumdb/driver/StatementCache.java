@@ -0,0 +1,130 @@
+package io.quantumdb.driver;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Retains the PreparedStatements of a single physical connection after they have been closed by the application, so
+ * that preparing the same (rewritten) SQL statement again reuses them. This way applications which prepare a
+ * statement for every execution still reach the prepareThreshold of the PostgreSQL driver, after which the statement
+ * is prepared on the server, and no longer parsed and planned on every execution.
+ *
+ * Idle statements are evicted in least recently used order when the capacity of the cache is exceeded, and closed
+ * (which also releases them on the server). All idle statements are discarded when the connection switches to a
+ * mapping with different tables, since statements rewritten for the previous mapping are unlikely to be prepared
+ * again. Switching to another mapping with the same tables (for instance after the mapping was reloaded) retains
+ * them, since their rewritten SQL statements are still the same. The capacity
+ * can be configured through the "quantumdb.statementCache.size" system property, where 0 disables the cache.
+ */
+@Slf4j
+class StatementCache {
+
+	static final String SIZE_PROPERTY = "quantumdb.statementCache.size";
+
+	static final int DEFAULT = -1;
+
+	private static final int DEFAULT_SIZE = 256;
+
+	static StatementCache fromSystemProperties() {
+		return new StatementCache(Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+	}
+
+	/**
+	 * Identifies interchangeable statements by their (rewritten) SQL statement, and the options they were prepared
+	 * with. Options which were not specified are DEFAULT.
+	 */
+	@Data
+	static class Key {
+		private final String sql;
+		private final int resultSetType;
+		private final int resultSetConcurrency;
+		private final int resultSetHoldability;
+		private final int autoGeneratedKeys;
+	}
+
+	private final int capacity;
+	private final LinkedHashMap<Key, PreparedStatement> idle;
+	private VersionMapping mapping;
+
+	/**
+	 * @param capacity The maximum number of idle statements to retain.
+	 */
+	StatementCache(int capacity) {
+		this.capacity = capacity;
+		this.idle = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Removes an idle statement from the cache, so that it can be reused.
+	 *
+	 * @param mapping The mapping with which the SQL statement was rewritten.
+	 * @return The idle statement matching the specified key, or NULL if there is no such statement.
+	 */
+	synchronized PreparedStatement take(Key key, VersionMapping mapping) {
+		if (!isCurrent(mapping)) {
+			clear();
+		}
+		this.mapping = mapping;
+		return idle.remove(key);
+	}
+
+	/**
+	 * Adds a statement which is no longer used to the cache, evicting the least recently used idle statement if the
+	 * cache is full.
+	 *
+	 * @param mapping The mapping with which the SQL statement was rewritten.
+	 * @return True if the statement was retained, or false if the statement should be closed instead.
+	 */
+	synchronized boolean offer(Key key, VersionMapping mapping, PreparedStatement statement) {
+		if (capacity <= 0 || !isCurrent(mapping) || idle.containsKey(key)) {
+			return false;
+		}
+
+		idle.put(key, statement);
+		if (idle.size() > capacity) {
+			Iterator<PreparedStatement> iterator = idle.values().iterator();
+			close(iterator.next());
+			iterator.remove();
+		}
+		return true;
+	}
+
+	/**
+	 * Closes and removes all idle statements.
+	 */
+	synchronized void clear() {
+		for (PreparedStatement statement : idle.values()) {
+			close(statement);
+		}
+		idle.clear();
+	}
+
+	synchronized int size() {
+		return idle.size();
+	}
+
+	/**
+	 * @return True if the specified mapping has the same tables as the mapping of the idle statements.
+	 */
+	private boolean isCurrent(VersionMapping mapping) {
+		if (this.mapping == mapping) {
+			return true;
+		}
+		return this.mapping != null && this.mapping.getTableMapping().equals(mapping.getTableMapping());
+	}
+
+	private void close(PreparedStatement statement) {
+		try {
+			statement.close();
+		}
+		catch (SQLException e) {
+			log.debug("Could not close cached statement: " + e.getMessage(), e);
+		}
+	}
+
+}
@@ -1,58 +1,113 @@
 package io.quantumdb.driver;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
-import io.quantumdb.query.rewriter.QueryRewriter;
+import io.quantumdb.driver.DriverMetrics.VersionStatistics;
+import io.quantumdb.query.rewriter.TableLookup;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 class Transformer {
 
-	private final QueryRewriter queryRewriter;
-	private final Map<String, String> tableMapping;
-
-	Transformer(Connection connection, QueryRewriter queryRewriter, String version) throws SQLException {
-		this.tableMapping = new HashMap<>();
-		this.queryRewriter = queryRewriter;
-
-		if (version != null && !version.isEmpty()) {
-			String query = new StringBuilder()
-					.append("SELECT ref_id, table_name ")
-					.append("FROM quantumdb.ref_versions ")
-					.append("WHERE version_id = ?;")
-					.toString();
-
-			try (PreparedStatement statement = connection.prepareStatement(query)) {
-				statement.setString(1, version);
-
-				try (ResultSet resultSet = statement.executeQuery()) {
-					while (resultSet.next()) {
-						String refId = resultSet.getString("ref_id");
-						String tableName = resultSet.getString("table_name");
-						tableMapping.put(tableName, refId);
-					}
-				}
-			}
-		}
+	private final RewriteCache rewriteCache;
+	private volatile AtomicReference<VersionMapping> reference;
+
+	@Getter
+	private final DriverMetrics metrics;
+
+	@Getter
+	private volatile VersionStatistics statistics;
+
+	/**
+	 * @param reference The reference to the mapping of the version of the connection. When the reference is updated,
+	 *                  the new mapping is used to rewrite subsequent queries.
+	 */
+	Transformer(AtomicReference<VersionMapping> reference, RewriteCache rewriteCache, DriverMetrics metrics) {
+		this.reference = reference;
+		this.rewriteCache = rewriteCache;
+		this.metrics = metrics;
+		this.statistics = metrics.getVersionStatistics(getVersion());
+	}
+
+	/**
+	 * Switches to the mapping of another version, which is used to rewrite subsequent queries.
+	 */
+	void setReference(AtomicReference<VersionMapping> reference) {
+		this.reference = reference;
+		this.statistics = metrics.getVersionStatistics(getVersion());
+	}
+
+	VersionMapping getMapping() {
+		return reference.get();
+	}
 
-		queryRewriter.setTableMapping(tableMapping);
+	/**
+	 * @return The version whose mapping is used to rewrite queries, or NULL if queries are not rewritten.
+	 */
+	String getVersion() {
+		String version = reference.get().getVersion();
+		return version.isEmpty() ? null : version;
 	}
 
 	Map<String, String> getTableMappings() {
-		Map<String, String> result = new HashMap<>(tableMapping.size());
-		result.putAll(tableMapping);
-		return result;
+		return reference.get().getTableMapping();
 	}
 
 	String getRefId(String tableName) {
-		return tableMapping.get(tableName);
+		return reference.get().getRefId(tableName);
 	}
 
 	String rewriteQuery(String query) throws SQLException {
-		return queryRewriter.rewrite(query);
+		if (query == null) {
+			throw new IllegalArgumentException("You must specify specify a 'query'.");
+		}
+
+		long start = System.nanoTime();
+		VersionMapping mapping = reference.get();
+		TableLookup lookup = mapping.getLookup();
+
+		String result;
+		if (!lookup.mayRewrite(query)) {
+			rewriteCache.recordSkip();
+			result = query;
+		}
+		else {
+			result = rewriteCache.get(mapping, query, () -> rewriteCache.getTemplate(query).render(lookup));
+		}
+		metrics.recordRewrite(statistics, query, result, System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * Records the execution of a statement which started at the specified System.nanoTime().
+	 *
+	 * @param query The original query, or NULL if it is not known.
+	 * @param sql The rewritten statement, or NULL if it is not known.
+	 */
+	void recordExecution(String query, String sql, long start) {
+		long nanos = System.nanoTime() - start;
+		recordTables(query);
+		metrics.recordExecution(statistics, sql, nanos);
+	}
+
+	/**
+	 * Counts the execution of the specified original query for each table it references, if table statistics are
+	 * enabled. The tables are taken from the cached template of the query, which is compiled on first use for queries
+	 * which did not have to be rewritten.
+	 */
+	void recordTables(String query) {
+		if (query == null || !metrics.isTableStatisticsEnabled()) {
+			return;
+		}
+		try {
+			metrics.recordTables(rewriteCache.getTemplate(query));
+		}
+		catch (RuntimeException e) {
+			log.debug("Could not determine the tables of query: " + query, e);
+		}
 	}
 
 }
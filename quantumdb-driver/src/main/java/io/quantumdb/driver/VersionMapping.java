@@ -0,0 +1,60 @@
+package io.quantumdb.driver;
+
+import com.google.common.collect.ImmutableMap;
+import io.quantumdb.query.rewriter.TableLookup;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Describes which tables (identified by their refIds) make up a particular version of the database schema. The tables
+ * of an instance never change, and instances are shared by all connections which use the same version. When the
+ * mapping of a version changes, a new instance replaces the old one, which is why instances are compared by identity
+ * rather than by value. Reloading a mapping whose tables have not changed retains the instance, and only renews the
+ * time at which it was loaded.
+ *
+ * The TableLookup with which queries are rewritten is built from the tables when it is first needed, and then shared
+ * by all connections which use the mapping.
+ */
+@Getter
+class VersionMapping {
+
+	static final VersionMapping EMPTY = new VersionMapping("", ImmutableMap.of());
+
+	private final String version;
+	private final ImmutableMap<String, String> tableMapping;
+	private volatile long loaded;
+
+	@Getter(AccessLevel.NONE)
+	private volatile TableLookup lookup;
+
+	VersionMapping(String version, ImmutableMap<String, String> tableMapping) {
+		this.version = version;
+		this.tableMapping = tableMapping;
+		this.loaded = System.currentTimeMillis();
+	}
+
+	/**
+	 * Marks the mapping as loaded at the current time, after it was reloaded without any changes.
+	 */
+	void renew() {
+		this.loaded = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return The TableLookup with which queries are rewritten using this mapping. Concurrent callers may build it more
+	 * than once, but all of them eventually share a single instance.
+	 */
+	TableLookup getLookup() {
+		TableLookup result = lookup;
+		if (result == null) {
+			result = new TableLookup(tableMapping);
+			lookup = result;
+		}
+		return result;
+	}
+
+	String getRefId(String tableName) {
+		return tableMapping.get(tableName);
+	}
+
+}
@@ -0,0 +1,41 @@
+package io.quantumdb.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class BatchInsertTest {
+
+	@Test
+	public void testSingleRowInsertCanBeBatched() {
+		BatchInsert insert = BatchInsert.parse("INSERT INTO users_v2 (id, name) VALUES (?, ?);");
+
+		assertEquals(2, insert.getParameterCount());
+		assertEquals("INSERT INTO users_v2 (id, name) VALUES (?, ?)", insert.toSql(1));
+		assertEquals("INSERT INTO users_v2 (id, name) VALUES (?, ?), (?, ?), (?, ?)", insert.toSql(3));
+	}
+
+	@Test
+	public void testNumberOfRowsIsLimitedByNumberOfParameters() {
+		StringBuilder values = new StringBuilder("?");
+		for (int i = 1; i < 1000; i++) {
+			values.append(", ?");
+		}
+
+		assertEquals(128, BatchInsert.parse("insert into t values (?)").getMaxRows());
+		assertEquals(32, BatchInsert.parse("insert into t values (" + values + ")").getMaxRows());
+	}
+
+	@Test
+	public void testOtherStatementsCannotBeBatched() {
+		assertNull(BatchInsert.parse("UPDATE users SET name = ? WHERE id = ?"));
+		assertNull(BatchInsert.parse("INSERT INTO users (id, name) VALUES (?, 'Alice')"));
+		assertNull(BatchInsert.parse("INSERT INTO users (id) VALUES (?) RETURNING id"));
+		assertNull(BatchInsert.parse("INSERT INTO users (id) VALUES (?) ON CONFLICT DO NOTHING"));
+		assertNull(BatchInsert.parse("INSERT INTO users (id) SELECT ?"));
+		assertNull(BatchInsert.parse("INSERT INTO users (id) VALUES (?), (?)"));
+		assertNull(BatchInsert.parse("INSERT INTO users /* ? */ (id) VALUES (?)"));
+	}
+
+}
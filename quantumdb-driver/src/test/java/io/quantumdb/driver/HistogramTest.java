@@ -0,0 +1,50 @@
+package io.quantumdb.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void testBucketsCoverAllValues() {
+		long[] values = { 0, 1, 7, 8, 9, 15, 16, 17, 1_000, 123_456_789, Long.MAX_VALUE };
+		for (long value : values) {
+			int index = Histogram.indexOf(value);
+			assertTrue(value <= Histogram.upperBoundOf(index));
+			assertTrue(index == 0 || value > Histogram.upperBoundOf(index - 1));
+		}
+	}
+
+	@Test
+	public void testPercentilesAreEstimatedWithinBucketPrecision() {
+		Histogram histogram = new Histogram();
+		for (long value = 1; value <= 1_000; value++) {
+			histogram.record(value * 1_000);
+		}
+
+		assertEquals(1_000, histogram.getCount());
+		assertEquals(1_000_000, histogram.getMax());
+		assertEquals(500_500, histogram.getMean(), 0.001);
+		assertWithin(500_000, histogram.getPercentile(50));
+		assertWithin(990_000, histogram.getPercentile(99));
+		assertEquals(1_000_000, histogram.getPercentile(100));
+	}
+
+	@Test
+	public void testResetClearsHistogram() {
+		Histogram histogram = new Histogram();
+		histogram.record(1_000);
+		histogram.reset();
+
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(50));
+	}
+
+	private void assertWithin(long expected, long actual) {
+		assertTrue("Expected: " + expected + ", but was: " + actual, Math.abs(actual - expected) <= expected / 8);
+	}
+
+}
@@ -0,0 +1,128 @@
+package io.quantumdb.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappingRegistryTest {
+
+	private static final String DATABASE = "jdbc:postgresql://localhost/test";
+
+	private ResultSet resultSet;
+	private Connection connection;
+	private MappingRegistry registry;
+
+	@Before
+	public void setUp() throws SQLException {
+		resultSet = mock(ResultSet.class);
+		when(resultSet.next()).thenReturn(true, false, true, false);
+		when(resultSet.getString("table_name")).thenReturn("users");
+		when(resultSet.getString("ref_id")).thenReturn("table_1");
+
+		PreparedStatement statement = mock(PreparedStatement.class);
+		when(statement.executeQuery()).thenReturn(resultSet);
+
+		connection = mock(Connection.class);
+		when(connection.prepareStatement(anyString())).thenReturn(statement);
+
+		registry = new MappingRegistry(0);
+	}
+
+	@Test
+	public void testMappingIsLoadedOnceAndShared() throws SQLException {
+		VersionMapping first = registry.get(connection, DATABASE, "v1").get();
+		VersionMapping second = registry.get(connection, DATABASE, "v1").get();
+
+		assertSame(first, second);
+		assertEquals(ImmutableMap.of("users", "table_1"), first.getTableMapping());
+		verify(connection, times(1)).prepareStatement(anyString());
+	}
+
+	@Test
+	public void testMappingIsReloadedAfterInvalidation() throws SQLException {
+		VersionMapping first = registry.get(connection, DATABASE, "v1").get();
+		registry.invalidate("v1");
+		VersionMapping second = registry.get(connection, DATABASE, "v1").get();
+
+		assertNotSame(first, second);
+		assertEquals(first.getTableMapping(), second.getTableMapping());
+		verify(connection, times(2)).prepareStatement(anyString());
+	}
+
+	@Test
+	public void testRefreshUpdatesReferenceHeldByConnections() throws SQLException {
+		when(resultSet.getString("ref_id")).thenReturn("table_1", "table_2");
+		AtomicReference<VersionMapping> reference = registry.get(connection, DATABASE, "v1");
+		VersionMapping first = reference.get();
+		registry.refresh(connection, DATABASE, "v1");
+
+		assertSame(reference, registry.get(connection, DATABASE, "v1"));
+		assertNotSame(first, reference.get());
+		assertEquals(ImmutableMap.of("users", "table_2"), reference.get().getTableMapping());
+		verify(connection, times(2)).prepareStatement(anyString());
+	}
+
+	@Test
+	public void testRefreshWithoutChangesRetainsMapping() throws SQLException, InterruptedException {
+		AtomicReference<VersionMapping> reference = registry.get(connection, DATABASE, "v1");
+		VersionMapping first = reference.get();
+		long loaded = first.getLoaded();
+
+		Thread.sleep(5);
+		registry.refresh(connection, DATABASE, "v1");
+
+		assertSame(first, reference.get());
+		assertTrue(first.getLoaded() > loaded);
+		verify(connection, times(2)).prepareStatement(anyString());
+	}
+
+	@Test
+	public void testMappingsOfDifferentDatabasesAreKeptApart() throws SQLException {
+		String other = "jdbc:postgresql://localhost/other";
+		AtomicReference<VersionMapping> first = registry.get(connection, DATABASE, "v1");
+		AtomicReference<VersionMapping> second = registry.get(connection, other, "v1");
+		assertNotSame(first, second);
+
+		VersionMapping mapping = first.get();
+		registry.refresh(connection, other, "v1");
+		assertSame(mapping, first.get());
+		verify(connection, times(3)).prepareStatement(anyString());
+	}
+
+	@Test
+	public void testDatabaseIsIdentifiedByUrlWithoutParameters() {
+		assertEquals(DATABASE, MappingRegistry.getDatabase("jdbc:quantumdb:postgresql://localhost/test?version=v1"));
+		assertEquals(DATABASE, MappingRegistry.getDatabase("jdbc:postgresql://localhost/test?user=a&version=v2"));
+		assertEquals(DATABASE, MappingRegistry.getDatabase(DATABASE));
+	}
+
+	@Test
+	public void testRefreshIgnoresUnusedVersions() throws SQLException {
+		registry.refresh(connection, DATABASE, "v2");
+		verifyZeroInteractions(connection);
+	}
+
+	@Test
+	public void testConnectionsWithoutVersionUseEmptyMapping() throws SQLException {
+		assertSame(VersionMapping.EMPTY, registry.get(connection, DATABASE, null).get());
+		verifyZeroInteractions(connection);
+	}
+
+}
@@ -0,0 +1,227 @@
+package io.quantumdb.driver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.ProtocolConnection;
+
+public class ProxyConnectionTest {
+
+	private static final String DATABASE = "jdbc:postgresql://localhost/test";
+
+	private Connection connection;
+	private Statement statement;
+	private MappingRegistry registry;
+	private DriverMetrics metrics;
+	private ProxyConnection proxy;
+
+	@Before
+	public void setUp() throws SQLException {
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.next()).thenReturn(true, false, true, false);
+		when(resultSet.getString("table_name")).thenReturn("users");
+		when(resultSet.getString("ref_id")).thenReturn("table_1", "table_2");
+
+		PreparedStatement metaStatement = mock(PreparedStatement.class);
+		when(metaStatement.executeQuery()).thenReturn(resultSet);
+
+		statement = mock(Statement.class);
+		connection = mock(Connection.class);
+		when(connection.prepareStatement(anyString())).thenReturn(metaStatement);
+		when(connection.createStatement()).thenReturn(statement);
+		when(connection.getAutoCommit()).thenReturn(true);
+
+		registry = new MappingRegistry(0);
+		RewriteCache rewriteCache = new RewriteCache(1024, 0);
+		metrics = new DriverMetrics(rewriteCache, true);
+		Transformer transformer = new Transformer(registry.get(connection, DATABASE, "v1"), rewriteCache, metrics);
+
+		proxy = new ProxyConnection(connection, transformer, registry, DATABASE, "app");
+	}
+
+	@Test
+	public void testSwitchingVersionAppliesToExistingStatements() throws SQLException {
+		Statement proxyStatement = proxy.createStatement();
+		proxyStatement.executeQuery("SELECT * FROM users");
+		proxy.setVersion("v2");
+		proxyStatement.executeQuery("SELECT * FROM users");
+
+		verify(statement).executeQuery("SELECT * FROM table_1");
+		verify(statement).executeQuery("SELECT * FROM table_2");
+		verify(connection).setClientInfo("ApplicationName", "app - v2");
+		assertEquals("v2", proxy.getVersion());
+	}
+
+	@Test
+	public void testSwitchingBackReusesLoadedMapping() throws SQLException {
+		proxy.setClientInfo(ProxyConnection.VERSION_PROPERTY, "v2");
+		proxy.setClientInfo(ProxyConnection.VERSION_PROPERTY, "v1");
+		proxy.setClientInfo(ProxyConnection.VERSION_PROPERTY, "v1");
+
+		verify(connection, times(2)).prepareStatement(anyString());
+		verify(connection, times(1)).setClientInfo("ApplicationName", "app - v1");
+		assertEquals("v1", proxy.getClientInfo(ProxyConnection.VERSION_PROPERTY));
+	}
+
+	@Test
+	public void testSwitchingToNoVersionDisablesRewriting() throws SQLException {
+		proxy.setVersion(null);
+		proxy.createStatement().executeQuery("SELECT * FROM users");
+
+		verify(statement).executeQuery("SELECT * FROM users");
+		verify(connection).setClientInfo("ApplicationName", "app");
+		assertNull(proxy.getVersion());
+	}
+
+	@Test
+	public void testClosedPreparedStatementsAreReused() throws SQLException {
+		String query = "SELECT * FROM table_1 WHERE id = ?";
+		when(connection.prepareStatement(query)).thenAnswer(invocation -> {
+			PreparedStatement statement = mock(PreparedStatement.class);
+			when(statement.isPoolable()).thenReturn(true);
+			return statement;
+		});
+
+		PreparedStatement first = proxy.prepareStatement("SELECT * FROM users WHERE id = ?");
+		first.setLong(1, 1);
+		first.executeQuery();
+		first.close();
+
+		PreparedStatement second = proxy.prepareStatement("SELECT * FROM users WHERE id = ?");
+		second.close();
+
+		verify(connection, times(1)).prepareStatement(query);
+		assertTrue(first.isClosed());
+	}
+
+	@Test(expected = SQLException.class)
+	public void testClosedPreparedStatementCannotBeUsed() throws SQLException {
+		PreparedStatement statement = proxy.prepareStatement("SELECT * FROM users WHERE id = ?");
+		statement.close();
+		statement.setLong(1, 1);
+	}
+
+	@Test
+	public void testBatchedRowsAreInsertedUsingMultiRowInsert() throws SQLException {
+		PreparedStatement single = mock(PreparedStatement.class);
+		PreparedStatement multiRow = mock(PreparedStatement.class);
+		when(connection.prepareStatement("INSERT INTO table_1 (id, name) VALUES (?, ?)")).thenReturn(single);
+		when(connection.prepareStatement("INSERT INTO table_1 (id, name) VALUES (?, ?), (?, ?), (?, ?)"))
+				.thenReturn(multiRow);
+		when(multiRow.executeUpdate()).thenReturn(3);
+
+		PreparedStatement statement = proxy.prepareStatement("INSERT INTO users (id, name) VALUES (?, ?)");
+		for (int i = 1; i <= 3; i++) {
+			statement.setLong(1, i);
+			statement.setString(2, "user" + i);
+			statement.addBatch();
+		}
+
+		assertArrayEquals(new int[] { 1, 1, 1 }, statement.executeBatch());
+		verify(multiRow).setLong(5, 3);
+		verify(multiRow).setString(6, "user3");
+		verify(single, never()).addBatch();
+		verify(single, never()).executeBatch();
+	}
+
+	@Test
+	public void testCopyStatementsAreRewritten() throws SQLException, IOException {
+		CopyManager copyManager = mock(CopyManager.class);
+		PGConnection pgConnection = mock(PGConnection.class);
+		when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+		when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+
+		InputStream data = new ByteArrayInputStream("1,Alice\n".getBytes(StandardCharsets.UTF_8));
+		proxy.getCopyManager().copyIn("COPY users (id, name) FROM STDIN WITH (FORMAT csv)", data);
+
+		verify(copyManager).copyIn("COPY table_1 (id, name) FROM STDIN WITH (FORMAT csv)", data);
+	}
+
+	@Test(expected = SQLClientInfoException.class)
+	public void testVersionCannotBeSwitchedDuringTransaction() throws SQLException {
+		BaseConnection baseConnection = mock(BaseConnection.class);
+		when(baseConnection.getTransactionState()).thenReturn(ProtocolConnection.TRANSACTION_OPEN);
+		when(connection.getAutoCommit()).thenReturn(false);
+		when(connection.isWrapperFor(BaseConnection.class)).thenReturn(true);
+		when(connection.unwrap(BaseConnection.class)).thenReturn(baseConnection);
+
+		try {
+			proxy.setClientInfo(ProxyConnection.VERSION_PROPERTY, "v2");
+		}
+		finally {
+			verify(connection, never()).setClientInfo(anyString(), anyString());
+			assertEquals("v1", proxy.getVersion());
+		}
+	}
+
+	@Test
+	public void testMetricsAreRecordedPerVersion() throws SQLException {
+		List<String> events = Lists.newArrayList();
+		metrics.addListener(new DriverListener() {
+			@Override
+			public void onExecute(String version, String sql, long nanos) {
+				events.add(version + ": " + sql);
+			}
+
+			@Override
+			public void onConnectionClosed(String version) {
+				events.add("closed " + version);
+			}
+		});
+
+		Statement proxyStatement = proxy.createStatement();
+		proxyStatement.executeQuery("SELECT * FROM users");
+		proxy.setVersion("v2");
+		proxyStatement.executeQuery("SELECT * FROM users");
+		proxyStatement.executeQuery("SELECT * FROM users");
+
+		assertEquals(Lists.newArrayList("v1: SELECT * FROM table_1", "closed v1", "v2: SELECT * FROM table_2",
+				"v2: SELECT * FROM table_2"), events);
+		assertEquals(ImmutableMap.of("v1", 1L, "v2", 2L), metrics.getStatementsPerVersion());
+		assertEquals(ImmutableMap.of("v1", 0L, "v2", 1L), metrics.getConnectionsPerVersion());
+		assertEquals(ImmutableMap.of("users", 3L), metrics.getStatementsPerTable());
+		assertEquals(3, metrics.getExecutionCount());
+		assertEquals(3, metrics.getRewriteCount());
+
+		proxy.close();
+		assertEquals(ImmutableMap.of("v1", 0L, "v2", 0L), metrics.getConnectionsPerVersion());
+	}
+
+	@Test
+	public void testTablesAreCountedPerExecution() throws SQLException {
+		PreparedStatement preparedStatement = proxy.prepareStatement("SELECT * FROM users");
+		preparedStatement.executeQuery();
+		preparedStatement.executeQuery();
+		proxy.createStatement().executeQuery("SELECT * FROM accounts");
+
+		assertEquals(ImmutableMap.of("users", 2L, "accounts", 1L), metrics.getStatementsPerTable());
+	}
+
+}
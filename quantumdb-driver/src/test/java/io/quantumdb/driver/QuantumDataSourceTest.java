@@ -0,0 +1,163 @@
+package io.quantumdb.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QuantumDataSourceTest {
+
+	private List<Connection> physicalConnections;
+	private QuantumDataSource dataSource;
+
+	@Before
+	public void setUp() {
+		physicalConnections = Lists.newArrayList();
+		RewriteCache rewriteCache = new RewriteCache(1024, 0);
+		dataSource = new QuantumDataSource(this::createConnection, new MappingRegistry(0), rewriteCache,
+				new DriverMetrics(rewriteCache, false));
+		dataSource.setUrl("jdbc:quantumdb:postgresql://localhost/test");
+		dataSource.setMaxPoolSize(2);
+		dataSource.setConnectionTimeout(10);
+	}
+
+	private Connection createConnection() throws SQLException {
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.next()).thenReturn(true, false);
+		when(resultSet.getString("table_name")).thenReturn("users");
+		when(resultSet.getString("ref_id")).thenReturn("table_1");
+
+		PreparedStatement statement = mock(PreparedStatement.class);
+		when(statement.executeQuery()).thenReturn(resultSet);
+
+		Connection connection = mock(Connection.class);
+		when(connection.prepareStatement(anyString())).thenReturn(statement);
+		when(connection.getAutoCommit()).thenReturn(true);
+		when(connection.getTransactionIsolation()).thenReturn(Connection.TRANSACTION_READ_COMMITTED);
+		when(connection.getSchema()).thenReturn("public");
+		physicalConnections.add(connection);
+		return connection;
+	}
+
+	@Test
+	public void testPhysicalConnectionIsSharedAcrossVersions() throws SQLException {
+		Connection first = dataSource.getConnectionForVersion("v1");
+		first.close();
+		assertTrue(first.isClosed());
+		assertEquals(1, dataSource.getIdleConnections());
+
+		Connection second = dataSource.getConnectionForVersion("v2");
+		assertEquals(0, dataSource.getIdleConnections());
+		assertEquals(1, physicalConnections.size());
+		assertNotSame(first, second);
+
+		Connection physical = physicalConnections.get(0);
+		verify(physical).setClientInfo("ApplicationName", "QuantumDB driver - v1");
+		verify(physical).setClientInfo("ApplicationName", "QuantumDB driver - v2");
+		verify(physical, never()).close();
+	}
+
+	@Test
+	public void testApplicationNameIsResetWhenConnectionIsReturned() throws SQLException {
+		dataSource.getConnectionForVersion("v1").close();
+		dataSource.getConnectionForVersion("v1").close();
+
+		Connection physical = physicalConnections.get(0);
+		verify(physical, times(2)).setClientInfo("ApplicationName", "QuantumDB driver - v1");
+		verify(physical, times(2)).setClientInfo("ApplicationName", "QuantumDB driver");
+	}
+
+	@Test
+	public void testApplicationNameIsOnlySetWhenItChanges() throws SQLException {
+		dataSource.getConnectionForVersion(null).close();
+		dataSource.getConnectionForVersion(null).close();
+
+		verify(physicalConnections.get(0), times(1)).setClientInfo("ApplicationName", "QuantumDB driver");
+	}
+
+	@Test
+	public void testOpenTransactionIsRolledBackWhenConnectionIsReturned() throws SQLException {
+		Connection connection = dataSource.getConnectionForVersion("v1");
+		Connection physical = physicalConnections.get(0);
+		when(physical.getAutoCommit()).thenReturn(false);
+		connection.close();
+		connection.close();
+
+		verify(physical, times(1)).rollback();
+		verify(physical, times(1)).setAutoCommit(true);
+	}
+
+	@Test
+	public void testOpenStatementsAreClosedWhenConnectionIsReturned() throws SQLException {
+		Connection connection = dataSource.getConnectionForVersion("v1");
+		Connection physical = physicalConnections.get(0);
+		Statement statement = mock(Statement.class);
+		when(physical.createStatement()).thenReturn(statement);
+
+		connection.createStatement();
+		PreparedStatement preparedStatement = connection.prepareStatement("SELECT * FROM users");
+		connection.close();
+
+		verify(statement).close();
+		try {
+			preparedStatement.executeQuery();
+			fail("Expected the statement to be closed along with its connection");
+		}
+		catch (SQLException e) {
+			assertEquals("This statement has been closed.", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSessionIsRestoredWhenConnectionIsReturned() throws SQLException {
+		Connection connection = dataSource.getConnectionForVersion("v1");
+		connection.setReadOnly(true);
+		connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+		connection.setSchema("other");
+		connection.close();
+
+		Connection physical = physicalConnections.get(0);
+		verify(physical).setReadOnly(false);
+		verify(physical).setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+		verify(physical).setSchema("public");
+
+		dataSource.getConnectionForVersion("v1").close();
+		verify(physical, times(1)).setReadOnly(false);
+	}
+
+	@Test(expected = SQLTimeoutException.class)
+	public void testCheckOutTimesOutWhenPoolIsExhausted() throws SQLException {
+		dataSource.getConnectionForVersion("v1");
+		dataSource.getConnectionForVersion("v2");
+		dataSource.getConnectionForVersion("v1");
+	}
+
+	@Test
+	public void testClosingDataSourceClosesIdleConnections() throws SQLException {
+		Connection connection = dataSource.getConnectionForVersion(null);
+		connection.close();
+		dataSource.close();
+
+		assertEquals(1, physicalConnections.size());
+		verify(physicalConnections.get(0)).close();
+	}
+
+}
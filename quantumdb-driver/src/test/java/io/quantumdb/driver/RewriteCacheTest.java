@@ -0,0 +1,57 @@
+package io.quantumdb.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+public class RewriteCacheTest {
+
+	@Test
+	public void testStatementIsOnlyRewrittenOncePerVersion() throws SQLException {
+		RewriteCache cache = new RewriteCache(1024, 0);
+		VersionMapping v1 = new VersionMapping("v1", ImmutableMap.of("users", "table_1"));
+		VersionMapping v2 = new VersionMapping("v2", ImmutableMap.of("users", "table_2"));
+		AtomicInteger rewrites = new AtomicInteger();
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals("SELECT * FROM table_1", cache.get(v1, "SELECT * FROM users", () -> {
+				rewrites.incrementAndGet();
+				return "SELECT * FROM table_1";
+			}));
+		}
+		cache.get(v2, "SELECT * FROM users", () -> {
+			rewrites.incrementAndGet();
+			return "SELECT * FROM table_2";
+		});
+
+		assertEquals(2, rewrites.get());
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testStatementsAreEvictedWhenCapacityIsExceeded() throws SQLException {
+		RewriteCache cache = new RewriteCache(100, 0);
+		for (int i = 0; i < 10; i++) {
+			String query = "SELECT * FROM users WHERE id = " + i;
+			cache.get(VersionMapping.EMPTY, query, () -> query);
+		}
+
+		assertTrue(cache.getSize() < 10);
+		assertEquals(10 - cache.getSize(), cache.getEvictionCount());
+	}
+
+	@Test(expected = SQLException.class)
+	public void testRewriteFailureIsPropagated() throws SQLException {
+		RewriteCache cache = new RewriteCache(1024, 0);
+		cache.get(VersionMapping.EMPTY, "SELECT", () -> {
+			throw new SQLException("Could not rewrite");
+		});
+	}
+
+}
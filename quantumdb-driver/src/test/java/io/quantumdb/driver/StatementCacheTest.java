@@ -0,0 +1,100 @@
+package io.quantumdb.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import com.google.common.collect.ImmutableMap;
+import io.quantumdb.driver.StatementCache.Key;
+import org.junit.Test;
+
+public class StatementCacheTest {
+
+	private static final int DEFAULT = StatementCache.DEFAULT;
+
+	private final VersionMapping mapping = new VersionMapping("v1", ImmutableMap.of("users", "table_1"));
+
+	@Test
+	public void testIdleStatementIsReused() {
+		StatementCache cache = new StatementCache(2);
+		Key key = key("SELECT * FROM table_1");
+		PreparedStatement statement = mock(PreparedStatement.class);
+
+		assertNull(cache.take(key, mapping));
+		assertTrue(cache.offer(key, mapping, statement));
+		assertSame(statement, cache.take(key, mapping));
+		assertNull(cache.take(key, mapping));
+	}
+
+	@Test
+	public void testStatementsWithDifferentOptionsAreNotInterchangeable() {
+		StatementCache cache = new StatementCache(2);
+		cache.take(key("SELECT 1"), mapping);
+		cache.offer(key("SELECT 1"), mapping, mock(PreparedStatement.class));
+
+		assertNull(cache.take(new Key("SELECT 1", DEFAULT, DEFAULT, DEFAULT, 1), mapping));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedStatementIsEvictedAndClosed() throws SQLException {
+		StatementCache cache = new StatementCache(2);
+		PreparedStatement first = mock(PreparedStatement.class);
+		PreparedStatement second = mock(PreparedStatement.class);
+		PreparedStatement third = mock(PreparedStatement.class);
+
+		cache.take(key("SELECT 1"), mapping);
+		cache.offer(key("SELECT 1"), mapping, first);
+		cache.offer(key("SELECT 2"), mapping, second);
+		cache.offer(key("SELECT 3"), mapping, third);
+
+		assertEquals(2, cache.size());
+		verify(first).close();
+		verify(second, never()).close();
+	}
+
+	@Test
+	public void testChangingMappingDiscardsIdleStatements() throws SQLException {
+		StatementCache cache = new StatementCache(2);
+		PreparedStatement statement = mock(PreparedStatement.class);
+		cache.take(key("SELECT 1"), mapping);
+		cache.offer(key("SELECT 1"), mapping, statement);
+
+		VersionMapping refreshed = new VersionMapping("v1", ImmutableMap.of("users", "table_2"));
+		assertNull(cache.take(key("SELECT 1"), refreshed));
+		verify(statement).close();
+		assertFalse(cache.offer(key("SELECT 2"), mapping, mock(PreparedStatement.class)));
+	}
+
+	@Test
+	public void testReloadedMappingWithSameTablesRetainsIdleStatements() throws SQLException {
+		StatementCache cache = new StatementCache(2);
+		PreparedStatement statement = mock(PreparedStatement.class);
+		cache.take(key("SELECT 1"), mapping);
+		cache.offer(key("SELECT 1"), mapping, statement);
+
+		VersionMapping reloaded = new VersionMapping("v1", ImmutableMap.of("users", "table_1"));
+		assertSame(statement, cache.take(key("SELECT 1"), reloaded));
+		verify(statement, never()).close();
+		assertTrue(cache.offer(key("SELECT 1"), mapping, statement));
+	}
+
+	@Test
+	public void testCacheWithoutCapacityRetainsNothing() {
+		StatementCache cache = new StatementCache(0);
+		cache.take(key("SELECT 1"), mapping);
+		assertFalse(cache.offer(key("SELECT 1"), mapping, mock(PreparedStatement.class)));
+	}
+
+	private Key key(String sql) {
+		return new Key(sql, DEFAULT, DEFAULT, DEFAULT, DEFAULT);
+	}
+
+}
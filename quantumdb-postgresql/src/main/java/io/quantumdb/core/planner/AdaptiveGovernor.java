@@ -0,0 +1,139 @@
+package io.quantumdb.core.planner;
+
+import java.sql.SQLException;
+
+import io.quantumdb.core.backends.Config;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Default BackfillGovernor which adjusts the batch size after every batch, so that each batch takes roughly the
+ * configured target latency. Whenever the database shows signs of increased load compared to when the migration
+ * started (more active backends or lock waits), or when the WAL generation rate or replica lag exceed their
+ * configured limits, the batch size is halved and the pause between batches doubled until the load subsides. Since
+ * the load is sampled at most once per second, while several workers may complete batches in the meantime, the
+ * governor backs off at most once per sample.
+ */
+@Slf4j
+public class AdaptiveGovernor implements BackfillGovernor {
+
+	private static final long MIN_BATCH_SIZE = 100;
+	private static final long MAX_BATCH_SIZE = 100_000;
+	private static final long INITIAL_BATCH_SIZE = 2_000;
+
+	private static final long MIN_PAUSE = 0;
+	private static final long MAX_PAUSE = 10_000;
+	private static final long INITIAL_PAUSE = 50;
+
+	private static final long SAMPLE_INTERVAL = 1_000;
+
+	private final LoadMonitor monitor;
+	private final ThroughputBudget budget;
+	private final long targetLatency;
+	private final long maxWalRate;
+	private final long maxReplicaLag;
+
+	private LoadSample baseline;
+	private LoadSample lastSample;
+	private boolean underPressure;
+	private boolean backedOff;
+
+	private long batchSize;
+	private long pause;
+
+	public AdaptiveGovernor(PostgresqlBackend backend, Config config) {
+		this(new LoadMonitor(backend), config);
+	}
+
+	AdaptiveGovernor(LoadMonitor monitor, Config config) {
+		this.monitor = monitor;
+		this.budget = new ThroughputBudget(config.getBackfillMaxRecordsPerSecond(),
+				config.getBackfillMaxBytesPerSecond());
+
+		this.targetLatency = config.getBackfillTargetLatency();
+		this.maxWalRate = config.getBackfillMaxWalRate();
+		this.maxReplicaLag = config.getBackfillMaxReplicaLag();
+		this.batchSize = INITIAL_BATCH_SIZE;
+		this.pause = INITIAL_PAUSE;
+	}
+
+	@Override
+	public long acquire(long recordSize) throws InterruptedException, SQLException {
+		long size;
+		long delay;
+		synchronized (this) {
+			sample();
+			size = batchSize;
+			delay = pause;
+		}
+
+		long wait = budget.reserve(size, size * recordSize);
+		Thread.sleep(Math.max(delay, wait));
+		return size;
+	}
+
+	@Override
+	public synchronized void completed(long size, long duration) {
+		if (underPressure) {
+			if (!backedOff) {
+				batchSize = Math.max(MIN_BATCH_SIZE, batchSize / 2);
+				pause = Math.min(MAX_PAUSE, Math.max(INITIAL_PAUSE, pause * 2));
+				backedOff = true;
+			}
+		}
+		else {
+			double factor = (double) targetLatency / Math.max(1, duration);
+			factor = Math.max(0.5, Math.min(2.0, factor));
+
+			batchSize = Math.max(MIN_BATCH_SIZE, Math.min(MAX_BATCH_SIZE, (long) (size * factor)));
+			pause = Math.max(MIN_PAUSE, pause / 2);
+		}
+
+		log.debug("Batch of {} records took: {} ms, next batch: {} records, pause: {} ms", size, duration,
+				batchSize, pause);
+	}
+
+	private void sample() throws SQLException {
+		long now = System.currentTimeMillis();
+		if (lastSample != null && now - lastSample.getTimestamp() < SAMPLE_INTERVAL) {
+			return;
+		}
+
+		LoadSample sample = monitor.sample();
+		if (baseline == null) {
+			baseline = sample;
+		}
+
+		boolean wasUnderPressure = underPressure;
+		underPressure = isUnderPressure(sample);
+		if (underPressure != wasUnderPressure) {
+			log.info(underPressure ? "Database is under pressure, backing off: {}" : "Database load subsided: {}",
+					sample);
+		}
+		lastSample = sample;
+		backedOff = false;
+	}
+
+	private boolean isUnderPressure(LoadSample sample) {
+		if (sample.getLockWaits() > baseline.getLockWaits()) {
+			return true;
+		}
+		if (sample.getActiveBackends() > 2 * baseline.getActiveBackends() + 1) {
+			return true;
+		}
+		if (maxReplicaLag > 0 && sample.getReplicaLag() > maxReplicaLag) {
+			return true;
+		}
+		if (maxWalRate > 0 && lastSample != null) {
+			long elapsed = Math.max(1, sample.getTimestamp() - lastSample.getTimestamp());
+			long walRate = (sample.getWalPosition() - lastSample.getWalPosition()) * 1_000 / elapsed;
+			return walRate > maxWalRate;
+		}
+		return false;
+	}
+
+	@Override
+	public void close() throws SQLException {
+		monitor.close();
+	}
+
+}
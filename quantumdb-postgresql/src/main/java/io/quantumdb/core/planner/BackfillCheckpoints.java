@@ -0,0 +1,166 @@
+package io.quantumdb.core.planner;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import io.quantumdb.core.schema.definitions.Column;
+import io.quantumdb.core.schema.definitions.Table;
+import io.quantumdb.core.utils.QueryBuilder;
+import io.quantumdb.core.versioning.Version;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persists the progress of copying a specific set of columns from a source table to a target table, per KeyRange,
+ * in the "quantumdb.backfill_checkpoints" table. Checkpoints are meant to be updated in the same transaction as the
+ * batch of records they describe, so that a copy which was interrupted can be continued where it left off.
+ */
+@Slf4j
+class BackfillCheckpoints {
+
+	private final Gson gson;
+	private final Version version;
+	private final Table source;
+	private final Table target;
+	private final String columns;
+
+	BackfillCheckpoints(Version version, Table source, Table target, Set<String> columns) {
+		this.gson = new Gson();
+		this.version = version;
+		this.source = source;
+		this.target = target;
+		this.columns = Joiner.on(",").join(new TreeSet<>(columns));
+	}
+
+	/**
+	 * @return The KeyRanges which were persisted by an earlier attempt to copy the same columns, or an empty List if
+	 * there was no such attempt.
+	 */
+	List<KeyRange> load(Connection connection) throws SQLException {
+		List<Column> identityColumns = source.getIdentityColumns();
+		String firstIdentityType = identityColumns.get(0).getType().toString();
+
+		// Identities are stored as text, and converted back to their original types by the database.
+		QueryBuilder query = new QueryBuilder()
+				.append("SELECT range_index, completed, last_processed_id IS NOT NULL AS processed,")
+				.append("  CAST(lower_bound AS " + firstIdentityType + ") AS lower_bound,")
+				.append("  CAST(upper_bound AS " + firstIdentityType + ") AS upper_bound");
+
+		for (int i = 0; i < identityColumns.size(); i++) {
+			Column column = identityColumns.get(i);
+			query.append(", CAST(last_processed_id::json ->> '" + column.getName().replace("'", "''") + "'")
+					.append("AS " + column.getType() + ") AS l" + i);
+		}
+
+		query.append("FROM quantumdb.backfill_checkpoints")
+				.append("WHERE version_id = ? AND source_ref_id = ? AND target_ref_id = ? AND columns = ?")
+				.append("ORDER BY range_index ASC;");
+
+		List<KeyRange> ranges = Lists.newArrayList();
+		try (PreparedStatement statement = prepare(connection, query.toString())) {
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				KeyRange range = new KeyRange(resultSet.getInt("range_index"), resultSet.getObject("lower_bound"),
+						resultSet.getObject("upper_bound"));
+
+				if (resultSet.getBoolean("processed")) {
+					Map<String, Object> lastProcessedId = Maps.newHashMap();
+					for (int i = 0; i < identityColumns.size(); i++) {
+						lastProcessedId.put(identityColumns.get(i).getName(), resultSet.getObject("l" + i));
+					}
+					range.setLastProcessedId(Collections.unmodifiableMap(lastProcessedId));
+				}
+				range.setCompleted(resultSet.getBoolean("completed"));
+				ranges.add(range);
+			}
+		}
+		return ranges;
+	}
+
+	/**
+	 * Persists a checkpoint for each of the specified KeyRanges, before any data has been copied.
+	 */
+	void create(Connection connection, List<KeyRange> ranges) throws SQLException {
+		String query = new QueryBuilder()
+				.append("INSERT INTO quantumdb.backfill_checkpoints")
+				.append("(version_id, source_ref_id, target_ref_id, columns, range_index, lower_bound, upper_bound)")
+				.append("VALUES (?, ?, ?, ?, ?, ?, ?);")
+				.toString();
+
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try (PreparedStatement statement = prepare(connection, query)) {
+			for (KeyRange range : ranges) {
+				statement.setInt(5, range.getIndex());
+				statement.setString(6, asString(range.getLower()));
+				statement.setString(7, asString(range.getUpper()));
+				statement.addBatch();
+			}
+			statement.executeBatch();
+			connection.commit();
+		}
+		catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		}
+		finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * Updates the checkpoint of the specified KeyRange. This does not commit the transaction of the Connection, which
+	 * must use READ COMMITTED: the checkpoint of a KeyRange is updated once per batch, so a transaction using an older
+	 * snapshot would fail to update it with a serialization failure.
+	 */
+	void update(Connection connection, KeyRange range) throws SQLException {
+		String query = new QueryBuilder()
+				.append("UPDATE quantumdb.backfill_checkpoints")
+				.append("SET last_processed_id = ?, completed = ?, updated = NOW()")
+				.append("WHERE version_id = ? AND source_ref_id = ? AND target_ref_id = ? AND columns = ?")
+				.append("AND range_index = ?;")
+				.toString();
+
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			Map<String, Object> lastProcessedId = range.getLastProcessedId();
+			statement.setString(1, lastProcessedId == null ? null : formatIdentity(lastProcessedId));
+			statement.setBoolean(2, range.isCompleted());
+			statement.setString(3, version.getId());
+			statement.setString(4, source.getName());
+			statement.setString(5, target.getName());
+			statement.setString(6, columns);
+			statement.setInt(7, range.getIndex());
+			statement.executeUpdate();
+		}
+	}
+
+	private PreparedStatement prepare(Connection connection, String query) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(query);
+		statement.setString(1, version.getId());
+		statement.setString(2, source.getName());
+		statement.setString(3, target.getName());
+		statement.setString(4, columns);
+		return statement;
+	}
+
+	private String formatIdentity(Map<String, Object> identity) {
+		Map<String, String> values = Maps.newLinkedHashMap();
+		identity.forEach((key, value) -> values.put(key, asString(value)));
+		return gson.toJson(values);
+	}
+
+	private String asString(Object value) {
+		return value == null ? null : value.toString();
+	}
+
+}
@@ -0,0 +1,37 @@
+package io.quantumdb.core.planner;
+
+import java.sql.SQLException;
+
+/**
+ * Decides how fast data is migrated from source tables to ghost tables. A single BackfillGovernor is shared by all
+ * workers migrating data as part of the same fork, and must therefore be thread-safe.
+ *
+ * Custom implementations can be configured using the "backfill_governor" property, and must declare a public
+ * constructor accepting a PostgresqlBackend and a Config object.
+ */
+public interface BackfillGovernor extends AutoCloseable {
+
+	/**
+	 * Blocks until the next batch of records may be migrated.
+	 *
+	 * @param recordSize The estimated size of a single record in bytes.
+	 *
+	 * @return The maximum number of records to migrate in the next batch.
+	 *
+	 * @throws InterruptedException In case the calling thread was interrupted while waiting.
+	 * @throws SQLException In case the load of the database could not be determined.
+	 */
+	long acquire(long recordSize) throws InterruptedException, SQLException;
+
+	/**
+	 * Reports that a batch of records, previously acquired through acquire(), has been migrated.
+	 *
+	 * @param batchSize The maximum number of records which could have been migrated in that batch.
+	 * @param duration The amount of milliseconds it took to migrate the batch.
+	 */
+	void completed(long batchSize, long duration);
+
+	@Override
+	void close() throws SQLException;
+
+}
@@ -0,0 +1,216 @@
+package io.quantumdb.core.planner;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.stream.Collectors;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.quantumdb.core.schema.definitions.Column;
+import io.quantumdb.core.schema.definitions.Table;
+import io.quantumdb.core.utils.QueryBuilder;
+import io.quantumdb.core.utils.RandomHasher;
+import io.quantumdb.core.versioning.RefLog;
+import io.quantumdb.core.versioning.RefLog.ColumnRef;
+import io.quantumdb.core.versioning.RefLog.TableRef;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * Populates a newly created ghost table by streaming the records of a KeyRange from the source table using the COPY
+ * protocol in binary format. One thread reads the records from the source table, while another writes them into a
+ * temporary staging table. Both are connected through a bounded pipe, so neither side buffers more than a fixed
+ * amount of data in memory.
+ *
+ * Since COPY cannot skip records which the sync function already wrote to the ghost table, the staged records are
+ * merged into the ghost table using INSERT ... ON CONFLICT DO NOTHING. Records which already exist in the ghost table
+ * were written by the sync function, and are therefore newer than the staged ones. Records which were deleted from the
+ * source table while they were being copied must be removed by a final catch-up pass once all KeyRanges are loaded.
+ */
+@Slf4j
+class BulkLoader {
+
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private final Table source;
+	private final Table target;
+	private final BackfillCheckpoints checkpoints;
+	private final Map<String, String> values;
+
+	BulkLoader(NullRecords nullRecords, RefLog refLog, Table source, Table target, Set<String> columns,
+			BackfillCheckpoints checkpoints) {
+
+		this.source = source;
+		this.target = target;
+		this.checkpoints = checkpoints;
+
+		TableRef sourceRef = refLog.getTableRefById(source.getName());
+		TableRef targetRef = refLog.getTableRefById(target.getName());
+		Map<ColumnRef, ColumnRef> columnMapping = refLog.getColumnMapping(sourceRef, targetRef);
+		this.values = SelectiveMigratorFunction.determineInsertValues(nullRecords, columnMapping, target, columns, "s");
+	}
+
+	/**
+	 * Copies all records in the specified KeyRange from the source table into the target table, and marks the
+	 * KeyRange as completed in the same transaction.
+	 *
+	 * @param reader The connection used to read the records from the source table.
+	 * @param writer The connection used to write the records into the target table.
+	 * @param snapshot The exported snapshot to read the source table with, or NULL to use a fresh snapshot.
+	 */
+	void load(Connection reader, Connection writer, String snapshot, KeyRange range)
+			throws SQLException, InterruptedException {
+
+		if (range.isCompleted()) {
+			return;
+		}
+
+		String stagingTable = "bulk_" + RandomHasher.generateHash();
+		String columns = values.keySet().stream()
+				.map(column -> "\"" + column + "\"")
+				.collect(Collectors.joining(", "));
+
+		ThreadFactory threadFactory = new ThreadFactoryBuilder()
+				.setNameFormat("bulk-loader-" + source.getName() + "-" + range.getIndex())
+				.build();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor(threadFactory);
+		long start = System.currentTimeMillis();
+
+		// The checkpoint is updated in READ COMMITTED, so it can't conflict with updates of other transactions.
+		writer.setAutoCommit(false);
+		writer.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+		try {
+			execute(writer, new QueryBuilder()
+					.append("CREATE TEMPORARY TABLE " + stagingTable + " ON COMMIT DROP AS")
+					.append("SELECT " + columns + " FROM " + target.getName() + " WITH NO DATA;")
+					.toString());
+
+			long copied;
+			try (PipedInputStream input = new PipedInputStream(BUFFER_SIZE)) {
+				PipedOutputStream output = new PipedOutputStream(input);
+				Future<Long> read = executor.submit(() -> {
+					try {
+						return copyOut(reader, snapshot, range, output);
+					}
+					finally {
+						output.close();
+					}
+				});
+
+				CopyManager copyManager = writer.unwrap(PGConnection.class).getCopyAPI();
+				copied = copyManager.copyIn("COPY " + stagingTable + " (" + columns + ") FROM STDIN (FORMAT binary);",
+						input, BUFFER_SIZE);
+
+				// The COPY above can't tell whether the reader failed halfway, or reached the end of the range.
+				long expected = awaitCompletion(read);
+				if (copied != expected) {
+					throw new SQLException("Copied " + copied + " records into: " + stagingTable + ", expected: "
+							+ expected);
+				}
+			}
+
+			int inserted;
+			try (Statement statement = writer.createStatement()) {
+				inserted = statement.executeUpdate(new QueryBuilder()
+						.append("INSERT INTO " + target.getName() + " (" + columns + ")")
+						.append("SELECT " + columns + " FROM " + stagingTable)
+						.append("ON CONFLICT DO NOTHING;")
+						.toString());
+			}
+
+			range.setCompleted(true);
+			checkpoints.update(writer, range);
+			writer.commit();
+
+			log.info("Bulk loaded {} of {} records source: {} target: {}, range: {}, took: {} ms", inserted, copied,
+					source.getName(), target.getName(), range.getIndex(), System.currentTimeMillis() - start);
+		}
+		catch (IOException e) {
+			writer.rollback();
+			throw new SQLException("Could not stream records from: " + source.getName() + " to: "
+					+ target.getName(), e);
+		}
+		catch (SQLException | InterruptedException | RuntimeException e) {
+			writer.rollback();
+			throw e;
+		}
+		finally {
+			executor.shutdownNow();
+			writer.setAutoCommit(true);
+		}
+	}
+
+	private long copyOut(Connection reader, String snapshot, KeyRange range, PipedOutputStream output)
+			throws SQLException, IOException {
+
+		if (snapshot != null) {
+			reader.setAutoCommit(false);
+			reader.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+			execute(reader, "SET TRANSACTION SNAPSHOT '" + snapshot + "';");
+		}
+
+		// Casting each value to the type of its target column ensures the binary representations are compatible.
+		String projection = values.entrySet().stream()
+				.map(entry -> "CAST(" + entry.getValue() + " AS " + target.getColumn(entry.getKey()).getType() + ")")
+				.collect(Collectors.joining(", "));
+
+		Column firstIdentityColumn = source.getIdentityColumns().get(0);
+		String identity = "s.\"" + firstIdentityColumn.getName() + "\"";
+
+		QueryBuilder query = new QueryBuilder()
+				.append("COPY (SELECT " + projection + " FROM " + source.getName() + " s")
+				.append("WHERE " + identity + " <= " + asLiteral(range.getUpper(), firstIdentityColumn));
+
+		if (range.getLower() != null) {
+			query.append("AND " + identity + " > " + asLiteral(range.getLower(), firstIdentityColumn));
+		}
+		query.append(") TO STDOUT (FORMAT binary);");
+
+		CopyManager copyManager = reader.unwrap(PGConnection.class).getCopyAPI();
+		long copied = copyManager.copyOut(query.toString(), output);
+
+		if (snapshot != null) {
+			reader.commit();
+		}
+		return copied;
+	}
+
+	/**
+	 * COPY doesn't accept query parameters, so the bounds of a KeyRange are embedded as literals of the column type.
+	 */
+	private String asLiteral(Object value, Column column) {
+		return "CAST('" + value.toString().replace("'", "''") + "' AS " + column.getType() + ")";
+	}
+
+	private long awaitCompletion(Future<Long> future) throws SQLException, InterruptedException {
+		try {
+			return future.get();
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			Throwables.propagateIfInstanceOf(cause, SQLException.class);
+			throw new SQLException("Could not read records from: " + source.getName(), cause);
+		}
+	}
+
+	private void execute(Connection connection, String query) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			log.debug("Executing: " + query);
+			statement.execute(query);
+		}
+	}
+
+}
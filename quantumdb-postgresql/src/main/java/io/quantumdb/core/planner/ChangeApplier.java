@@ -0,0 +1,111 @@
+package io.quantumdb.core.planner;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Applies the changes provided by a ChangeFeed (when using the QUEUE or LOGICAL sync mode) to the target tables of the
+ * source tables. While a fork is running, a background thread periodically applies the changes in batches, each in a
+ * transaction of its own. Every batch copies the current state of the changed records from the source table, so that
+ * only the last change to a record is applied, no matter how often it was changed.
+ *
+ * The dispatchers are looked up in the specified Map, which must be guarded by synchronizing on the Map itself. The Map
+ * is locked while a batch is applied, so that dispatchers are never replaced while one of their batches is applied.
+ */
+@Slf4j
+class ChangeApplier {
+
+	private static final long INTERVAL = 1;
+	private static final long TIMEOUT = 60;
+
+	/**
+	 * Applies the changes of the records whose identities are in the batch table (see ChangeQueue) to all target
+	 * tables of the specified dispatcher. This does not commit the transaction of the Connection.
+	 */
+	static void applyBatch(Connection connection, SyncDispatcher dispatcher) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			for (String query : dispatcher.getApplyStatements()) {
+				log.debug("Executing: " + query);
+				statement.execute(query);
+			}
+		}
+	}
+
+	private final PostgresqlBackend backend;
+	private final Map<String, SyncDispatcher> dispatchers;
+	private final ChangeFeed feed;
+
+	private ScheduledExecutorService executor;
+	private volatile boolean running;
+
+	ChangeApplier(PostgresqlBackend backend, Map<String, SyncDispatcher> dispatchers, ChangeFeed feed) {
+		this.backend = backend;
+		this.dispatchers = dispatchers;
+		this.feed = feed;
+	}
+
+	/**
+	 * Starts applying changes in the background.
+	 */
+	void start() {
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("change-applier-%d")
+				.build());
+
+		running = true;
+		executor.scheduleWithFixedDelay(this::applyChanges, INTERVAL, INTERVAL, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops applying changes in the background, after the batch which is currently being applied (if any).
+	 */
+	void stop() throws InterruptedException {
+		if (executor == null) {
+			return;
+		}
+
+		running = false;
+		executor.shutdown();
+		if (!executor.awaitTermination(TIMEOUT, TimeUnit.SECONDS)) {
+			log.warn("Change applier did not stop within {} seconds", TIMEOUT);
+			executor.shutdownNow();
+		}
+		executor = null;
+	}
+
+	private void applyChanges() {
+		try (Connection connection = LoadMonitor.connect(backend)) {
+			connection.setAutoCommit(false);
+
+			boolean more;
+			do {
+				synchronized (dispatchers) {
+					more = feed.apply(connection, dispatchers);
+				}
+			}
+			while (more && running);
+
+			Collection<String> sourceRefIds;
+			synchronized (dispatchers) {
+				sourceRefIds = ImmutableList.copyOf(dispatchers.keySet());
+			}
+			feed.reportLag(connection, sourceRefIds);
+			connection.commit();
+		}
+		catch (SQLException e) {
+			// The changes which were not applied remain in the feed, and are applied by a later attempt.
+			log.warn("Could not apply changes: " + e.getMessage(), e);
+		}
+	}
+
+}
@@ -0,0 +1,30 @@
+package io.quantumdb.core.planner;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Provides the changes to source tables which have not yet been applied to their target tables, when the source
+ * tables are not synchronized by triggers which apply their changes directly. A ChangeApplier periodically asks the
+ * ChangeFeed to apply its changes in batches.
+ */
+interface ChangeFeed {
+
+	/**
+	 * Applies the next batch of changes to the target tables of the specified dispatchers, and commits the
+	 * transaction of the Connection.
+	 *
+	 * @param dispatchers The installed dispatchers, indexed by the refId of their source table.
+	 *
+	 * @return True if a full batch of changes was applied, meaning that more changes may be ready to be applied.
+	 */
+	boolean apply(Connection connection, Map<String, SyncDispatcher> dispatchers) throws SQLException;
+
+	/**
+	 * Logs how far the target tables of the specified source tables lag behind, if they lag behind at all.
+	 */
+	void reportLag(Connection connection, Collection<String> sourceRefIds) throws SQLException;
+
+}
@@ -0,0 +1,208 @@
+package io.quantumdb.core.planner;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import io.quantumdb.core.schema.definitions.Column;
+import io.quantumdb.core.utils.QueryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Describes the "quantumdb.sync_queue" table, to which the triggers of source tables append their changes when using
+ * the QUEUE sync mode. For every modified record only the operation and the values which identify the record in the
+ * target tables are recorded (as JSON), which keeps the triggers cheap. Queued changes are moved in batches into a
+ * temporary table of the applying connection, and applied to the target tables from there.
+ */
+@Slf4j
+class ChangeQueue implements ChangeFeed {
+
+	static final String TABLE = "quantumdb.sync_queue";
+
+	private static final String BATCH_TABLE = "quantumdb_sync_batch";
+	private static final int BATCH_SIZE = 10_000;
+
+	/**
+	 * Creates the block of PL/pgSQL which queues a change of the specified source table. When an UPDATE changes the
+	 * identity of a record, both the old and the new identity are queued, so that the record with the old identity
+	 * is removed from the target tables.
+	 *
+	 * @param keyColumns The columns of the source table which identify its records in the target tables.
+	 */
+	static QueryBuilder createEnqueueStatement(String sourceRefId, List<String> keyColumns) {
+		String oldKeys = keyColumns.stream().map(column -> "OLD.\"" + column + "\"").collect(Collectors.joining(", "));
+		String newKeys = keyColumns.stream().map(column -> "NEW.\"" + column + "\"").collect(Collectors.joining(", "));
+
+		return new QueryBuilder()
+				.append("  IF TG_OP = 'INSERT' THEN")
+				.append("    " + createInsertStatement(sourceRefId, keyColumns, "NEW"))
+				.append("  ELSIF TG_OP = 'UPDATE' THEN")
+				.append("    " + createInsertStatement(sourceRefId, keyColumns, "NEW"))
+				.append("    IF (" + oldKeys + ") IS DISTINCT FROM (" + newKeys + ") THEN")
+				.append("      " + createInsertStatement(sourceRefId, keyColumns, "OLD"))
+				.append("    END IF;")
+				.append("  ELSIF TG_OP = 'DELETE' THEN")
+				.append("    " + createInsertStatement(sourceRefId, keyColumns, "OLD"))
+				.append("  END IF;");
+	}
+
+	private static String createInsertStatement(String sourceRefId, List<String> keyColumns, String record) {
+		String identity = keyColumns.stream()
+				.map(column -> "'" + column.replace("'", "''") + "', " + record + ".\"" + column + "\"")
+				.collect(Collectors.joining(", "));
+
+		return "INSERT INTO " + TABLE + " (source_ref_id, operation, identity) VALUES ("
+				+ quote(sourceRefId) + ", TG_OP, json_build_object(" + identity + ")::text);";
+	}
+
+	/**
+	 * @return The statement which creates the temporary table which holds the identities of the changed records of a
+	 * batch. Its rows are removed when the transaction which applies the batch commits.
+	 */
+	static String createBatchTableStatement() {
+		return "CREATE TEMPORARY TABLE IF NOT EXISTS " + BATCH_TABLE + " (identity TEXT NOT NULL) ON COMMIT DELETE ROWS;";
+	}
+
+	/**
+	 * @return The statement which adds the identity (as JSON) of a changed record to the batch table.
+	 */
+	static String createAddToBatchStatement() {
+		return "INSERT INTO " + BATCH_TABLE + " (identity) VALUES (?);";
+	}
+
+	/**
+	 * @return The statement which removes all identities from the batch table, so that it can be used for the next
+	 * batch within the same transaction.
+	 */
+	static String createClearBatchStatement() {
+		return "DELETE FROM " + BATCH_TABLE + ";";
+	}
+
+	/**
+	 * @return The statement which moves the oldest queued changes of the specified source table (at most the specified
+	 * number) from the queue into the temporary batch table.
+	 */
+	static String createTakeBatchStatement(String sourceRefId, int batchSize) {
+		return new QueryBuilder()
+				.append("WITH batch AS (")
+				.append("  DELETE FROM " + TABLE + " WHERE id IN (")
+				.append("    SELECT id FROM " + TABLE + " WHERE source_ref_id = " + quote(sourceRefId))
+				.append("    ORDER BY id ASC LIMIT " + batchSize)
+				.append("  ) RETURNING identity")
+				.append(")")
+				.append("INSERT INTO " + BATCH_TABLE + " (identity) SELECT identity FROM batch;")
+				.toString();
+	}
+
+	/**
+	 * @return A subquery which selects the distinct identities in the batch table, converted back to the types of the
+	 * specified columns, and named after them.
+	 */
+	static String createBatchQuery(List<Column> keyColumns) {
+		String values = keyColumns.stream()
+				.map(column -> "CAST(b.identity::json ->> '" + column.getName().replace("'", "''") + "' AS "
+						+ column.getType() + ") AS \"" + column.getName() + "\"")
+				.collect(Collectors.joining(", "));
+
+		return "(SELECT DISTINCT " + values + " FROM " + BATCH_TABLE + " b)";
+	}
+
+	/**
+	 * @return The statement which removes all queued changes of the specified source table.
+	 */
+	static String createClearStatement(String sourceRefId) {
+		return "DELETE FROM " + TABLE + " WHERE source_ref_id = " + quote(sourceRefId) + ";";
+	}
+
+	/**
+	 * Applies all changes of the source table of the specified dispatcher which are currently queued. This does not
+	 * commit the transaction of the Connection.
+	 *
+	 * @return The number of applied changes.
+	 */
+	static long drain(Connection connection, SyncDispatcher dispatcher) throws SQLException {
+		long applied = 0;
+		int batch;
+		do {
+			batch = applyBatch(connection, dispatcher);
+			applied += batch;
+		}
+		while (batch > 0);
+		return applied;
+	}
+
+	private static int applyBatch(Connection connection, SyncDispatcher dispatcher) throws SQLException {
+		String sourceRefId = dispatcher.getSourceRefId();
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(createBatchTableStatement());
+			int size = statement.executeUpdate(createTakeBatchStatement(sourceRefId, BATCH_SIZE));
+			if (size > 0) {
+				ChangeApplier.applyBatch(connection, dispatcher);
+				statement.execute(createClearBatchStatement());
+				log.debug("Applied {} queued change(s) of table: {}", size, sourceRefId);
+			}
+			return size;
+		}
+	}
+
+	private static String quote(String value) {
+		return "'" + value.replace("'", "''") + "'";
+	}
+
+	/**
+	 * Applies a batch of queued changes for each of the source tables, each in a transaction of its own.
+	 */
+	@Override
+	public boolean apply(Connection connection, Map<String, SyncDispatcher> dispatchers) throws SQLException {
+		boolean full = false;
+		for (SyncDispatcher dispatcher : dispatchers.values()) {
+			full |= applyBatch(connection, dispatcher) == BATCH_SIZE;
+			connection.commit();
+		}
+		return full;
+	}
+
+	@Override
+	public void reportLag(Connection connection, Collection<String> sourceRefIds) throws SQLException {
+		String query = new QueryBuilder()
+				.append("SELECT COUNT(*) AS lag, EXTRACT(EPOCH FROM NOW() - MIN(created)) AS age")
+				.append("FROM " + TABLE + " WHERE source_ref_id = ANY(?);")
+				.toString();
+
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			Array refIds = connection.createArrayOf("varchar", sourceRefIds.toArray());
+			statement.setArray(1, refIds);
+
+			ResultSet resultSet = statement.executeQuery();
+			resultSet.next();
+			long lag = resultSet.getLong("lag");
+			if (lag > 0) {
+				log.info("Change applier lag: {} queued change(s), oldest queued {} seconds ago", lag,
+						resultSet.getLong("age"));
+			}
+		}
+	}
+
+	/**
+	 * @return The number of changes of the specified source tables which are queued, but not yet applied.
+	 */
+	long getLag(Connection connection, Collection<String> sourceRefIds) throws SQLException {
+		String query = "SELECT COUNT(*) AS lag FROM " + TABLE + " WHERE source_ref_id = ANY(?);";
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			Array refIds = connection.createArrayOf("varchar", sourceRefIds.toArray());
+			statement.setArray(1, refIds);
+
+			ResultSet resultSet = statement.executeQuery();
+			resultSet.next();
+			return resultSet.getLong("lag");
+		}
+	}
+
+}
@@ -0,0 +1,236 @@
+package io.quantumdb.core.planner;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import lombok.Data;
+
+/**
+ * Describes a change to a single record (or a TRUNCATE of a table), as it was decoded from a logical replication slot
+ * by the "test_decoding" output plugin. A decoded change looks like this:
+ *
+ * <pre>
+ * table public.users: UPDATE: old-key: id[bigint]:1 new-tuple: id[bigint]:2 name[character varying]:'Alice'
+ * </pre>
+ *
+ * Values are kept in their text representation, and can be converted back to their original types by the database.
+ */
+@Data
+class DecodedChange {
+
+	private static final String TABLE_PREFIX = "table ";
+	private static final String OLD_KEY = "old-key:";
+	private static final String NEW_TUPLE = "new-tuple:";
+	private static final String NULL = "null";
+
+	/**
+	 * @return The DecodedChange described by the specified output of the "test_decoding" plugin, or NULL if the output
+	 * does not describe a change to a table (for instance the BEGIN and COMMIT of a transaction).
+	 */
+	static DecodedChange parse(String data) {
+		if (!data.startsWith(TABLE_PREFIX)) {
+			return null;
+		}
+
+		// A TRUNCATE of several tables at once is decoded as a single change, listing all tables.
+		Parser parser = new Parser(data, TABLE_PREFIX.length());
+		List<String> tables = Lists.newArrayList(parser.readTableName());
+		while (parser.skip(", ")) {
+			tables.add(parser.readTableName());
+		}
+		parser.expect(": ");
+		String operation = parser.readUntil(":");
+		parser.expect(":");
+
+		DecodedChange change = new DecodedChange(ImmutableList.copyOf(tables), operation);
+		if ("INSERT".equals(operation)) {
+			change.newTuple = parser.readTuple();
+		}
+		else if ("UPDATE".equals(operation)) {
+			if (parser.skip(" " + OLD_KEY)) {
+				change.oldKey = parser.readTuple();
+				parser.expect(" " + NEW_TUPLE);
+			}
+			change.newTuple = parser.readTuple();
+		}
+		else if ("DELETE".equals(operation)) {
+			change.oldKey = parser.readTuple();
+		}
+		return change;
+	}
+
+	private final ImmutableList<String> tables;
+	private final String operation;
+
+	private Map<String, String> oldKey;
+	private Map<String, String> newTuple;
+
+	String getTable() {
+		return tables.get(0);
+	}
+
+	boolean isTruncate() {
+		return "TRUNCATE".equals(operation);
+	}
+
+	/**
+	 * @return The identities (values of the specified columns) of the records which were affected by the change: the
+	 * new identity of an inserted or updated record, and the old identity of a deleted record, or of an updated
+	 * record whose identity was changed.
+	 *
+	 * @throws IllegalStateException If the change does not contain all of the specified columns, which happens when
+	 * the REPLICA IDENTITY of the table does not cover them.
+	 */
+	List<Map<String, String>> getIdentities(List<String> columns) {
+		if (isTruncate()) {
+			return Collections.emptyList();
+		}
+
+		List<Map<String, String>> identities = Lists.newArrayList();
+		if (newTuple != null) {
+			identities.add(getIdentity(newTuple, columns));
+		}
+		if (oldKey != null || "DELETE".equals(operation)) {
+			identities.add(getIdentity(oldKey == null ? Collections.emptyMap() : oldKey, columns));
+		}
+		return identities;
+	}
+
+	private Map<String, String> getIdentity(Map<String, String> tuple, List<String> columns) {
+		Map<String, String> identity = Maps.newLinkedHashMap();
+		for (String column : columns) {
+			if (!tuple.containsKey(column)) {
+				throw new IllegalStateException("Decoded " + operation + " of table: " + getTable()
+						+ " does not contain column: " + column + ", make sure the REPLICA IDENTITY of the table "
+						+ "includes all of its identity columns");
+			}
+			identity.put(column, tuple.get(column));
+		}
+		return identity;
+	}
+
+	private static class Parser {
+
+		private final String data;
+		private int position;
+
+		private Parser(String data, int position) {
+			this.data = data;
+			this.position = position;
+		}
+
+		private boolean skip(String expected) {
+			if (data.startsWith(expected, position)) {
+				position += expected.length();
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(String expected) {
+			if (!skip(expected)) {
+				throw new IllegalArgumentException("Expected: '" + expected + "' at position: " + position
+						+ " of decoded change: " + data);
+			}
+		}
+
+		private String readUntil(String delimiter) {
+			int end = data.indexOf(delimiter, position);
+			if (end < 0) {
+				throw new IllegalArgumentException("Expected: '" + delimiter + "' after position: " + position
+						+ " of decoded change: " + data);
+			}
+			String value = data.substring(position, end);
+			position = end;
+			return value;
+		}
+
+		/**
+		 * @return The name of a table, without the name of its schema.
+		 */
+		private String readTableName() {
+			String name = readIdentifier();
+			while (skip(".")) {
+				name = readIdentifier();
+			}
+			return name;
+		}
+
+		private String readIdentifier() {
+			if (data.startsWith("\"", position)) {
+				return readQuoted('"');
+			}
+
+			int end = position;
+			while (end < data.length() && ".,:[ ".indexOf(data.charAt(end)) < 0) {
+				end++;
+			}
+			String value = data.substring(position, end);
+			position = end;
+			return value;
+		}
+
+		private String readQuoted(char quote) {
+			StringBuilder builder = new StringBuilder();
+			position++;
+			while (position < data.length()) {
+				char character = data.charAt(position++);
+				if (character != quote) {
+					builder.append(character);
+				}
+				else if (position < data.length() && data.charAt(position) == quote) {
+					builder.append(quote);
+					position++;
+				}
+				else {
+					return builder.toString();
+				}
+			}
+			throw new IllegalArgumentException("Unterminated quoted value in decoded change: " + data);
+		}
+
+		/**
+		 * Reads columns formatted as: name[type]:value, separated by spaces, until either the end of the data, or
+		 * the start of the new tuple of an UPDATE.
+		 */
+		private Map<String, String> readTuple() {
+			Map<String, String> tuple = Maps.newLinkedHashMap();
+			while (position < data.length() && !data.startsWith(" " + NEW_TUPLE, position)) {
+				expect(" ");
+				if (data.startsWith("(", position)) {
+					// For instance "(no-tuple-data)", when the REPLICA IDENTITY of the table is NOTHING.
+					readUntil(")");
+					expect(")");
+					continue;
+				}
+
+				String column = readIdentifier();
+				expect("[");
+				readUntil("]:");
+				expect("]:");
+				tuple.put(column, readValue());
+			}
+			return tuple;
+		}
+
+		private String readValue() {
+			if (data.startsWith("'", position)) {
+				return readQuoted('\'');
+			}
+
+			int end = data.indexOf(' ', position);
+			if (end < 0) {
+				end = data.length();
+			}
+			String value = data.substring(position, end);
+			position = end;
+			return NULL.equals(value) ? null : value;
+		}
+
+	}
+
+}
@@ -0,0 +1,226 @@
+package io.quantumdb.core.planner;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+import io.quantumdb.core.utils.QueryBuilder;
+import io.quantumdb.core.versioning.Version;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps track of which steps of a fork towards a specific version have already been executed, using the
+ * "quantumdb.fork_progress" table. This allows a fork which was interrupted (for instance because the process
+ * running it crashed) to be continued, instead of having to start over from scratch.
+ */
+@Slf4j
+class ForkProgress {
+
+	enum Step {
+		/**
+		 * A ghost table was created. The subject is empty, the details contain the name of the ghost table.
+		 */
+		GHOST_TABLE,
+
+		/**
+		 * A NULL record was inserted into the ghost table. The details describe its identity, if any.
+		 */
+		ADD_NULL,
+
+		/**
+		 * The NULL record was deleted from the ghost table.
+		 */
+		DROP_NULL,
+
+		/**
+		 * Data was copied into the ghost table. The subject contains the columns which were copied.
+		 */
+		COPY,
+
+		/**
+		 * A synchronizer towards the table was created. The subject contains the source table, the details
+		 * describe the function and trigger.
+		 */
+		SYNC,
+
+		/**
+		 * All indexes of the ghost table were created.
+		 */
+		INDEXES,
+
+		/**
+		 * Changes decoded from the replication slot of the fork were applied (when using the LOGICAL sync mode). The
+		 * refId is the name of the slot, the subject is empty, and the details contain the LSN up to which the changes
+		 * were applied.
+		 */
+		SLOT
+	}
+
+	@Data
+	static class Entry {
+		private final String refId;
+		private final Step step;
+		private final String subject;
+		private final String details;
+	}
+
+	static ForkProgress load(Connection connection, Version version) throws SQLException {
+		String query = "SELECT * FROM quantumdb.fork_progress WHERE version_id = ?;";
+
+		List<Entry> entries = Lists.newArrayList();
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, version.getId());
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				entries.add(new Entry(resultSet.getString("ref_id"), Step.valueOf(resultSet.getString("step")),
+						resultSet.getString("subject"), resultSet.getString("details")));
+			}
+		}
+
+		log.debug("Loaded progress of fork to version: {} - {}", version.getId(), entries);
+		return new ForkProgress(version, entries);
+	}
+
+	private final Version version;
+	private final List<Entry> entries;
+
+	private ForkProgress(Version version, List<Entry> entries) {
+		this.version = version;
+		this.entries = Lists.newCopyOnWriteArrayList(entries);
+	}
+
+	boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	List<Entry> getEntries(Step step) {
+		return entries.stream()
+				.filter(entry -> entry.getStep() == step)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return A Map of table names to the ref IDs of the ghost tables created for them.
+	 */
+	Map<String, String> getGhostTables() {
+		return getEntries(Step.GHOST_TABLE).stream()
+				.collect(Collectors.toMap(Entry::getDetails, Entry::getRefId));
+	}
+
+	boolean isCompleted(String refId, Step step) {
+		return isCompleted(refId, step, "");
+	}
+
+	boolean isCompleted(String refId, Step step, String subject) {
+		return find(refId, step, subject).isPresent();
+	}
+
+	/**
+	 * Records that the specified step was executed. This does not commit the transaction of the Connection.
+	 */
+	void record(Connection connection, String refId, Step step, String subject, String details)
+			throws SQLException {
+
+		String query = new QueryBuilder()
+				.append("UPDATE quantumdb.fork_progress SET details = ?")
+				.append("WHERE version_id = ? AND ref_id = ? AND step = ? AND subject = ?;")
+				.toString();
+
+		int updated;
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, details);
+			statement.setString(2, version.getId());
+			statement.setString(3, refId);
+			statement.setString(4, step.name());
+			statement.setString(5, subject);
+			updated = statement.executeUpdate();
+		}
+
+		if (updated == 0) {
+			query = new QueryBuilder()
+					.append("INSERT INTO quantumdb.fork_progress (version_id, ref_id, step, subject, details)")
+					.append("VALUES (?, ?, ?, ?, ?);")
+					.toString();
+
+			try (PreparedStatement statement = connection.prepareStatement(query)) {
+				statement.setString(1, version.getId());
+				statement.setString(2, refId);
+				statement.setString(3, step.name());
+				statement.setString(4, subject);
+				statement.setString(5, details);
+				statement.executeUpdate();
+			}
+		}
+
+		find(refId, step, subject).ifPresent(entries::remove);
+		entries.add(new Entry(refId, step, subject, details));
+	}
+
+	/**
+	 * Replaces all references to a ghost table created by an earlier attempt with references to the ghost table
+	 * which takes its place. This does not commit the transaction of the Connection.
+	 */
+	void replaceRefId(Connection connection, String previousRefId, String refId) throws SQLException {
+		List<String> queries = Lists.newArrayList(
+				"UPDATE quantumdb.fork_progress SET ref_id = ? WHERE version_id = ? AND ref_id = ?;",
+				"UPDATE quantumdb.fork_progress SET subject = ? WHERE version_id = ? AND step = 'SYNC' AND subject = ?;",
+				"UPDATE quantumdb.backfill_checkpoints SET source_ref_id = ? WHERE version_id = ? AND source_ref_id = ?;",
+				"UPDATE quantumdb.backfill_checkpoints SET target_ref_id = ? WHERE version_id = ? AND target_ref_id = ?;");
+
+		for (String query : queries) {
+			try (PreparedStatement statement = connection.prepareStatement(query)) {
+				statement.setString(1, refId);
+				statement.setString(2, version.getId());
+				statement.setString(3, previousRefId);
+				statement.executeUpdate();
+			}
+		}
+
+		List<Entry> replaced = entries.stream()
+				.map(entry -> {
+					String entryRefId = entry.getRefId().equals(previousRefId) ? refId : entry.getRefId();
+					String subject = entry.getStep() == Step.SYNC && entry.getSubject().equals(previousRefId)
+							? refId : entry.getSubject();
+
+					return new Entry(entryRefId, entry.getStep(), subject, entry.getDetails());
+				})
+				.collect(Collectors.toList());
+
+		entries.clear();
+		entries.addAll(replaced);
+	}
+
+	/**
+	 * Removes all progress and backfill checkpoints of the fork. This does not commit the transaction of the
+	 * Connection.
+	 */
+	void clear(Connection connection) throws SQLException {
+		List<String> queries = Lists.newArrayList(
+				"DELETE FROM quantumdb.fork_progress WHERE version_id = ?;",
+				"DELETE FROM quantumdb.backfill_checkpoints WHERE version_id = ?;");
+
+		for (String query : queries) {
+			try (PreparedStatement statement = connection.prepareStatement(query)) {
+				statement.setString(1, version.getId());
+				statement.executeUpdate();
+			}
+		}
+		entries.clear();
+	}
+
+	private Optional<Entry> find(String refId, Step step, String subject) {
+		return entries.stream()
+				.filter(entry -> entry.getRefId().equals(refId))
+				.filter(entry -> entry.getStep() == step)
+				.filter(entry -> entry.getSubject().equals(subject))
+				.findFirst();
+	}
+
+}
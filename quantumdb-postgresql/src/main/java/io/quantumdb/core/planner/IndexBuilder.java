@@ -0,0 +1,247 @@
+package io.quantumdb.core.planner;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.quantumdb.core.schema.definitions.Index;
+import io.quantumdb.core.utils.QueryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Builds the indexes of ghost tables using CREATE INDEX CONCURRENTLY, so that the ghost tables remain writable for
+ * the sync functions while their indexes are being built. Up to the configured number of indexes are built at the
+ * same time, each on its own connection, and the server's "max_parallel_maintenance_workers" are divided evenly among
+ * them. While indexes are being built, their progress is periodically reported from "pg_stat_progress_create_index"
+ * (if the server provides it).
+ *
+ * The primary key of each ghost table is created along with the table itself, so that copying records in batches
+ * can use it to find the next batch.
+ */
+@Slf4j
+class IndexBuilder {
+
+	private static final long PROGRESS_INTERVAL = 10;
+
+	private final PostgresqlBackend backend;
+	private final int workers;
+	private final Set<Integer> backendPids;
+
+	IndexBuilder(PostgresqlBackend backend) {
+		this.backend = backend;
+		this.workers = Math.max(1, backend.getIndexWorkers());
+		this.backendPids = Sets.newConcurrentHashSet();
+	}
+
+	/**
+	 * Builds all specified indexes. Indexes which already exist and are valid (for instance because they were built
+	 * by an earlier, interrupted attempt) are skipped.
+	 */
+	void build(Collection<Index> indexes) throws SQLException, InterruptedException {
+		if (indexes.isEmpty()) {
+			return;
+		}
+
+		ThreadFactory threadFactory = new ThreadFactoryBuilder()
+				.setNameFormat("index-builder-%d")
+				.build();
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, indexes.size()), threadFactory);
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(threadFactory);
+
+		try (Connection connection = backend.connect()) {
+			int maintenanceWorkers = queryMaintenanceWorkers(connection);
+			if (supportsProgressReporting(connection)) {
+				reporter.scheduleWithFixedDelay(() -> reportProgress(connection), PROGRESS_INTERVAL, PROGRESS_INTERVAL,
+						TimeUnit.SECONDS);
+			}
+
+			try {
+				List<Future<Void>> futures = Lists.newArrayList();
+				for (Index index : indexes) {
+					futures.add(executor.submit(() -> {
+						build(index, maintenanceWorkers);
+						return null;
+					}));
+				}
+
+				awaitCompletion(futures);
+			}
+			finally {
+				reporter.shutdownNow();
+				reporter.awaitTermination(PROGRESS_INTERVAL, TimeUnit.SECONDS);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void build(Index index, int maintenanceWorkers) throws SQLException {
+		String indexName = index.getIndexName();
+		try (Connection connection = backend.connect()) {
+			Boolean valid = queryValidity(connection, indexName);
+			if (Boolean.TRUE.equals(valid)) {
+				log.info("Index: {} already exists, skipping...", indexName);
+				return;
+			}
+			else if (Boolean.FALSE.equals(valid)) {
+				log.info("Dropping invalid index: {} left behind by an earlier attempt", indexName);
+				execute(connection, "DROP INDEX CONCURRENTLY IF EXISTS " + indexName + ";");
+			}
+
+			if (maintenanceWorkers > 0) {
+				int share = Math.max(1, maintenanceWorkers / workers);
+				execute(connection, "SET max_parallel_maintenance_workers = " + share + ";");
+			}
+
+			int pid = queryBackendPid(connection);
+			backendPids.add(pid);
+			try {
+				long start = System.currentTimeMillis();
+				log.info("Creating index: {} on: {}", indexName, index.getParent().getName());
+				execute(connection, TableCreator.createIndexStatement(index, true).toString());
+				log.info("Created index: {} on: {}, took: {} ms", indexName, index.getParent().getName(),
+						System.currentTimeMillis() - start);
+			}
+			catch (SQLException e) {
+				// A failed CREATE INDEX CONCURRENTLY leaves an invalid index behind.
+				try {
+					execute(connection, "DROP INDEX CONCURRENTLY IF EXISTS " + indexName + ";");
+				}
+				catch (SQLException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+				throw e;
+			}
+			finally {
+				backendPids.remove(pid);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of parallel maintenance workers the server allows per index build, or 0 if the server does
+	 * not support parallel index builds.
+	 */
+	private int queryMaintenanceWorkers(Connection connection) throws SQLException {
+		String query = "SELECT setting FROM pg_settings WHERE name = 'max_parallel_maintenance_workers';";
+		try (Statement statement = connection.createStatement()) {
+			ResultSet resultSet = statement.executeQuery(query);
+			if (resultSet.next()) {
+				return Integer.parseInt(resultSet.getString("setting"));
+			}
+			return 0;
+		}
+	}
+
+	private boolean supportsProgressReporting(Connection connection) throws SQLException {
+		String query = new QueryBuilder()
+				.append("SELECT 1 FROM pg_views")
+				.append("WHERE schemaname = 'pg_catalog' AND viewname = 'pg_stat_progress_create_index';")
+				.toString();
+
+		try (Statement statement = connection.createStatement()) {
+			return statement.executeQuery(query).next();
+		}
+	}
+
+	private void reportProgress(Connection connection) {
+		if (backendPids.isEmpty()) {
+			return;
+		}
+
+		String query = new QueryBuilder()
+				.append("SELECT i.relname AS index_name, t.relname AS table_name, p.phase,")
+				.append("  p.blocks_done, p.blocks_total, p.tuples_done, p.tuples_total")
+				.append("FROM pg_stat_progress_create_index p")
+				.append("JOIN pg_class i ON i.oid = p.index_relid")
+				.append("JOIN pg_class t ON t.oid = p.relid")
+				.append("WHERE p.pid = ANY(?);")
+				.toString();
+
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			Array pids = connection.createArrayOf("int4", backendPids.toArray());
+			statement.setArray(1, pids);
+
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				log.info("Creating index: {} on: {}, phase: {}, blocks: {}/{}, tuples: {}/{}",
+						resultSet.getString("index_name"), resultSet.getString("table_name"),
+						resultSet.getString("phase"), resultSet.getLong("blocks_done"),
+						resultSet.getLong("blocks_total"), resultSet.getLong("tuples_done"),
+						resultSet.getLong("tuples_total"));
+			}
+		}
+		catch (SQLException e) {
+			log.warn("Could not report progress of index creation: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return TRUE if the index exists and is valid, FALSE if it exists but is invalid, or NULL if it doesn't exist.
+	 */
+	private Boolean queryValidity(Connection connection, String indexName) throws SQLException {
+		String query = new QueryBuilder()
+				.append("SELECT x.indisvalid FROM pg_index x")
+				.append("JOIN pg_class c ON c.oid = x.indexrelid")
+				.append("JOIN pg_namespace n ON n.oid = c.relnamespace")
+				.append("WHERE n.nspname = current_schema() AND c.relname = ?;")
+				.toString();
+
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, indexName);
+			ResultSet resultSet = statement.executeQuery();
+			if (resultSet.next()) {
+				return resultSet.getBoolean("indisvalid");
+			}
+			return null;
+		}
+	}
+
+	private int queryBackendPid(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			ResultSet resultSet = statement.executeQuery("SELECT pg_backend_pid();");
+			resultSet.next();
+			return resultSet.getInt(1);
+		}
+	}
+
+	private void awaitCompletion(List<Future<Void>> futures) throws SQLException, InterruptedException {
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			}
+			catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				Throwables.propagateIfInstanceOf(cause, SQLException.class);
+				throw Throwables.propagate(cause);
+			}
+		}
+	}
+
+	private void execute(Connection connection, String query) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			log.debug("Executing: " + query);
+			statement.execute(query);
+		}
+	}
+
+}
@@ -0,0 +1,29 @@
+package io.quantumdb.core.planner;
+
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * Describes a slice of a table's identity space, expressed as bounds on the first identity column, which can be
+ * migrated independently of the other slices of the same table.
+ */
+@Data
+class KeyRange {
+
+	private final int index;
+
+	/**
+	 * The exclusive lower bound of the first identity column, or NULL if this range starts at the very first record.
+	 */
+	private final Object lower;
+
+	/**
+	 * The inclusive upper bound of the first identity column.
+	 */
+	private final Object upper;
+
+	private volatile Map<String, Object> lastProcessedId;
+	private volatile boolean completed;
+
+}
@@ -0,0 +1,172 @@
+package io.quantumdb.core.planner;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import io.quantumdb.core.schema.definitions.Column;
+import io.quantumdb.core.schema.definitions.Table;
+import io.quantumdb.core.utils.QueryBuilder;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Splits the identity space of a table into a number of KeyRanges, based on the first identity column. Integral
+ * identities are split into evenly sized ranges between the lowest and highest identity. For other types the
+ * histogram bounds gathered by ANALYZE (pg_stats) are used to determine ranges of roughly equal size. Since those
+ * bounds must be ordered exactly like the database orders the identity column (for instance according to the
+ * collation of a text column), they are sorted by the database rather than in Java.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+class KeyRangePartitioner {
+
+	static List<KeyRange> partition(Connection connection, Table table, Object highest, int count)
+			throws SQLException {
+
+		Column column = table.getIdentityColumns().get(0);
+
+		List<Object> bounds = Lists.newArrayList();
+		if (count > 1) {
+			switch (column.getType().getType()) {
+				case SMALLINT:
+				case INTEGER:
+				case BIGINT:
+					bounds = splitEvenly(queryLowest(connection, table, column), highest, count);
+					break;
+				default:
+					bounds = queryHistogramBounds(connection, table, column, highest, count);
+					break;
+			}
+		}
+
+		// The bounds are distinct, in ascending order, and lower than the highest identity.
+		List<KeyRange> ranges = Lists.newArrayList();
+		Object lower = null;
+		for (Object bound : bounds) {
+			ranges.add(new KeyRange(ranges.size(), lower, bound));
+			lower = bound;
+		}
+		ranges.add(new KeyRange(ranges.size(), lower, highest));
+
+		if (ranges.size() < count) {
+			log.info("Could only split table: {} into {} range(s) instead of {}", table.getName(), ranges.size(), count);
+		}
+		return ranges;
+	}
+
+	private static List<Object> splitEvenly(Object lowest, Object highest, int count) {
+		long low = ((Number) lowest).longValue();
+		long high = ((Number) highest).longValue();
+		long step = (high - low) / count;
+
+		List<Object> bounds = Lists.newArrayList();
+		if (step > 0) {
+			for (int i = 1; i < count; i++) {
+				bounds.add(low + step * i);
+			}
+		}
+		return bounds;
+	}
+
+	private static Object queryLowest(Connection connection, Table table, Column column) throws SQLException {
+		String query = new QueryBuilder()
+				.append("SELECT " + column.getName())
+				.append("FROM " + table.getName())
+				.append("ORDER BY " + column.getName() + " ASC")
+				.append("LIMIT 1")
+				.toString();
+
+		try (Statement statement = connection.createStatement()) {
+			ResultSet resultSet = statement.executeQuery(query);
+			if (resultSet.next()) {
+				return resultSet.getObject(1);
+			}
+			throw new SQLException("Table: " + table.getName() + " contains no records!");
+		}
+	}
+
+	/**
+	 * @return Up to (count - 1) distinct histogram bounds of the specified column, which are lower than the highest
+	 * identity, in the order in which the database sorts the column.
+	 */
+	private static List<Object> queryHistogramBounds(Connection connection, Table table, Column column,
+			Object highest, int count) throws SQLException {
+
+		String collation = queryCollation(connection, table, column);
+		String bound = collation == null ? "h.bound" : "h.bound COLLATE " + collation;
+
+		String query = new QueryBuilder()
+				.append("SELECT bound FROM (")
+				.append("  SELECT DISTINCT " + bound + " AS bound")
+				.append("  FROM pg_stats s, unnest(s.histogram_bounds::text::" + column.getType() + "[]) AS h (bound)")
+				.append("  WHERE s.schemaname = current_schema() AND s.tablename = ? AND s.attname = ?")
+				.append(") bounds")
+				.append("WHERE bound < CAST(? AS " + column.getType() + ")")
+				.append("ORDER BY bound ASC;")
+				.toString();
+
+		List<Object> histogram = Lists.newArrayList();
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, table.getName());
+			statement.setString(2, column.getName());
+			statement.setString(3, highest.toString());
+
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				histogram.add(resultSet.getObject(1));
+			}
+		}
+
+		if (histogram.isEmpty()) {
+			log.warn("No statistics available for: {}.{}, consider running ANALYZE on this table",
+					table.getName(), column.getName());
+			return histogram;
+		}
+
+		List<Object> bounds = Lists.newArrayList();
+		int previous = -1;
+		for (int i = 1; i < count; i++) {
+			int index = i * histogram.size() / count;
+			if (index > previous) {
+				bounds.add(histogram.get(index));
+				previous = index;
+			}
+		}
+		return bounds;
+	}
+
+	/**
+	 * @return The qualified name of the collation of the specified column, or NULL if its type is not collatable.
+	 */
+	private static String queryCollation(Connection connection, Table table, Column column) throws SQLException {
+		String query = new QueryBuilder()
+				.append("SELECT n.nspname, c.collname")
+				.append("FROM pg_attribute a")
+				.append("JOIN pg_collation c ON c.oid = a.attcollation")
+				.append("JOIN pg_namespace n ON n.oid = c.collnamespace")
+				.append("WHERE a.attrelid = CAST(? AS regclass) AND a.attname = ?;")
+				.toString();
+
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, table.getName());
+			statement.setString(2, column.getName());
+
+			ResultSet resultSet = statement.executeQuery();
+			if (resultSet.next()) {
+				return quote(resultSet.getString("nspname")) + "." + quote(resultSet.getString("collname"));
+			}
+			return null;
+		}
+	}
+
+	private static String quote(String identifier) {
+		return "\"" + identifier.replace("\"", "\"\"") + "\"";
+	}
+
+}
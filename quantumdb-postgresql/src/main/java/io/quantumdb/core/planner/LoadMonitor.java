@@ -0,0 +1,101 @@
+package io.quantumdb.core.planner;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import io.quantumdb.core.backends.Backend;
+import io.quantumdb.core.utils.QueryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Samples the load of the database server, using a dedicated connection. Backends opened through connect() belong
+ * to the migrator itself, and are excluded from the sampled load, so that a BackfillGovernor does not back off
+ * because of the pressure its own workers put on the database. Locks requested by other backends which are held by
+ * the migrator are still counted, since those represent the impact of the migration on the application.
+ */
+@Slf4j
+public class LoadMonitor implements AutoCloseable {
+
+	/**
+	 * The application_name used by connections migrating data, so these are not counted as load.
+	 */
+	static final String APPLICATION_NAME = "quantumdb-backfill";
+
+	/**
+	 * @return A new connection whose activity is not counted as load by the LoadMonitor.
+	 */
+	static Connection connect(Backend backend) throws SQLException {
+		Connection connection = backend.connect();
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("SET application_name = '" + APPLICATION_NAME + "';");
+		}
+		return connection;
+	}
+
+	private final Backend backend;
+	private Connection connection;
+	private String query;
+
+	public LoadMonitor(Backend backend) {
+		this.backend = backend;
+	}
+
+	public synchronized LoadSample sample() throws SQLException {
+		if (connection == null) {
+			connection = backend.connect();
+			query = createQuery(connection);
+		}
+
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, APPLICATION_NAME);
+			statement.setString(2, APPLICATION_NAME);
+
+			ResultSet resultSet = statement.executeQuery();
+			if (!resultSet.next()) {
+				throw new SQLException("Query produced 0 rows!");
+			}
+
+			LoadSample sample = new LoadSample(System.currentTimeMillis(), resultSet.getLong("active_backends"),
+					resultSet.getLong("lock_waits"), resultSet.getLong("wal_position"),
+					resultSet.getLong("replica_lag"));
+
+			log.debug("Sampled database load: {}", sample);
+			return sample;
+		}
+	}
+
+	private String createQuery(Connection connection) throws SQLException {
+		// PostgreSQL 10 renamed all "xlog" functions and "location" columns to "wal" and "lsn" respectively.
+		DatabaseMetaData metaData = connection.getMetaData();
+		boolean renamed = metaData.getDatabaseMajorVersion() >= 10;
+		String currentLsn = renamed ? "pg_current_wal_lsn()" : "pg_current_xlog_location()";
+		String lsnDiff = renamed ? "pg_wal_lsn_diff" : "pg_xlog_location_diff";
+		String replayLsn = renamed ? "replay_lsn" : "replay_location";
+
+		return new QueryBuilder()
+				.append("SELECT")
+				.append("  (SELECT COUNT(*) FROM pg_stat_activity")
+				.append("    WHERE state = 'active' AND pid <> pg_backend_pid() AND application_name <> ?)")
+				.append("    AS active_backends,")
+				.append("  (SELECT COUNT(*) FROM pg_locks l WHERE NOT l.granted AND NOT EXISTS (")
+				.append("    SELECT 1 FROM pg_stat_activity a WHERE a.pid = l.pid AND a.application_name = ?))")
+				.append("    AS lock_waits,")
+				.append("  " + lsnDiff + "(" + currentLsn + ", '0/0') AS wal_position,")
+				.append("  (SELECT COALESCE(MAX(" + lsnDiff + "(" + currentLsn + ", " + replayLsn + ")), 0)")
+				.append("    FROM pg_stat_replication) AS replica_lag;")
+				.toString();
+	}
+
+	@Override
+	public synchronized void close() throws SQLException {
+		if (connection != null) {
+			connection.close();
+			connection = null;
+		}
+	}
+
+}
@@ -0,0 +1,31 @@
+package io.quantumdb.core.planner;
+
+import lombok.Data;
+
+@Data
+public class LoadSample {
+
+	private final long timestamp;
+
+	/**
+	 * The number of backends actively executing a query, excluding those migrating data.
+	 */
+	private final long activeBackends;
+
+	/**
+	 * The number of locks which have been requested, but have not yet been granted, excluding those requested by
+	 * backends migrating data.
+	 */
+	private final long lockWaits;
+
+	/**
+	 * The current WAL insert position in bytes.
+	 */
+	private final long walPosition;
+
+	/**
+	 * The number of bytes the slowest replica is lagging behind, or 0 if no replicas are connected.
+	 */
+	private final long replicaLag;
+
+}
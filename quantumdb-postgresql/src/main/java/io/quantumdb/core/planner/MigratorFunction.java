@@ -11,9 +11,14 @@ public class MigratorFunction {
 		INITIAL, CONSECUTIVE
 	}
 
+	public enum Strategy {
+		ROW_BY_ROW, SET_BASED
+	}
+
 	private final String name;
 	private final List<String> parameters;
 	private final String createStatement;
+	private final String callStatement;
 	private final String dropStatement;
 
 }
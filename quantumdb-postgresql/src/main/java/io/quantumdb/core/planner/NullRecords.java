@@ -26,7 +26,7 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class NullRecords {
 
-	private final Map<Table, Identity> identities = Maps.newHashMap();
+	private final Map<Table, Identity> identities = Maps.newConcurrentMap();
 
 	public Map<Table, Identity> insertNullObjects(Backend backend, Set<Table> tables) throws SQLException {
 		for (Table table : tables) {
@@ -75,6 +75,70 @@ public class NullRecords {
 		}
 	}
 
+	/**
+	 * @return The textual representation of the identity of the NULL record in the specified table, or NULL if the
+	 * table has no NULL record.
+	 */
+	public Map<String, String> describeNullObject(Connection connection, Table table) throws SQLException {
+		Identity identity = identities.get(table);
+		if (identity == null) {
+			return null;
+		}
+
+		List<String> expressions = identity.keys().stream()
+				.map(key -> "CAST(? AS text) AS " + key)
+				.collect(Collectors.toList());
+
+		String query = "SELECT " + Joiner.on(", ").join(expressions);
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			int i = 0;
+			for (String columnName : identity.keys()) {
+				ColumnType type = table.getColumn(columnName).getType();
+				type.getValueSetter().setValue(statement, ++i, identity.getValue(columnName));
+			}
+
+			ResultSet resultSet = statement.executeQuery();
+			resultSet.next();
+
+			Map<String, String> description = Maps.newLinkedHashMap();
+			for (String columnName : identity.keys()) {
+				description.put(columnName, resultSet.getString(columnName));
+			}
+			return description;
+		}
+	}
+
+	/**
+	 * Restores the identity of a NULL record which was inserted into the specified table by an earlier migration,
+	 * based on the description produced by describeNullObject().
+	 */
+	public void restoreNullObject(Connection connection, Table table, Map<String, String> description)
+			throws SQLException {
+
+		Preconditions.checkArgument(!identities.containsKey(table));
+
+		List<String> expressions = description.keySet().stream()
+				.map(key -> "CAST(? AS " + table.getColumn(key).getType() + ") AS " + key)
+				.collect(Collectors.toList());
+
+		String query = "SELECT " + Joiner.on(", ").join(expressions);
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			int i = 0;
+			for (String value : description.values()) {
+				statement.setString(++i, value);
+			}
+
+			ResultSet resultSet = statement.executeQuery();
+			resultSet.next();
+
+			Identity identity = new Identity();
+			for (String columnName : description.keySet()) {
+				identity.add(columnName, resultSet.getObject(columnName));
+			}
+			identities.put(table, identity);
+		}
+	}
+
 	public boolean hasNullRecord(Table table) {
 		return identities.containsKey(table);
 	}
@@ -8,11 +8,14 @@ import java.sql.SQLException;
 import java.sql.Statement;
 
 import io.quantumdb.core.backends.Config;
+import io.quantumdb.core.planner.MigratorFunction.Strategy;
 import io.quantumdb.core.schema.definitions.Catalog;
 import io.quantumdb.core.versioning.Backend;
 import io.quantumdb.core.versioning.QuantumTables;
 import io.quantumdb.core.versioning.State;
 import io.quantumdb.core.versioning.Version;
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
@@ -20,6 +23,7 @@ import lombok.extern.slf4j.Slf4j;
 public class PostgresqlBackend implements io.quantumdb.core.backends.Backend {
 
 	private final Backend backend;
+	private final Config config;
 
 	private final String jdbcUrl;
 	private final String jdbcUser;
@@ -27,14 +31,43 @@ public class PostgresqlBackend implements io.quantumdb.core.backends.Backend {
 	private final String jdbcCatalog;
 	private final String driver;
 
+	@Getter(AccessLevel.PACKAGE)
+	private final Strategy backfillStrategy;
+
+	@Getter(AccessLevel.PACKAGE)
+	private final int backfillWorkers;
+
+	@Getter(AccessLevel.PACKAGE)
+	private final boolean backfillBulkLoad;
+
+	@Getter(AccessLevel.PACKAGE)
+	private final int forkWorkers;
+
+	@Getter(AccessLevel.PACKAGE)
+	private final int indexWorkers;
+
+	@Getter(AccessLevel.PACKAGE)
+	private final SyncFunction.Mode syncMode;
+
 	public PostgresqlBackend(Config config) {
 		this.driver = config.getDriver();
 		this.backend = new Backend();
+		this.config = config;
 
 		this.jdbcUrl = config.getUrl();
 		this.jdbcUser = config.getUser();
 		this.jdbcPass = config.getPassword();
 		this.jdbcCatalog = config.getCatalog();
+
+		String backfillStrategy = config.getBackfillStrategy();
+		this.backfillStrategy = backfillStrategy != null ? Strategy.valueOf(backfillStrategy.toUpperCase()) : null;
+		this.backfillWorkers = config.getBackfillWorkers();
+		this.backfillBulkLoad = config.isBackfillBulkLoad();
+		this.forkWorkers = config.getForkWorkers();
+		this.indexWorkers = config.getIndexWorkers();
+
+		String syncMode = config.getSyncMode();
+		this.syncMode = syncMode != null ? SyncFunction.Mode.valueOf(syncMode.toUpperCase()) : SyncFunction.Mode.ROW;
 	}
 
 	@Override
@@ -63,6 +96,26 @@ public class PostgresqlBackend implements io.quantumdb.core.backends.Backend {
 		return new PostgresqlMigrator(this);
 	}
 
+	/**
+	 * @return A new BackfillGovernor as configured by the "backfill_governor" property, or an AdaptiveGovernor if
+	 * no custom implementation was configured.
+	 */
+	BackfillGovernor createBackfillGovernor() {
+		String governor = config.getBackfillGovernor();
+		if (governor == null) {
+			return new AdaptiveGovernor(this, config);
+		}
+
+		try {
+			Class<?> type = Class.forName(governor);
+			return (BackfillGovernor) type.getDeclaredConstructor(PostgresqlBackend.class, Config.class)
+					.newInstance(this, config);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Could not create backfill governor: " + governor, e);
+		}
+	}
+
 	@Override
 	public boolean isJdbcUrlSupported(String jdbcUrl) {
 		return jdbcUrl.startsWith("jdbc:postgresql:");
@@ -73,7 +126,7 @@ public class PostgresqlBackend implements io.quantumdb.core.backends.Backend {
 		try (Connection connection = connect()) {
 			String query = "SELECT COUNT(*) AS cnt FROM pg_stat_activity WHERE application_name LIKE ?;";
 			PreparedStatement statement = connection.prepareStatement(query);
-			statement.setString(1, " - " + version.getId());
+			statement.setString(1, "% - " + version.getId());
 
 			ResultSet resultSet = statement.executeQuery();
 			if (resultSet.next()) {
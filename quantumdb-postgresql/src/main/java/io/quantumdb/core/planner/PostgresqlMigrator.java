@@ -3,30 +3,41 @@ package io.quantumdb.core.planner;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import io.quantumdb.core.backends.DatabaseMigrator;
 import io.quantumdb.core.backends.planner.Operation;
 import io.quantumdb.core.backends.planner.Plan;
 import io.quantumdb.core.backends.planner.PlanValidator;
-import io.quantumdb.core.backends.planner.Step;
+import io.quantumdb.core.backends.planner.StepScheduler;
 import io.quantumdb.core.backends.postgresql.migrator.ViewCreator;
 import io.quantumdb.core.migration.Migrator.Stage;
 import io.quantumdb.core.migration.VersionTraverser.Direction;
+import io.quantumdb.core.planner.SyncFunction.Mode;
 import io.quantumdb.core.schema.definitions.Catalog;
 import io.quantumdb.core.schema.definitions.Column;
+import io.quantumdb.core.schema.definitions.Index;
 import io.quantumdb.core.schema.definitions.Sequence;
 import io.quantumdb.core.schema.definitions.Table;
 import io.quantumdb.core.schema.operations.DataOperation;
@@ -39,6 +50,8 @@ import io.quantumdb.core.versioning.RefLog.TableRef;
 import io.quantumdb.core.versioning.State;
 import io.quantumdb.core.versioning.Version;
 import io.quantumdb.query.rewriter.PostgresqlQueryRewriter;
+import io.quantumdb.query.rewriter.TemplateCache;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -52,10 +65,14 @@ class PostgresqlMigrator implements DatabaseMigrator {
 		}
 	}
 
+	private static final long TEMPLATE_CACHE_CAPACITY = 1024 * 1024;
+
 	private final PostgresqlBackend backend;
+	private final TemplateCache templates;
 
 	PostgresqlMigrator(PostgresqlBackend backend) {
 		this.backend = backend;
+		this.templates = new TemplateCache(new PostgresqlQueryRewriter(), TEMPLATE_CACHE_CAPACITY);
 	}
 
 	@Override
@@ -69,7 +86,7 @@ class PostgresqlMigrator implements DatabaseMigrator {
 		Set<Version> intermediateVersions = Sets.newHashSet(Sets.difference(postMigration, preMigration));
 		intermediateVersions.remove(to);
 
-		new InternalPlanner(backend, plan, state, from, to, intermediateVersions).migrate();
+		new InternalPlanner(backend, templates, plan, state, from, to, intermediateVersions).migrate();
 	}
 
 	@Override
@@ -99,7 +116,7 @@ class PostgresqlMigrator implements DatabaseMigrator {
 				try (Statement statement = connection.createStatement()) {
 					DataOperation dataOperation = entry.getValue();
 					String query = dataOperation.getQuery();
-					String rewrittenQuery = rewriter.rewrite(query);
+					String rewrittenQuery = rewriter.rewrite(templates.get(query));
 					statement.executeUpdate(rewrittenQuery);
 					refLog.fork(entry.getKey());
 				}
@@ -131,7 +148,7 @@ class PostgresqlMigrator implements DatabaseMigrator {
 						.count() == 1)
 				.collect(Collectors.toList());
 
-		Map<SyncRef, SyncFunction> newSyncFunctions = Maps.newLinkedHashMap();
+		com.google.common.collect.Table<String, String, SyncFunction> newSyncFunctions = HashBasedTable.create();
 
 		log.info("Determined the following tables will be dropped: {}", tablesToDrop);
 		for (TableRef tableRef : tablesToDrop) {
@@ -166,8 +183,9 @@ class PostgresqlMigrator implements DatabaseMigrator {
 					SyncFunction sync = new SyncFunction(refLog, source, target, newMapping, catalog, new NullRecords());
 					sync.setColumnsToMigrate(columnsToMigrate);
 
-					SyncRef syncRef = refLog.addSync(sync.getTriggerName(), sync.getFunctionName(), newMapping);
-					newSyncFunctions.put(syncRef, sync);
+					refLog.addSync(SyncDispatcher.TRIGGER_NAME, SyncDispatcher.getFunctionName(source.getRefId()),
+							newMapping);
+					newSyncFunctions.put(source.getRefId(), target.getRefId(), sync);
 				}
 			}
 		}
@@ -175,10 +193,17 @@ class PostgresqlMigrator implements DatabaseMigrator {
 		try (Connection connection = backend.connect()) {
 			connection.setAutoCommit(false);
 
-			dropSynchronizers(connection, state.getRefLog(), tablesToDrop);
-			for (SyncFunction syncFunction : newSyncFunctions.values()) {
-				execute(connection, syncFunction.createFunctionStatement());
-				execute(connection, syncFunction.createTriggerStatement());
+			Set<TableRef> sources = dropSynchronizers(connection, state.getRefLog(), tablesToDrop);
+			newSyncFunctions.rowKeySet().forEach(refId -> sources.add(refLog.getTableRefById(refId)));
+
+			for (TableRef source : sources) {
+				if (tablesToDrop.contains(source)) {
+					execute(connection, SyncDispatcher.createDropStatement(source.getRefId()));
+				}
+				else {
+					SyncDispatcher.install(connection, refLog, catalog, new NullRecords(),
+							backend.getSyncMode().getSteadyStateMode(), source, newSyncFunctions.row(source.getRefId()));
+				}
 			}
 			dropTables(connection, refLog, catalog, tablesToDrop);
 			refLog.setVersionState(version, false);
@@ -190,11 +215,18 @@ class PostgresqlMigrator implements DatabaseMigrator {
 		}
 	}
 
-	private void dropSynchronizers(Connection connection, RefLog refLog, List<TableRef> tablesToDrop)
+	/**
+	 * Drops all synchronizers from and to the specified tables.
+	 *
+	 * @return The source tables of the dropped synchronizers, whose dispatchers must be installed again.
+	 */
+	private Set<TableRef> dropSynchronizers(Connection connection, RefLog refLog, List<TableRef> tablesToDrop)
 			throws SQLException {
 
 		connection.setAutoCommit(false);
 
+		Set<TableRef> sources = Sets.newLinkedHashSet();
+
 		for (TableRef table : tablesToDrop) {
 			String refId = table.getRefId();
 			TableRef tableRef = refLog.getTableRefById(refId);
@@ -203,11 +235,13 @@ class PostgresqlMigrator implements DatabaseMigrator {
 			tableSyncs.addAll(tableRef.getOutboundSyncs());
 
 			for (SyncRef tableSync : tableSyncs) {
+				sources.add(tableSync.getSource());
 				dropSynchronizer(connection, tableSync);
 			}
 		}
 
 		connection.commit();
+		return sources;
 	}
 
 	private void dropSynchronizer(Connection connection, SyncRef sync) throws SQLException {
@@ -216,12 +250,14 @@ class PostgresqlMigrator implements DatabaseMigrator {
 		String sourceRefId = sync.getSource().getRefId();
 		String targetRefId = sync.getTarget().getRefId();
 
-		try (Statement statement = connection.createStatement()) {
-			statement.execute("DROP TRIGGER " + triggerName + " ON " + sourceRefId + ";");
-			statement.execute("DROP FUNCTION " + functionName + "();");
-			sync.drop();
-			log.info("Dropped synchronizer: {}/{} for: {} -> {}", triggerName, functionName, sourceRefId, targetRefId);
+		// Synchronizers created before dispatchers were introduced have a trigger and function of their own.
+		if (!functionName.equals(SyncDispatcher.getFunctionName(sourceRefId))) {
+			execute(connection, SyncFunction.createDropTriggerStatement(triggerName, sourceRefId));
+			execute(connection, new QueryBuilder("DROP FUNCTION IF EXISTS " + functionName + "() CASCADE;"));
 		}
+
+		sync.drop();
+		log.info("Dropped synchronizer: {}/{} for: {} -> {}", triggerName, functionName, sourceRefId, targetRefId);
 	}
 
 	private void dropTables(Connection connection, RefLog refLog, Catalog catalog, List<TableRef> tablesToDrop)
@@ -284,54 +320,206 @@ class PostgresqlMigrator implements DatabaseMigrator {
 		private final RefLog refLog;
 		private final State state;
 		private final NullRecords nullRecords;
-		private final Multimap<Table, String> migratedColumns;
+		private final SetMultimap<Table, String> migratedColumns;
 		private final PostgresqlBackend backend;
+		private final TemplateCache templates;
 		private final Version from;
 		private final Version to;
 
+		/**
+		 * Guarded by synchronizing on the Table itself, since Steps may be executed concurrently.
+		 */
 		private final com.google.common.collect.Table<String, String, SyncFunction> syncFunctions;
 
+		/**
+		 * The installed dispatchers, indexed by the refId of their source table. Guarded by synchronizing on the Map
+		 * itself, and only modified while also holding the lock on the syncFunctions.
+		 */
+		private final Map<String, SyncDispatcher> dispatchers;
+		private final ChangeQueue queue;
+		private final ReplicationSlot slot;
+		private final ChangeApplier applier;
+		private final BackfillGovernor governor;
+		private final Gson gson;
+
+		private ForkProgress progress;
 
-		public InternalPlanner(PostgresqlBackend backend, Plan plan, State state, Version from, Version to,
-				Set<Version> intermediateVersions) {
+		public InternalPlanner(PostgresqlBackend backend, TemplateCache templates, Plan plan, State state, Version from,
+				Version to, Set<Version> intermediateVersions) {
 
 			this.backend = backend;
+			this.templates = templates;
 			this.plan = plan;
 			this.intermediateVersions = intermediateVersions;
 			this.refLog = plan.getRefLog();
 			this.state = state;
 			this.nullRecords = new NullRecords();
-			this.migratedColumns = HashMultimap.create();
+			this.migratedColumns = Multimaps.synchronizedSetMultimap(HashMultimap.create());
 			this.syncFunctions = HashBasedTable.create();
+			this.dispatchers = Maps.newHashMap();
+			this.queue = new ChangeQueue();
+			this.slot = new ReplicationSlot(to);
+			this.applier = new ChangeApplier(backend, dispatchers,
+					backend.getSyncMode() == Mode.LOGICAL ? slot : queue);
+			this.governor = backend.createBackfillGovernor();
+			this.gson = new Gson();
 			this.from = from;
 			this.to = to;
 		}
 
 		public void migrate() throws MigrationException {
-			createGhostTables();
+			checkSyncMode();
+			prepareGhostTables();
+
+			if (backend.getSyncMode() == Mode.LOGICAL) {
+				createReplicationSlot();
+			}
+			if (backend.getSyncMode().isDeferred()) {
+				applier.start();
+			}
 
-			Optional<Step> nextStep;
-			while ((nextStep = plan.nextStep()).isPresent()) {
+			try {
 				try {
-					Step step = nextStep.get();
-					execute(step.getOperation());
-					step.markAsExecuted();
+					StepScheduler scheduler = new StepScheduler(plan, backend.getForkWorkers());
+					scheduler.run(step -> execute(step.getOperation()));
 				}
-				catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					throw new MigrationException(e);
+				catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					Throwables.propagateIfInstanceOf(cause, MigrationException.class);
+					throw new MigrationException(cause);
+				}
+				finally {
+					closeGovernor();
 				}
-			}
 
-			createIndexes();
+				createIndexes();
 
-			synchronizeBackwards();
+				synchronizeBackwards();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MigrationException(e);
+			}
+			finally {
+				stopApplier();
+			}
+
+			completeDeferredSync();
 
 			refLog.setVersionState(to, true);
 
 			createViews(to);
 
 			persistState();
+
+			clearProgress();
+		}
+
+		/**
+		 * Verifies that the database supports the configured sync mode, before anything is forked.
+		 */
+		private void checkSyncMode() throws MigrationException {
+			Mode mode = backend.getSyncMode();
+			try (Connection connection = backend.connect()) {
+				if (!mode.isSupportedBy(connection)) {
+					throw new MigrationException("Sync mode: " + mode + " requires PostgreSQL "
+							+ mode.getMajorVersion() + "." + mode.getMinorVersion() + " or newer");
+				}
+			}
+			catch (SQLException e) {
+				throw new MigrationException(e);
+			}
+		}
+
+		private void closeGovernor() throws MigrationException {
+			try {
+				governor.close();
+			}
+			catch (SQLException e) {
+				throw new MigrationException(e);
+			}
+		}
+
+		private void stopApplier() throws MigrationException {
+			try {
+				applier.stop();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MigrationException(e);
+			}
+		}
+
+		/**
+		 * Creates the replication slot from which changes are decoded in LOGICAL mode, before any data is copied. This
+		 * happens outside of a transaction, since the slot can only be created once all running transactions are done.
+		 */
+		private void createReplicationSlot() throws MigrationException {
+			try (Connection connection = backend.connect()) {
+				slot.create(connection);
+			}
+			catch (SQLException e) {
+				throw new MigrationException(e);
+			}
+		}
+
+		/**
+		 * Switches the dispatchers which were installed in QUEUE or LOGICAL mode to their steady state mode, once
+		 * everything else has been forked. Installing these dispatchers locks the triggers of their source tables, while
+		 * all changes which have not yet been applied are applied. The version can only become active once no changes
+		 * are pending anymore.
+		 */
+		private void completeDeferredSync() throws MigrationException {
+			Mode mode = backend.getSyncMode();
+			if (!mode.isDeferred()) {
+				return;
+			}
+
+			List<String> sourceRefIds;
+			synchronized (dispatchers) {
+				sourceRefIds = Lists.newArrayList(dispatchers.keySet());
+			}
+
+			try (Connection connection = backend.connect()) {
+				connection.setAutoCommit(false);
+				if (mode == Mode.QUEUE) {
+					for (String sourceRefId : sourceRefIds) {
+						installDispatcher(connection, refLog.getTableRefById(sourceRefId), mode.getSteadyStateMode());
+						connection.commit();
+					}
+
+					long lag = queue.getLag(connection, sourceRefIds);
+					if (lag > 0) {
+						throw new MigrationException("Cannot activate version: " + to.getId() + ", since " + lag
+								+ " queued change(s) have not yet been applied");
+					}
+				}
+				else {
+					// The slot covers all source tables, so all of them must be locked while the slot is drained.
+					for (String sourceRefId : sourceRefIds) {
+						installDispatcher(connection, refLog.getTableRefById(sourceRefId), mode.getSteadyStateMode());
+					}
+					synchronized (dispatchers) {
+						slot.drain(connection, dispatchers);
+					}
+					connection.commit();
+
+					connection.setAutoCommit(true);
+					slot.drop(connection);
+				}
+			}
+			catch (SQLException e) {
+				throw new MigrationException(e);
+			}
+		}
+
+		private void clearProgress() throws MigrationException {
+			try (Connection connection = backend.connect()) {
+				progress.clear(connection);
+			}
+			catch (SQLException e) {
+				throw new MigrationException(e);
+			}
 		}
 
 		private void persistState() throws MigrationException {
@@ -350,19 +538,39 @@ class PostgresqlMigrator implements DatabaseMigrator {
 				Set<Table> tables = operation.getTables();
 				switch (operation.getType()) {
 					case ADD_NULL:
+						if (isCompleted(tables, ForkProgress.Step.ADD_NULL)) {
+							log.info("Skipping operation: {}, since it was already executed", operation);
+							break;
+						}
 						nullRecords.insertNullObjects(backend, tables);
+						recordNullRecords(tables);
 						break;
 					case DROP_NULL:
+						if (isCompleted(tables, ForkProgress.Step.DROP_NULL)) {
+							log.info("Skipping operation: {}, since it was already executed", operation);
+							break;
+						}
 						nullRecords.deleteNullObjects(backend, tables);
+						recordProgress(tables, ForkProgress.Step.DROP_NULL, "", null);
 						break;
 					case COPY:
 						Table table = tables.iterator().next();
 						Set<String> columns = operation.getColumns();
-						Set<String> previouslyMigrated = Sets.newHashSet(this.migratedColumns.get(table));
+						Set<String> previouslyMigrated;
+						synchronized (this.migratedColumns) {
+							previouslyMigrated = Sets.newHashSet(this.migratedColumns.get(table));
+						}
 						Set<String> combined = Sets.union(previouslyMigrated, columns);
+						String subject = Joiner.on(",").join(Sets.newTreeSet(columns));
 
 						synchronizeForwards(table, Sets.newHashSet(combined));
-						copyData(table, previouslyMigrated, columns);
+						if (progress.isCompleted(table.getName(), ForkProgress.Step.COPY, subject)) {
+							log.info("Skipping operation: {}, since it was already executed", operation);
+						}
+						else {
+							copyData(table, previouslyMigrated, columns);
+							recordProgress(tables, ForkProgress.Step.COPY, subject, null);
+						}
 						this.migratedColumns.putAll(table, columns);
 						break;
 				}
@@ -374,7 +582,7 @@ class PostgresqlMigrator implements DatabaseMigrator {
 
 		private void createViews(Version version) throws MigrationException {
 			try (Connection connection = backend.connect()) {
-				ViewCreator creator = new ViewCreator();
+				ViewCreator creator = new ViewCreator(templates);
 				creator.create(connection, plan.getViews(), refLog, version);
 			}
 			catch (SQLException e) {
@@ -382,20 +590,227 @@ class PostgresqlMigrator implements DatabaseMigrator {
 			}
 		}
 
-		private void createGhostTables() throws MigrationException {
+		/**
+		 * Creates the ghost tables of the plan. If an earlier attempt to fork to the same version was interrupted,
+		 * its ghost tables, NULL records and synchronizers are adopted instead, so that the fork can continue where
+		 * that attempt left off.
+		 */
+		private void prepareGhostTables() throws MigrationException {
 			try (Connection connection = backend.connect()) {
+				progress = ForkProgress.load(connection, to);
+				connection.setAutoCommit(false);
+
+				if (!progress.isEmpty()) {
+					dropMigratorFunctions(connection);
+					if (canBeResumed(connection)) {
+						resume(connection);
+						connection.commit();
+						return;
+					}
+					discardProgress(connection);
+				}
+
 				TableCreator creator = new TableCreator();
 				creator.create(connection, plan.getGhostTables());
+				for (Table ghostTable : plan.getGhostTables()) {
+					String tableName = refLog.getTableRefById(ghostTable.getName()).getName();
+					progress.record(connection, ghostTable.getName(), ForkProgress.Step.GHOST_TABLE, "", tableName);
+				}
+				connection.commit();
 			}
 			catch (SQLException e) {
 				throw new MigrationException(e);
 			}
 		}
 
+		private boolean canBeResumed(Connection connection) throws SQLException {
+			Map<String, String> previousGhostTables = progress.getGhostTables();
+			Set<String> tableNames = plan.getGhostTables().stream()
+					.map(table -> refLog.getTableRefById(table.getName()).getName())
+					.collect(Collectors.toSet());
+
+			if (!tableNames.equals(previousGhostTables.keySet())) {
+				log.warn("Cannot resume earlier attempt to fork to: {}, since it created different ghost tables: {}",
+						to.getId(), previousGhostTables);
+				return false;
+			}
+
+			if (backend.getSyncMode() == Mode.LOGICAL && !slot.canResume(connection)) {
+				log.warn("Cannot resume earlier attempt to fork to: {}, since replication slot: {} no longer provides "
+						+ "all changes which have not yet been applied", to.getId(), slot.getName());
+				return false;
+			}
+
+			String query = new QueryBuilder()
+					.append("SELECT 1 FROM information_schema.tables")
+					.append("WHERE table_schema = current_schema() AND table_name = ?;")
+					.toString();
+			try (PreparedStatement statement = connection.prepareStatement(query)) {
+				for (String refId : previousGhostTables.values()) {
+					statement.setString(1, refId);
+					ResultSet resultSet = statement.executeQuery();
+					if (!resultSet.next()) {
+						log.warn("Cannot resume earlier attempt to fork to: {}, since ghost table: {} no longer exists",
+								to.getId(), refId);
+						return false;
+					}
+				}
+			}
+			return true;
+		}
+
+		private void resume(Connection connection) throws SQLException {
+			log.info("Resuming earlier attempt to fork to: {}", to.getId());
+
+			Map<String, String> previousGhostTables = progress.getGhostTables();
+			TableCreator creator = new TableCreator();
+			for (Table ghostTable : plan.getGhostTables()) {
+				String tableName = refLog.getTableRefById(ghostTable.getName()).getName();
+				String previousRefId = previousGhostTables.get(tableName);
+				creator.adoptTable(connection, ghostTable, previousRefId);
+				progress.replaceRefId(connection, previousRefId, ghostTable.getName());
+
+				// The dispatcher of the ghost table is named after its previous refId, and is installed again below.
+				PostgresqlMigrator.execute(connection, SyncDispatcher.createDropStatement(previousRefId));
+			}
+
+			Catalog catalog = state.getCatalog();
+			for (ForkProgress.Entry entry : progress.getEntries(ForkProgress.Step.ADD_NULL)) {
+				if (entry.getDetails() != null) {
+					Map<String, String> description = gson.fromJson(entry.getDetails(),
+							new TypeToken<Map<String, String>>() {}.getType());
+					nullRecords.restoreNullObject(connection, catalog.getTable(entry.getRefId()), description);
+				}
+			}
+
+			Set<TableRef> sources = Sets.newLinkedHashSet();
+			for (ForkProgress.Entry entry : progress.getEntries(ForkProgress.Step.SYNC)) {
+				TableRef source = refLog.getTableRefById(entry.getSubject());
+				TableRef target = refLog.getTableRefById(entry.getRefId());
+				SyncDetails details = gson.fromJson(entry.getDetails(), SyncDetails.class);
+
+				Map<ColumnRef, ColumnRef> mapping = refLog.getColumnMapping(source, target);
+				SyncFunction syncFunction = new SyncFunction(refLog, source, target, mapping, catalog, nullRecords,
+						details.getFunctionName(), details.getTriggerName());
+				syncFunction.setColumnsToMigrate(details.getColumns());
+				synchronized (syncFunctions) {
+					syncFunctions.put(source.getRefId(), target.getRefId(), syncFunction);
+				}
+
+				log.info("Adopting sync function: {} for table: {}", syncFunction.getFunctionName(), source.getRefId());
+				refLog.addSync(SyncDispatcher.TRIGGER_NAME, SyncDispatcher.getFunctionName(source.getRefId()), mapping);
+				sources.add(source);
+			}
+
+			// The dispatchers still refer to the ghost tables by the names they had in the earlier attempt.
+			for (TableRef source : sources) {
+				installDispatcher(connection, source);
+			}
+		}
+
+		private void discardProgress(Connection connection) throws SQLException {
+			log.info("Discarding earlier attempt to fork to: {}", to.getId());
+
+			for (ForkProgress.Entry entry : progress.getEntries(ForkProgress.Step.SYNC)) {
+				SyncDetails details = gson.fromJson(entry.getDetails(), SyncDetails.class);
+				PostgresqlMigrator.execute(connection, new QueryBuilder()
+						.append("DROP FUNCTION IF EXISTS " + details.getFunctionName() + "() CASCADE;"));
+			}
+			for (ForkProgress.Entry entry : progress.getEntries(ForkProgress.Step.GHOST_TABLE)) {
+				PostgresqlMigrator.execute(connection, new QueryBuilder()
+						.append("DROP TABLE IF EXISTS " + entry.getRefId() + " CASCADE;"));
+			}
+
+			// The dispatchers of the source tables must no longer write to the dropped ghost tables.
+			Set<String> refIds = refLog.getTableRefs().stream()
+					.map(TableRef::getRefId)
+					.collect(Collectors.toSet());
+
+			Set<String> sourceRefIds = progress.getEntries(ForkProgress.Step.SYNC).stream()
+					.map(ForkProgress.Entry::getSubject)
+					.collect(Collectors.toCollection(Sets::newLinkedHashSet));
+
+			for (String sourceRefId : sourceRefIds) {
+				if (refIds.contains(sourceRefId)) {
+					installDispatcher(connection, refLog.getTableRefById(sourceRefId));
+				}
+				else {
+					PostgresqlMigrator.execute(connection, SyncDispatcher.createDropStatement(sourceRefId));
+				}
+			}
+
+			// A replication slot left behind by the earlier attempt would only retain WAL from now on.
+			slot.drop(connection);
+			progress.clear(connection);
+		}
+
+		/**
+		 * Drops all migrator functions which were left behind by an earlier attempt to fork.
+		 */
+		private void dropMigratorFunctions(Connection connection) throws SQLException {
+			String query = new QueryBuilder()
+					.append("SELECT p.oid::regprocedure AS signature FROM pg_proc p")
+					.append("JOIN pg_namespace n ON n.oid = p.pronamespace")
+					.append("WHERE n.nspname = current_schema() AND p.proname LIKE 'migrator\\_%';")
+					.toString();
+
+			List<String> signatures = Lists.newArrayList();
+			try (Statement statement = connection.createStatement()) {
+				ResultSet resultSet = statement.executeQuery(query);
+				while (resultSet.next()) {
+					signatures.add(resultSet.getString("signature"));
+				}
+			}
+
+			for (String signature : signatures) {
+				log.info("Dropping migrator function: {} left behind by an earlier attempt", signature);
+				PostgresqlMigrator.execute(connection, new QueryBuilder("DROP FUNCTION " + signature + ";"));
+			}
+		}
+
+		private boolean isCompleted(Set<Table> tables, ForkProgress.Step step) {
+			return tables.stream()
+					.allMatch(table -> progress.isCompleted(table.getName(), step));
+		}
+
+		private void recordProgress(Set<Table> tables, ForkProgress.Step step, String subject, String details)
+				throws SQLException {
+
+			try (Connection connection = backend.connect()) {
+				for (Table table : tables) {
+					progress.record(connection, table.getName(), step, subject, details);
+				}
+			}
+		}
+
+		private void recordNullRecords(Set<Table> tables) throws SQLException {
+			try (Connection connection = backend.connect()) {
+				for (Table table : tables) {
+					Map<String, String> description = nullRecords.describeNullObject(connection, table);
+					String details = description == null ? null : gson.toJson(description);
+					progress.record(connection, table.getName(), ForkProgress.Step.ADD_NULL, "", details);
+				}
+			}
+		}
+
 		private void createIndexes() throws MigrationException {
+			List<Table> ghostTables = plan.getGhostTables().stream()
+					.filter(ghostTable -> !progress.isCompleted(ghostTable.getName(), ForkProgress.Step.INDEXES))
+					.collect(Collectors.toList());
+
+			List<Index> indexes = ghostTables.stream()
+					.flatMap(ghostTable -> ghostTable.getIndexes().stream())
+					.collect(Collectors.toList());
+
 			try (Connection connection = backend.connect()) {
-				TableCreator creator = new TableCreator();
-				creator.createIndexes(connection, plan.getGhostTables());
+				new IndexBuilder(backend).build(indexes);
+				for (Table ghostTable : ghostTables) {
+					progress.record(connection, ghostTable.getName(), ForkProgress.Step.INDEXES, "", null);
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MigrationException(e);
 			}
 			catch (SQLException e) {
 				throw new MigrationException(e);
@@ -404,7 +819,7 @@ class PostgresqlMigrator implements DatabaseMigrator {
 
 		private void synchronizeForwards(Table targetTable, Set<String> targetColumns) throws SQLException {
 			log.info("Creating forward sync function for table: {}...", targetTable.getName());
-			try (Connection connection = backend.connect()) {
+			try (Connection connection = LoadMonitor.connect(backend)) {
 				Catalog catalog = state.getCatalog();
 				Multimap<TableRef, TableRef> tableMapping = state.getRefLog().getTableMapping(from, to);
 				for (Entry<TableRef, TableRef> entry : tableMapping.entries()) {
@@ -426,7 +841,7 @@ class PostgresqlMigrator implements DatabaseMigrator {
 				if (entry.getValue().getRefId().equals(targetTable.getName())) {
 					Table source = catalog.getTable(entry.getKey().getRefId());
 					Table target = catalog.getTable(entry.getValue().getRefId());
-					TableDataMigrator tableDataMigrator = new TableDataMigrator(backend, refLog);
+					TableDataMigrator tableDataMigrator = new TableDataMigrator(backend, refLog, governor);
 					tableDataMigrator.migrateData(nullRecords, source, target, from, to, migratedColumns, columnsToMigrate);
 				}
 			}
@@ -461,50 +876,81 @@ class PostgresqlMigrator implements DatabaseMigrator {
 			String sourceRefId = source.getRefId();
 			String targetRefId = target.getRefId();
 
-			SyncFunction syncFunction = syncFunctions.get(sourceRefId, targetRefId);
-			if (syncFunction == null) {
-				Map<ColumnRef, ColumnRef> mapping = refLog.getColumnMapping(source, target);
-				syncFunction = new SyncFunction(refLog, source, target, mapping, catalog, nullRecords);
+			SyncFunction syncFunction;
+			synchronized (syncFunctions) {
+				syncFunction = syncFunctions.get(sourceRefId, targetRefId);
+				if (syncFunction == null) {
+					Map<ColumnRef, ColumnRef> mapping = refLog.getColumnMapping(source, target);
+					syncFunction = new SyncFunction(refLog, source, target, mapping, catalog, nullRecords);
+					syncFunctions.put(sourceRefId, targetRefId, syncFunction);
+
+					log.info("Creating sync function: {} for table: {}", syncFunction.getFunctionName(), sourceRefId);
+					refLog.addSync(SyncDispatcher.TRIGGER_NAME, SyncDispatcher.getFunctionName(sourceRefId), mapping);
+				}
+				else {
+					log.info("Updating sync function: {} for table: {}", syncFunction.getFunctionName(), sourceRefId);
+
+					TableRef sourceTable = refLog.getTableRefById(sourceRefId);
+					sourceTable.getOutboundSyncs().stream()
+							.filter(ref -> ref.getTarget().equals(target))
+							.forEach(ref -> refLog.getColumnMapping(source, target).forEach((from, to) -> {
+								boolean exists = ref.getColumnMapping().entrySet().stream()
+										.anyMatch(entry -> entry.getKey().equals(from) && entry.getValue().equals(to));
+								if (!exists) {
+									ref.addColumnMapping(from, to);
+								}
+							}));
+
+					TableRef targetTable = refLog.getTableRefById(targetRefId);
+					targetTable.getInboundSyncs().stream()
+							.filter(ref -> ref.getSource().equals(source))
+							.forEach(ref -> refLog.getColumnMapping(target, source).forEach((from, to) -> {
+								boolean exists = ref.getColumnMapping().entrySet().stream()
+										.anyMatch(entry -> entry.getKey().equals(from) && entry.getValue().equals(to));
+								if (!exists) {
+									ref.addColumnMapping(from, to);
+								}
+							}));
+				}
+
 				syncFunction.setColumnsToMigrate(columns);
-				syncFunctions.put(sourceRefId, targetRefId, syncFunction);
+				installDispatcher(connection, source);
+			}
 
-				log.info("Creating sync function: {} for table: {}", syncFunction.getFunctionName(), sourceRefId);
-				PostgresqlMigrator.execute(connection, syncFunction.createFunctionStatement());
+			SyncDetails details = new SyncDetails(syncFunction.getFunctionName(), syncFunction.getTriggerName(), columns);
+			progress.record(connection, targetRefId, ForkProgress.Step.SYNC, sourceRefId, gson.toJson(details));
+		}
 
-				log.info("Creating trigger: {} for table: {}", syncFunction.getTriggerName(), sourceRefId);
-				PostgresqlMigrator.execute(connection, syncFunction.createTriggerStatement());
+		/**
+		 * Installs the dispatcher of the specified source table, which applies changes to all of its target tables,
+		 * including those of other active versions.
+		 */
+		private void installDispatcher(Connection connection, TableRef source) throws SQLException {
+			installDispatcher(connection, source, backend.getSyncMode());
+		}
 
-				Map<ColumnRef, ColumnRef> columnMapping = refLog.getColumnMapping(source, target);
-				refLog.addSync(syncFunction.getTriggerName(), syncFunction.getFunctionName(), columnMapping);
-			}
-			else {
-				syncFunction.setColumnsToMigrate(columns);
+		private void installDispatcher(Connection connection, TableRef source, Mode mode) throws SQLException {
+			String sourceRefId = source.getRefId();
+			synchronized (syncFunctions) {
+				synchronized (dispatchers) {
+					SyncDispatcher dispatcher = SyncDispatcher.install(connection, refLog, state.getCatalog(),
+							nullRecords, mode, source, syncFunctions.row(sourceRefId));
 
-				log.info("Updating sync function: {} for table: {}", syncFunction.getFunctionName(), sourceRefId);
-				PostgresqlMigrator.execute(connection, syncFunction.createFunctionStatement());
-
-				TableRef sourceTable = refLog.getTableRefById(sourceRefId);
-				sourceTable.getOutboundSyncs().stream()
-						.filter(ref -> ref.getTarget().equals(target))
-						.forEach(ref -> refLog.getColumnMapping(source, target).forEach((from, to) -> {
-							boolean exists = ref.getColumnMapping().entrySet().stream()
-									.anyMatch(entry -> entry.getKey().equals(from) && entry.getValue().equals(to));
-							if (!exists) {
-								ref.addColumnMapping(from, to);
-							}
-						}));
-
-				TableRef targetTable = refLog.getTableRefById(targetRefId);
-				targetTable.getInboundSyncs().stream()
-						.filter(ref -> ref.getSource().equals(source))
-						.forEach(ref -> refLog.getColumnMapping(target, source).forEach((from, to) -> {
-							boolean exists = ref.getColumnMapping().entrySet().stream()
-									.anyMatch(entry -> entry.getKey().equals(from) && entry.getValue().equals(to));
-							if (!exists) {
-								ref.addColumnMapping(from, to);
-							}
-						}));
+					if (dispatcher == null) {
+						dispatchers.remove(sourceRefId);
+					}
+					else {
+						dispatchers.put(sourceRefId, dispatcher);
+					}
+				}
 			}
 		}
 	}
+
+	@Data
+	private static class SyncDetails {
+		private final String functionName;
+		private final String triggerName;
+		private final Set<String> columns;
+	}
 }
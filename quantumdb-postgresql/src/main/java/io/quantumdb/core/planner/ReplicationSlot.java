@@ -0,0 +1,282 @@
+package io.quantumdb.core.planner;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import io.quantumdb.core.utils.QueryBuilder;
+import io.quantumdb.core.versioning.Version;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads the changes to source tables from a logical replication slot (when using the LOGICAL sync mode), so that no
+ * triggers have to be installed on the source tables while forking. The slot is created before any data is copied to
+ * the ghost tables, and decodes all changes using the "test_decoding" output plugin. Changes are read with
+ * pg_logical_slot_peek_changes(), and the slot is only advanced once the changes have been applied and committed.
+ *
+ * The LSN up to which changes have been applied is recorded in the progress of the fork (as its SLOT step), in the
+ * same transaction which applies the changes. When an interrupted fork is resumed, this tells whether the slot still
+ * provides all changes which have not been applied yet, or whether it was dropped (and possibly created again) since.
+ * Note that the slot is retained when a fork is interrupted, and that it retains WAL on the server until the fork is
+ * either resumed or discarded.
+ *
+ * The queries below use the LSN functions and columns as they were named in PostgreSQL 10, which is why the LOGICAL
+ * sync mode requires PostgreSQL 10 or newer.
+ */
+@Slf4j
+class ReplicationSlot implements ChangeFeed {
+
+	private static final String PLUGIN = "test_decoding";
+	private static final int BATCH_SIZE = 10_000;
+
+	@Getter
+	private final String name;
+
+	private final Version version;
+	private final Gson gson;
+
+	ReplicationSlot(Version version) {
+		this.name = "quantumdb_" + version.getId();
+		this.version = version;
+		this.gson = new Gson();
+	}
+
+	/**
+	 * Creates the replication slot, unless it already exists. This must be invoked outside of a transaction, since
+	 * the slot can only be created once all running transactions have completed.
+	 */
+	void create(Connection connection) throws SQLException {
+		if (exists(connection)) {
+			log.info("Reusing replication slot: {}", name);
+			return;
+		}
+
+		log.info("Creating replication slot: {} using plugin: {}", name, PLUGIN);
+		String query = "SELECT * FROM pg_create_logical_replication_slot(?, '" + PLUGIN + "');";
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, name);
+			statement.execute();
+		}
+	}
+
+	boolean exists(Connection connection) throws SQLException {
+		String query = "SELECT 1 FROM pg_replication_slots WHERE slot_name = ?;";
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, name);
+			return statement.executeQuery().next();
+		}
+	}
+
+	/**
+	 * Drops the replication slot, if it exists.
+	 */
+	void drop(Connection connection) throws SQLException {
+		log.info("Dropping replication slot: {}", name);
+		String query = "SELECT pg_drop_replication_slot(slot_name) FROM pg_replication_slots WHERE slot_name = ?;";
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, name);
+			statement.execute();
+		}
+	}
+
+	/**
+	 * @return True if the replication slot exists, and has not been advanced beyond the LSN which was recorded in the
+	 * progress of the fork. Otherwise changes may have been lost, and the fork cannot be resumed.
+	 */
+	boolean canResume(Connection connection) throws SQLException {
+		String query = new QueryBuilder()
+				.append("SELECT s.confirmed_flush_lsn <= COALESCE((")
+				.append("  SELECT CAST(p.details AS pg_lsn) FROM quantumdb.fork_progress p")
+				.append("  WHERE p.version_id = ? AND p.ref_id = ? AND p.step = ? AND p.subject = ''")
+				.append("), s.confirmed_flush_lsn) AS covered")
+				.append("FROM pg_replication_slots s WHERE s.slot_name = ?;")
+				.toString();
+
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, version.getId());
+			statement.setString(2, name);
+			statement.setString(3, ForkProgress.Step.SLOT.name());
+			statement.setString(4, name);
+			ResultSet resultSet = statement.executeQuery();
+			return resultSet.next() && resultSet.getBoolean("covered");
+		}
+	}
+
+	/**
+	 * Applies the next batch of changes from the replication slot, and advances the slot past them.
+	 */
+	@Override
+	public boolean apply(Connection connection, Map<String, SyncDispatcher> dispatchers) throws SQLException {
+		Batch batch = read(connection, null, BATCH_SIZE, dispatchers);
+		if (batch.size == 0) {
+			return false;
+		}
+
+		apply(connection, batch, dispatchers);
+		connection.commit();
+
+		// Advancing the slot is not transactional. Should this fail, the batch is simply applied again later on.
+		String query = "SELECT COUNT(*) FROM pg_logical_slot_get_changes(?, CAST(? AS pg_lsn), NULL);";
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, name);
+			statement.setString(2, batch.lsn);
+			statement.execute();
+		}
+		connection.commit();
+		return batch.size >= BATCH_SIZE;
+	}
+
+	/**
+	 * Applies all changes which the replication slot currently holds to the target tables of the specified
+	 * dispatchers. This does not commit the transaction of the Connection, nor does it advance the slot.
+	 */
+	void drain(Connection connection, Map<String, SyncDispatcher> dispatchers) throws SQLException {
+		String lsn;
+		try (Statement statement = connection.createStatement()) {
+			ResultSet resultSet = statement.executeQuery("SELECT CAST(pg_current_wal_lsn() AS TEXT);");
+			resultSet.next();
+			lsn = resultSet.getString(1);
+		}
+
+		Batch batch = read(connection, lsn, null, dispatchers);
+		if (batch.size > 0) {
+			apply(connection, batch, dispatchers);
+			log.info("Applied {} decoded change(s) up to: {} from replication slot: {}", batch.size, batch.lsn, name);
+		}
+	}
+
+	@Override
+	public void reportLag(Connection connection, Collection<String> sourceRefIds) throws SQLException {
+		String query = new QueryBuilder()
+				.append("SELECT pg_wal_lsn_diff(pg_current_wal_lsn(), confirmed_flush_lsn) AS lag")
+				.append("FROM pg_replication_slots WHERE slot_name = ?;")
+				.toString();
+
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, name);
+			ResultSet resultSet = statement.executeQuery();
+			if (resultSet.next() && resultSet.getLong("lag") > 0) {
+				log.info("Change applier lag: {} bytes of WAL not yet decoded from replication slot: {}",
+						resultSet.getLong("lag"), name);
+			}
+		}
+	}
+
+	/**
+	 * Reads the changes from the replication slot up to the specified LSN, or the specified number of changes (which
+	 * is rounded up to the end of a transaction), and retains the identities of the changed records of all source
+	 * tables which have a dispatcher.
+	 */
+	private Batch read(Connection connection, String uptoLsn, Integer uptoChanges,
+			Map<String, SyncDispatcher> dispatchers) throws SQLException {
+
+		String query = "SELECT * FROM pg_logical_slot_peek_changes(?, CAST(? AS pg_lsn), ?);";
+		Batch batch = new Batch();
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, name);
+			statement.setString(2, uptoLsn);
+			statement.setObject(3, uptoChanges, Types.INTEGER);
+
+			ResultSet resultSet = statement.executeQuery();
+			while (resultSet.next()) {
+				batch.size++;
+				batch.lsn = resultSet.getString(1);
+
+				DecodedChange change = DecodedChange.parse(resultSet.getString(3));
+				if (change == null) {
+					continue;
+				}
+
+				for (String table : change.getTables()) {
+					SyncDispatcher dispatcher = dispatchers.get(table);
+					if (dispatcher == null) {
+						continue;
+					}
+
+					Set<String> identities = batch.identities.computeIfAbsent(table, key -> Sets.newLinkedHashSet());
+					if (change.isTruncate()) {
+						batch.truncated.add(table);
+					}
+					for (Map<String, String> identity : change.getIdentities(dispatcher.getKeyColumns())) {
+						identities.add(gson.toJson(identity));
+					}
+				}
+			}
+		}
+		return batch;
+	}
+
+	private void apply(Connection connection, Batch batch, Map<String, SyncDispatcher> dispatchers)
+			throws SQLException {
+
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(ChangeQueue.createBatchTableStatement());
+			for (String table : batch.truncated) {
+				for (String query : dispatchers.get(table).createPruneStatements()) {
+					log.debug("Executing: " + query);
+					statement.execute(query);
+				}
+			}
+		}
+
+		for (Entry<String, Set<String>> entry : batch.identities.entrySet()) {
+			if (entry.getValue().isEmpty()) {
+				continue;
+			}
+
+			try (PreparedStatement statement = connection.prepareStatement(ChangeQueue.createAddToBatchStatement())) {
+				for (String identity : entry.getValue()) {
+					statement.setString(1, identity);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+			}
+
+			ChangeApplier.applyBatch(connection, dispatchers.get(entry.getKey()));
+			try (Statement statement = connection.createStatement()) {
+				statement.execute(ChangeQueue.createClearBatchStatement());
+			}
+		}
+
+		recordLsn(connection, batch.lsn);
+	}
+
+	/**
+	 * Records the LSN up to which changes have been applied in the progress of the fork. This does not commit the
+	 * transaction of the Connection.
+	 */
+	private void recordLsn(Connection connection, String lsn) throws SQLException {
+		String query = new QueryBuilder()
+				.append("INSERT INTO quantumdb.fork_progress (version_id, ref_id, step, subject, details)")
+				.append("VALUES (?, ?, ?, '', ?)")
+				.append("ON CONFLICT (version_id, ref_id, step, subject) DO UPDATE SET details = EXCLUDED.details;")
+				.toString();
+
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, version.getId());
+			statement.setString(2, name);
+			statement.setString(3, ForkProgress.Step.SLOT.name());
+			statement.setString(4, lsn);
+			statement.executeUpdate();
+		}
+	}
+
+	private static class Batch {
+		private final Map<String, Set<String>> identities = Maps.newLinkedHashMap();
+		private final Set<String> truncated = Sets.newLinkedHashSet();
+		private int size;
+		private String lsn;
+	}
+
+}
@@ -8,8 +8,11 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import io.quantumdb.core.planner.MigratorFunction.Stage;
+import io.quantumdb.core.planner.MigratorFunction.Strategy;
 import io.quantumdb.core.schema.definitions.Column;
 import io.quantumdb.core.schema.definitions.ForeignKey;
 import io.quantumdb.core.schema.definitions.Identity;
@@ -27,91 +30,45 @@ import lombok.NoArgsConstructor;
 public class SelectiveMigratorFunction {
 
 	static MigratorFunction createMigrator(NullRecords nullRecords, RefLog refLog, Table source, Table target,
-			Version from, Version to, long batchSize, Stage stage, Set<String> migratedColumns,
+			Version from, Version to, Stage stage, Strategy strategy, Set<String> migratedColumns,
 			Set<String> columnsToBeMigrated) {
 
 		if (migratedColumns.isEmpty()) {
-			return createInsertMigrator(nullRecords, refLog, source, target, from, to, batchSize, stage, columnsToBeMigrated);
+			if (strategy == Strategy.SET_BASED) {
+				return createSetBasedInsertMigrator(nullRecords, refLog, source, target, stage, columnsToBeMigrated);
+			}
+			return createInsertMigrator(nullRecords, refLog, source, target, from, to, stage, columnsToBeMigrated);
 		}
 		else {
-			return createUpdateMigrator(refLog, source, target, from, to, batchSize, stage, columnsToBeMigrated);
+			if (strategy == Strategy.SET_BASED) {
+				return createSetBasedUpdateMigrator(refLog, source, target, stage, columnsToBeMigrated);
+			}
+			return createUpdateMigrator(refLog, source, target, from, to, stage, columnsToBeMigrated);
 		}
 	}
 
 	private static MigratorFunction createUpdateMigrator(RefLog refLog, Table source, Table target, Version from,
-			Version to, long batchSize, Stage stage, Set<String> columnsToBeMigrated) {
+			Version to, Stage stage, Set<String> columnsToBeMigrated) {
 
 		List<Column> identityColumns = source.getIdentityColumns();
-		Map<String, String> functionParameterMapping = Maps.newHashMap();
-		for (int i = 0; i < identityColumns.size(); i++) {
-			functionParameterMapping.put(identityColumns.get(i).getName(), "q" + i);
-		}
-
-		List<String> identityColumnNames = identityColumns.stream()
-				.map(column -> "\"" + column.getName() + "\"")
-				.collect(Collectors.toList());
-
-		List<String> functionParameters = identityColumns.stream()
-				.map(column -> functionParameterMapping.get(column.getName()) + " " + column.getType().toString())
-				.collect(Collectors.toList());
+		List<String> identityColumnNames = quote(identityColumns);
 
 		String functionName = "migrator_" + RandomHasher.generateHash();
 
-		QueryBuilder createStatement = new QueryBuilder();
-
-		switch (stage) {
-			case INITIAL:
-				createStatement.append("CREATE FUNCTION " + functionName + "()");
-				break;
-			case CONSECUTIVE:
-				createStatement.append(
-						"CREATE FUNCTION " + functionName + "(" + Joiner.on(", ").join(functionParameters) + ")");
-				break;
-		}
-
-		createStatement.append("  RETURNS text AS $$");
+		QueryBuilder createStatement = createSignature(functionName, identityColumns, stage);
+		createStatement.append("  AS $$");
 		createStatement.append("  DECLARE r record;");
 		createStatement.append("  BEGIN");
 		createStatement.append("	FOR r IN");
 		createStatement.append("	  SELECT * FROM " + source.getName());
 
-		if (stage != Stage.INITIAL) {
-			createStatement.append("		WHERE");
-			for (int i = 0; i < identityColumns.size(); i++) {
-				if (i > 0) {
-					createStatement.append("OR");
-				}
-
-				createStatement.append("(");
-
-				for (int j = 0; j < i; j++) {
-					String identityColumnName = identityColumns.get(j).getName();
-					String value = functionParameterMapping.get(identityColumnName);
-					createStatement.append(identityColumnName + " = " + value);
-					createStatement.append("AND");
-				}
-
-				String identityColumnName = identityColumns.get(i).getName();
-				String value = functionParameterMapping.get(identityColumnName);
-				createStatement.append(identityColumnName + " > " + value);
-				createStatement.append(")");
-			}
-		}
+		appendKeysetCondition(createStatement, identityColumns, stage);
 
 		TableRef sourceRef = refLog.getTableRefById(source.getName());
 		TableRef targetRef = refLog.getTableRefById(target.getName());
 		Map<ColumnRef, ColumnRef> columnMapping = refLog.getColumnMapping(sourceRef, targetRef);
 
-		Map<String, String> columnsToMigrate = columnMapping.entrySet().stream()
-				.filter(entry -> columnsToBeMigrated.contains(entry.getKey().getName()))
-				.map(entry -> {
-					String newColumnName = entry.getValue().getName();
-					Column newColumn = target.getColumn(newColumnName);
-					return new SimpleImmutableEntry<>(newColumn, entry.getKey().getName());
-				})
-				.collect(Collectors.toMap(entry -> "\"" + entry.getKey().getName() + "\"",
-						entry -> "\"" + entry.getValue() + "\""));
-
+		Map<String, String> columnsToMigrate = determineColumnsToUpdate(columnMapping, target, columnsToBeMigrated);
 		if (columnsToMigrate.isEmpty()) {
 			return null;
 		}
@@ -135,7 +92,7 @@ public class SelectiveMigratorFunction {
 				.collect(Collectors.joining(" AND "));
 
 		createStatement.append("		ORDER BY " + Joiner.on(" ASC, ").join(identityColumnNames) + " ASC");
-		createStatement.append("		LIMIT " + batchSize);
+		createStatement.append("		LIMIT lim");
 		createStatement.append("	LOOP");
 		createStatement.append("	  BEGIN");
 		createStatement.append("		UPDATE " + target.getName());
@@ -143,51 +100,208 @@ public class SelectiveMigratorFunction {
 		createStatement.append("		  WHERE  " + identityCondition + ";");
 		createStatement.append("	  EXCEPTION WHEN unique_violation THEN END;");
 		createStatement.append("	END LOOP;");
-		createStatement.append("  RETURN CONCAT('(', r." + Joiner.on(", ',', r.").join(identityColumnNames) + ", ')');");
-		createStatement.append("END; $$ LANGUAGE 'plpgsql';");
+		appendReturnIdentity(createStatement, identityColumnNames);
 
-		QueryBuilder dropStatement = new QueryBuilder();
-		switch (stage) {
-			case INITIAL:
-				dropStatement.append("DROP FUNCTION " + functionName + "();");
-				break;
-			case CONSECUTIVE:
-				List<String> parameterTypes = identityColumns.stream()
-						.map(column -> column.getType().toString())
-						.collect(Collectors.toList());
-
-				dropStatement.append("DROP FUNCTION " + functionName + "(" + Joiner.on(",").join(parameterTypes) + ");");
-				break;
-		}
-
-		return new MigratorFunction(functionName, identityColumnNames, createStatement.toString(), dropStatement.toString());
+		QueryBuilder callStatement = createCallStatement(functionName, identityColumns, stage);
+		QueryBuilder dropStatement = createDropStatement(functionName, identityColumns, stage);
+		return new MigratorFunction(functionName, identityColumnNames, createStatement.toString(),
+				callStatement.toString(), dropStatement.toString());
 	}
 
 	private static MigratorFunction createInsertMigrator(NullRecords nullRecords, RefLog refLog, Table source,
-			Table target, Version from, Version to, long batchSize, Stage stage, Set<String> columns) {
+			Table target, Version from, Version to, Stage stage, Set<String> columns) {
 
 		List<Column> identityColumns = source.getIdentityColumns();
-		Map<String, String> functionParameterMapping = Maps.newHashMap();
-		for (int i = 0; i < identityColumns.size(); i++) {
-			functionParameterMapping.put(identityColumns.get(i).getName(), "q" + i);
-		}
+		List<String> identityColumnNames = quote(identityColumns);
 
-		List<String> identityColumnNames = identityColumns.stream()
-				.map(column -> "\"" + column.getName() + "\"")
-				.collect(Collectors.toList());
+		TableRef sourceRef = refLog.getTableRefById(source.getName());
+		TableRef targetRef = refLog.getTableRefById(target.getName());
+		Map<ColumnRef, ColumnRef> columnMapping = refLog.getColumnMapping(sourceRef, targetRef);
+		Map<String, String> values = determineInsertValues(nullRecords, columnMapping, target, columns, "r");
 
-		List<String> functionParameters = identityColumns.stream()
-				.map(column -> functionParameterMapping.get(column.getName()) + " " + column.getType().toString())
-				.collect(Collectors.toList());
+		String functionName = "migrator_" + RandomHasher.generateHash();
+
+		QueryBuilder createStatement = createSignature(functionName, identityColumns, stage);
+		createStatement.append("  AS $$");
+		createStatement.append("  DECLARE r record;");
+		createStatement.append("  BEGIN");
+		createStatement.append("	FOR r IN");
+		createStatement.append("	  SELECT * FROM " + source.getName());
+
+		appendKeysetCondition(createStatement, identityColumns, stage);
+
+		createStatement.append("		ORDER BY " + Joiner.on(" ASC, ").join(identityColumnNames) + " ASC");
+		createStatement.append("		LIMIT lim");
+		createStatement.append("	LOOP");
+		createStatement.append("	  BEGIN");
+		createStatement.append("		INSERT INTO " + target.getName());
+		createStatement.append("		  (" + values.keySet().stream().map(input -> "\"" + input + "\"").collect(Collectors.joining(", ")) + ")");
+		createStatement.append("		  VALUES (" + Joiner.on(", ").join(values.values()) + ");");
+		createStatement.append("	  EXCEPTION WHEN unique_violation THEN END;");
+		createStatement.append("	END LOOP;");
+		appendReturnIdentity(createStatement, identityColumnNames);
+
+		QueryBuilder callStatement = createCallStatement(functionName, identityColumns, stage);
+		QueryBuilder dropStatement = createDropStatement(functionName, identityColumns, stage);
+		return new MigratorFunction(functionName, identityColumnNames, createStatement.toString(),
+				callStatement.toString(), dropStatement.toString());
+	}
+
+	/**
+	 * Creates a migrator function which copies an entire batch of records from the source table into the target
+	 * table using a single INSERT ... SELECT statement. Unlike the row-by-row migrator this doesn't open a
+	 * sub-transaction per record, and it only reads the columns which are actually mapped onto the target table.
+	 */
+	private static MigratorFunction createSetBasedInsertMigrator(NullRecords nullRecords, RefLog refLog,
+			Table source, Table target, Stage stage, Set<String> columns) {
+
+		List<Column> identityColumns = source.getIdentityColumns();
+		List<String> identityColumnNames = quote(identityColumns);
+
+		TableRef sourceRef = refLog.getTableRefById(source.getName());
+		TableRef targetRef = refLog.getTableRefById(target.getName());
+		Map<ColumnRef, ColumnRef> columnMapping = refLog.getColumnMapping(sourceRef, targetRef);
+		Map<String, String> values = determineInsertValues(nullRecords, columnMapping, target, columns, "batch");
+
+		Set<String> projection = Sets.newLinkedHashSet(identityColumnNames);
+		columnMapping.keySet().stream()
+				.filter(columnRef -> columns.contains(columnRef.getName()))
+				.forEach(columnRef -> projection.add("\"" + columnRef.getName() + "\""));
+
+		String functionName = "migrator_" + RandomHasher.generateHash();
+
+		QueryBuilder createStatement = createSignature(functionName, identityColumns, stage);
+		createStatement.append("  AS $$");
+		createStatement.append("  DECLARE r record;");
+		createStatement.append("  BEGIN");
+		appendBatch(createStatement, source, identityColumns, projection, stage);
+		createStatement.append("	), migrated AS (");
+		createStatement.append("	  INSERT INTO " + target.getName());
+		createStatement.append("		(" + values.keySet().stream().map(input -> "\"" + input + "\"").collect(Collectors.joining(", ")) + ")");
+		createStatement.append("		SELECT " + Joiner.on(", ").join(values.values()) + " FROM batch");
+		createStatement.append("		ON CONFLICT DO NOTHING");
+		createStatement.append("	)");
+		appendReturnLastIdentity(createStatement, identityColumnNames);
+
+		QueryBuilder callStatement = createCallStatement(functionName, identityColumns, stage);
+		QueryBuilder dropStatement = createDropStatement(functionName, identityColumns, stage);
+		return new MigratorFunction(functionName, identityColumnNames, createStatement.toString(),
+				callStatement.toString(), dropStatement.toString());
+	}
+
+	/**
+	 * Creates a migrator function which updates an entire batch of records in the target table using a single
+	 * UPDATE ... FROM statement, reading only the identity and to be migrated columns from the source table.
+	 */
+	private static MigratorFunction createSetBasedUpdateMigrator(RefLog refLog, Table source, Table target,
+			Stage stage, Set<String> columnsToBeMigrated) {
+
+		List<Column> identityColumns = source.getIdentityColumns();
+		List<String> identityColumnNames = quote(identityColumns);
 
 		TableRef sourceRef = refLog.getTableRefById(source.getName());
 		TableRef targetRef = refLog.getTableRefById(target.getName());
 		Map<ColumnRef, ColumnRef> columnMapping = refLog.getColumnMapping(sourceRef, targetRef);
 
+		Map<String, String> columnsToMigrate = determineColumnsToUpdate(columnMapping, target, columnsToBeMigrated);
+		if (columnsToMigrate.isEmpty()) {
+			return null;
+		}
+
+		Set<String> projection = Sets.newLinkedHashSet(identityColumnNames);
+		projection.addAll(columnsToMigrate.values());
+
+		String updates = columnsToMigrate.entrySet().stream()
+				.map(entry -> entry.getKey() + " = batch." + entry.getValue())
+				.collect(Collectors.joining(", "));
+
+		String identityCondition = identityColumns.stream()
+				.map(column -> {
+					String mappedColumnName = columnMapping.entrySet().stream()
+							.filter(entry -> entry.getKey().getName().equals(column.getName()))
+							.map(entry -> entry.getValue().getName())
+							.findFirst().get();
+
+					return target.getName() + ".\"" + mappedColumnName + "\" = batch.\"" + column.getName() + "\"";
+				})
+				.collect(Collectors.joining(" AND "));
+
+		String functionName = "migrator_" + RandomHasher.generateHash();
+
+		QueryBuilder createStatement = createSignature(functionName, identityColumns, stage);
+		createStatement.append("  AS $$");
+		createStatement.append("  DECLARE r record;");
+		createStatement.append("  BEGIN");
+		appendBatch(createStatement, source, identityColumns, projection, stage);
+		createStatement.append("	), migrated AS (");
+		createStatement.append("	  UPDATE " + target.getName());
+		createStatement.append("		SET " + updates);
+		createStatement.append("		FROM batch");
+		createStatement.append("		WHERE " + identityCondition);
+		createStatement.append("	)");
+		appendReturnLastIdentity(createStatement, identityColumnNames);
+
+		QueryBuilder callStatement = createCallStatement(functionName, identityColumns, stage);
+		QueryBuilder dropStatement = createDropStatement(functionName, identityColumns, stage);
+		return new MigratorFunction(functionName, identityColumnNames, createStatement.toString(),
+				callStatement.toString(), dropStatement.toString());
+	}
+
+	private static void appendBatch(QueryBuilder createStatement, Table source, List<Column> identityColumns,
+			Set<String> projection, Stage stage) {
+
+		List<String> identityColumnNames = quote(identityColumns);
+
+		createStatement.append("	WITH batch AS (");
+		createStatement.append("	  SELECT " + Joiner.on(", ").join(projection) + " FROM " + source.getName());
+
+		appendKeysetCondition(createStatement, identityColumns, stage);
+
+		createStatement.append("		ORDER BY " + Joiner.on(" ASC, ").join(identityColumnNames) + " ASC");
+		createStatement.append("		LIMIT lim");
+	}
+
+	private static void appendReturnLastIdentity(QueryBuilder createStatement, List<String> identityColumnNames) {
+		createStatement.append("	SELECT * INTO r FROM batch");
+		createStatement.append("	  ORDER BY " + Joiner.on(" DESC, ").join(identityColumnNames) + " DESC");
+		createStatement.append("	  LIMIT 1;");
+		appendReturnIdentity(createStatement, identityColumnNames);
+	}
+
+	/**
+	 * Returns the identity of the last processed record through the OUT parameters "l0", "l1", etc. These are left
+	 * NULL when no records were processed.
+	 */
+	private static void appendReturnIdentity(QueryBuilder createStatement, List<String> identityColumnNames) {
+		createStatement.append("	IF NOT FOUND THEN RETURN; END IF;");
+		for (int i = 0; i < identityColumnNames.size(); i++) {
+			createStatement.append("	l" + i + " := r." + identityColumnNames.get(i) + ";");
+		}
+		createStatement.append("  RETURN;");
+		createStatement.append("END; $$ LANGUAGE 'plpgsql';");
+	}
+
+	private static Map<String, String> determineColumnsToUpdate(Map<ColumnRef, ColumnRef> columnMapping,
+			Table target, Set<String> columnsToBeMigrated) {
+
+		return columnMapping.entrySet().stream()
+				.filter(entry -> columnsToBeMigrated.contains(entry.getKey().getName()))
+				.map(entry -> {
+					String newColumnName = entry.getValue().getName();
+					Column newColumn = target.getColumn(newColumnName);
+					return new SimpleImmutableEntry<>(newColumn, entry.getKey().getName());
+				})
+				.collect(Collectors.toMap(entry -> "\"" + entry.getKey().getName() + "\"",
+						entry -> "\"" + entry.getValue() + "\""));
+	}
+
+	static Map<String, String> determineInsertValues(NullRecords nullRecords,
+			Map<ColumnRef, ColumnRef> columnMapping, Table target, Set<String> columns, String alias) {
+
 		Map<String, String> values = columnMapping.entrySet().stream()
 				.filter(entry -> columns.contains(entry.getKey().getName()))
 				.collect(Collectors.toMap(entry -> entry.getValue().getName(),
-						entry -> "r.\"" + entry.getKey().getName() + "\"",
+						entry -> alias + ".\"" + entry.getKey().getName() + "\"",
 						(u, v) -> { throw new IllegalStateException(String.format("Duplicate key %s", u)); },
 						Maps::newLinkedHashMap));
 
@@ -215,78 +329,85 @@ public class SelectiveMigratorFunction {
 			}
 		}
 
-		String functionName = "migrator_" + RandomHasher.generateHash();
-
-		QueryBuilder createStatement = new QueryBuilder();
-
-		switch (stage) {
-			case INITIAL:
-				createStatement.append("CREATE FUNCTION " + functionName + "()");
-				break;
-			case CONSECUTIVE:
-				createStatement.append(
-						"CREATE FUNCTION " + functionName + "(" + Joiner.on(", ").join(functionParameters) + ")");
-				break;
-		}
-
-		createStatement.append("  RETURNS text AS $$");
-		createStatement.append("  DECLARE r record;");
-		createStatement.append("  BEGIN");
-		createStatement.append("	FOR r IN");
-		createStatement.append("	  SELECT * FROM " + source.getName());
+		return values;
+	}
 
-		if (stage != Stage.INITIAL) {
-			createStatement.append("		WHERE");
+	/**
+	 * Every migrator function accepts an inclusive upper bound "u0" on the first identity column, which allows
+	 * multiple workers to each migrate their own range of the table, followed by the maximum number of records
+	 * "lim" to migrate in one batch. The CONSECUTIVE variant additionally accepts the (exclusive) identity of the
+	 * last processed record as "q0", "q1", etc. The identity of the last record migrated by the function is
+	 * returned as "l0", "l1", etc.
+	 */
+	private static QueryBuilder createSignature(String functionName, List<Column> identityColumns, Stage stage) {
+		List<String> functionParameters = Lists.newArrayList();
+		if (stage == Stage.CONSECUTIVE) {
 			for (int i = 0; i < identityColumns.size(); i++) {
-				if (i > 0) {
-					createStatement.append("OR");
-				}
+				functionParameters.add("q" + i + " " + identityColumns.get(i).getType().toString());
+			}
+		}
+		functionParameters.add("u0 " + identityColumns.get(0).getType().toString());
+		functionParameters.add("lim bigint");
+		for (int i = 0; i < identityColumns.size(); i++) {
+			functionParameters.add("OUT l" + i + " " + identityColumns.get(i).getType().toString());
+		}
 
-				createStatement.append("(");
+		return new QueryBuilder()
+				.append("CREATE FUNCTION " + functionName + "(" + Joiner.on(", ").join(functionParameters) + ")");
+	}
 
-				for (int j = 0; j < i; j++) {
-					String identityColumnName = identityColumns.get(j).getName();
-					String value = functionParameterMapping.get(identityColumnName);
-					createStatement.append(identityColumnName + " = " + value);
-					createStatement.append("AND");
-				}
+	/**
+	 * Creates the statement which invokes the migrator function, binding all parameters in the same order as they
+	 * are declared in createSignature().
+	 */
+	private static QueryBuilder createCallStatement(String functionName, List<Column> identityColumns,
+			Stage stage) {
 
-				String identityColumnName = identityColumns.get(i).getName();
-				String value = functionParameterMapping.get(identityColumnName);
-				createStatement.append(identityColumnName + " > " + value);
-				createStatement.append(")");
-			}
+		List<String> arguments = Lists.newArrayList();
+		if (stage == Stage.CONSECUTIVE) {
+			identityColumns.forEach(column -> arguments.add("CAST(? AS " + column.getType() + ")"));
 		}
+		arguments.add("CAST(? AS " + identityColumns.get(0).getType() + ")");
+		arguments.add("?");
 
-		createStatement.append("		ORDER BY " + Joiner.on(" ASC, ").join(identityColumnNames) + " ASC");
-		createStatement.append("		LIMIT " + batchSize);
-		createStatement.append("	LOOP");
-		createStatement.append("	  BEGIN");
-		createStatement.append("		INSERT INTO " + target.getName());
-		createStatement.append("		  (" + values.keySet().stream().map(input -> "\"" + input + "\"").collect(Collectors.joining(", ")) + ")");
-		createStatement.append("		  VALUES (" + Joiner.on(", ").join(values.values()) + ");");
-		createStatement.append("	  EXCEPTION WHEN unique_violation THEN END;");
-		createStatement.append("	END LOOP;");
-		createStatement.append("  RETURN CONCAT('(', r." + Joiner.on(", ',', r.").join(identityColumnNames) + ", ')');");
-		createStatement.append("END; $$ LANGUAGE 'plpgsql';");
+		return new QueryBuilder("SELECT * FROM " + functionName + "(" + Joiner.on(", ").join(arguments) + ");");
+	}
 
+	private static void appendKeysetCondition(QueryBuilder createStatement, List<Column> identityColumns,
+			Stage stage) {
 
-		QueryBuilder dropStatement = new QueryBuilder();
+		createStatement.append("		WHERE " + identityColumns.get(0).getName() + " <= u0");
+		if (stage == Stage.INITIAL) {
+			return;
+		}
 
-		switch (stage) {
-			case INITIAL:
-				dropStatement.append("DROP FUNCTION " + functionName + "();");
-				break;
-			case CONSECUTIVE:
-				List<String> parameterTypes = identityColumns.stream()
-						.map(column -> column.getType().toString())
-						.collect(Collectors.toList());
+		// A row-value comparison allows the planner to use the primary key index to find the next record.
+		List<String> columnNames = Lists.newArrayList();
+		List<String> parameterNames = Lists.newArrayList();
+		for (int i = 0; i < identityColumns.size(); i++) {
+			columnNames.add(identityColumns.get(i).getName());
+			parameterNames.add("q" + i);
+		}
+
+		createStatement.append("AND (" + Joiner.on(", ").join(columnNames) + ") > ("
+				+ Joiner.on(", ").join(parameterNames) + ")");
+	}
 
-				dropStatement.append("DROP FUNCTION " + functionName + "(" + Joiner.on(",").join(parameterTypes) + ");");
-				break;
+	private static QueryBuilder createDropStatement(String functionName, List<Column> identityColumns, Stage stage) {
+		List<String> parameterTypes = Lists.newArrayList();
+		if (stage == Stage.CONSECUTIVE) {
+			identityColumns.forEach(column -> parameterTypes.add(column.getType().toString()));
 		}
+		parameterTypes.add(identityColumns.get(0).getType().toString());
+		parameterTypes.add("bigint");
 
-		return new MigratorFunction(functionName, identityColumnNames, createStatement.toString(), dropStatement.toString());
+		return new QueryBuilder("DROP FUNCTION " + functionName + "(" + Joiner.on(",").join(parameterTypes) + ");");
+	}
+
+	private static List<String> quote(List<Column> columns) {
+		return columns.stream()
+				.map(column -> "\"" + column.getName() + "\"")
+				.collect(Collectors.toList());
 	}
 
 }
@@ -0,0 +1,247 @@
+package io.quantumdb.core.planner;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.quantumdb.core.planner.SyncFunction.Mode;
+import io.quantumdb.core.schema.definitions.Catalog;
+import io.quantumdb.core.schema.definitions.Table;
+import io.quantumdb.core.utils.QueryBuilder;
+import io.quantumdb.core.versioning.RefLog;
+import io.quantumdb.core.versioning.RefLog.ColumnRef;
+import io.quantumdb.core.versioning.RefLog.SyncRef;
+import io.quantumdb.core.versioning.RefLog.TableRef;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Synchronizes a source table with all of its target tables through a single trigger function. Instead of firing one
+ * trigger per target table (one for every active version which has its own copy of the table), every change to the
+ * source table fires one trigger, which applies the change to each target table in turn using the blocks generated
+ * by the SyncFunction of each target table.
+ *
+ * Each SyncRef of the source table refers to the dispatcher's trigger and function. Whenever a SyncRef is added to or
+ * dropped from the source table, the dispatcher must be installed again, so that it reflects the current SyncRefs.
+ *
+ * In QUEUE mode the dispatcher only queues the identities of changed records once, regardless of the number of target
+ * tables, and a ChangeApplier applies them to all target tables later on. In LOGICAL mode the dispatcher has no
+ * function and triggers at all, since the changes are read from a ReplicationSlot instead.
+ */
+@Slf4j
+class SyncDispatcher {
+
+	static final String TRIGGER_NAME = "quantumdb_sync";
+
+	private static final String FUNCTION_PREFIX = "dispatch_";
+
+	/**
+	 * @return The name of the dispatcher function of the specified source table.
+	 */
+	static String getFunctionName(String sourceRefId) {
+		return FUNCTION_PREFIX + sourceRefId;
+	}
+
+	/**
+	 * @return The statement which drops the dispatcher function, and with it the triggers, of the specified table.
+	 */
+	static QueryBuilder createDropStatement(String sourceRefId) {
+		return new QueryBuilder("DROP FUNCTION IF EXISTS " + getFunctionName(sourceRefId) + "() CASCADE;");
+	}
+
+	/**
+	 * Installs the dispatcher of the specified source table, so that it synchronizes all target tables for which a
+	 * SyncRef is registered in the RefLog. If the source table no longer has any SyncRefs, the dispatcher is dropped.
+	 * SyncRefs which still refer to a trigger and function of their own (created before dispatchers were introduced)
+	 * are moved into the dispatcher. Installing a dispatcher in any mode other than QUEUE also applies the changes which
+	 * are still queued for the source table, while its triggers are locked, so that no change is lost when switching
+	 * from the QUEUE mode to another mode.
+	 *
+	 * @param syncFunctions The SyncFunctions which are already known, indexed by the refId of their target table.
+	 *                      The SyncFunctions of all other SyncRefs are derived from their column mappings.
+	 * @return The installed dispatcher, or NULL if the dispatcher was dropped.
+	 */
+	static SyncDispatcher install(Connection connection, RefLog refLog, Catalog catalog, NullRecords nullRecords, Mode mode,
+			TableRef source, Map<String, SyncFunction> syncFunctions) throws SQLException {
+
+		String sourceRefId = source.getRefId();
+		String functionName = getFunctionName(sourceRefId);
+
+		List<SyncRef> syncRefs = source.getOutboundSyncs().stream()
+				.sorted(Comparator.comparing(syncRef -> syncRef.getTarget().getRefId()))
+				.collect(Collectors.toList());
+
+		boolean upsert = SyncFunction.supportsUpsert(connection);
+		QueryBuilder query = new QueryBuilder();
+		List<SyncFunction> functions = Lists.newArrayList();
+		for (SyncRef syncRef : syncRefs) {
+			TableRef target = syncRef.getTarget();
+			SyncFunction syncFunction = syncFunctions.get(target.getRefId());
+			if (syncFunction == null) {
+				Map<ColumnRef, ColumnRef> mapping = syncRef.getColumnMapping();
+				syncFunction = new SyncFunction(refLog, source, target, mapping, catalog, nullRecords,
+						syncRef.getFunctionName(), syncRef.getName());
+				syncFunction.setColumnsToMigrate(mapping.values().stream()
+						.map(ColumnRef::getName)
+						.collect(Collectors.toSet()));
+			}
+			syncFunction.setMode(mode);
+			syncFunction.setUpsert(upsert);
+			functions.add(syncFunction);
+
+			if (!functionName.equals(syncRef.getFunctionName())) {
+				log.info("Moving synchronizer: {}/{} into dispatcher: {}", syncRef.getName(),
+						syncRef.getFunctionName(), functionName);
+
+				query.append(SyncFunction.createDropTriggerStatement(syncRef.getName(), sourceRefId).toString())
+						.append("DROP FUNCTION IF EXISTS " + syncRef.getFunctionName() + "() CASCADE;");
+
+				syncRef.drop();
+				refLog.addSync(TRIGGER_NAME, functionName, syncRef.getColumnMapping());
+			}
+		}
+
+		SyncDispatcher dispatcher = null;
+		if (functions.isEmpty()) {
+			log.info("Dropping sync dispatcher: {} for table: {}", functionName, sourceRefId);
+			query.append(createDropStatement(sourceRefId).toString())
+					.append(ChangeQueue.createClearStatement(sourceRefId));
+		}
+		else {
+			log.info("Installing sync dispatcher: {} for table: {} with {} target(s)", functionName, sourceRefId,
+					functions.size());
+
+			dispatcher = new SyncDispatcher(sourceRefId, mode, functions);
+			if (mode == Mode.LOGICAL) {
+				query.append(createDropStatement(sourceRefId).toString());
+			}
+			else {
+				query.append(dispatcher.createFunctionStatement().toString())
+						.append(SyncFunction.createDropTriggerStatement(TRIGGER_NAME, sourceRefId).toString())
+						.append(dispatcher.createTriggerStatement().toString());
+			}
+		}
+
+		// Recreating the triggers must be atomic, or changes made in between would not be synchronized.
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try {
+			execute(connection, query.toString());
+			if (dispatcher != null && mode != Mode.QUEUE) {
+				long applied = ChangeQueue.drain(connection, dispatcher);
+				if (applied > 0) {
+					log.info("Applied {} queued change(s) of table: {}", applied, sourceRefId);
+				}
+			}
+			if (autoCommit) {
+				connection.commit();
+			}
+		}
+		catch (SQLException e) {
+			if (autoCommit) {
+				connection.rollback();
+			}
+			throw e;
+		}
+		finally {
+			connection.setAutoCommit(autoCommit);
+		}
+		return dispatcher;
+	}
+
+	private static void execute(Connection connection, String query) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			log.debug("Executing: " + query);
+			statement.execute(query);
+		}
+	}
+
+	@Getter
+	private final String sourceRefId;
+
+	private final Mode mode;
+	private final ImmutableList<SyncFunction> syncFunctions;
+	@Getter
+	private final ImmutableList<String> keyColumns;
+
+	@Getter
+	private final String functionName;
+
+	/**
+	 * The statements which apply a batch of queued changes to all target tables. These are created up front, since
+	 * they are used by the ChangeApplier while the SyncFunctions may be changed for a new installation.
+	 */
+	@Getter
+	private final ImmutableList<String> applyStatements;
+
+	SyncDispatcher(String sourceRefId, Mode mode, List<SyncFunction> syncFunctions) {
+		this.sourceRefId = sourceRefId;
+		this.mode = mode;
+		this.syncFunctions = ImmutableList.copyOf(syncFunctions);
+		this.functionName = getFunctionName(sourceRefId);
+
+		Set<String> keyColumns = Sets.newLinkedHashSet();
+		syncFunctions.forEach(syncFunction -> keyColumns.addAll(syncFunction.getIdentitySourceColumns()));
+		this.keyColumns = ImmutableList.copyOf(keyColumns);
+		this.applyStatements = createApplyStatements();
+	}
+
+	QueryBuilder createFunctionStatement() {
+		if (mode == Mode.QUEUE) {
+			return SyncFunction.createFunctionStatement(functionName, mode,
+					ChangeQueue.createEnqueueStatement(sourceRefId, keyColumns));
+		}
+
+		QueryBuilder body = new QueryBuilder();
+		for (SyncFunction syncFunction : syncFunctions) {
+			body.append(syncFunction.createBodyStatement().toString());
+		}
+		return SyncFunction.createFunctionStatement(functionName, mode, body);
+	}
+
+	/**
+	 * @return The statements which remove all records from the target tables which no longer exist in the source table,
+	 * for instance because it was truncated.
+	 */
+	List<String> createPruneStatements() {
+		return syncFunctions.stream()
+				.map(SyncFunction::createPruneStatement)
+				.collect(Collectors.toList());
+	}
+
+	private ImmutableList<String> createApplyStatements() {
+		if (syncFunctions.isEmpty()) {
+			return ImmutableList.of();
+		}
+
+		Table source = syncFunctions.get(0).getCatalog().getTable(sourceRefId);
+		String batch = ChangeQueue.createBatchQuery(keyColumns.stream()
+				.map(source::getColumn)
+				.collect(Collectors.toList()));
+
+		return ImmutableList.copyOf(syncFunctions.stream()
+				.flatMap(syncFunction -> syncFunction.createApplyStatements(batch).stream())
+				.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Creates the triggers of the dispatcher. In ROW mode the update trigger fires when any of the columns which are
+	 * synchronized to at least one of the target tables changes.
+	 */
+	QueryBuilder createTriggerStatement() {
+		Set<String> columns = Sets.newLinkedHashSet();
+		syncFunctions.forEach(syncFunction -> columns.addAll(syncFunction.getSyncedColumns()));
+
+		return SyncFunction.createTriggerStatement(TRIGGER_NAME, functionName, mode, sourceRefId,
+				Lists.newArrayList(columns));
+	}
+
+}
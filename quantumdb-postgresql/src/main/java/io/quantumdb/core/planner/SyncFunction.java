@@ -2,6 +2,9 @@ package io.quantumdb.core.planner;
 
 import static io.quantumdb.core.utils.RandomHasher.generateHash;
 
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -10,6 +13,7 @@ import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import io.quantumdb.core.schema.definitions.Catalog;
@@ -23,11 +27,98 @@ import io.quantumdb.core.versioning.RefLog.ColumnRef;
 import io.quantumdb.core.versioning.RefLog.TableRef;
 import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.Setter;
 
 @Data
 public class SyncFunction {
 
+	public enum Mode {
+		/**
+		 * Synchronizes every modified record through a FOR EACH ROW trigger.
+		 */
+		ROW(0, 0),
+
+		/**
+		 * Synchronizes all records modified by a statement at once, through FOR EACH STATEMENT triggers which
+		 * reference the modified records as transition tables (PostgreSQL 10+). This also propagates TRUNCATE.
+		 */
+		STATEMENT(10, 0),
+
+		/**
+		 * Only records the operation and identity of every modified record in the ChangeQueue while forking, from
+		 * which a ChangeApplier applies the changes in batches. Once the fork completes, the synchronizers switch to
+		 * ROW mode.
+		 */
+		QUEUE(9, 5),
+
+		/**
+		 * Doesn't install any triggers while forking, but decodes the changes from a logical replication slot (using
+		 * the "test_decoding" plugin, which requires "wal_level = logical"), and applies them in batches like in QUEUE
+		 * mode. Once the fork completes, the synchronizers switch to ROW mode. This requires PostgreSQL 10+, since the
+		 * ReplicationSlot uses the "wal" and "lsn" functions and columns which were renamed in that version.
+		 */
+		LOGICAL(10, 0);
+
+		@Getter
+		private final int majorVersion;
+
+		@Getter
+		private final int minorVersion;
+
+		Mode(int majorVersion, int minorVersion) {
+			this.majorVersion = majorVersion;
+			this.minorVersion = minorVersion;
+		}
+
+		/**
+		 * @return True if the database server is at least of version majorVersion.minorVersion, and thus supports this
+		 * mode. Changes which are applied in batches are upserted
+		 * using INSERT ... ON CONFLICT, which requires PostgreSQL 9.5.
+		 */
+		public boolean isSupportedBy(Connection connection) throws SQLException {
+			return isServerVersionAtLeast(connection, majorVersion, minorVersion);
+		}
+
+		/**
+		 * @return True if changes are applied to the target tables by a ChangeApplier, rather than by the triggers.
+		 */
+		public boolean isDeferred() {
+			return this == QUEUE || this == LOGICAL;
+		}
+
+		/**
+		 * @return The mode in which synchronizers run once the fork which installed them has completed.
+		 */
+		public Mode getSteadyStateMode() {
+			return isDeferred() ? ROW : this;
+		}
+	}
+
+	private static final String OLD_ROWS = "old_rows";
+	private static final String NEW_ROWS = "new_rows";
+
+	private static final String INSERT_SUFFIX = "_ins";
+	private static final String UPDATE_SUFFIX = "_upd";
+	private static final String DELETE_SUFFIX = "_del";
+	private static final String TRUNCATE_SUFFIX = "_trn";
+
+	/**
+	 * @return True if the database supports INSERT ... ON CONFLICT, which was introduced in PostgreSQL 9.5.
+	 */
+	static boolean supportsUpsert(Connection connection) throws SQLException {
+		return isServerVersionAtLeast(connection, 9, 5);
+	}
+
+	private static boolean isServerVersionAtLeast(Connection connection, int majorVersion, int minorVersion)
+			throws SQLException {
+
+		DatabaseMetaData metaData = connection.getMetaData();
+		int major = metaData.getDatabaseMajorVersion();
+		int minor = metaData.getDatabaseMinorVersion();
+		return major > majorVersion || (major == majorVersion && minor >= minorVersion);
+	}
+
 	private final TableRef source;
 	private final TableRef target;
 	private final String functionName;
@@ -37,6 +128,14 @@ public class SyncFunction {
 	private final NullRecords nullRecords;
 	private final Map<ColumnRef, ColumnRef> columnMapping;
 
+	private Mode mode = Mode.ROW;
+
+	/**
+	 * Whether the database supports INSERT ... ON CONFLICT (PostgreSQL 9.5+). If not, ROW mode synchronizers merge
+	 * records into the target table using a loop which retries an UPDATE whenever an INSERT hits a unique_violation.
+	 */
+	private boolean upsert = true;
+
 	@Setter(AccessLevel.NONE)
 	private ImmutableMap<String, String> insertExpressions;
 
@@ -49,6 +148,12 @@ public class SyncFunction {
 	@Setter(AccessLevel.NONE)
 	private ImmutableMap<String, String> updateIdentitiesForInserts;
 
+	@Setter(AccessLevel.NONE)
+	private ImmutableList<String> syncedColumns;
+
+	@Setter(AccessLevel.NONE)
+	private ImmutableList<String> identitySourceColumns;
+
 	public SyncFunction(RefLog refLog, TableRef source, TableRef target, Map<ColumnRef, ColumnRef> columnMapping,
 			Catalog catalog, NullRecords nullRecords) {
 
@@ -123,6 +228,16 @@ public class SyncFunction {
 						column -> "OLD.\"" + reverseLookup(mapping, column.getName()) + "\"",
 						(u, v) -> { throw new IllegalStateException(String.format("Duplicate key %s", u)); },
 						Maps::newLinkedHashMap)));
+
+		this.identitySourceColumns = ImmutableList.copyOf(targetTable.getIdentityColumns().stream()
+				.map(column -> reverseLookup(mapping, column.getName()))
+				.collect(Collectors.toList()));
+
+		this.syncedColumns = ImmutableList.copyOf(sourceTable.getColumns().stream()
+				.map(Column::getName)
+				.filter(mapping::containsKey)
+				.map(column -> "\"" + column + "\"")
+				.collect(Collectors.toList()));
 	}
 
 	private String reverseLookup(Map<String, String> mapping, String value) {
@@ -134,34 +249,221 @@ public class SyncFunction {
 	}
 
 	public QueryBuilder createFunctionStatement() {
+		return createFunctionStatement(functionName, mode, createBodyStatement());
+	}
+
+	/**
+	 * Creates a trigger function with the specified name, which executes the specified body. A body consists of one
+	 * or more blocks created by createBodyStatement(), all of which must be created for the specified mode.
+	 */
+	static QueryBuilder createFunctionStatement(String functionName, Mode mode, QueryBuilder body) {
 		return new QueryBuilder()
 				.append("CREATE OR REPLACE FUNCTION " + functionName + "()")
 				.append("RETURNS TRIGGER AS $$")
 				.append("BEGIN")
+				.append(body.toString())
+				.append(mode == Mode.STATEMENT ? "  RETURN NULL;" : "  RETURN NEW;")
+				.append("END;")
+				.append("$$ LANGUAGE 'plpgsql';");
+	}
+
+	/**
+	 * Creates the block of PL/pgSQL which applies a change of the source table to the target table. The block never
+	 * returns from the function, so that several of these blocks can be combined into a single function. Updates which
+	 * don't change any of the synced columns are skipped, since such a function may also be invoked for updates of
+	 * columns which are only synchronized to other target tables.
+	 */
+	public QueryBuilder createBodyStatement() {
+		if (mode == Mode.STATEMENT) {
+			return createStatementLevelBodyStatement();
+		}
+		else if (mode == Mode.QUEUE) {
+			return ChangeQueue.createEnqueueStatement(source.getRefId(), identitySourceColumns);
+		}
+
+		String upsert = this.upsert ? createUpsertStatement() : createMergeStatement();
+
+		String oldIdentities = represent(updateIdentities, Entry::getValue, ", ");
+		String newIdentities = represent(updateIdentitiesForInserts, Entry::getValue, ", ");
+
+		return new QueryBuilder()
 				.append("  IF TG_OP = 'INSERT' THEN")
+				.append("    " + upsert + ";")
+				.append("  ELSIF TG_OP = 'UPDATE' THEN")
+				.append("    IF " + createChangedCondition(syncedColumns) + " THEN")
+				.append("      IF (" + oldIdentities + ") IS DISTINCT FROM (" + newIdentities + ") THEN")
+				.append("        UPDATE " + target.getRefId())
+				.append("          SET " + represent(updateExpressions, " = ", ", "))
+				.append("          WHERE " + represent(updateIdentities, " = ", " AND ") + ";")
+				.append("        IF NOT found THEN")
+				.append("          " + upsert + ";")
+				.append("        END IF;")
+				.append("      ELSE")
+				.append("        " + upsert + ";")
+				.append("      END IF;")
+				.append("    END IF;")
+				.append("  ELSIF TG_OP = 'DELETE' THEN")
+				.append("    DELETE FROM " + target.getRefId())
+				.append("      WHERE " + represent(updateIdentities, " = ", " AND ") + ";")
+				.append("  END IF;");
+	}
+
+	private String createUpsertStatement() {
+		return new QueryBuilder()
+				.append("INSERT INTO " + target.getRefId())
+				.append("  (" + represent(insertExpressions, Entry::getKey, ", ") + ") VALUES")
+				.append("  (" + represent(insertExpressions, Entry::getValue, ", ") + ")")
+				.append(createConflictClause(insertExpressions))
+				.toString();
+	}
+
+	/**
+	 * Creates the equivalent of createUpsertStatement() for databases which don't support INSERT ... ON CONFLICT.
+	 */
+	private String createMergeStatement() {
+		return new QueryBuilder()
+				.append("LOOP")
+				.append("  UPDATE " + target.getRefId())
+				.append("    SET " + represent(updateExpressions, " = ", ", "))
+				.append("    WHERE " + represent(updateIdentitiesForInserts, " = ", " AND ") + ";")
+				.append("  IF found THEN EXIT; END IF;")
+				.append("  BEGIN")
 				.append("    INSERT INTO " + target.getRefId())
 				.append("      (" + represent(insertExpressions, Entry::getKey, ", ") + ") VALUES")
 				.append("      (" + represent(insertExpressions, Entry::getValue, ", ") + ");")
+				.append("    EXIT;")
+				.append("  EXCEPTION WHEN unique_violation THEN END;")
+				.append("END LOOP")
+				.toString();
+	}
+
+	/**
+	 * Creates the ON CONFLICT clause which turns an INSERT into the target table into an upsert on its identity. When
+	 * all synced columns are identity columns there is nothing to update, and conflicting records are left as is.
+	 */
+	private String createConflictClause(Map<String, String> values) {
+		String identities = represent(updateIdentities, Entry::getKey, ", ");
+		Map<String, String> updates = Maps.filterKeys(values, column -> !updateIdentities.containsKey(column));
+		if (updates.isEmpty()) {
+			return "ON CONFLICT (" + identities + ") DO NOTHING";
+		}
+		return "ON CONFLICT (" + identities + ") DO UPDATE SET "
+				+ represent(updates, entry -> entry.getKey() + " = EXCLUDED." + entry.getKey(), ", ");
+	}
+
+	/**
+	 * Creates a block which applies all changes of a statement to the target table using one set-based statement.
+	 * Since transition tables don't tell which old record became which new record, an UPDATE is applied by removing
+	 * records whose identity no longer exists in the source table, and upserting all new records.
+	 */
+	private QueryBuilder createStatementLevelBodyStatement() {
+		Map<String, String> values = Maps.transformValues(insertExpressions, value -> alias(value, "NEW", "n"));
+		String oldIdentities = represent(Maps.transformValues(updateIdentities, value -> alias(value, "OLD", "o")),
+				entry -> "t." + entry.getKey() + " = " + entry.getValue(), " AND ");
+		String changedIdentities = represent(Maps.transformValues(updateIdentitiesForInserts,
+				value -> alias(value, "NEW", "n")), entry -> {
+					String oldValue = alias(updateIdentities.get(entry.getKey()), "OLD", "o");
+					return entry.getValue() + " = " + oldValue;
+				}, " AND ");
+
+		String insert = new QueryBuilder()
+				.append("INSERT INTO " + target.getRefId())
+				.append("  (" + represent(values, Entry::getKey, ", ") + ")")
+				.append("  SELECT " + represent(values, Entry::getValue, ", ") + " FROM " + NEW_ROWS + " n")
+				.toString();
+
+		return new QueryBuilder()
+				.append("  IF TG_OP = 'INSERT' THEN")
+				.append("    " + insert)
+				.append("      " + createConflictClause(values) + ";")
 				.append("  ELSIF TG_OP = 'UPDATE' THEN")
-				.append("    LOOP")
-				.append("      UPDATE " + target.getRefId())
-				.append("        SET " + represent(updateIdentitiesForInserts, " = ", ", "))
-				.append("        WHERE " + represent(updateIdentities, " = ", " AND ") + ";")
-				.append("      IF found THEN EXIT; END IF;")
-				.append("      BEGIN")
-				.append("        INSERT INTO " + target.getRefId())
-				.append("          (" + represent(insertExpressions, Entry::getKey, ", ") + ") VALUES")
-				.append("          (" + represent(insertExpressions, Entry::getValue, ", ") + ");")
-				.append("      EXIT;")
-				.append("      EXCEPTION WHEN unique_violation THEN END;")
-				.append("	END LOOP;")
+				.append("    DELETE FROM " + target.getRefId() + " t USING " + OLD_ROWS + " o")
+				.append("      WHERE " + oldIdentities)
+				.append("      AND NOT EXISTS (SELECT 1 FROM " + NEW_ROWS + " n WHERE " + changedIdentities + ");")
+				.append("    " + insert)
+				.append("      " + createConflictClause(values) + ";")
 				.append("  ELSIF TG_OP = 'DELETE' THEN")
-				.append("    DELETE FROM " + target.getRefId())
-				.append("      WHERE " + represent(updateIdentities, " = ", " AND ") + ";")
-				.append("  END IF;")
-				.append("  RETURN NEW;")
-				.append("END;")
-				.append("$$ LANGUAGE 'plpgsql';");
+				.append("    DELETE FROM " + target.getRefId() + " t USING " + OLD_ROWS + " o")
+				.append("      WHERE " + oldIdentities + ";")
+				.append("  ELSIF TG_OP = 'TRUNCATE' THEN")
+				.append("    DELETE FROM " + target.getRefId() + " t" + createNullRecordExclusion("WHERE") + ";")
+				.append("  END IF;");
+	}
+
+	/**
+	 * Creates the statements which apply a batch of queued changes to the target table. The batch is a query which
+	 * lists the (distinct) identities of the changed records of the source table. Records whose identity no longer
+	 * exists in the source table are deleted, and the current state of all other records is upserted, so that only the
+	 * last change to each record is applied.
+	 *
+	 * @param batch A subquery which selects the values of the identitySourceColumns, named after those columns.
+	 */
+	List<String> createApplyStatements(String batch) {
+		Map<String, String> values = Maps.transformValues(insertExpressions, value -> alias(value, "NEW", "s"));
+		String targetIdentities = represent(Maps.transformValues(updateIdentities, value -> alias(value, "OLD", "k")),
+				entry -> "t." + entry.getKey() + " = " + entry.getValue(), " AND ");
+		String sourceIdentities = represent(updateIdentities, entry -> {
+			String value = entry.getValue();
+			return alias(value, "OLD", "s") + " = " + alias(value, "OLD", "k");
+		}, " AND ");
+
+		String delete = new QueryBuilder()
+				.append("DELETE FROM " + target.getRefId() + " t USING " + batch + " k")
+				.append("  WHERE " + targetIdentities)
+				.append("  AND NOT EXISTS (SELECT 1 FROM " + source.getRefId() + " s WHERE " + sourceIdentities + ");")
+				.toString();
+
+		String upsert = new QueryBuilder()
+				.append("INSERT INTO " + target.getRefId())
+				.append("  (" + represent(values, Entry::getKey, ", ") + ")")
+				.append("  SELECT " + represent(values, Entry::getValue, ", ") + " FROM " + source.getRefId() + " s")
+				.append("  WHERE EXISTS (SELECT 1 FROM " + batch + " k WHERE " + sourceIdentities + ")")
+				.append("  " + createConflictClause(values) + ";")
+				.toString();
+
+		return ImmutableList.of(delete, upsert);
+	}
+
+	/**
+	 * @return The statement which removes all records from the target table whose identity no longer exists in the
+	 * source table.
+	 */
+	String createPruneStatement() {
+		String sourceIdentities = represent(Maps.transformValues(updateIdentities, value -> alias(value, "OLD", "s")),
+				entry -> "t." + entry.getKey() + " = " + entry.getValue(), " AND ");
+
+		return "DELETE FROM " + target.getRefId() + " t WHERE NOT EXISTS (SELECT 1 FROM " + source.getRefId()
+				+ " s WHERE " + sourceIdentities + ")" + createNullRecordExclusion("AND") + ";";
+	}
+
+	/**
+	 * @return A condition (prefixed with the specified keyword) which excludes the NULL record of the target table
+	 * (aliased as "t"), or an empty String if the target table has no NULL record. The NULL record has no counterpart
+	 * in the source table, so it must never be removed from the target table.
+	 */
+	private String createNullRecordExclusion(String keyword) {
+		Table targetTable = catalog.getTable(target.getRefId());
+		Identity identity = nullRecords.getIdentity(targetTable);
+		if (identity == null) {
+			return "";
+		}
+
+		return " " + keyword + " NOT (" + identity.keys().stream()
+				.map(key -> {
+					String value = identity.getValue(key).toString();
+					if (targetTable.getColumn(key).getType().isRequireQuotes()) {
+						value = "'" + value.replace("'", "''") + "'";
+					}
+					return "t.\"" + key + "\" = " + value;
+				})
+				.collect(Collectors.joining(" AND ")) + ")";
+	}
+
+	private String alias(String expression, String record, String alias) {
+		if (expression.startsWith(record + ".")) {
+			return alias + expression.substring(record.length());
+		}
+		return expression;
 	}
 
 	private String represent(Map<String, String> inputs, String innerJoin, String entryJoin) {
@@ -176,12 +478,91 @@ public class SyncFunction {
 				.collect(Collectors.joining(join));
 	}
 
+	private static String createChangedCondition(List<String> columns) {
+		String oldValues = columns.stream().map(column -> "OLD." + column).collect(Collectors.joining(", "));
+		String newValues = columns.stream().map(column -> "NEW." + column).collect(Collectors.joining(", "));
+		return "(" + oldValues + ") IS DISTINCT FROM (" + newValues + ")";
+	}
+
+	/**
+	 * Creates the triggers which invoke the sync function. In ROW mode updates are handled by a separate trigger which
+	 * only fires when at least one of the synced columns has actually changed, so updates which only touch columns that
+	 * aren't synchronized to the target table don't invoke the sync function at all.
+	 */
 	public QueryBuilder createTriggerStatement() {
+		return createTriggerStatement(triggerName, functionName, mode, source.getRefId(), syncedColumns);
+	}
+
+	/**
+	 * Creates the triggers with the specified name on the specified table, which invoke the specified function when
+	 * a record is inserted or deleted, or when any of the specified columns is updated.
+	 */
+	static QueryBuilder createTriggerStatement(String triggerName, String functionName, Mode mode, String tableName,
+			List<String> columns) {
+
+		if (mode == Mode.STATEMENT) {
+			return createStatementLevelTriggerStatement(triggerName, functionName, tableName);
+		}
+
 		return new QueryBuilder()
 				.append("CREATE TRIGGER " + triggerName)
-				.append("AFTER INSERT OR UPDATE OR DELETE")
-				.append("ON " + source.getRefId())
+				.append("AFTER INSERT OR DELETE")
+				.append("ON " + tableName)
+				.append("FOR EACH ROW")
+				.append("WHEN (pg_trigger_depth() = 0)")
+				.append("EXECUTE PROCEDURE " + functionName + "();")
+				.append("CREATE TRIGGER " + triggerName + UPDATE_SUFFIX)
+				.append("AFTER UPDATE OF " + String.join(", ", columns))
+				.append("ON " + tableName)
 				.append("FOR EACH ROW")
+				.append("WHEN (pg_trigger_depth() = 0 AND " + createChangedCondition(columns) + ")")
+				.append("EXECUTE PROCEDURE " + functionName + "();");
+	}
+
+	/**
+	 * @return The statements which drop all triggers with the specified name from the specified table. The triggers
+	 * of both modes are dropped, so that switching between modes doesn't leave any triggers behind.
+	 */
+	static QueryBuilder createDropTriggerStatement(String triggerName, String tableName) {
+		QueryBuilder queryBuilder = new QueryBuilder();
+		for (String suffix : ImmutableList.of("", INSERT_SUFFIX, UPDATE_SUFFIX, DELETE_SUFFIX, TRUNCATE_SUFFIX)) {
+			queryBuilder.append("DROP TRIGGER IF EXISTS " + triggerName + suffix + " ON " + tableName + ";");
+		}
+		return queryBuilder;
+	}
+
+	/**
+	 * Transition tables can only be used by triggers which fire for a single event, so a separate trigger is created
+	 * for each event. The names of these triggers are derived from the specified trigger name. Since such triggers
+	 * can't have a column list, the update trigger fires for every UPDATE statement.
+	 */
+	private static QueryBuilder createStatementLevelTriggerStatement(String triggerName, String functionName,
+			String tableName) {
+
+		QueryBuilder queryBuilder = new QueryBuilder();
+		appendStatementLevelTrigger(queryBuilder, triggerName + INSERT_SUFFIX, functionName, tableName, "INSERT",
+				"REFERENCING NEW TABLE AS " + NEW_ROWS);
+		appendStatementLevelTrigger(queryBuilder, triggerName + UPDATE_SUFFIX, functionName, tableName, "UPDATE",
+				"REFERENCING OLD TABLE AS " + OLD_ROWS + " NEW TABLE AS " + NEW_ROWS);
+		appendStatementLevelTrigger(queryBuilder, triggerName + DELETE_SUFFIX, functionName, tableName, "DELETE",
+				"REFERENCING OLD TABLE AS " + OLD_ROWS);
+		appendStatementLevelTrigger(queryBuilder, triggerName + TRUNCATE_SUFFIX, functionName, tableName, "TRUNCATE",
+				null);
+		return queryBuilder;
+	}
+
+	private static void appendStatementLevelTrigger(QueryBuilder queryBuilder, String triggerName,
+			String functionName, String tableName, String event, String referencing) {
+
+		queryBuilder.append("CREATE TRIGGER " + triggerName)
+				.append("AFTER " + event)
+				.append("ON " + tableName);
+
+		if (referencing != null) {
+			queryBuilder.append(referencing);
+		}
+
+		queryBuilder.append("FOR EACH STATEMENT")
 				.append("WHEN (pg_trigger_depth() = 0)")
 				.append("EXECUTE PROCEDURE " + functionName + "();");
 	}
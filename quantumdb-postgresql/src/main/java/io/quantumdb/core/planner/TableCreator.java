@@ -46,6 +46,29 @@ public class TableCreator {
 		}
 	}
 
+	/**
+	 * Renames a table which was created by an earlier, interrupted migration to the name of the specified table, so
+	 * that it can be used in its place. Sequences created for that table are renamed accordingly.
+	 */
+	public void adoptTable(Connection connection, Table table, String previousName) throws SQLException {
+		log.info("Adopting table: {} as: {}", previousName, table.getName());
+		execute(connection, new QueryBuilder("ALTER TABLE " + previousName + " RENAME TO " + table.getName() + ";"));
+
+		for (Column column : table.getColumns()) {
+			if (column.isAutoIncrement() && column.getSequence() == null) {
+				String previousSequenceName = previousName + "_" + column.getName() + "_seq";
+				String sequenceName = table.getName() + "_" + column.getName() + "_seq";
+				execute(connection, new QueryBuilder()
+						.append("ALTER SEQUENCE " + previousSequenceName)
+						.append("RENAME TO " + sequenceName + ";"));
+
+				Sequence sequence = new Sequence(sequenceName);
+				table.getParent().addSequence(sequence);
+				column.modifyDefaultValue(sequence);
+			}
+		}
+	}
+
 	private void createTable(Connection connection, Table table) throws SQLException {
 		log.info("Creating table: {}", table.getName());
 		Map<String, String> sequences = Maps.newHashMap();
@@ -127,18 +150,25 @@ public class TableCreator {
 
 	private void createIndexes(Connection connection, Table table) throws SQLException {
 		for (Index index : table.getIndexes()) {
-			QueryBuilder queryBuilder = new QueryBuilder();
-			queryBuilder.append("CREATE");
-			if (index.isUnique()) {
-				queryBuilder.append("UNIQUE");
-			}
-			queryBuilder.append("INDEX " + index.getIndexName());
-			queryBuilder.append("ON " + index.getParent().getName());
-			queryBuilder.append("(" + Joiner.on(", ").join(index.getColumns()) + ");");
-
 			log.info("Creating index key: {}", index.getIndexName());
-			execute(connection, queryBuilder);
+			execute(connection, createIndexStatement(index, false));
+		}
+	}
+
+	static QueryBuilder createIndexStatement(Index index, boolean concurrently) {
+		QueryBuilder queryBuilder = new QueryBuilder();
+		queryBuilder.append("CREATE");
+		if (index.isUnique()) {
+			queryBuilder.append("UNIQUE");
+		}
+		queryBuilder.append("INDEX");
+		if (concurrently) {
+			queryBuilder.append("CONCURRENTLY");
 		}
+		queryBuilder.append(index.getIndexName());
+		queryBuilder.append("ON " + index.getParent().getName());
+		queryBuilder.append("(" + Joiner.on(", ").join(index.getColumns()) + ");");
+		return queryBuilder;
 	}
 
 	private String valueOf(Action action) {
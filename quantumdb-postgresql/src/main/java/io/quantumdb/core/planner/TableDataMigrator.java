@@ -1,43 +1,52 @@
 package io.quantumdb.core.planner;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Timestamp;
-import java.util.Date;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.stream.Collectors;
 
 import com.google.common.base.Joiner;
-import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import io.quantumdb.core.backends.Backend;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.quantumdb.core.planner.MigratorFunction.Stage;
+import io.quantumdb.core.planner.MigratorFunction.Strategy;
 import io.quantumdb.core.schema.definitions.Column;
-import io.quantumdb.core.schema.definitions.ColumnType.Type;
+import io.quantumdb.core.schema.definitions.ColumnType.ValueSetter;
+import io.quantumdb.core.schema.definitions.Identity;
 import io.quantumdb.core.schema.definitions.Table;
 import io.quantumdb.core.utils.QueryBuilder;
 import io.quantumdb.core.versioning.RefLog;
+import io.quantumdb.core.versioning.RefLog.ColumnRef;
+import io.quantumdb.core.versioning.RefLog.TableRef;
 import io.quantumdb.core.versioning.Version;
 import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGStatement;
 
 @Slf4j
 class TableDataMigrator {
 
-	private static final long BATCH_SIZE = 2_000;
-	private static final long WAIT_TIME = 50;
-
 	private final RefLog refLog;
-	private final Backend backend;
+	private final PostgresqlBackend backend;
+	private final BackfillGovernor governor;
 
-	TableDataMigrator(Backend backend, RefLog refLog) {
+	TableDataMigrator(PostgresqlBackend backend, RefLog refLog, BackfillGovernor governor) {
 		this.backend = backend;
 		this.refLog = refLog;
+		this.governor = governor;
 	}
 
 	void migrateData(NullRecords nullRecords, Table source, Table target, Version from, Version to,
@@ -50,206 +59,518 @@ class TableDataMigrator {
 		}
 		log.info("Migrating data in table: {} target: {}", source.getName(), target.getName());
 
-		MigratorFunction initialMigrator = SelectiveMigratorFunction.createMigrator(nullRecords, refLog,
-				source, target, from, to, BATCH_SIZE, Stage.INITIAL, migratedColumns, columnsToMigrate);
-		MigratorFunction successiveMigrator = SelectiveMigratorFunction.createMigrator(nullRecords, refLog,
-				source, target, from, to, BATCH_SIZE, Stage.CONSECUTIVE, migratedColumns, columnsToMigrate);
+		try (Connection connection = connect()) {
+			BackfillCheckpoints checkpoints = new BackfillCheckpoints(to, source, target, columnsToMigrate);
+			if (migratedColumns.isEmpty() && backend.isBackfillBulkLoad() && supportsUpsert(connection)) {
+				log.debug("Using bulk load to migrate data source: {} target: {}", source.getName(), target.getName());
 
-		if (initialMigrator == null) {
-			return;
-		}
+				List<KeyRange> ranges = loadRanges(connection, checkpoints, source, target, highestId);
+				BulkLoader loader = new BulkLoader(nullRecords, refLog, source, target, columnsToMigrate, checkpoints);
+
+				long start = System.currentTimeMillis();
+				migrateRanges(connection, remaining(ranges), (workerConnection, snapshot, range) -> {
+					try (Connection reader = connect()) {
+						loader.load(reader, workerConnection, snapshot, range);
+					}
+				}, nullRecords, source, target, true, true);
+
+				long end = System.currentTimeMillis();
+				log.info("Bulk loading records source: {} target: {} took: {} ms", source.getName(), target.getName(),
+						end - start);
+				return;
+			}
+
+			Strategy strategy = determineStrategy(connection);
+			log.debug("Using {} strategy to migrate data source: {} target: {}", strategy, source.getName(),
+					target.getName());
+
+			MigratorFunction initialMigrator = SelectiveMigratorFunction.createMigrator(nullRecords, refLog,
+					source, target, from, to, Stage.INITIAL, strategy, migratedColumns, columnsToMigrate);
+			MigratorFunction successiveMigrator = SelectiveMigratorFunction.createMigrator(nullRecords, refLog,
+					source, target, from, to, Stage.CONSECUTIVE, strategy, migratedColumns, columnsToMigrate);
+
+			if (initialMigrator == null) {
+				return;
+			}
+
+			List<KeyRange> ranges = loadRanges(connection, checkpoints, source, target, highestId);
 
-		try (Connection connection = backend.connect()) {
 			execute(connection, initialMigrator.getCreateStatement());
 			execute(connection, successiveMigrator.getCreateStatement());
 
-			long start = System.currentTimeMillis();
-			Map<String, Object> lastProcessedId = Maps.newHashMap();
+			try {
+				long recordSize = estimateRecordSize(connection, source);
+				long start = System.currentTimeMillis();
 
-			while (true) {
-				long innerStart = System.currentTimeMillis();
+				RangeMigrator rangeMigrator = (workerConnection, snapshot, range) -> migrateRange(workerConnection,
+						range, checkpoints, initialMigrator, successiveMigrator, source, target, recordSize);
 
-				QueryBuilder migrator = new QueryBuilder();
-				if (lastProcessedId.isEmpty()) {
-					migrator.append("SELECT * FROM " + initialMigrator.getName() + "();");
+				if (ranges.size() == 1) {
+					rangeMigrator.migrate(connection, null, ranges.get(0));
 				}
 				else {
-					List<String> values = successiveMigrator.getParameters().stream()
-							.map(parameterName -> asExpression(lastProcessedId.get(stripEscaping(parameterName))))
-							.collect(Collectors.toList());
-
-					migrator.append("SELECT * FROM " + successiveMigrator.getName() + "(")
-							.append(Joiner.on(", ").join(values) + ");");
+					migrateRanges(connection, remaining(ranges), rangeMigrator, nullRecords, source, target, false,
+							migratedColumns.isEmpty());
 				}
 
-				try (Statement statement = connection.createStatement()) {
-					ResultSet resultSet = statement.executeQuery(migrator.toString());
+				long end = System.currentTimeMillis();
+				log.info("Migrating records source: {} target: {} took: {} ms", source.getName(), target.getName(),
+						end - start);
+			}
+			finally {
+				execute(connection, initialMigrator.getDropStatement());
+				execute(connection, successiveMigrator.getDropStatement());
+			}
+		}
+	}
+
+	/**
+	 * Migrates all records of a single KeyRange, using the specified connection to write to the target table.
+	 */
+	@FunctionalInterface
+	private interface RangeMigrator {
+		void migrate(Connection connection, String snapshot, KeyRange range) throws SQLException, InterruptedException;
+	}
 
-					if (resultSet.next()) {
-						lastProcessedId.putAll(readIdentity(source, resultSet));
-						if (greaterThanOrEqualsTo(lastProcessedId, highestId)) {
-							break;
-						}
+	/**
+	 * @return The KeyRanges persisted by an earlier attempt to migrate the same columns, or newly partitioned (and
+	 * persisted) KeyRanges if there was no such attempt.
+	 */
+	private List<KeyRange> loadRanges(Connection connection, BackfillCheckpoints checkpoints, Table source,
+			Table target, Map<String, Object> highestId) throws SQLException {
+
+		List<KeyRange> ranges = checkpoints.load(connection);
+		if (ranges.isEmpty()) {
+			String firstIdentityColumn = source.getIdentityColumns().get(0).getName();
+			ranges = KeyRangePartitioner.partition(connection, source, highestId.get(firstIdentityColumn),
+					backend.getBackfillWorkers());
+			checkpoints.create(connection, ranges);
+		}
+		else {
+			log.info("Resuming migration of data source: {} target: {} from checkpoints: {}", source.getName(),
+					target.getName(), ranges);
+		}
+		return ranges;
+	}
+
+	private List<KeyRange> remaining(List<KeyRange> ranges) {
+		return ranges.stream()
+				.filter(range -> !range.isCompleted())
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Migrates each of the specified KeyRanges concurrently, each on its own connection to the database. When bulk
+	 * loading, all workers read from a single exported snapshot, so that they all see the exact same version of the
+	 * source table, while writing to the target table in READ COMMITTED mode. The migrator functions read from the
+	 * source table and write to the target table in the same statement, so they can't use the exported snapshot:
+	 * writing under an older snapshot fails with a serialization failure as soon as it runs into a record which the
+	 * sync function wrote after that snapshot was taken. When inserting records into the target table, records which
+	 * were deleted from the source table while being migrated are removed from the target table once all workers
+	 * have completed, in batches paced by the BackfillGovernor.
+	 *
+	 * @param exportSnapshot True if the workers should read the source table from a single exported snapshot.
+	 * @param inserting True if records are inserted into the target table, rather than updated.
+	 */
+	private void migrateRanges(Connection connection, List<KeyRange> ranges, RangeMigrator rangeMigrator,
+			NullRecords nullRecords, Table source, Table target, boolean exportSnapshot, boolean inserting)
+			throws SQLException, InterruptedException {
+
+		log.info("Migrating data source: {} target: {} using {} workers", source.getName(), target.getName(),
+				ranges.size());
+
+		ThreadFactory threadFactory = new ThreadFactoryBuilder()
+				.setNameFormat("migrator-" + source.getName() + "-%d")
+				.build();
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, ranges.size()), threadFactory);
+		try (Connection snapshotConnection = backend.connect()) {
+			String snapshot = exportSnapshot ? exportSnapshot(snapshotConnection) : null;
+
+			List<Future<Void>> futures = Lists.newArrayList();
+			for (KeyRange range : ranges) {
+				futures.add(executor.submit(() -> {
+					try (Connection workerConnection = connect()) {
+						rangeMigrator.migrate(workerConnection, snapshot, range);
 					}
-					else {
-						// No records returned. We're done migrating data...
-						break;
+					return null;
+				}));
+			}
+
+			awaitCompletion(futures);
+
+			if (snapshot != null) {
+				snapshotConnection.commit();
+			}
+			if (inserting) {
+				removeDeletedRecords(connection, nullRecords, source, target);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Migrates all records in the specified KeyRange in batches. Each batch is committed in the same transaction as
+	 * the checkpoint describing the last record of that batch. These transactions use READ COMMITTED, since each
+	 * batch updates the same checkpoint as the batch before it: a transaction reading from an older snapshot would
+	 * fail with a serialization failure when updating a checkpoint which was committed after that snapshot.
+	 */
+	private void migrateRange(Connection connection, KeyRange range, BackfillCheckpoints checkpoints,
+			MigratorFunction initialMigrator, MigratorFunction successiveMigrator, Table source, Table target,
+			long recordSize) throws SQLException, InterruptedException {
+
+		if (range.isCompleted()) {
+			return;
+		}
+
+		List<Column> identityColumns = source.getIdentityColumns();
+		Map<String, Object> lastProcessedId = Maps.newHashMap();
+		if (range.getLastProcessedId() != null) {
+			lastProcessedId.putAll(range.getLastProcessedId());
+		}
+		else if (range.getLower() != null) {
+			lastProcessedId.putAll(queryLastIdentity(connection, source, range.getLower()));
+		}
+
+		connection.setAutoCommit(false);
+		connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+
+		try (PreparedStatement initial = prepare(connection, initialMigrator.getCallStatement());
+				PreparedStatement successive = prepare(connection, successiveMigrator.getCallStatement())) {
+
+			while (true) {
+				long batchSize = governor.acquire(recordSize);
+				long innerStart = System.currentTimeMillis();
+
+				PreparedStatement migrator = initial;
+				int position = 0;
+				if (!lastProcessedId.isEmpty()) {
+					migrator = successive;
+					for (Column identityColumn : identityColumns) {
+						migrator.setObject(++position, lastProcessedId.get(identityColumn.getName()));
 					}
 				}
+				migrator.setObject(++position, range.getUpper());
+				migrator.setLong(++position, batchSize);
+
+				boolean exhausted;
+				try {
+					try (ResultSet resultSet = migrator.executeQuery()) {
+						// No records returned. We're done migrating data in this range...
+						exhausted = !resultSet.next() || resultSet.getObject(1) == null;
+						if (!exhausted) {
+							for (int i = 0; i < identityColumns.size(); i++) {
+								lastProcessedId.put(identityColumns.get(i).getName(), resultSet.getObject(i + 1));
+							}
+							range.setLastProcessedId(Collections.unmodifiableMap(Maps.newHashMap(lastProcessedId)));
+						}
+					}
+					range.setCompleted(exhausted);
 
-				long innerEnd = System.currentTimeMillis();
-				log.info("Migration data source: {} target: {}, now at identity: {}, took: {} ms", source.getName(),
-						target.getName(), lastProcessedId, innerEnd - innerStart);
+					checkpoints.update(connection, range);
+					connection.commit();
+				}
+				catch (SQLException e) {
+					connection.rollback();
+					throw e;
+				}
 
-				Thread.sleep(WAIT_TIME);
-			}
+				long innerEnd = System.currentTimeMillis();
+				governor.completed(batchSize, innerEnd - innerStart);
 
-			long end = System.currentTimeMillis();
-			log.info("Migrating records source: {} target: {} took: {} ms", source.getName(), target.getName(), end - start);
+				if (exhausted) {
+					break;
+				}
 
-			execute(connection, initialMigrator.getDropStatement());
-			execute(connection, successiveMigrator.getDropStatement());
+				log.info("Migration data source: {} target: {}, range: {}, now at identity: {}, took: {} ms",
+						source.getName(), target.getName(), range.getIndex(), lastProcessedId, innerEnd - innerStart);
+			}
+		}
+		finally {
+			connection.setAutoCommit(true);
 		}
 	}
 
-	private String stripEscaping(String parameterName) {
-		if (parameterName.startsWith("\"") && parameterName.endsWith("\"")) {
-			return parameterName.substring(1, parameterName.length() - 1);
+	/**
+	 * Prepares a statement which is executed once per batch. Since these are executed many times on the same
+	 * connection, they're prepared server-side straight away.
+	 */
+	private PreparedStatement prepare(Connection connection, String query) throws SQLException {
+		PreparedStatement statement = connection.prepareStatement(query);
+		if (statement.isWrapperFor(PGStatement.class)) {
+			statement.unwrap(PGStatement.class).setPrepareThreshold(1);
 		}
-		return parameterName;
+		return statement;
 	}
 
-	private Map<String, Object> queryHighestId(Table from) throws SQLException {
-		List<String> identityColumns = from.getIdentityColumns().stream()
-				.map(Column::getName)
+	/**
+	 * @return The identity of the last record whose first identity column is less than or equal to the specified
+	 * value, or an empty Map if there's no such record. Migrating records after this identity, excludes all records
+	 * which belong to the preceding KeyRange.
+	 */
+	private Map<String, Object> queryLastIdentity(Connection connection, Table table, Object upper)
+			throws SQLException {
+
+		List<String> identityColumns = table.getIdentityColumns().stream()
+				.map(column -> "\"" + column.getName() + "\"")
 				.collect(Collectors.toList());
 
-		try (Connection connection = backend.connect()) {
-			try (Statement statement = connection.createStatement()) {
-				String query = new QueryBuilder()
-						.append("SELECT " + Joiner.on(", ").join(identityColumns))
-						.append("FROM " + from.getName())
-						.append("ORDER BY " + Joiner.on(" DESC, ").join(identityColumns) + " DESC")
-						.append("LIMIT 1")
-						.toString();
+		Column firstIdentityColumn = table.getIdentityColumns().get(0);
+		String query = new QueryBuilder()
+				.append("SELECT " + Joiner.on(", ").join(identityColumns))
+				.append("FROM " + table.getName())
+				.append("WHERE " + identityColumns.get(0) + " <= CAST(? AS " + firstIdentityColumn.getType() + ")")
+				.append("ORDER BY " + Joiner.on(" DESC, ").join(identityColumns) + " DESC")
+				.append("LIMIT 1;")
+				.toString();
 
-				ResultSet resultSet = statement.executeQuery(query);
-				if (resultSet.next()) {
-					Map<String, Object> id = Maps.newHashMap();
-					for (String identityColumn : identityColumns) {
-						Object value = resultSet.getObject(identityColumn);
-						id.put(identityColumn, value);
-					}
-					return id;
+		Map<String, Object> identity = Maps.newHashMap();
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setObject(1, upper);
+			ResultSet resultSet = statement.executeQuery();
+			if (resultSet.next()) {
+				for (Column column : table.getIdentityColumns()) {
+					identity.put(column.getName(), resultSet.getObject(column.getName()));
 				}
-				return null;
 			}
 		}
+		return identity;
 	}
 
-	private boolean greaterThanOrEqualsTo(Map<String, Object> cursor, Map<String, Object> limit) {
-		for (String key : cursor.keySet()) {
-			Object left = cursor.get(key);
-			Object right = limit.get(key);
+	private Connection connect() throws SQLException {
+		return LoadMonitor.connect(backend);
+	}
 
-			if (left == null || right == null) {
-				throw new IllegalStateException("NULL values in identity columns are currently not supported.");
+	private long estimateRecordSize(Connection connection, Table table) throws SQLException {
+		String query = new QueryBuilder()
+				.append("SELECT CASE WHEN reltuples > 0 THEN relpages::bigint * current_setting('block_size')::bigint")
+				.append("/ reltuples::bigint ELSE 0 END AS record_size")
+				.append("FROM pg_class WHERE oid = ?::regclass;")
+				.toString();
+
+		try (PreparedStatement statement = connection.prepareStatement(query)) {
+			statement.setString(1, table.getName());
+			ResultSet resultSet = statement.executeQuery();
+			if (resultSet.next()) {
+				return resultSet.getLong("record_size");
 			}
+			return 0;
+		}
+	}
 
-			if (!(left instanceof Comparable)) {
-				left = left.toString();
+	private String exportSnapshot(Connection connection) throws SQLException {
+		connection.setAutoCommit(false);
+		connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+		try (Statement statement = connection.createStatement()) {
+			ResultSet resultSet = statement.executeQuery("SELECT pg_export_snapshot();");
+			if (resultSet.next()) {
+				return resultSet.getString(1);
 			}
+			throw new SQLException("Could not export snapshot!");
+		}
+	}
 
-			if (!(right instanceof Comparable)) {
-				right = right.toString();
+	private void awaitCompletion(List<Future<Void>> futures) throws SQLException, InterruptedException {
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
 			}
-
-			if (left instanceof UUID) {
-				left = left.toString().toLowerCase();
+			catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				Throwables.propagateIfInstanceOf(cause, SQLException.class);
+				Throwables.propagateIfInstanceOf(cause, InterruptedException.class);
+				throw Throwables.propagate(cause);
 			}
+		}
+	}
 
-			if (right instanceof UUID) {
-				right = right.toString().toLowerCase();
-			}
+	/**
+	 * Removes the records from the target table which were deleted from the source table while they were being
+	 * migrated. The target table is scanned in batches, in the order of its identity columns, and each batch is
+	 * removed in its own transaction, at the pace set by the BackfillGovernor, so that removing the records puts no
+	 * more load on the database than migrating them did.
+	 */
+	private void removeDeletedRecords(Connection connection, NullRecords nullRecords, Table source, Table target)
+			throws SQLException, InterruptedException {
+
+		TableRef sourceRef = refLog.getTableRefById(source.getName());
+		TableRef targetRef = refLog.getTableRefById(target.getName());
+		Map<ColumnRef, ColumnRef> columnMapping = refLog.getColumnMapping(sourceRef, targetRef);
+
+		Map<String, Column> identityColumns = Maps.newLinkedHashMap();
+		for (Column column : source.getIdentityColumns()) {
+			String mappedColumnName = columnMapping.entrySet().stream()
+					.filter(entry -> entry.getKey().getName().equals(column.getName()))
+					.map(entry -> entry.getValue().getName())
+					.findFirst().get();
+
+			identityColumns.put(column.getName(), target.getColumn(mappedColumnName));
+		}
 
-			Comparable leftComparable = (Comparable) left;
-			Comparable rightComparable = (Comparable) right;
+		// Don't remove the NULL record, since it has no counterpart in the source table.
+		Identity identity = nullRecords.getIdentity(target);
+		long recordSize = estimateRecordSize(connection, target);
+		long removed = 0;
 
-			int compareTo = leftComparable.compareTo(rightComparable);
-			if (compareTo < 0) {
-				return false;
+		try (PreparedStatement initial = prepare(connection, createRemovalQuery(source, target, identityColumns,
+				identity, false));
+				PreparedStatement successive = prepare(connection, createRemovalQuery(source, target,
+						identityColumns, identity, true))) {
+
+			List<Object> lastProcessedId = null;
+			while (true) {
+				long batchSize = governor.acquire(recordSize);
+				long start = System.currentTimeMillis();
+
+				PreparedStatement statement = initial;
+				int position = 0;
+				if (lastProcessedId != null) {
+					statement = successive;
+					for (Object value : lastProcessedId) {
+						statement.setObject(++position, value);
+					}
+				}
+				statement.setLong(++position, batchSize);
+				if (identity != null) {
+					for (String key : identity.keys()) {
+						ValueSetter valueSetter = target.getColumn(key).getType().getValueSetter();
+						valueSetter.setValue(statement, ++position, identity.getValue(key));
+					}
+				}
+
+				boolean exhausted;
+				try (ResultSet resultSet = statement.executeQuery()) {
+					exhausted = !resultSet.next();
+					if (!exhausted) {
+						lastProcessedId = Lists.newArrayList();
+						for (int i = 1; i <= identityColumns.size(); i++) {
+							lastProcessedId.add(resultSet.getObject(i));
+						}
+						removed += resultSet.getLong("removed");
+					}
+				}
+
+				governor.completed(batchSize, System.currentTimeMillis() - start);
+				if (exhausted) {
+					break;
+				}
 			}
 		}
-		return true;
+
+		log.info("Removed {} records from: {} which were deleted from: {} during migration", removed,
+				target.getName(), source.getName());
 	}
 
-	private Map<String, Object> readIdentity(Table from, ResultSet resultSet) throws SQLException {
-		String result = resultSet.getString(1);
-		result = result.substring(1, result.length() - 1);
+	/**
+	 * Creates a query which scans the next batch of records in the target table (after the identity specified by the
+	 * first parameters, if successive), removes the records of that batch which no longer exist in the source table,
+	 * and returns the identity of the last record of the batch along with the number of removed records. The query
+	 * returns no rows once the target table has been scanned entirely.
+	 *
+	 * @param identityColumns The identity columns of the target table, keyed by the name of the identity columns of
+	 *                        the source table they correspond to.
+	 * @param identity The identity of the NULL record of the target table, or NULL if it has no NULL record.
+	 */
+	private String createRemovalQuery(Table source, Table target, Map<String, Column> identityColumns,
+			Identity identity, boolean successive) {
+
+		List<String> keys = identityColumns.values().stream()
+				.map(column -> "\"" + column.getName() + "\"")
+				.collect(Collectors.toList());
 
-		List<String> parts = Lists.newArrayList();
-		StringBuilder currentPart = new StringBuilder();
+		String targetKeys = keys.stream()
+				.map(key -> "t." + key)
+				.collect(Collectors.joining(", "));
 
-		boolean quoted = false;
-		char prev = ' ';
-		for (int i = 0; i < result.length(); i++) {
-			char c = result.charAt(i);
-			if (c == ',' && !quoted) {
-				parts.add(currentPart.toString());
-				currentPart = new StringBuilder();
-			}
-			else if (c == '"' && prev != '\\') {
-				quoted = !quoted;
-			}
-			else {
-				currentPart.append(c);
-			}
-			prev = c;
-		}
+		String sourceCondition = identityColumns.entrySet().stream()
+				.map(entry -> "s.\"" + entry.getKey() + "\" = t.\"" + entry.getValue().getName() + "\"")
+				.collect(Collectors.joining(" AND "));
 
-		if (currentPart.length() > 0) {
-			parts.add(currentPart.toString());
+		QueryBuilder query = new QueryBuilder()
+				.append("WITH batch AS (")
+				.append("SELECT " + targetKeys)
+				.append("FROM " + target.getName() + " t");
+
+		if (successive) {
+			query.append("WHERE (" + targetKeys + ") > (" + identityColumns.values().stream()
+					.map(column -> "CAST(? AS " + column.getType() + ")")
+					.collect(Collectors.joining(", ")) + ")");
 		}
 
-		Map<String, Object> identity = Maps.newHashMap();
-		List<Column> identityColumns = from.getIdentityColumns();
-		for (int i = 0; i < identityColumns.size(); i++) {
-			Column column = identityColumns.get(i);
-			String columnName = column.getName();
-			Object value = parseValue(column.getType().getType(), parts.get(i));
-			identity.put(columnName, value);
+		query.append("ORDER BY " + targetKeys)
+				.append("LIMIT ?")
+				.append("), removed AS (")
+				.append("DELETE FROM " + target.getName() + " t USING batch b")
+				.append("WHERE " + keys.stream()
+						.map(key -> "t." + key + " = b." + key)
+						.collect(Collectors.joining(" AND ")))
+				.append("AND NOT EXISTS (SELECT 1 FROM " + source.getName() + " s WHERE " + sourceCondition + ")");
+
+		if (identity != null) {
+			query.append("AND NOT (" + identity.keys().stream()
+					.map(key -> "t.\"" + key + "\" = ?")
+					.collect(Collectors.joining(" AND ")) + ")");
 		}
-		return identity;
+
+		return query.append("RETURNING 1")
+				.append(")")
+				.append("SELECT " + keys.stream().map(key -> "b." + key).collect(Collectors.joining(", ")) + ",")
+				.append("(SELECT COUNT(*) FROM removed) AS removed")
+				.append("FROM batch b")
+				.append("ORDER BY " + keys.stream().map(key -> "b." + key + " DESC").collect(Collectors.joining(", ")))
+				.append("LIMIT 1;")
+				.toString();
 	}
 
-	private Object parseValue(Type type, String value) {
-		if (Strings.isNullOrEmpty(value)) {
-			return null;
+	private Strategy determineStrategy(Connection connection) throws SQLException {
+		Strategy strategy = backend.getBackfillStrategy();
+		if (strategy != null) {
+			return strategy;
 		}
 
-		switch (type) {
-			case SMALLINT:
-			case INTEGER:
-				return Integer.parseInt(value);
-			case BIGINT:
-				return Long.parseLong(value);
-			case BOOLEAN:
-				return Boolean.parseBoolean(value);
-			case TEXT:
-			case CHAR:
-			case VARCHAR:
-				return value;
-			case DATE:
-				return Date.parse(value);
-			case FLOAT:
-				return Float.parseFloat(value);
-			case TIMESTAMP:
-				return Timestamp.parse(value);
-			case OID:
-				return value;
-			case UUID:
-			default:
-				return UUID.fromString(value);
+		if (supportsUpsert(connection)) {
+			return Strategy.SET_BASED;
+		}
+		return Strategy.ROW_BY_ROW;
+	}
+
+	/**
+	 * @return True if the database supports INSERT ... ON CONFLICT, which was introduced in PostgreSQL 9.5.
+	 */
+	private boolean supportsUpsert(Connection connection) throws SQLException {
+		DatabaseMetaData metaData = connection.getMetaData();
+		int major = metaData.getDatabaseMajorVersion();
+		int minor = metaData.getDatabaseMinorVersion();
+		return major > 9 || (major == 9 && minor >= 5);
+	}
+
+	private Map<String, Object> queryHighestId(Table from) throws SQLException {
+		List<String> identityColumns = from.getIdentityColumns().stream()
+				.map(Column::getName)
+				.collect(Collectors.toList());
+
+		try (Connection connection = backend.connect()) {
+			try (Statement statement = connection.createStatement()) {
+				String query = new QueryBuilder()
+						.append("SELECT " + Joiner.on(", ").join(identityColumns))
+						.append("FROM " + from.getName())
+						.append("ORDER BY " + Joiner.on(" DESC, ").join(identityColumns) + " DESC")
+						.append("LIMIT 1")
+						.toString();
+
+				ResultSet resultSet = statement.executeQuery(query);
+				if (resultSet.next()) {
+					Map<String, Object> id = Maps.newHashMap();
+					for (String identityColumn : identityColumns) {
+						Object value = resultSet.getObject(identityColumn);
+						id.put(identityColumn, value);
+					}
+					return id;
+				}
+				return null;
+			}
 		}
 	}
 
@@ -260,11 +581,4 @@ class TableDataMigrator {
 		}
 	}
 
-	private String asExpression(Object value) {
-		if (value instanceof Number) {
-			return value.toString();
-		}
-		return "'" + value + "'";
-	}
-
 }
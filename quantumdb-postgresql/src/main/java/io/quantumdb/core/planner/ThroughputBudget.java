@@ -0,0 +1,42 @@
+package io.quantumdb.core.planner;
+
+/**
+ * Limits the combined throughput of all workers migrating data, both in records and in bytes per second. Each batch
+ * reserves a slot of time proportional to its size, and has to wait until all previously reserved slots have passed.
+ */
+class ThroughputBudget {
+
+	private final long recordsPerSecond;
+	private final long bytesPerSecond;
+
+	private long nextAvailable;
+
+	/**
+	 * @param recordsPerSecond The maximum number of records to migrate per second, or 0 for no limit.
+	 * @param bytesPerSecond The maximum number of bytes to migrate per second, or 0 for no limit.
+	 */
+	ThroughputBudget(long recordsPerSecond, long bytesPerSecond) {
+		this.recordsPerSecond = recordsPerSecond;
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	/**
+	 * Reserves budget for the specified amount of records and bytes.
+	 *
+	 * @return The number of milliseconds to wait before the reserved budget may be used.
+	 */
+	synchronized long reserve(long records, long bytes) {
+		long now = System.currentTimeMillis();
+		long start = Math.max(now, nextAvailable);
+		nextAvailable = start + Math.max(duration(records, recordsPerSecond), duration(bytes, bytesPerSecond));
+		return start - now;
+	}
+
+	private long duration(long amount, long perSecond) {
+		if (perSecond <= 0) {
+			return 0;
+		}
+		return amount * 1_000 / perSecond;
+	}
+
+}
@@ -48,6 +48,14 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class Backend {
 
+	/**
+	 * The channel on which a notification is sent for every version whose table mapping (its rows in the ref_versions
+	 * table) was changed by persisting the state, with the id of that version as payload. Changes which only affect the
+	 * active_versions table are not notified, since they do not change any table mapping. Notifications are only
+	 * delivered once the transaction which persisted the state commits.
+	 */
+	public static final String CHANNEL = "quantumdb";
+
 	@Data
 	private static class RefId {
 		private final String refId;
@@ -195,12 +203,28 @@ public class Backend {
 
 		RefLog refLog = state.getRefLog();
 		persistRefs(connection, refLog);
-		persistRefVersions(connection, refLog);
+		Set<String> changedVersions = persistRefVersions(connection, refLog);
 		Collection<RawTableColumn> columns = persistTableColumns(connection, refLog);
 		Map<Long, RawColumnMapping> columnMapping = persistColumnMappings(connection, refLog, columns);
 		Map<Long, SyncRef> syncRefs = persistTableSynchronizers(connection, refLog);
 		persistSynchronizerColumns(connection, syncRefs, columnMapping);
 		persistActiveVersions(connection, refLog);
+		notifyChangedVersions(connection, changedVersions);
+	}
+
+	private void notifyChangedVersions(Connection connection, Set<String> versionIds) throws SQLException {
+		if (versionIds.isEmpty()) {
+			return;
+		}
+
+		try (PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?);")) {
+			for (String versionId : versionIds) {
+				statement.setString(1, CHANNEL);
+				statement.setString(2, versionId);
+				statement.execute();
+				log.debug("Notifying changed mapping of version: {}", versionId);
+			}
+		}
 	}
 
 	private void persistChangelog(Connection connection, Changelog changelog) throws SQLException {
@@ -451,7 +475,8 @@ public class Backend {
 		}
 	}
 
-	private void persistRefVersions(Connection connection, RefLog refLog) throws SQLException {
+	private Set<String> persistRefVersions(Connection connection, RefLog refLog) throws SQLException {
+		Set<String> changedVersions = Sets.newTreeSet();
 		Table<String, String, String> mapping = HashBasedTable.create();
 		refLog.getTableRefs().forEach(tableRef -> {
 			String refId = tableRef.getRefId();
@@ -490,6 +515,7 @@ public class Backend {
 							delete.setString(1, refId);
 							delete.setString(2, versionId);
 							delete.execute();
+							changedVersions.add(versionId);
 							log.debug("Deleted entry for ref_versions id: {} / {}", refId, versionId);
 						}
 					}
@@ -502,6 +528,7 @@ public class Backend {
 						delete.setString(1, refId);
 						delete.setString(2, versionId);
 						delete.execute();
+						changedVersions.add(versionId);
 						log.debug("Deleted entry for ref_versions id: {} / {}", refId, versionId);
 					}
 				}
@@ -517,6 +544,7 @@ public class Backend {
 					insert.setString(2, versionId);
 					insert.setString(3, entry.getValue());
 					insert.execute();
+					changedVersions.add(versionId);
 
 					log.debug("Inserted new entry for ref_versions id: {} / {}", refId, versionId);
 				}
@@ -524,6 +552,7 @@ public class Backend {
 
 			resultSet.close();
 		}
+		return changedVersions;
 	}
 
 	private Collection<RawTableColumn> persistTableColumns(Connection connection, RefLog refLog) throws SQLException {
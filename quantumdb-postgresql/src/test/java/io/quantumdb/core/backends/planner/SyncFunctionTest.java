@@ -7,9 +7,14 @@ import static io.quantumdb.core.schema.definitions.PostgresTypes.bigint;
 import static io.quantumdb.core.schema.definitions.PostgresTypes.varchar;
 import static io.quantumdb.core.schema.operations.SchemaOperations.alterColumn;
 import static io.quantumdb.core.schema.operations.SchemaOperations.dropColumn;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
 
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
 import java.util.Map;
 import java.util.Set;
 
@@ -18,6 +23,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import io.quantumdb.core.planner.NullRecords;
 import io.quantumdb.core.planner.SyncFunction;
+import io.quantumdb.core.planner.SyncFunction.Mode;
 import io.quantumdb.core.schema.definitions.Catalog;
 import io.quantumdb.core.schema.definitions.Column;
 import io.quantumdb.core.schema.definitions.Identity;
@@ -244,6 +250,155 @@ public class SyncFunctionTest {
 		assertThat(syncFunction.getUpdateIdentities(), is(ImmutableMap.of("\"id\"", "OLD.\"id\"")));
 	}
 
+	@Test
+	public void testRowLevelTriggersOnlyFireWhenSyncedColumnsChange() {
+		SyncFunction syncFunction = createSyncFunctionWithColumnRename();
+
+		String trigger = syncFunction.createTriggerStatement().toString();
+		String name = syncFunction.getTriggerName();
+		assertThat(trigger, containsString("CREATE TRIGGER " + name + " AFTER INSERT OR DELETE ON users FOR EACH ROW "
+				+ "WHEN (pg_trigger_depth() = 0)"));
+		assertThat(trigger, containsString("CREATE TRIGGER " + name + "_upd AFTER UPDATE OF \"id\", \"name\" ON users "
+				+ "FOR EACH ROW WHEN (pg_trigger_depth() = 0 AND (OLD.\"id\", OLD.\"name\") IS DISTINCT FROM "
+				+ "(NEW.\"id\", NEW.\"name\"))"));
+		assertThat(trigger, not(containsString("REFERENCING")));
+	}
+
+	@Test
+	public void testRowLevelFunctionUpsertsOnIdentity() {
+		SyncFunction syncFunction = createSyncFunctionWithColumnRename();
+
+		String function = syncFunction.createFunctionStatement().toString();
+		assertThat(function, containsString("ON CONFLICT (\"id\") DO UPDATE SET \"full_name\" = EXCLUDED.\"full_name\";"));
+		assertThat(function, containsString("IF (OLD.\"id\") IS DISTINCT FROM (NEW.\"id\") THEN"));
+		assertThat(function, not(containsString("LOOP")));
+		assertThat(function, not(containsString("unique_violation")));
+	}
+
+	@Test
+	public void testRowLevelFunctionIgnoresConflictsWhenOnlyIdentitiesAreSynced() {
+		SyncFunction syncFunction = createSyncFunctionWithColumnRename();
+		syncFunction.setColumnsToMigrate(list("id"));
+
+		String function = syncFunction.createFunctionStatement().toString();
+		assertThat(function, containsString("ON CONFLICT (\"id\") DO NOTHING;"));
+	}
+
+	@Test
+	public void testRowLevelFunctionMergesWhenUpsertIsNotSupported() {
+		SyncFunction syncFunction = createSyncFunctionWithColumnRename();
+		syncFunction.setUpsert(false);
+
+		String function = syncFunction.createFunctionStatement().toString();
+		assertThat(function, not(containsString("ON CONFLICT")));
+		assertThat(function, containsString("LOOP UPDATE users2 SET"));
+		assertThat(function, containsString("WHERE \"id\" = NEW.\"id\"; IF found THEN EXIT; END IF;"));
+		assertThat(function, containsString("EXCEPTION WHEN unique_violation THEN END; END LOOP;"));
+	}
+
+	@Test
+	public void testStatementLevelFunctionUsesTransitionTables() {
+		SyncFunction syncFunction = createSyncFunctionWithColumnRename();
+		syncFunction.setMode(Mode.STATEMENT);
+
+		String function = syncFunction.createFunctionStatement().toString();
+		assertThat(function, containsString("n.\"name\""));
+		assertThat(function, containsString("FROM new_rows n ON CONFLICT (\"id\") DO UPDATE SET \"full_name\" = "
+				+ "EXCLUDED.\"full_name\"; ELSIF TG_OP = 'UPDATE' THEN"));
+		assertThat(function, containsString("DELETE FROM users2 t USING old_rows o WHERE t.\"id\" = o.\"id\" "
+				+ "AND NOT EXISTS (SELECT 1 FROM new_rows n WHERE n.\"id\" = o.\"id\");"));
+		assertThat(function, containsString("ON CONFLICT (\"id\") DO UPDATE SET \"full_name\" = EXCLUDED.\"full_name\";"));
+		assertThat(function, containsString("ELSIF TG_OP = 'DELETE' THEN DELETE FROM users2 t USING old_rows o "
+				+ "WHERE t.\"id\" = o.\"id\";"));
+		assertThat(function, containsString("ELSIF TG_OP = 'TRUNCATE' THEN DELETE FROM users2 t;"));
+		assertThat(function, containsString("RETURN NULL;"));
+	}
+
+	@Test
+	public void testNullRecordIsNotRemovedFromTargetTable() {
+		SyncFunction syncFunction = createSyncFunctionWithColumnRename();
+		syncFunction.setMode(Mode.STATEMENT);
+		Mockito.when(syncFunction.getNullRecords().getIdentity(Mockito.any())).thenReturn(new Identity("id", 0));
+
+		String function = syncFunction.createFunctionStatement().toString();
+		assertThat(function, containsString("ELSIF TG_OP = 'TRUNCATE' THEN DELETE FROM users2 t WHERE NOT "
+				+ "(t.\"id\" = 0);"));
+	}
+
+	@Test
+	public void testStatementLevelTriggersAreCreatedPerEvent() {
+		SyncFunction syncFunction = createSyncFunctionWithColumnRename();
+		syncFunction.setMode(Mode.STATEMENT);
+
+		String trigger = syncFunction.createTriggerStatement().toString();
+		String name = syncFunction.getTriggerName();
+		assertThat(trigger, containsString("CREATE TRIGGER " + name + "_ins AFTER INSERT ON users "
+				+ "REFERENCING NEW TABLE AS new_rows FOR EACH STATEMENT"));
+		assertThat(trigger, containsString("CREATE TRIGGER " + name + "_upd AFTER UPDATE ON users "
+				+ "REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows FOR EACH STATEMENT"));
+		assertThat(trigger, containsString("CREATE TRIGGER " + name + "_del AFTER DELETE ON users "
+				+ "REFERENCING OLD TABLE AS old_rows FOR EACH STATEMENT"));
+		assertThat(trigger, containsString("CREATE TRIGGER " + name + "_trn AFTER TRUNCATE ON users "
+				+ "FOR EACH STATEMENT"));
+	}
+
+	@Test
+	public void testSyncModesRequireMinimumServerVersion() throws SQLException {
+		Connection postgres96 = createConnection(9, 6);
+		assertThat(Mode.ROW.isSupportedBy(postgres96), is(true));
+		assertThat(Mode.QUEUE.isSupportedBy(postgres96), is(true));
+		assertThat(Mode.STATEMENT.isSupportedBy(postgres96), is(false));
+		assertThat(Mode.LOGICAL.isSupportedBy(postgres96), is(false));
+
+		Connection postgres10 = createConnection(10, 0);
+		assertThat(Mode.STATEMENT.isSupportedBy(postgres10), is(true));
+		assertThat(Mode.LOGICAL.isSupportedBy(postgres10), is(true));
+	}
+
+	private Connection createConnection(int majorVersion, int minorVersion) throws SQLException {
+		DatabaseMetaData metaData = Mockito.mock(DatabaseMetaData.class);
+		Mockito.when(metaData.getDatabaseMajorVersion()).thenReturn(majorVersion);
+		Mockito.when(metaData.getDatabaseMinorVersion()).thenReturn(minorVersion);
+
+		Connection connection = Mockito.mock(Connection.class);
+		Mockito.when(connection.getMetaData()).thenReturn(metaData);
+		return connection;
+	}
+
+	private SyncFunction createSyncFunctionWithColumnRename() {
+		Table original = new Table("users")
+				.addColumn(new Column("id", bigint(), IDENTITY, AUTO_INCREMENT, NOT_NULL))
+				.addColumn(new Column("name", varchar(255), NOT_NULL));
+
+		Table ghost = new Table("users2")
+				.addColumn(new Column("id", bigint(), IDENTITY, AUTO_INCREMENT, NOT_NULL))
+				.addColumn(new Column("full_name", varchar(255), NOT_NULL));
+
+		Catalog catalog = new Catalog("public");
+		catalog.addTable(original);
+		catalog.addTable(ghost);
+
+		Changelog changelog = new Changelog();
+		changelog.addChangeSet("test", "Michael de Jong", alterColumn("users", "name").rename("full_name"));
+		RefLog refLog = new RefLog();
+
+		ColumnRef usersId = new ColumnRef("id");
+		ColumnRef usersName = new ColumnRef("name");
+		TableRef source = refLog.addTable(original.getName(), original.getName(), changelog.getRoot(),
+				Lists.newArrayList(usersId, usersName));
+
+		ColumnRef users2Id = new ColumnRef("id", Sets.newHashSet(usersId));
+		ColumnRef users2Name = new ColumnRef("full_name", Sets.newHashSet(usersName));
+		TableRef target = refLog.addTable(original.getName(), ghost.getName(), changelog.getLastAdded(),
+				Lists.newArrayList(users2Id, users2Name));
+
+		NullRecords nullRecords = Mockito.mock(NullRecords.class);
+		Map<ColumnRef, ColumnRef> columnMapping = refLog.getColumnMapping(source, target);
+		SyncFunction syncFunction = new SyncFunction(refLog, source, target, columnMapping, catalog, nullRecords);
+		syncFunction.setColumnsToMigrate(list("id", "full_name"));
+		return syncFunction;
+	}
+
 	private Set<String> list(String... inputs) {
 		return Sets.newLinkedHashSet(Lists.newArrayList(inputs));
 	}
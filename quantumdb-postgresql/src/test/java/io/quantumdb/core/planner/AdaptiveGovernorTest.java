@@ -0,0 +1,39 @@
+package io.quantumdb.core.planner;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.SQLException;
+
+import io.quantumdb.core.backends.Config;
+import org.junit.Test;
+
+public class AdaptiveGovernorTest {
+
+	@Test
+	public void testBacksOffOncePerSampleRegardlessOfWorkers() throws SQLException, InterruptedException {
+		LoadSample idle = new LoadSample(0, 1, 0, 0, 0);
+		LoadSample busy = new LoadSample(0, 1, 5, 0, 0);
+
+		LoadMonitor monitor = mock(LoadMonitor.class);
+		when(monitor.sample()).thenReturn(idle, busy, busy);
+
+		Config config = new Config();
+		AdaptiveGovernor governor = new AdaptiveGovernor(monitor, config);
+
+		long size = governor.acquire(100);
+		governor.completed(size, config.getBackfillTargetLatency());
+		assertEquals(size, governor.acquire(100));
+
+		// Four workers complete their batches before the load is sampled again.
+		for (int i = 0; i < 4; i++) {
+			governor.completed(size, config.getBackfillTargetLatency());
+		}
+		assertEquals(size / 2, governor.acquire(100));
+
+		governor.completed(size / 2, config.getBackfillTargetLatency());
+		assertEquals(size / 4, governor.acquire(100));
+	}
+
+}
@@ -0,0 +1,71 @@
+package io.quantumdb.core.planner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+public class DecodedChangeTest {
+
+	@Test
+	public void testTransactionBoundariesAreIgnored() {
+		assertNull(DecodedChange.parse("BEGIN 529"));
+		assertNull(DecodedChange.parse("COMMIT 529"));
+	}
+
+	@Test
+	public void testParsingInsert() {
+		DecodedChange change = DecodedChange.parse("table public.users: INSERT: id[bigint]:1 "
+				+ "name[character varying]:'O''Brien, Jack' email[text]:null");
+
+		assertEquals("users", change.getTable());
+		assertEquals("INSERT", change.getOperation());
+		assertEquals("O'Brien, Jack", change.getNewTuple().get("name"));
+		assertTrue(change.getNewTuple().containsKey("email"));
+		assertNull(change.getNewTuple().get("email"));
+		assertEquals(ImmutableList.of(ImmutableMap.of("id", "1")), change.getIdentities(ImmutableList.of("id")));
+	}
+
+	@Test
+	public void testParsingUpdateWhichChangesIdentity() {
+		DecodedChange change = DecodedChange.parse("table public.\"Users\": UPDATE: old-key: id[bigint]:1 "
+				+ "new-tuple: id[bigint]:2 \"Full Name\"[text]:'new-tuple: Alice' tags[integer[]]:'{1,2}'");
+
+		assertEquals("Users", change.getTable());
+		assertEquals("new-tuple: Alice", change.getNewTuple().get("Full Name"));
+		assertEquals("{1,2}", change.getNewTuple().get("tags"));
+
+		List<Map<String, String>> identities = change.getIdentities(ImmutableList.of("id"));
+		assertEquals(ImmutableList.of(ImmutableMap.of("id", "2"), ImmutableMap.of("id", "1")), identities);
+	}
+
+	@Test
+	public void testParsingDelete() {
+		DecodedChange change = DecodedChange.parse("table public.users: DELETE: id[bigint]:3");
+
+		assertNull(change.getNewTuple());
+		assertEquals(ImmutableList.of(ImmutableMap.of("id", "3")), change.getIdentities(ImmutableList.of("id")));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testDeleteWithoutReplicaIdentityCannotBeApplied() {
+		DecodedChange change = DecodedChange.parse("table public.users: DELETE: (no-tuple-data)");
+		change.getIdentities(ImmutableList.of("id"));
+	}
+
+	@Test
+	public void testParsingTruncateOfMultipleTables() {
+		DecodedChange change = DecodedChange.parse("table public.users, public.messages: TRUNCATE: (no-flags)");
+
+		assertTrue(change.isTruncate());
+		assertEquals(ImmutableList.of("users", "messages"), change.getTables());
+		assertTrue(change.getIdentities(ImmutableList.of("id")).isEmpty());
+	}
+
+}
@@ -0,0 +1,103 @@
+package io.quantumdb.core.planner;
+
+import static io.quantumdb.core.schema.definitions.Column.Hint.IDENTITY;
+import static io.quantumdb.core.schema.definitions.Column.Hint.NOT_NULL;
+import static io.quantumdb.core.schema.definitions.PostgresTypes.bigint;
+import static io.quantumdb.core.schema.definitions.PostgresTypes.varchar;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import io.quantumdb.core.schema.definitions.Column;
+import io.quantumdb.core.schema.definitions.Table;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class KeyRangePartitionerTest {
+
+	private Connection connection;
+
+	@Before
+	public void setUp() {
+		connection = mock(Connection.class);
+	}
+
+	@Test
+	public void testIntegralIdentitiesAreSplitEvenly() throws SQLException {
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.next()).thenReturn(true);
+		when(resultSet.getObject(1)).thenReturn(1L);
+
+		Statement statement = mock(Statement.class);
+		when(statement.executeQuery(anyString())).thenReturn(resultSet);
+		when(connection.createStatement()).thenReturn(statement);
+
+		Table table = new Table("users").addColumn(new Column("id", bigint(), IDENTITY, NOT_NULL));
+		List<KeyRange> ranges = KeyRangePartitioner.partition(connection, table, 100L, 4);
+
+		assertEquals(Lists.newArrayList(new KeyRange(0, null, 25L), new KeyRange(1, 25L, 49L),
+				new KeyRange(2, 49L, 73L), new KeyRange(3, 73L, 100L)), ranges);
+	}
+
+	@Test
+	public void testTextIdentitiesAreSplitUsingHistogramSortedByColumnCollation() throws SQLException {
+		PreparedStatement collation = prepare("pg_collation", rows("default"));
+		PreparedStatement histogram = prepare("pg_stats", rows("b", "d", "f", "h", "j", "l"));
+
+		Table table = new Table("users").addColumn(new Column("name", varchar(255), IDENTITY, NOT_NULL));
+		List<KeyRange> ranges = KeyRangePartitioner.partition(connection, table, "z", 3);
+
+		assertEquals(Lists.newArrayList(new KeyRange(0, null, "f"), new KeyRange(1, "f", "j"),
+				new KeyRange(2, "j", "z")), ranges);
+		verify(connection).prepareStatement(contains("COLLATE \"pg_catalog\".\"default\""));
+		verify(collation).setString(1, "users");
+		verify(histogram).setString(3, "z");
+	}
+
+	@Test
+	public void testSmallHistogramDoesNotProduceEmptyRanges() throws SQLException {
+		prepare("pg_collation", rows());
+		prepare("pg_stats", rows("m"));
+
+		Table table = new Table("users").addColumn(new Column("name", varchar(255), IDENTITY, NOT_NULL));
+		List<KeyRange> ranges = KeyRangePartitioner.partition(connection, table, "z", 4);
+
+		assertEquals(Lists.newArrayList(new KeyRange(0, null, "m"), new KeyRange(1, "m", "z")), ranges);
+	}
+
+	private PreparedStatement prepare(String fragment, ResultSet resultSet) throws SQLException {
+		PreparedStatement statement = mock(PreparedStatement.class);
+		when(statement.executeQuery()).thenReturn(resultSet);
+		when(connection.prepareStatement(contains(fragment))).thenReturn(statement);
+		return statement;
+	}
+
+	/**
+	 * @return A ResultSet whose rows each contain a single value, which is returned as bound or collation name.
+	 */
+	private ResultSet rows(String... values) throws SQLException {
+		int[] position = { -1 };
+		Answer<String> current = (InvocationOnMock invocation) -> values[position[0]];
+
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.next()).thenAnswer(invocation -> ++position[0] < values.length);
+		when(resultSet.getObject(1)).thenAnswer(current);
+		when(resultSet.getString("nspname")).thenReturn("pg_catalog");
+		when(resultSet.getString("collname")).thenAnswer(current);
+		return resultSet;
+	}
+
+}
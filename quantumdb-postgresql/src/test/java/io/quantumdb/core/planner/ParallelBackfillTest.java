@@ -0,0 +1,213 @@
+package io.quantumdb.core.planner;
+
+import static io.quantumdb.core.schema.definitions.Column.Hint.AUTO_INCREMENT;
+import static io.quantumdb.core.schema.definitions.Column.Hint.IDENTITY;
+import static io.quantumdb.core.schema.definitions.Column.Hint.NOT_NULL;
+import static io.quantumdb.core.schema.definitions.PostgresTypes.bigint;
+import static io.quantumdb.core.schema.definitions.PostgresTypes.varchar;
+import static io.quantumdb.core.schema.operations.SchemaOperations.addColumn;
+import static io.quantumdb.core.schema.operations.SchemaOperations.createTable;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.quantumdb.core.backends.Backend;
+import io.quantumdb.core.backends.Config;
+import io.quantumdb.core.backends.DatabaseMigrator.MigrationException;
+import io.quantumdb.core.backends.PostgresqlDatabase;
+import io.quantumdb.core.migration.Migrator;
+import io.quantumdb.core.versioning.Changelog;
+import io.quantumdb.core.versioning.RefLog;
+import io.quantumdb.core.versioning.State;
+import io.quantumdb.core.versioning.Version;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verifies that a table is migrated correctly by several backfill workers, while records are being inserted, updated
+ * and deleted in the source table, and that an interrupted migration can be resumed from its checkpoints.
+ */
+public class ParallelBackfillTest extends PostgresqlDatabase {
+
+	private static final int RECORDS = 50_000;
+
+	private Version created;
+	private Version altered;
+	private String sourceTable;
+
+	@Before
+	@Override
+	public void before() throws SQLException, ClassNotFoundException, MigrationException {
+		super.before();
+
+		Backend backend = createConfig().getBackend();
+		State state = backend.loadState();
+		Changelog changelog = state.getChangelog();
+
+		created = changelog.addChangeSet("step1", "Michael de Jong", "Create users table.",
+				createTable("users")
+						.with("id", bigint(), IDENTITY, AUTO_INCREMENT, NOT_NULL)
+						.with("name", varchar(255), NOT_NULL))
+				.getLastAdded();
+
+		altered = changelog.addChangeSet("step2", "Michael de Jong", "Add email column to users table.",
+				addColumn("users", "email", varchar(255)))
+				.getLastAdded();
+
+		backend.persistState(state);
+		new Migrator(backend).migrate(changelog.getRoot().getId(), created.getId());
+
+		sourceTable = backend.loadState().getRefLog().getTableRef(created, "users").getRefId();
+		try (Statement statement = getConnection().createStatement()) {
+			statement.execute("INSERT INTO " + sourceTable + " (name) "
+					+ "SELECT 'user' || i FROM generate_series(1, " + RECORDS + ") AS i;");
+			statement.execute("ANALYZE " + sourceTable + ";");
+		}
+	}
+
+	Config createConfig() {
+		Config config = new Config();
+		config.setUrl(getJdbcUrl());
+		config.setUser(getJdbcUser());
+		config.setPassword(getJdbcPass());
+		config.setCatalog(getCatalogName());
+		config.setDriver(getJdbcDriver());
+		config.setBackfillWorkers(4);
+		return config;
+	}
+
+	@Test
+	public void testSetBasedBackfillWithConcurrentWrites() throws Exception {
+		Config config = createConfig().setBackfillStrategy("set_based");
+		migrateWithConcurrentWrites(config.getBackend());
+		assertTablesAreEqual(config.getBackend());
+	}
+
+	@Test
+	public void testBulkLoadWithConcurrentWrites() throws Exception {
+		Config config = createConfig().setBackfillBulkLoad(true);
+		migrateWithConcurrentWrites(config.getBackend());
+		assertTablesAreEqual(config.getBackend());
+	}
+
+	@Test
+	public void testInterruptedBackfillIsResumedFromCheckpoints() throws Exception {
+		InterruptingGovernor.reset(20);
+		Config interrupted = createConfig()
+				.setBackfillStrategy("set_based")
+				.setBackfillGovernor(InterruptingGovernor.class.getName());
+
+		try {
+			new Migrator(interrupted.getBackend()).migrate(created.getId(), altered.getId());
+			fail("Expected the migration to be interrupted by the governor");
+		}
+		catch (MigrationException e) {
+			// Expected.
+		}
+
+		// Every worker commits a checkpoint with each batch, so more batches than workers must have completed.
+		assertTrue("Completed batches: " + InterruptingGovernor.completed, InterruptingGovernor.completed.get() > 4);
+		try (Statement statement = getConnection().createStatement()) {
+			ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM quantumdb.backfill_checkpoints "
+					+ "WHERE last_processed_id IS NOT NULL AND NOT completed;");
+
+			resultSet.next();
+			assertTrue(resultSet.getLong(1) > 0);
+		}
+
+		Config resumed = createConfig().setBackfillStrategy("set_based");
+		migrateWithConcurrentWrites(resumed.getBackend());
+		assertTablesAreEqual(resumed.getBackend());
+	}
+
+	/**
+	 * A BackfillGovernor which migrates small batches, and fails after a fixed number of batches, as if the
+	 * migration was interrupted.
+	 */
+	public static class InterruptingGovernor implements BackfillGovernor {
+
+		private static final AtomicInteger remaining = new AtomicInteger();
+		private static final AtomicInteger completed = new AtomicInteger();
+
+		static void reset(int batches) {
+			remaining.set(batches);
+			completed.set(0);
+		}
+
+		public InterruptingGovernor(PostgresqlBackend backend, Config config) {
+			// No configuration required.
+		}
+
+		@Override
+		public long acquire(long recordSize) throws SQLException {
+			if (remaining.getAndDecrement() <= 0) {
+				throw new SQLException("Interrupted migration");
+			}
+			return 500;
+		}
+
+		@Override
+		public void completed(long batchSize, long duration) {
+			completed.incrementAndGet();
+		}
+
+		@Override
+		public void close() {
+			// Nothing to close.
+		}
+
+	}
+
+	private void migrateWithConcurrentWrites(Backend backend) throws Exception {
+		AtomicBoolean running = new AtomicBoolean(true);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> writer = executor.submit(() -> {
+				try (Connection connection = createConnection(); Statement statement = connection.createStatement()) {
+					for (int i = 1; running.get(); i++) {
+						statement.execute("INSERT INTO " + sourceTable + " (name) VALUES ('new" + i + "');");
+						statement.execute("UPDATE " + sourceTable + " SET name = 'updated" + i + "' "
+								+ "WHERE id = " + (i * 7919 % RECORDS + 1) + ";");
+						statement.execute("DELETE FROM " + sourceTable + " WHERE id = " + (i * 104729 % RECORDS + 1)
+								+ ";");
+					}
+				}
+				return null;
+			});
+
+			new Migrator(backend).migrate(created.getId(), altered.getId());
+			running.set(false);
+			writer.get();
+		}
+		finally {
+			running.set(false);
+			executor.shutdownNow();
+		}
+	}
+
+	void assertTablesAreEqual(Backend backend) throws SQLException {
+		RefLog refLog = backend.loadState().getRefLog();
+		String source = refLog.getTableRef(created, "users").getRefId();
+		String target = refLog.getTableRef(altered, "users").getRefId();
+
+		try (Statement statement = getConnection().createStatement()) {
+			ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + source + " s "
+					+ "FULL OUTER JOIN " + target + " t ON s.id = t.id "
+					+ "WHERE s.id IS NULL OR t.id IS NULL OR s.name <> t.name;");
+
+			resultSet.next();
+			assertEquals(0, resultSet.getLong(1));
+		}
+	}
+
+}
@@ -0,0 +1,175 @@
+package io.quantumdb.core.planner;
+
+import static io.quantumdb.core.schema.definitions.Column.Hint.AUTO_INCREMENT;
+import static io.quantumdb.core.schema.definitions.Column.Hint.IDENTITY;
+import static io.quantumdb.core.schema.definitions.Column.Hint.NOT_NULL;
+import static io.quantumdb.core.schema.definitions.PostgresTypes.bigint;
+import static io.quantumdb.core.schema.definitions.PostgresTypes.varchar;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.quantumdb.core.planner.MigratorFunction.Stage;
+import io.quantumdb.core.planner.MigratorFunction.Strategy;
+import io.quantumdb.core.schema.definitions.Catalog;
+import io.quantumdb.core.schema.definitions.Column;
+import io.quantumdb.core.schema.definitions.Table;
+import io.quantumdb.core.schema.operations.SchemaOperations;
+import io.quantumdb.core.versioning.Changelog;
+import io.quantumdb.core.versioning.RefLog;
+import io.quantumdb.core.versioning.RefLog.ColumnRef;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class SelectiveMigratorFunctionTest {
+
+	private Table source;
+	private Table target;
+	private RefLog refLog;
+	private Changelog changelog;
+	private NullRecords nullRecords;
+
+	@Before
+	public void setUp() {
+		this.source = new Table("users")
+				.addColumn(new Column("id", bigint(), IDENTITY, AUTO_INCREMENT, NOT_NULL))
+				.addColumn(new Column("name", varchar(255), NOT_NULL))
+				.addColumn(new Column("updated_at", varchar(255)));
+
+		this.target = new Table("users2")
+				.addColumn(new Column("id", bigint(), IDENTITY, AUTO_INCREMENT, NOT_NULL))
+				.addColumn(new Column("full_name", varchar(255), NOT_NULL));
+
+		Catalog catalog = new Catalog("public");
+		catalog.addTable(source);
+		catalog.addTable(target);
+
+		this.changelog = new Changelog();
+		changelog.addChangeSet("test", "Michael de Jong", SchemaOperations.dropColumn("users", "updated_at"));
+		this.refLog = new RefLog();
+
+		ColumnRef usersId = new ColumnRef("id");
+		ColumnRef usersName = new ColumnRef("name");
+		ColumnRef usersUpdatedAt = new ColumnRef("updated_at");
+		refLog.addTable(source.getName(), source.getName(), changelog.getRoot(),
+				Lists.newArrayList(usersId, usersName, usersUpdatedAt));
+
+		ColumnRef users2Id = new ColumnRef("id", Sets.newHashSet(usersId));
+		ColumnRef users2Name = new ColumnRef("full_name", Sets.newHashSet(usersName));
+		refLog.addTable(source.getName(), target.getName(), changelog.getLastAdded(),
+				Lists.newArrayList(users2Id, users2Name));
+
+		this.nullRecords = Mockito.mock(NullRecords.class);
+	}
+
+	@Test
+	public void testSetBasedInsertMigratorCopiesBatchInSingleStatement() {
+		MigratorFunction function = SelectiveMigratorFunction.createMigrator(nullRecords, refLog, source, target,
+				changelog.getRoot(), changelog.getLastAdded(), Stage.CONSECUTIVE, Strategy.SET_BASED,
+				Sets.newHashSet(), list("id", "name"));
+
+		String statement = function.getCreateStatement();
+		assertTrue(statement.contains("SELECT \"id\", \"name\" FROM users"));
+		assertTrue(statement.contains("INSERT INTO users2 (\"id\", \"full_name\") SELECT batch.\"id\", batch.\"name\" FROM batch"));
+		assertTrue(statement.contains("ON CONFLICT DO NOTHING"));
+		assertFalse(statement.contains("SELECT * FROM users"));
+		assertFalse(statement.contains("EXCEPTION WHEN unique_violation"));
+	}
+
+	@Test
+	public void testSetBasedUpdateMigratorUpdatesBatchInSingleStatement() {
+		MigratorFunction function = SelectiveMigratorFunction.createMigrator(nullRecords, refLog, source, target,
+				changelog.getRoot(), changelog.getLastAdded(), Stage.INITIAL, Strategy.SET_BASED,
+				list("id"), list("name"));
+
+		String statement = function.getCreateStatement();
+		assertTrue(statement.contains("SELECT \"id\", \"name\" FROM users"));
+		assertTrue(statement.contains("UPDATE users2 SET \"full_name\" = batch.\"name\" FROM batch"));
+		assertTrue(statement.contains("WHERE users2.\"id\" = batch.\"id\""));
+		assertFalse(statement.contains("EXCEPTION WHEN unique_violation"));
+	}
+
+	@Test
+	public void testSetBasedUpdateMigratorWithoutColumnsToMigrate() {
+		MigratorFunction function = SelectiveMigratorFunction.createMigrator(nullRecords, refLog, source, target,
+				changelog.getRoot(), changelog.getLastAdded(), Stage.INITIAL, Strategy.SET_BASED,
+				list("id"), list("updated_at"));
+
+		assertNull(function);
+	}
+
+	@Test
+	public void testMigratorIsBoundedByUpperIdentityAndBatchSize() {
+		MigratorFunction function = SelectiveMigratorFunction.createMigrator(nullRecords, refLog, source, target,
+				changelog.getRoot(), changelog.getLastAdded(), Stage.CONSECUTIVE, Strategy.SET_BASED,
+				Sets.newHashSet(), list("id", "name"));
+
+		String statement = function.getCreateStatement();
+		assertTrue(statement.contains("(q0 bigint, u0 bigint, lim bigint, OUT l0 bigint)"));
+		assertTrue(statement.contains("WHERE id <= u0 AND (id) > (q0)"));
+		assertTrue(statement.contains("LIMIT lim"));
+		assertEquals("DROP FUNCTION " + function.getName() + "(bigint,bigint,bigint);", function.getDropStatement());
+	}
+
+	@Test
+	public void testMigratorReturnsTypedIdentityOfLastRecord() {
+		MigratorFunction function = SelectiveMigratorFunction.createMigrator(nullRecords, refLog, source, target,
+				changelog.getRoot(), changelog.getLastAdded(), Stage.CONSECUTIVE, Strategy.SET_BASED,
+				Sets.newHashSet(), list("id", "name"));
+
+		String statement = function.getCreateStatement();
+		assertTrue(statement.contains("l0 := r.\"id\";"));
+		assertFalse(statement.contains("CONCAT"));
+		assertEquals("SELECT * FROM " + function.getName() + "(CAST(? AS bigint), CAST(? AS bigint), ?);",
+				function.getCallStatement());
+	}
+
+	@Test
+	public void testCompositeIdentityUsesRowValueComparison() {
+		Table source = new Table("memberships")
+				.addColumn(new Column("user_id", bigint(), IDENTITY, NOT_NULL))
+				.addColumn(new Column("group_id", bigint(), IDENTITY, NOT_NULL));
+
+		Table target = new Table("memberships2")
+				.addColumn(new Column("user_id", bigint(), IDENTITY, NOT_NULL))
+				.addColumn(new Column("group_id", bigint(), IDENTITY, NOT_NULL));
+
+		ColumnRef userId = new ColumnRef("user_id");
+		ColumnRef groupId = new ColumnRef("group_id");
+		refLog.addTable(source.getName(), source.getName(), changelog.getRoot(), Lists.newArrayList(userId, groupId));
+		refLog.addTable(source.getName(), target.getName(), changelog.getLastAdded(),
+				Lists.newArrayList(new ColumnRef("user_id", Sets.newHashSet(userId)),
+						new ColumnRef("group_id", Sets.newHashSet(groupId))));
+
+		MigratorFunction function = SelectiveMigratorFunction.createMigrator(nullRecords, refLog, source, target,
+				changelog.getRoot(), changelog.getLastAdded(), Stage.CONSECUTIVE, Strategy.SET_BASED,
+				Sets.newHashSet(), list("user_id", "group_id"));
+
+		String statement = function.getCreateStatement();
+		assertTrue(statement.contains("WHERE user_id <= u0 AND (user_id, group_id) > (q0, q1)"));
+		assertTrue(statement.contains("OUT l0 bigint, OUT l1 bigint"));
+		assertTrue(statement.contains("l1 := r.\"group_id\";"));
+	}
+
+	@Test
+	public void testRowByRowInsertMigratorUsesSubTransactionPerRecord() {
+		MigratorFunction function = SelectiveMigratorFunction.createMigrator(nullRecords, refLog, source, target,
+				changelog.getRoot(), changelog.getLastAdded(), Stage.INITIAL, Strategy.ROW_BY_ROW,
+				Sets.newHashSet(), list("id", "name"));
+
+		String statement = function.getCreateStatement();
+		assertTrue(statement.contains("SELECT * FROM users"));
+		assertTrue(statement.contains("EXCEPTION WHEN unique_violation"));
+	}
+
+	private Set<String> list(String... inputs) {
+		return Sets.newLinkedHashSet(Lists.newArrayList(inputs));
+	}
+
+}
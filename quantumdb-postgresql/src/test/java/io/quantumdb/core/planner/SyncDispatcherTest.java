@@ -0,0 +1,210 @@
+package io.quantumdb.core.planner;
+
+import static io.quantumdb.core.schema.definitions.Column.Hint.AUTO_INCREMENT;
+import static io.quantumdb.core.schema.definitions.Column.Hint.IDENTITY;
+import static io.quantumdb.core.schema.definitions.Column.Hint.NOT_NULL;
+import static io.quantumdb.core.schema.definitions.PostgresTypes.bigint;
+import static io.quantumdb.core.schema.definitions.PostgresTypes.varchar;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import io.quantumdb.core.planner.SyncFunction.Mode;
+import io.quantumdb.core.schema.definitions.Catalog;
+import io.quantumdb.core.schema.definitions.Column;
+import io.quantumdb.core.schema.definitions.Table;
+import io.quantumdb.core.schema.operations.SchemaOperations;
+import io.quantumdb.core.versioning.Changelog;
+import io.quantumdb.core.versioning.RefLog;
+import io.quantumdb.core.versioning.RefLog.ColumnRef;
+import io.quantumdb.core.versioning.RefLog.SyncRef;
+import io.quantumdb.core.versioning.RefLog.TableRef;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class SyncDispatcherTest {
+
+	private Catalog catalog;
+	private RefLog refLog;
+	private NullRecords nullRecords;
+
+	private TableRef users;
+	private TableRef users2;
+	private TableRef users3;
+
+	private Map<ColumnRef, ColumnRef> users2Mapping;
+	private Map<ColumnRef, ColumnRef> users3Mapping;
+
+	@Before
+	public void setUp() {
+		Table source = new Table("users")
+				.addColumn(new Column("id", bigint(), IDENTITY, AUTO_INCREMENT, NOT_NULL))
+				.addColumn(new Column("name", varchar(255), NOT_NULL))
+				.addColumn(new Column("updated_at", varchar(255)));
+
+		Table renamed = new Table("users2")
+				.addColumn(new Column("id", bigint(), IDENTITY, AUTO_INCREMENT, NOT_NULL))
+				.addColumn(new Column("full_name", varchar(255), NOT_NULL));
+
+		Table extended = new Table("users3")
+				.addColumn(new Column("id", bigint(), IDENTITY, AUTO_INCREMENT, NOT_NULL))
+				.addColumn(new Column("name", varchar(255), NOT_NULL))
+				.addColumn(new Column("email", varchar(255)));
+
+		this.catalog = new Catalog("public");
+		catalog.addTable(source);
+		catalog.addTable(renamed);
+		catalog.addTable(extended);
+
+		Changelog changelog = new Changelog();
+		changelog.addChangeSet("test1", "Michael de Jong", SchemaOperations.dropColumn("users", "updated_at"));
+		changelog.addChangeSet("test2", "Michael de Jong", SchemaOperations.addColumn("users", "email", varchar(255)));
+
+		this.refLog = new RefLog();
+		this.nullRecords = Mockito.mock(NullRecords.class);
+
+		ColumnRef usersId = new ColumnRef("id");
+		ColumnRef usersName = new ColumnRef("name");
+		ColumnRef usersUpdatedAt = new ColumnRef("updated_at");
+		this.users = refLog.addTable("users", "users", changelog.getRoot(),
+				Lists.newArrayList(usersId, usersName, usersUpdatedAt));
+
+		ColumnRef users2Id = new ColumnRef("id", Sets.newHashSet(usersId));
+		ColumnRef users2Name = new ColumnRef("full_name", Sets.newHashSet(usersName));
+		this.users2 = refLog.addTable("users", "users2", changelog.getRoot().getChild(),
+				Lists.newArrayList(users2Id, users2Name));
+
+		ColumnRef users3Id = new ColumnRef("id", Sets.newHashSet(usersId));
+		ColumnRef users3Name = new ColumnRef("name", Sets.newHashSet(usersName));
+		this.users3 = refLog.addTable("users", "users3", changelog.getLastAdded(),
+				Lists.newArrayList(users3Id, users3Name, new ColumnRef("email")));
+
+		this.users2Mapping = ImmutableMap.of(usersId, users2Id, usersName, users2Name);
+		this.users3Mapping = ImmutableMap.of(usersId, users3Id, usersName, users3Name);
+	}
+
+	@Test
+	public void testDispatcherSynchronizesAllTargetsInOneFunction() {
+		SyncDispatcher dispatcher = new SyncDispatcher("users", Mode.ROW,
+				Lists.newArrayList(createSyncFunction(users2, users2Mapping), createSyncFunction(users3, users3Mapping)));
+
+		String function = dispatcher.createFunctionStatement().toString();
+		assertTrue(function.startsWith("CREATE OR REPLACE FUNCTION dispatch_users() RETURNS TRIGGER AS $$ BEGIN"));
+		assertTrue(function.contains("INSERT INTO users2"));
+		assertTrue(function.contains("INSERT INTO users3"));
+		assertEquals(function.indexOf("RETURN NEW;"), function.lastIndexOf("RETURN NEW;"));
+
+		String trigger = dispatcher.createTriggerStatement().toString();
+		assertTrue(trigger.contains("CREATE TRIGGER quantumdb_sync AFTER INSERT OR DELETE ON users"));
+		assertTrue(trigger.contains("CREATE TRIGGER quantumdb_sync_upd AFTER UPDATE OF \"id\", \"name\" ON users"));
+		assertFalse(trigger.contains("updated_at"));
+	}
+
+	@Test
+	public void testQueueModeDispatcherQueuesIdentitiesOncePerChange() {
+		SyncDispatcher dispatcher = new SyncDispatcher("users", Mode.QUEUE,
+				Lists.newArrayList(createSyncFunction(users2, users2Mapping), createSyncFunction(users3, users3Mapping)));
+
+		String function = dispatcher.createFunctionStatement().toString();
+		String enqueue = "INSERT INTO quantumdb.sync_queue (source_ref_id, operation, identity) VALUES "
+				+ "('users', TG_OP, json_build_object('id', NEW.\"id\")::text);";
+
+		// Once for inserts and once for updates, regardless of the number of target tables.
+		assertEquals(2, function.split(Pattern.quote(enqueue), -1).length - 1);
+		assertTrue(function.contains("IF (OLD.\"id\") IS DISTINCT FROM (NEW.\"id\") THEN"));
+		assertTrue(function.contains("json_build_object('id', OLD.\"id\")::text);"));
+		assertFalse(function.contains("INSERT INTO users2"));
+		assertFalse(function.contains("INSERT INTO users3"));
+
+		String trigger = dispatcher.createTriggerStatement().toString();
+		assertTrue(trigger.contains("CREATE TRIGGER quantumdb_sync AFTER INSERT OR DELETE ON users FOR EACH ROW"));
+	}
+
+	@Test
+	public void testApplyStatementsUpsertCurrentStateOfQueuedRecords() {
+		SyncDispatcher dispatcher = new SyncDispatcher("users", Mode.QUEUE,
+				Lists.newArrayList(createSyncFunction(users2, users2Mapping)));
+
+		String batch = "(SELECT DISTINCT CAST(b.identity::json ->> 'id' AS bigint) AS \"id\" FROM quantumdb_sync_batch b)";
+		List<String> statements = dispatcher.getApplyStatements();
+		assertEquals(2, statements.size());
+
+		String delete = statements.get(0);
+		assertTrue(delete.startsWith("DELETE FROM users2 t USING " + batch + " k WHERE t.\"id\" = k.\"id\""));
+		assertTrue(delete.contains("AND NOT EXISTS (SELECT 1 FROM users s WHERE s.\"id\" = k.\"id\");"));
+
+		String upsert = statements.get(1);
+		assertTrue(upsert.startsWith("INSERT INTO users2"));
+		assertTrue(upsert.contains("FROM users s WHERE EXISTS (SELECT 1 FROM " + batch + " k WHERE s.\"id\" = k.\"id\")"));
+		assertTrue(upsert.contains("ON CONFLICT (\"id\") DO UPDATE SET \"full_name\" = EXCLUDED.\"full_name\";"));
+	}
+
+	@Test
+	public void testInstallMovesLegacySynchronizersIntoDispatcher() throws SQLException {
+		SyncFunction syncFunction = createSyncFunction(users2, users2Mapping);
+		refLog.addSync(SyncDispatcher.TRIGGER_NAME, "dispatch_users", users2Mapping);
+		refLog.addSync("trig_legacy", "sync_legacy", users3Mapping);
+
+		String query = install(ImmutableMap.of("users2", syncFunction));
+		assertTrue(query.contains("DROP TRIGGER IF EXISTS trig_legacy ON users;"));
+		assertTrue(query.contains("DROP FUNCTION IF EXISTS sync_legacy() CASCADE;"));
+		assertTrue(query.contains("CREATE OR REPLACE FUNCTION dispatch_users()"));
+		assertTrue(query.contains("INSERT INTO users2"));
+		assertTrue(query.contains("INSERT INTO users3"));
+
+		SyncRef moved = Iterables.getOnlyElement(users3.getInboundSyncs());
+		assertEquals(SyncDispatcher.TRIGGER_NAME, moved.getName());
+		assertEquals("dispatch_users", moved.getFunctionName());
+	}
+
+	@Test
+	public void testInstallDropsDispatcherWithoutTargets() throws SQLException {
+		String query = install(ImmutableMap.of());
+		assertEquals("DROP FUNCTION IF EXISTS dispatch_users() CASCADE; "
+				+ "DELETE FROM quantumdb.sync_queue WHERE source_ref_id = 'users';", query);
+	}
+
+	private SyncFunction createSyncFunction(TableRef target, Map<ColumnRef, ColumnRef> mapping) {
+		SyncFunction syncFunction = new SyncFunction(refLog, users, target, mapping, catalog, nullRecords);
+
+		syncFunction.setColumnsToMigrate(Sets.newHashSet(catalog.getTable(target.getRefId()).getColumns().stream()
+				.map(Column::getName)
+				.iterator()));
+
+		return syncFunction;
+	}
+
+	private String install(ImmutableMap<String, SyncFunction> syncFunctions) throws SQLException {
+		Statement statement = Mockito.mock(Statement.class);
+		Connection connection = Mockito.mock(Connection.class);
+		Mockito.when(connection.getAutoCommit()).thenReturn(true);
+		Mockito.when(connection.createStatement()).thenReturn(statement);
+
+		DatabaseMetaData metaData = Mockito.mock(DatabaseMetaData.class);
+		Mockito.when(metaData.getDatabaseMajorVersion()).thenReturn(10);
+		Mockito.when(connection.getMetaData()).thenReturn(metaData);
+
+		SyncDispatcher.install(connection, refLog, catalog, nullRecords, Mode.ROW, users, syncFunctions);
+
+		// The first statement installs the dispatcher, any others apply the changes which are still queued.
+		ArgumentCaptor<String> query = ArgumentCaptor.forClass(String.class);
+		Mockito.verify(statement, Mockito.atLeastOnce()).execute(query.capture());
+		Mockito.verify(connection).commit();
+		return query.getAllValues().get(0);
+	}
+
+}
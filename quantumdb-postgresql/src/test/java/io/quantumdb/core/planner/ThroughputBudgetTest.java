@@ -0,0 +1,42 @@
+package io.quantumdb.core.planner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ThroughputBudgetTest {
+
+	@Test
+	public void testUnlimitedBudgetNeverWaits() {
+		ThroughputBudget budget = new ThroughputBudget(0, 0);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(0, budget.reserve(100_000, 100_000_000));
+		}
+	}
+
+	@Test
+	public void testFirstReservationDoesNotWait() {
+		ThroughputBudget budget = new ThroughputBudget(1_000, 0);
+		assertEquals(0, budget.reserve(1_000, 0));
+	}
+
+	@Test
+	public void testConsecutiveReservationsWaitForRecordBudget() {
+		ThroughputBudget budget = new ThroughputBudget(1_000, 0);
+		budget.reserve(10_000, 0);
+
+		long wait = budget.reserve(1_000, 0);
+		assertTrue("Expected to wait roughly 10 seconds, but was: " + wait, wait > 9_000 && wait <= 10_000);
+	}
+
+	@Test
+	public void testMostRestrictiveBudgetDeterminesWait() {
+		ThroughputBudget budget = new ThroughputBudget(1_000_000, 1_000);
+		budget.reserve(10, 10_000);
+
+		long wait = budget.reserve(10, 10_000);
+		assertTrue("Expected to wait roughly 10 seconds, but was: " + wait, wait > 9_000 && wait <= 10_000);
+	}
+
+}
@@ -0,0 +1,123 @@
+package io.quantumdb.query.rewriter;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tells whether a query contains any of a set of names, ignoring case, in a single pass over the query (using the
+ * Aho-Corasick algorithm). The names are compiled into a deterministic automaton whose transitions are stored in a
+ * dense table, indexed by state and by the class of the (case-folded) character. Characters which do not occur in
+ * any of the names share a single class, which always leads back to the initial state.
+ *
+ * Matches are not restricted to whole words, so a query may be reported to contain a name while it only contains a
+ * longer name of which the name is a part. Callers must therefore only rely on a negative answer.
+ */
+class NameMatcher {
+
+	private final int[] asciiClasses;
+	private final Map<Character, Integer> otherClasses;
+	private final int classes;
+	private final int[] transitions;
+	private final boolean[] accepting;
+
+	NameMatcher(Collection<String> names) {
+		this.asciiClasses = new int[128];
+		this.otherClasses = new HashMap<>();
+
+		int classCount = 1;
+		int maxStates = 1;
+		for (String name : names) {
+			maxStates += name.length();
+			for (int i = 0; i < name.length(); i++) {
+				char character = Character.toLowerCase(name.charAt(i));
+				if (classOf(character) == 0) {
+					if (character < 128) {
+						asciiClasses[character] = classCount++;
+					}
+					else {
+						otherClasses.put(character, classCount++);
+					}
+				}
+			}
+		}
+
+		this.classes = classCount;
+		int[] table = new int[maxStates * classes];
+		boolean[] accepts = new boolean[maxStates];
+		Arrays.fill(table, -1);
+
+		// Build the trie of all names.
+		int states = 1;
+		for (String name : names) {
+			int state = 0;
+			for (int i = 0; i < name.length(); i++) {
+				int index = state * classes + classOf(Character.toLowerCase(name.charAt(i)));
+				if (table[index] < 0) {
+					table[index] = states++;
+				}
+				state = table[index];
+			}
+			accepts[state] = true;
+		}
+
+		// Turn the trie into an automaton, following the failure links in breadth-first order.
+		int[] failures = new int[states];
+		Deque<Integer> queue = new ArrayDeque<>();
+		for (int characterClass = 0; characterClass < classes; characterClass++) {
+			int next = table[characterClass];
+			if (next < 0) {
+				table[characterClass] = 0;
+			}
+			else {
+				failures[next] = 0;
+				queue.add(next);
+			}
+		}
+
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			accepts[state] |= accepts[failures[state]];
+			for (int characterClass = 0; characterClass < classes; characterClass++) {
+				int index = state * classes + characterClass;
+				int fallback = table[failures[state] * classes + characterClass];
+				if (table[index] < 0) {
+					table[index] = fallback;
+				}
+				else {
+					failures[table[index]] = fallback;
+					queue.add(table[index]);
+				}
+			}
+		}
+
+		this.transitions = Arrays.copyOf(table, states * classes);
+		this.accepting = Arrays.copyOf(accepts, states);
+	}
+
+	/**
+	 * @return True if the specified query might contain any of the names, false if it certainly does not.
+	 */
+	boolean matches(String query) {
+		int state = 0;
+		for (int i = 0; i < query.length(); i++) {
+			state = transitions[state * classes + classOf(Character.toLowerCase(query.charAt(i)))];
+			if (accepting[state]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int classOf(char character) {
+		if (character < 128) {
+			return asciiClasses[character];
+		}
+		Integer characterClass = otherClasses.get(character);
+		return characterClass == null ? 0 : characterClass;
+	}
+
+}
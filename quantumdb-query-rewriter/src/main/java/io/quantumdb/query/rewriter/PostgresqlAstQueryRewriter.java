@@ -0,0 +1,60 @@
+package io.quantumdb.query.rewriter;
+
+import java.util.Map;
+
+/**
+ * A QueryRewriter which parses queries into a QueryTree (see SqlParser), and rewrites every reference to a table in
+ * it. Unlike the PostgresqlQueryRewriter, which only rewrites the names following the FROM, JOIN, UPDATE, INTO and
+ * COPY keywords, this rewriter also rewrites comma-separated FROM lists, the targets of DELETE ... USING, TRUNCATE,
+ * LOCK TABLE and ALTER TABLE statements, and column references which are qualified by a table name, while leaving
+ * names which refer to common table expressions or aliases untouched.
+ *
+ * Parsing a query is more expensive than scanning it, so the templates produced by compile() should be cached (for
+ * instance using a TemplateCache) when the same queries are rewritten repeatedly.
+ */
+@Experimental
+public class PostgresqlAstQueryRewriter implements QueryRewriter {
+
+	private volatile TableLookup tableLookup;
+
+	public PostgresqlAstQueryRewriter() {
+		this.tableLookup = TableLookup.EMPTY;
+	}
+
+	@Override
+	public void setTableMapping(Map<String, String> newTableMapping) {
+		this.tableLookup = new TableLookup(newTableMapping);
+	}
+
+	@Override
+	public String rewrite(String query) {
+		if (query == null) {
+			throw new IllegalArgumentException("You must specify specify a 'query'.");
+		}
+
+		TableLookup lookup = this.tableLookup;
+		if (lookup.isEmpty() || !lookup.mayRewrite(query)) {
+			return query;
+		}
+		return compile(query).render(lookup);
+	}
+
+	@Override
+	public boolean canSkip(String query) {
+		return !tableLookup.mayRewrite(query);
+	}
+
+	@Override
+	public RewriteTemplate compile(String query) {
+		if (query == null) {
+			throw new IllegalArgumentException("You must specify specify a 'query'.");
+		}
+		return SqlParser.parse(query).toTemplate();
+	}
+
+	@Override
+	public String rewrite(RewriteTemplate template) {
+		return template.render(tableLookup);
+	}
+
+}
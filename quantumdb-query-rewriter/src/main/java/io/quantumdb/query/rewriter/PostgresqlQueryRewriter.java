@@ -1,165 +1,235 @@
 package io.quantumdb.query.rewriter;
 
 import java.sql.SQLException;
-import java.util.Deque;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.Map;
 
+import io.quantumdb.query.rewriter.SqlLexer.TokenType;
+
 @Experimental
 public class PostgresqlQueryRewriter implements QueryRewriter {
 
-	private static class State {
+	/**
+	 * Receives the table references which are found in a query.
+	 */
+	private interface ReferenceVisitor {
+		void visit(TokenType type, int start, int end);
+	}
+
+	/**
+	 * Substitutes the table references in a query, and only copies the query once a reference is substituted.
+	 */
+	private static class Substitution implements ReferenceVisitor {
 
+		private final String query;
+		private final TableLookup lookup;
 		private StringBuilder output;
-		private String query;
-		private int lastProcessedCursor;
-		private int cursor;
-		private String previousWord;
-		private Deque<Character> stack;
+		private int copied;
+
+		private Substitution(String query, TableLookup lookup) {
+			this.query = query;
+			this.lookup = lookup;
+		}
+
+		@Override
+		public void visit(TokenType type, int start, int end) {
+			String target = TableNames.lookup(lookup, query, type, start, end);
+			if (target == null) {
+				return;
+			}
+
+			if (output == null) {
+				output = new StringBuilder(query.length() + 16);
+			}
+			output.append(query, copied, start);
+			TableNames.append(output, type, target);
+			copied = end;
+		}
+
+		private String getResult() {
+			if (output == null) {
+				return query;
+			}
+			return output.append(query, copied, query.length()).toString();
+		}
+
+	}
+
+	/**
+	 * Records the positions of the table references in a query.
+	 */
+	private static class TemplateBuilder implements ReferenceVisitor {
+
+		private final String query;
+		private int[] starts = new int[4];
+		private int[] ends = new int[4];
+		private TokenType[] types = new TokenType[4];
+		private int count;
 
-		private State(String query) {
+		private TemplateBuilder(String query) {
 			this.query = query;
-			this.output = new StringBuilder();
-			this.cursor = 0;
-			this.lastProcessedCursor = 0;
-			this.previousWord = "";
-			this.stack = new LinkedList<>();
+		}
+
+		@Override
+		public void visit(TokenType type, int start, int end) {
+			if (count == starts.length) {
+				starts = Arrays.copyOf(starts, count * 2);
+				ends = Arrays.copyOf(ends, count * 2);
+				types = Arrays.copyOf(types, count * 2);
+			}
+			starts[count] = start;
+			ends[count] = end;
+			types[count] = type;
+			count++;
+		}
+
+		private RewriteTemplate build() {
+			return new RewriteTemplate(query, Arrays.copyOf(starts, count), Arrays.copyOf(ends, count),
+					Arrays.copyOf(types, count));
 		}
 
 	}
 
 	private static final String DEFAULT_SCHEMA = "public";
+	private static final String[] RELATION_KEYWORDS = { "from", "join", "update", "into", "copy" };
 
-	private final Map<String, String> tableMapping;
+	private volatile TableLookup tableLookup;
 
 	public PostgresqlQueryRewriter() {
-		this.tableMapping = new HashMap<>();
+		this.tableLookup = TableLookup.EMPTY;
 	}
 
+	/**
+	 * Replaces the table mapping with a copy of the specified mapping. Queries which are being rewritten while the
+	 * mapping is replaced, are rewritten entirely using either the old or the new mapping.
+	 */
 	public void setTableMapping(Map<String, String> newTableMapping) {
-		tableMapping.clear();
-		tableMapping.putAll(newTableMapping);
+		this.tableLookup = new TableLookup(newTableMapping);
 	}
 
+	/**
+	 * Rewrites the table names which follow the FROM, JOIN, UPDATE, INTO and COPY keywords in a single pass over the
+	 * query. Table names may be unquoted (in which case they are matched ignoring case), quoted, or qualified with the
+	 * "public" schema. Table names in string literals, quoted identifiers and comments are left untouched. When the
+	 * query contains no table names which should be rewritten, the query itself is returned. Queries which do not
+	 * contain the name of any table whose name changes (see canSkip()) are returned without being parsed at all.
+	 */
 	public String rewrite(String query) throws SQLException {
 		if (query == null) {
 			throw new IllegalArgumentException("You must specify specify a 'query'.");
 		}
 
-		State state = new State(query);
-		for (state.cursor = 0; state.cursor < query.length(); state.cursor++) {
-			char currentCharacter = query.charAt(state.cursor);
-
-				switch (currentCharacter) {
-					case '\'':
-					case '\"':
-					case '`':
-						Character onStack = state.stack.peekFirst();
-						if (onStack != null && onStack.equals(currentCharacter)) {
-							state.stack.removeFirst();
-						}
-						else {
-							state.stack.addFirst(currentCharacter);
-						}
-						processWordStartOrMiddle(state);
-						break;
-					case ' ':
-					case ',':
-					case ';':
-						if (state.stack.isEmpty()) {
-							processWordEnding(state);
-						}
-						processWordStartOrMiddle(state);
-						break;
-					default:
-						processWordStartOrMiddle(state);
-						break;
-				}
+		TableLookup lookup = this.tableLookup;
+		if (lookup.isEmpty() || !lookup.mayRewrite(query)) {
+			return query;
 		}
 
-		processWordEnding(state);
-
-		return state.output.toString();
+		Substitution substitution = new Substitution(query, lookup);
+		scan(query, substitution);
+		return substitution.getResult();
 	}
 
-	private void processWordEnding(State state) throws SQLException {
-		String word = state.query.substring(state.lastProcessedCursor, state.cursor);
+	@Override
+	public boolean canSkip(String query) {
+		return !tableLookup.mayRewrite(query);
+	}
 
-		if (word.trim().isEmpty()) {
-			state.output.append(word);
-		}
-		else {
-			state.output.append(processWord(state, word));
+	@Override
+	public RewriteTemplate compile(String query) {
+		if (query == null) {
+			throw new IllegalArgumentException("You must specify specify a 'query'.");
 		}
 
-		state.lastProcessedCursor = state.cursor;
+		TemplateBuilder builder = new TemplateBuilder(query);
+		scan(query, builder);
+		return builder.build();
 	}
 
-	private void processWordStartOrMiddle(State state) {
-		String word = state.query.substring(state.lastProcessedCursor, state.cursor);
-
-		if (word.trim().isEmpty()) {
-			state.output.append(word);
-			state.lastProcessedCursor = state.cursor;
-		}
+	@Override
+	public String rewrite(RewriteTemplate template) {
+		return template.render(tableLookup);
 	}
 
-	private String processWord(State state, String word) throws SQLException {
-		if (state.previousWord.equalsIgnoreCase("from") || state.previousWord.equalsIgnoreCase("join") ||
-				state.previousWord.equalsIgnoreCase("update") || state.previousWord.equalsIgnoreCase("into")) {
-
-			boolean isQuoted = isQuoted(word);
-			if (isQuoted) {
-				word = word.substring(1, word.length() - 1);
-			}
+	private void scan(String query, ReferenceVisitor visitor) {
+		SqlLexer lexer = new SqlLexer(query);
+		boolean expectRelation = false;
 
-			String schema = null;
-			if (word != null && word.startsWith(DEFAULT_SCHEMA + ".")) {
-				schema = DEFAULT_SCHEMA;
-				word = word.substring(DEFAULT_SCHEMA.length() + 1, word.length());
+		for (TokenType type = lexer.next(); type != TokenType.END; type = lexer.next()) {
+			if (type == TokenType.WHITESPACE || type == TokenType.COMMENT) {
+				continue;
 			}
 
-			String tableName = tableMapping.get(word);
-
-			if (!isQuoted && tableName == null) {
-				for (Map.Entry<String, String> entry : tableMapping.entrySet()) {
-					if (entry.getKey().equalsIgnoreCase(word)) {
-						tableName = entry.getValue();
-						break;
-					}
+			if (expectRelation && isName(query, lexer)) {
+				expectRelation = false;
+				if (skipSchema(query, lexer)) {
+					visitor.visit(lexer.getType(), lexer.getStart(), lexer.getEnd());
 				}
+				continue;
 			}
 
-			if (tableName == null) {
-				//throw new SQLException("No table with name: '" + word + "' exists.");
-			}
-			else {
-				word = tableName;
-			}
+			expectRelation = isRelationKeyword(lexer);
+		}
+	}
 
-			if (schema != null) {
-				word = schema + "." + word;
-			}
+	/**
+	 * When the current name is followed by a dot, it is a schema name. If the schema is the default schema, this
+	 * advances the lexer to the table name which follows it.
+	 *
+	 * @return True if the current token is the name of a table in the default schema, false otherwise.
+	 */
+	private boolean skipSchema(String query, SqlLexer lexer) {
+		int schemaStart = lexer.getStart();
+		int schemaEnd = lexer.getEnd();
+		TokenType schemaType = lexer.getType();
+
+		lexer.mark();
+		if (lexer.next() != TokenType.SYMBOL || !lexer.isSymbol('.')) {
+			lexer.reset();
+			return true;
+		}
 
-			if (isQuoted) {
-				word = "'" + word + "'";
-			}
+		lexer.next();
+		if (!isName(query, lexer)) {
+			return false;
 		}
 
-		state.previousWord = word;
-		return word;
+		if (schemaType == TokenType.WORD) {
+			return schemaEnd - schemaStart == DEFAULT_SCHEMA.length()
+					&& query.regionMatches(true, schemaStart, DEFAULT_SCHEMA, 0, DEFAULT_SCHEMA.length());
+		}
+		return schemaEnd - schemaStart == DEFAULT_SCHEMA.length() + 2
+				&& query.regionMatches(schemaStart + 1, DEFAULT_SCHEMA, 0, DEFAULT_SCHEMA.length());
 	}
 
-	private boolean isQuoted(String word) {
-		char first = word.charAt(0);
-		char last = word.charAt(word.length() - 1);
+	/**
+	 * @return True if the current token can be a table name. Besides words and quoted identifiers, table names which
+	 * are quoted using single quotes are accepted, since earlier versions of the rewriter treated them as such.
+	 */
+	private boolean isName(String query, SqlLexer lexer) {
+		int start = lexer.getStart();
+		int end = lexer.getEnd();
+		switch (lexer.getType()) {
+			case WORD:
+				return true;
+			case QUOTED_IDENTIFIER:
+			case STRING:
+				char quote = query.charAt(start);
+				return (quote == '"' || quote == '\'') && end - start >= 2 && query.charAt(end - 1) == quote;
+			default:
+				return false;
+		}
+	}
 
-		if (first != last) {
+	private boolean isRelationKeyword(SqlLexer lexer) {
+		if (lexer.getType() != TokenType.WORD) {
 			return false;
 		}
-
-		return first == '\'';
+		for (String keyword : RELATION_KEYWORDS) {
+			if (lexer.isWord(keyword)) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 }
@@ -22,4 +22,32 @@ public interface QueryRewriter {
 	 */
 	String rewrite(String query) throws SQLException;
 
+	/**
+	 * Tells whether a specified query can be used as is, without rewriting it, because it cannot refer to any table
+	 * whose name differs under the current table mapping. This is much cheaper than rewriting the query.
+	 *
+	 * @param query The query to check.
+	 * @return True if the query does not have to be rewritten, false if it may have to be rewritten.
+	 */
+	boolean canSkip(String query);
+
+	/**
+	 * Compiles a specified query into a template, which does not depend on any table mapping, and can therefore be
+	 * rewritten for any table mapping without parsing the query again.
+	 *
+	 * @param query The query to compile.
+	 * @return The compiled template.
+	 * @throws IllegalArgumentException When the specified 'query' is NULL.
+	 */
+	RewriteTemplate compile(String query);
+
+	/**
+	 * Rewrites a previously compiled template using the current table mapping. The resulting String equals the result
+	 * of rewriting the query from which the template was compiled.
+	 *
+	 * @param template The template to rewrite.
+	 * @return The rewritten query.
+	 */
+	String rewrite(RewriteTemplate template);
+
 }
@@ -0,0 +1,188 @@
+package io.quantumdb.query.rewriter;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import io.quantumdb.query.rewriter.SqlLexer.TokenType;
+
+/**
+ * The syntax tree of a query, as far as it concerns the relations which the query refers to. The tree consists of
+ * scopes, one for every (sub)query, in which tables are referenced, and in which columns are qualified by the name
+ * (or alias) of a table. Every reference identifies the part of the query text which holds the name, so that the
+ * query can be serialized again with only those names substituted, leaving the rest of the query untouched.
+ */
+class QueryTree {
+
+	/**
+	 * A reference to a table (or any other relation) by name, such as in a FROM clause.
+	 */
+	static class TableReference {
+
+		final TokenType type;
+		final int start;
+		final int end;
+
+		/**
+		 * False if the name refers to a common table expression, or to a table outside of the default schema.
+		 */
+		final boolean rewritable;
+
+		TableReference(TokenType type, int start, int end, boolean rewritable) {
+			this.type = type;
+			this.start = start;
+			this.end = end;
+			this.rewritable = rewritable;
+		}
+
+	}
+
+	/**
+	 * The qualifier of a column, such as "users" in "users.id".
+	 */
+	static class ColumnQualifier {
+
+		final TokenType type;
+		final int start;
+		final int end;
+		final String name;
+
+		/**
+		 * The table which the qualifier refers to by its name, or NULL if it refers to an alias, or could not be
+		 * resolved.
+		 */
+		TableReference table;
+
+		ColumnQualifier(TokenType type, int start, int end, String name) {
+			this.type = type;
+			this.start = start;
+			this.end = end;
+			this.name = name;
+		}
+
+	}
+
+	/**
+	 * A (sub)query, which introduces the relations in its FROM clause (and similar clauses) under their name or alias.
+	 */
+	static class Scope {
+
+		final Scope parent;
+		final List<Scope> children = Lists.newArrayList();
+		final List<TableReference> tables = Lists.newArrayList();
+		final List<ColumnQualifier> qualifiers = Lists.newArrayList();
+		final Set<String> commonTableExpressions = Sets.newHashSet();
+
+		/**
+		 * The relations which are visible in this scope by name, mapping onto the table which is referred to by its
+		 * own name, or NULL for aliased tables, subqueries and common table expressions.
+		 */
+		final Map<String, TableReference> relations = Maps.newHashMap();
+
+		Scope(Scope parent) {
+			this.parent = parent;
+			if (parent != null) {
+				parent.children.add(this);
+			}
+		}
+
+		boolean isCommonTableExpression(String name) {
+			for (Scope scope = this; scope != null; scope = scope.parent) {
+				if (scope.commonTableExpressions.contains(name)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Resolves the qualifiers in this scope to the relations they refer to. Qualifiers which do not refer to a
+		 * relation in this scope are passed on to the enclosing scope, since they may be correlated.
+		 */
+		void resolve() {
+			Iterator<ColumnQualifier> iterator = qualifiers.iterator();
+			while (iterator.hasNext()) {
+				ColumnQualifier qualifier = iterator.next();
+				if (relations.containsKey(qualifier.name)) {
+					qualifier.table = relations.get(qualifier.name);
+				}
+				else if (parent != null) {
+					parent.qualifiers.add(qualifier);
+					iterator.remove();
+				}
+			}
+		}
+
+	}
+
+	private final String query;
+	private final List<Scope> statements;
+
+	QueryTree(String query, List<Scope> statements) {
+		this.query = query;
+		this.statements = statements;
+	}
+
+	List<Scope> getStatements() {
+		return statements;
+	}
+
+	/**
+	 * @return A template of the query, with a slot for every reference to a table which may be rewritten, and every
+	 * qualifier which refers to such a table by its name.
+	 */
+	RewriteTemplate toTemplate() {
+		List<Slot> slots = Lists.newArrayList();
+		for (Scope statement : statements) {
+			collect(statement, slots);
+		}
+		slots.sort(Comparator.comparingInt(slot -> slot.start));
+
+		int[] starts = new int[slots.size()];
+		int[] ends = new int[slots.size()];
+		TokenType[] types = new TokenType[slots.size()];
+		for (int i = 0; i < slots.size(); i++) {
+			Slot slot = slots.get(i);
+			starts[i] = slot.start;
+			ends[i] = slot.end;
+			types[i] = slot.type;
+		}
+		return new RewriteTemplate(query, starts, ends, types);
+	}
+
+	private void collect(Scope scope, List<Slot> slots) {
+		for (TableReference table : scope.tables) {
+			if (table.rewritable) {
+				slots.add(new Slot(table.type, table.start, table.end));
+			}
+		}
+		for (ColumnQualifier qualifier : scope.qualifiers) {
+			if (qualifier.table != null && qualifier.table.rewritable) {
+				slots.add(new Slot(qualifier.type, qualifier.start, qualifier.end));
+			}
+		}
+		for (Scope child : scope.children) {
+			collect(child, slots);
+		}
+	}
+
+	private static class Slot {
+
+		private final TokenType type;
+		private final int start;
+		private final int end;
+
+		private Slot(TokenType type, int start, int end) {
+			this.type = type;
+			this.start = start;
+			this.end = end;
+		}
+
+	}
+
+}
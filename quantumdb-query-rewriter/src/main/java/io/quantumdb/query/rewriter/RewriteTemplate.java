@@ -0,0 +1,73 @@
+package io.quantumdb.query.rewriter;
+
+import io.quantumdb.query.rewriter.SqlLexer.TokenType;
+
+/**
+ * A query which has been parsed into literal SQL fragments, and the slots between them which refer to tables by
+ * their logical name. Since a template does not depend on any table mapping, it only needs to be compiled once, after
+ * which it can be rendered for any table mapping by substituting the table names in its slots.
+ */
+public class RewriteTemplate {
+
+	private final String query;
+	private final int[] starts;
+	private final int[] ends;
+	private final TokenType[] types;
+
+	RewriteTemplate(String query, int[] starts, int[] ends, TokenType[] types) {
+		this.query = query;
+		this.starts = starts;
+		this.ends = ends;
+		this.types = types;
+	}
+
+	/**
+	 * @return The query from which this template was compiled.
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * @return The number of table references in the query.
+	 */
+	public int getSlotCount() {
+		return starts.length;
+	}
+
+	/**
+	 * @return The logical name of the table which the specified slot refers to.
+	 */
+	public String getTableName(int slot) {
+		return TableNames.unquote(query, starts[slot], ends[slot]);
+	}
+
+	/**
+	 * Renders the query, substituting all table names for which the specified lookup holds a target. The result
+	 * equals the result of rewriting the query using the table mapping from which the lookup was built.
+	 */
+	public String render(TableLookup lookup) {
+		StringBuilder output = null;
+		int copied = 0;
+
+		for (int slot = 0; slot < starts.length; slot++) {
+			String target = TableNames.lookup(lookup, query, types[slot], starts[slot], ends[slot]);
+			if (target == null) {
+				continue;
+			}
+
+			if (output == null) {
+				output = new StringBuilder(query.length() + 16);
+			}
+			output.append(query, copied, starts[slot]);
+			TableNames.append(output, types[slot], target);
+			copied = ends[slot];
+		}
+
+		if (output == null) {
+			return query;
+		}
+		return output.append(query, copied, query.length()).toString();
+	}
+
+}
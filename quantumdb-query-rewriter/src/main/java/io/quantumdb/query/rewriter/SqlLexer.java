@@ -0,0 +1,273 @@
+package io.quantumdb.query.rewriter;
+
+/**
+ * Splits a PostgreSQL query into tokens in a single pass. Tokens are not materialized as Strings, but identified by
+ * their start (inclusive) and end (exclusive) index in the query, so that lexing a query does not allocate. The lexer
+ * recognizes whitespace, line and (nested) block comments, string literals (including escape strings such as
+ * E'\'' and dollar-quoted strings such as $body$...$body$), quoted identifiers, words, numbers and symbols.
+ */
+class SqlLexer {
+
+	enum TokenType {
+		WHITESPACE, COMMENT, WORD, QUOTED_IDENTIFIER, STRING, NUMBER, SYMBOL, END
+	}
+
+	private final String query;
+	private final int length;
+
+	private int position;
+	private TokenType type;
+	private int start;
+	private int end;
+
+	private int markedPosition;
+	private TokenType markedType;
+	private int markedStart;
+	private int markedEnd;
+
+	SqlLexer(String query) {
+		this.query = query;
+		this.length = query.length();
+	}
+
+	/**
+	 * Advances to the next token.
+	 *
+	 * @return The type of the next token, or END if the end of the query has been reached.
+	 */
+	TokenType next() {
+		start = position;
+		if (position >= length) {
+			end = position;
+			type = TokenType.END;
+			return type;
+		}
+
+		char current = query.charAt(position);
+		if (Character.isWhitespace(current)) {
+			position = skipWhitespace(position);
+			type = TokenType.WHITESPACE;
+		}
+		else if (current == '-' && charAt(position + 1) == '-') {
+			position = skipLineComment(position + 2);
+			type = TokenType.COMMENT;
+		}
+		else if (current == '/' && charAt(position + 1) == '*') {
+			position = skipBlockComment(position + 2);
+			type = TokenType.COMMENT;
+		}
+		else if (current == '\'') {
+			position = skipString(position + 1, false);
+			type = TokenType.STRING;
+		}
+		else if ((current == 'E' || current == 'e') && charAt(position + 1) == '\'') {
+			position = skipString(position + 2, true);
+			type = TokenType.STRING;
+		}
+		else if (current == '"') {
+			position = skipQuotedIdentifier(position + 1);
+			type = TokenType.QUOTED_IDENTIFIER;
+		}
+		else if (current == '$' && isDollarQuote(position)) {
+			position = skipDollarQuotedString(position);
+			type = TokenType.STRING;
+		}
+		else if (isIdentifierStart(current)) {
+			position = skipIdentifier(position + 1);
+			type = TokenType.WORD;
+		}
+		else if (Character.isDigit(current)) {
+			position = skipNumber(position + 1);
+			type = TokenType.NUMBER;
+		}
+		else {
+			position++;
+			type = TokenType.SYMBOL;
+		}
+
+		end = position;
+		return type;
+	}
+
+	TokenType getType() {
+		return type;
+	}
+
+	int getStart() {
+		return start;
+	}
+
+	int getEnd() {
+		return end;
+	}
+
+	/**
+	 * Marks the current token, so that the lexer can return to it by calling reset().
+	 */
+	void mark() {
+		markedPosition = position;
+		markedType = type;
+		markedStart = start;
+		markedEnd = end;
+	}
+
+	/**
+	 * Returns to the token which was marked last.
+	 */
+	void reset() {
+		position = markedPosition;
+		type = markedType;
+		start = markedStart;
+		end = markedEnd;
+	}
+
+	/**
+	 * @return True if the current token is a word which equals the specified (lower case) word, ignoring case.
+	 */
+	boolean isWord(String word) {
+		return type == TokenType.WORD && end - start == word.length()
+				&& query.regionMatches(true, start, word, 0, word.length());
+	}
+
+	/**
+	 * @return True if the current token is the specified symbol.
+	 */
+	boolean isSymbol(char symbol) {
+		return type == TokenType.SYMBOL && query.charAt(start) == symbol;
+	}
+
+	private char charAt(int index) {
+		return index < length ? query.charAt(index) : 0;
+	}
+
+	private int skipWhitespace(int index) {
+		while (index < length && Character.isWhitespace(query.charAt(index))) {
+			index++;
+		}
+		return index;
+	}
+
+	private int skipLineComment(int index) {
+		while (index < length && query.charAt(index) != '\n') {
+			index++;
+		}
+		return index;
+	}
+
+	private int skipBlockComment(int index) {
+		int depth = 1;
+		while (index < length && depth > 0) {
+			char current = query.charAt(index);
+			if (current == '*' && charAt(index + 1) == '/') {
+				depth--;
+				index += 2;
+			}
+			else if (current == '/' && charAt(index + 1) == '*') {
+				depth++;
+				index += 2;
+			}
+			else {
+				index++;
+			}
+		}
+		return index;
+	}
+
+	private int skipString(int index, boolean backslashEscapes) {
+		while (index < length) {
+			char current = query.charAt(index);
+			if (backslashEscapes && current == '\\') {
+				index += 2;
+			}
+			else if (current == '\'') {
+				if (charAt(index + 1) != '\'') {
+					return index + 1;
+				}
+				index += 2;
+			}
+			else {
+				index++;
+			}
+		}
+		return length;
+	}
+
+	private int skipQuotedIdentifier(int index) {
+		while (index < length) {
+			if (query.charAt(index) == '"') {
+				if (charAt(index + 1) != '"') {
+					return index + 1;
+				}
+				index += 2;
+			}
+			else {
+				index++;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @return True if a dollar quote ($$ or $tag$) starts at the specified index. A dollar sign which is followed by a
+	 * digit denotes a positional parameter instead.
+	 */
+	private boolean isDollarQuote(int index) {
+		int tagEnd = index + 1;
+		if (tagEnd < length && isIdentifierStart(query.charAt(tagEnd))) {
+			while (tagEnd < length && isTagPart(query.charAt(tagEnd))) {
+				tagEnd++;
+			}
+		}
+		return charAt(tagEnd) == '$';
+	}
+
+	private int skipDollarQuotedString(int index) {
+		int delimiterEnd = query.indexOf('$', index + 1) + 1;
+		int delimiterLength = delimiterEnd - index;
+
+		int candidate = query.indexOf('$', delimiterEnd);
+		while (candidate >= 0) {
+			if (query.regionMatches(candidate, query, index, delimiterLength)) {
+				return candidate + delimiterLength;
+			}
+			candidate = query.indexOf('$', candidate + 1);
+		}
+		return length;
+	}
+
+	private int skipIdentifier(int index) {
+		while (index < length && isIdentifierPart(query.charAt(index))) {
+			index++;
+		}
+		return index;
+	}
+
+	private int skipNumber(int index) {
+		while (index < length) {
+			char current = query.charAt(index);
+			if (Character.isLetterOrDigit(current) || current == '.' || current == '_') {
+				index++;
+			}
+			else if ((current == '+' || current == '-') && Character.toLowerCase(query.charAt(index - 1)) == 'e') {
+				index++;
+			}
+			else {
+				break;
+			}
+		}
+		return index;
+	}
+
+	private static boolean isIdentifierStart(char character) {
+		return Character.isLetter(character) || character == '_' || character >= 0x80;
+	}
+
+	private static boolean isIdentifierPart(char character) {
+		return isIdentifierStart(character) || Character.isDigit(character) || character == '$';
+	}
+
+	private static boolean isTagPart(char character) {
+		return isIdentifierStart(character) || Character.isDigit(character);
+	}
+
+}
@@ -0,0 +1,457 @@
+package io.quantumdb.query.rewriter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import io.quantumdb.query.rewriter.QueryTree.ColumnQualifier;
+import io.quantumdb.query.rewriter.QueryTree.Scope;
+import io.quantumdb.query.rewriter.QueryTree.TableReference;
+import io.quantumdb.query.rewriter.SqlLexer.TokenType;
+
+/**
+ * Parses PostgreSQL queries into a QueryTree using recursive descent over the tokens of the query. The parser only
+ * follows the parts of the grammar which determine which relations a query refers to, and how names resolve to them:
+ *
+ * - FROM clauses, including comma-separated lists, (parenthesized) joins, subqueries and function calls.
+ * - The targets of INSERT INTO, UPDATE, DELETE FROM ... USING, MERGE INTO ... USING, COPY, TRUNCATE, LOCK TABLE,
+ * ALTER TABLE, REFERENCES and TABLE statements.
+ * - Common table expressions (WITH [RECURSIVE]), which shadow tables of the same name.
+ * - Aliases, and qualified column references (such as "users.id"), which are resolved to the relation they refer to
+ * in the innermost scope which defines it.
+ *
+ * All other tokens are skipped. Keywords within parenthesized expressions (such as FROM in EXTRACT(YEAR FROM ...)) are
+ * not mistaken for clauses, since only subqueries within parentheses are parsed as such.
+ */
+class SqlParser {
+
+	/**
+	 * Words which follow a relation, but which cannot be its alias.
+	 */
+	private static final Set<String> RESERVED = ImmutableSet.of("all", "and", "as", "cascade", "cross", "default",
+			"do", "else", "end", "except", "fetch", "for", "from", "full", "group", "having", "in", "inner",
+			"intersect", "into", "is", "join", "lateral", "left", "limit", "natural", "not", "offset", "on", "only",
+			"or", "order", "outer", "overriding", "restart", "restrict", "returning", "right", "select", "set",
+			"tablesample", "then", "union", "using", "values", "when", "where", "window", "with");
+
+	static QueryTree parse(String query) {
+		return new SqlParser(query).parse();
+	}
+
+	private final String query;
+
+	private TokenType[] types;
+	private int[] starts;
+	private int[] ends;
+	private int count;
+	private int index;
+
+	private SqlParser(String query) {
+		this.query = query;
+		this.types = new TokenType[16];
+		this.starts = new int[16];
+		this.ends = new int[16];
+
+		SqlLexer lexer = new SqlLexer(query);
+		for (TokenType type = lexer.next(); type != TokenType.END; type = lexer.next()) {
+			if (type == TokenType.WHITESPACE || type == TokenType.COMMENT) {
+				continue;
+			}
+			if (count == types.length) {
+				types = Arrays.copyOf(types, count * 2);
+				starts = Arrays.copyOf(starts, count * 2);
+				ends = Arrays.copyOf(ends, count * 2);
+			}
+			types[count] = type;
+			starts[count] = lexer.getStart();
+			ends[count] = lexer.getEnd();
+			count++;
+		}
+	}
+
+	private QueryTree parse() {
+		List<Scope> statements = Lists.newArrayList();
+		while (index < count) {
+			Scope statement = new Scope(null);
+			walk(statement, false);
+			statement.resolve();
+			statements.add(statement);
+
+			// Skip the ';' which ends the statement, or an unbalanced ')'.
+			index++;
+		}
+		return new QueryTree(query, statements);
+	}
+
+	/**
+	 * Walks over the tokens of the specified scope, up to the ')' or ';' which ends it.
+	 *
+	 * @param expression True if the tokens are part of a parenthesized expression, in which case they do not
+	 *                   contain any clauses which introduce relations.
+	 */
+	private void walk(Scope scope, boolean expression) {
+		while (index < count) {
+			if (isSymbol(index, ')') || isSymbol(index, ';')) {
+				return;
+			}
+			else if (isSymbol(index, '(')) {
+				index++;
+				parseParenthesized(scope);
+			}
+			else if (isIdentifier(index) && isSymbol(index + 1, '.')) {
+				parseQualifiedName(scope);
+			}
+			else if (expression || types[index] != TokenType.WORD || !parseClause(scope)) {
+				index++;
+			}
+		}
+	}
+
+	private void parseParenthesized(Scope scope) {
+		if (isSubqueryStart(index)) {
+			parseSubquery(scope);
+		}
+		else {
+			walk(scope, true);
+		}
+		skipSymbol(')');
+	}
+
+	private void parseSubquery(Scope scope) {
+		Scope subquery = new Scope(scope);
+		walk(subquery, false);
+		subquery.resolve();
+	}
+
+	/**
+	 * Parses the clause which starts at the current word, if it is a clause which introduces relations.
+	 *
+	 * @return True if a clause was parsed, false otherwise.
+	 */
+	private boolean parseClause(Scope scope) {
+		if (isWord(index, "from") && !isWord(index - 1, "distinct")) {
+			index++;
+			parseRelationList(scope, true, true);
+		}
+		else if (isWord(index, "join")) {
+			index++;
+			parseRelation(scope, true, true);
+		}
+		else if (isWord(index, "using") && !isSymbol(index + 1, '(')) {
+			index++;
+			parseRelationList(scope, true, true);
+		}
+		else if (isWord(index, "into")) {
+			index++;
+			parseRelation(scope, false, true);
+		}
+		else if (isWord(index, "update") && isStatementStart(index)) {
+			index++;
+			parseRelation(scope, false, true);
+		}
+		else if ((isWord(index, "truncate") || isWord(index, "lock")) && isStatementStart(index)) {
+			index++;
+			skipWord("table");
+			parseRelationList(scope, false, false);
+		}
+		else if (isWord(index, "alter") && isWord(index + 1, "table")) {
+			index += 2;
+			if (isWord(index, "if") && isWord(index + 1, "exists")) {
+				index += 2;
+			}
+			parseRelation(scope, false, false);
+		}
+		else if (isWord(index, "references")) {
+			index++;
+			parseRelation(scope, false, false);
+		}
+		else if (isWord(index, "table") && isSetOperand(index)) {
+			index++;
+			parseRelation(scope, false, false);
+		}
+		else if (isWord(index, "copy") && isStatementStart(index)) {
+			index++;
+			parseRelation(scope, false, false);
+			skipStatement();
+		}
+		else if (isWord(index, "with")) {
+			parseCommonTableExpressions(scope);
+		}
+		else {
+			return false;
+		}
+		return true;
+	}
+
+	private void parseRelationList(Scope scope, boolean allowFunction, boolean allowAlias) {
+		parseRelation(scope, allowFunction, allowAlias);
+		while (isSymbol(index, ',')) {
+			index++;
+			parseRelation(scope, allowFunction, allowAlias);
+		}
+	}
+
+	/**
+	 * Parses a single relation: a (schema qualified) table name, a subquery, a parenthesized join, or (if allowed) a
+	 * function call, optionally followed by an alias.
+	 */
+	private void parseRelation(Scope scope, boolean allowFunction, boolean allowAlias) {
+		while (isWord(index, "only") || isWord(index, "lateral")) {
+			index++;
+		}
+
+		if (isSymbol(index, '(')) {
+			index++;
+			if (isSubqueryStart(index)) {
+				parseSubquery(scope);
+			}
+			else {
+				parseRelationList(scope, true, true);
+				walk(scope, false);
+			}
+			skipSymbol(')');
+			hide(scope, parseAlias(scope));
+			return;
+		}
+
+		if (!isName(index)) {
+			return;
+		}
+
+		int nameIndex = index;
+		boolean rewritable = true;
+		while (isSymbol(nameIndex + 1, '.') && isName(nameIndex + 2)) {
+			rewritable = nameIndex == index && isDefaultSchema(nameIndex);
+			nameIndex += 2;
+		}
+		boolean qualified = nameIndex != index;
+		index = nameIndex + 1;
+
+		if (allowFunction && isSymbol(index, '(')) {
+			// A function which returns a set of rows, such as generate_series(1, 10).
+			index++;
+			walk(scope, true);
+			skipSymbol(')');
+			hide(scope, parseAlias(scope));
+			return;
+		}
+
+		String name = fold(nameIndex);
+		boolean commonTableExpression = !qualified && scope.isCommonTableExpression(name);
+		TableReference table = new TableReference(types[nameIndex], starts[nameIndex], ends[nameIndex],
+				rewritable && !commonTableExpression);
+		scope.tables.add(table);
+
+		if (isSymbol(index, '*')) {
+			index++;
+		}
+
+		String alias = allowAlias ? parseAlias(scope) : null;
+		if (alias != null) {
+			hide(scope, alias);
+		}
+		else if (!scope.relations.containsKey(name)) {
+			scope.relations.put(name, commonTableExpression ? null : table);
+		}
+	}
+
+	/**
+	 * Records that the specified alias refers to a relation which is not a table, so that columns qualified by it are
+	 * never rewritten.
+	 */
+	private void hide(Scope scope, String alias) {
+		if (alias != null) {
+			scope.relations.put(alias, null);
+		}
+	}
+
+	/**
+	 * Parses the alias of a relation, and the list of column aliases which may follow it.
+	 *
+	 * @return The alias, or NULL if the relation has no alias.
+	 */
+	private String parseAlias(Scope scope) {
+		String alias = null;
+		if (isWord(index, "as") && isIdentifier(index + 1)) {
+			alias = fold(index + 1);
+			index += 2;
+		}
+		else if (index < count && (types[index] == TokenType.QUOTED_IDENTIFIER
+				|| types[index] == TokenType.WORD && !RESERVED.contains(fold(index)))) {
+			alias = fold(index);
+			index++;
+		}
+
+		if (alias != null && isSymbol(index, '(')) {
+			index++;
+			walk(scope, true);
+			skipSymbol(')');
+		}
+		return alias;
+	}
+
+	/**
+	 * Parses a qualified name in an expression, such as "users.id" or "public.users.id", and records the name of the
+	 * relation which qualifies the column.
+	 */
+	private void parseQualifiedName(Scope scope) {
+		int qualifier = index;
+		if (isDefaultSchema(index) && isIdentifier(index + 2) && isSymbol(index + 3, '.')) {
+			qualifier = index + 2;
+		}
+		scope.qualifiers.add(new ColumnQualifier(types[qualifier], starts[qualifier], ends[qualifier],
+				fold(qualifier)));
+
+		index++;
+		while (isSymbol(index, '.') && (isIdentifier(index + 1) || isSymbol(index + 1, '*'))) {
+			index += 2;
+		}
+	}
+
+	private void parseCommonTableExpressions(Scope scope) {
+		index++;
+		boolean recursive = isWord(index, "recursive");
+		if (recursive) {
+			index++;
+		}
+
+		while (isIdentifier(index)) {
+			String name = fold(index);
+			index++;
+			if (recursive) {
+				scope.commonTableExpressions.add(name);
+			}
+
+			if (isSymbol(index, '(')) {
+				index++;
+				walk(scope, true);
+				skipSymbol(')');
+			}
+
+			skipWord("as");
+			skipWord("not");
+			skipWord("materialized");
+
+			if (isSymbol(index, '(')) {
+				index++;
+				parseSubquery(scope);
+				skipSymbol(')');
+			}
+			scope.commonTableExpressions.add(name);
+
+			if (!isSymbol(index, ',')) {
+				break;
+			}
+			index++;
+		}
+	}
+
+	/**
+	 * Skips the remainder of the current statement.
+	 */
+	private void skipStatement() {
+		int depth = 0;
+		while (index < count && !isSymbol(index, ';') && (depth > 0 || !isSymbol(index, ')'))) {
+			if (isSymbol(index, '(')) {
+				depth++;
+			}
+			else if (isSymbol(index, ')')) {
+				depth--;
+			}
+			index++;
+		}
+	}
+
+	/**
+	 * @return True if the token at the specified position starts a statement, or follows EXPLAIN and its options.
+	 * Parenthesized EXPLAIN options are covered by the closing parenthesis which precedes the statement.
+	 */
+	private boolean isStatementStart(int position) {
+		int start = skipExplain(position);
+		return start == 0 || isSymbol(start - 1, '(') || isSymbol(start - 1, ')') || isSymbol(start - 1, ';');
+	}
+
+	/**
+	 * @return The position of the EXPLAIN keyword (and the ANALYZE and VERBOSE options following it) which precedes
+	 * the specified position, or the specified position if it is not preceded by EXPLAIN.
+	 */
+	private int skipExplain(int position) {
+		int start = position;
+		while (isWord(start - 1, "analyze") || isWord(start - 1, "analyse") || isWord(start - 1, "verbose")) {
+			start--;
+		}
+		return isWord(start - 1, "explain") ? start - 1 : position;
+	}
+
+	private boolean isSetOperand(int position) {
+		return isStatementStart(position) || isWord(position - 1, "union") || isWord(position - 1, "intersect")
+				|| isWord(position - 1, "except") || isWord(position - 1, "all") || isWord(position - 1, "distinct");
+	}
+
+	private boolean isSubqueryStart(int position) {
+		return isWord(position, "select") || isWord(position, "with") || isWord(position, "values")
+				|| isWord(position, "table");
+	}
+
+	private boolean isDefaultSchema(int position) {
+		return isIdentifier(position) && fold(position).equals("public");
+	}
+
+	/**
+	 * @return True if the token at the specified position is a word or quoted identifier.
+	 */
+	private boolean isIdentifier(int position) {
+		return position >= 0 && position < count
+				&& (types[position] == TokenType.WORD || types[position] == TokenType.QUOTED_IDENTIFIER);
+	}
+
+	/**
+	 * @return True if the token at the specified position can be a table name. Besides identifiers, names which are
+	 * quoted using single quotes are accepted, since earlier versions of the rewriter treated them as such.
+	 */
+	private boolean isName(int position) {
+		if (isIdentifier(position)) {
+			return true;
+		}
+		return position >= 0 && position < count && types[position] == TokenType.STRING
+				&& query.charAt(starts[position]) == '\'' && ends[position] - starts[position] >= 2;
+	}
+
+	private boolean isWord(int position, String word) {
+		return position >= 0 && position < count && types[position] == TokenType.WORD
+				&& ends[position] - starts[position] == word.length()
+				&& query.regionMatches(true, starts[position], word, 0, word.length());
+	}
+
+	private boolean isSymbol(int position, char symbol) {
+		return position >= 0 && position < count && types[position] == TokenType.SYMBOL
+				&& query.charAt(starts[position]) == symbol;
+	}
+
+	private void skipWord(String word) {
+		if (isWord(index, word)) {
+			index++;
+		}
+	}
+
+	private void skipSymbol(char symbol) {
+		if (isSymbol(index, symbol)) {
+			index++;
+		}
+	}
+
+	/**
+	 * @return The name at the specified position as PostgreSQL resolves it: unquoted names are folded to lower case,
+	 * and quoted names are unquoted.
+	 */
+	private String fold(int position) {
+		if (types[position] == TokenType.WORD) {
+			return query.substring(starts[position], ends[position]).toLowerCase(Locale.ROOT);
+		}
+		return TableNames.unquote(query, starts[position], ends[position]);
+	}
+
+}
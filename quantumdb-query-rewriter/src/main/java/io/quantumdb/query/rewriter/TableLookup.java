@@ -0,0 +1,129 @@
+package io.quantumdb.query.rewriter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+
+/**
+ * An immutable lookup table which maps table names onto the names of the tables which should be used instead. Names
+ * are looked up by their position in a query (rather than as a String), so that looking up a name does not allocate.
+ * Besides the exact table names, the lookup table also holds the case-folded table names, so that unquoted names can
+ * be looked up ignoring case.
+ *
+ * To quickly tell which queries do not have to be rewritten at all, the lookup table also holds a NameMatcher for the
+ * names of all tables whose target differs from their name. Since building these is relatively expensive, a lookup
+ * table should be built once per table mapping, and shared by everything which rewrites queries using that mapping.
+ */
+public class TableLookup {
+
+	static final TableLookup EMPTY = new TableLookup(Collections.emptyMap());
+
+	private final int size;
+	private final int mask;
+	private final String[] exactNames;
+	private final String[] exactTargets;
+	private final String[] foldedNames;
+	private final String[] foldedTargets;
+	private final NameMatcher changedNames;
+
+	public TableLookup(Map<String, String> tableMapping) {
+		int capacity = Integer.highestOneBit(Math.max(tableMapping.size(), 1) * 4 - 1) << 1;
+
+		this.size = tableMapping.size();
+		this.mask = capacity - 1;
+		this.exactNames = new String[capacity];
+		this.exactTargets = new String[capacity];
+		this.foldedNames = new String[capacity];
+		this.foldedTargets = new String[capacity];
+
+		List<String> changed = Lists.newArrayList();
+		boolean quoted = false;
+		for (Map.Entry<String, String> entry : tableMapping.entrySet()) {
+			String name = entry.getKey();
+			if (!name.equals(entry.getValue())) {
+				changed.add(name);
+				quoted |= name.indexOf('"') >= 0 || name.indexOf('\'') >= 0;
+			}
+
+			put(exactNames, exactTargets, name, entry.getValue(), hash(name, 0, name.length(), false));
+
+			String folded = name.toLowerCase(Locale.ROOT);
+			put(foldedNames, foldedTargets, folded, entry.getValue(), hash(folded, 0, folded.length(), true));
+		}
+
+		// Names containing quotes appear escaped in queries, in which case the matcher cannot be used.
+		this.changedNames = quoted ? null : new NameMatcher(changed);
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return False if the specified query certainly does not contain the name of any table whose target differs
+	 * from its name, in which case the query does not have to be rewritten. True otherwise.
+	 */
+	public boolean mayRewrite(String query) {
+		return changedNames == null || changedNames.matches(query);
+	}
+
+	/**
+	 * @return The target of the table whose name is exactly the specified part of the specified query, or NULL if
+	 * no such table exists.
+	 */
+	String get(String query, int start, int end) {
+		int length = end - start;
+		for (int slot = hash(query, start, end, false) & mask; exactNames[slot] != null; slot = (slot + 1) & mask) {
+			String name = exactNames[slot];
+			if (name.length() == length && name.regionMatches(0, query, start, length)) {
+				return exactTargets[slot];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return The target of the table whose name equals the specified part of the specified query ignoring case, or
+	 * NULL if no such table exists. Exact matches take precedence over matches which differ in case.
+	 */
+	String getIgnoreCase(String query, int start, int end) {
+		String target = get(query, start, end);
+		if (target != null) {
+			return target;
+		}
+
+		int length = end - start;
+		for (int slot = hash(query, start, end, true) & mask; foldedNames[slot] != null; slot = (slot + 1) & mask) {
+			String name = foldedNames[slot];
+			if (name.length() == length && name.regionMatches(true, 0, query, start, length)) {
+				return foldedTargets[slot];
+			}
+		}
+		return null;
+	}
+
+	private void put(String[] names, String[] targets, String name, String target, int hash) {
+		int slot = hash & mask;
+		while (names[slot] != null) {
+			if (names[slot].equals(name)) {
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		names[slot] = name;
+		targets[slot] = target;
+	}
+
+	private static int hash(String value, int start, int end, boolean fold) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			char character = value.charAt(i);
+			hash = 31 * hash + (fold ? Character.toLowerCase(character) : character);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+}
@@ -0,0 +1,70 @@
+package io.quantumdb.query.rewriter;
+
+import io.quantumdb.query.rewriter.SqlLexer.TokenType;
+
+/**
+ * Looks up and formats table names, which may either be unquoted words (which are matched ignoring case), quoted
+ * identifiers, or names which are quoted using single quotes (which are matched exactly).
+ */
+class TableNames {
+
+	/**
+	 * @return The target of the table name which spans the specified part of the specified query, or NULL if the
+	 * table name should not be rewritten.
+	 */
+	static String lookup(TableLookup lookup, String query, TokenType type, int start, int end) {
+		String target;
+		if (type == TokenType.WORD) {
+			target = lookup.getIgnoreCase(query, start, end);
+		}
+		else if (query.indexOf(query.charAt(start), start + 1) == end - 1) {
+			target = lookup.get(query, start + 1, end - 1);
+		}
+		else {
+			String name = unquote(query, start, end);
+			target = lookup.get(name, 0, name.length());
+		}
+
+		// Unquoted names which only differ in case from their target refer to the same table.
+		if (target != null && type == TokenType.WORD && target.length() == end - start
+				&& query.regionMatches(true, start, target, 0, target.length())) {
+			return null;
+		}
+		return target;
+	}
+
+	/**
+	 * @return The name which spans the specified part of the specified query, without its quotes (if any).
+	 */
+	static String unquote(String query, int start, int end) {
+		char first = query.charAt(start);
+		if (first != '"' && first != '\'') {
+			return query.substring(start, end);
+		}
+
+		String quote = String.valueOf(first);
+		return query.substring(start + 1, end - 1).replace(quote + quote, quote);
+	}
+
+	/**
+	 * Appends the specified table name to the output, quoted in the same way as the table name it replaces.
+	 */
+	static void append(StringBuilder output, TokenType type, String name) {
+		if (type == TokenType.WORD) {
+			output.append(name);
+			return;
+		}
+
+		char quote = type == TokenType.QUOTED_IDENTIFIER ? '"' : '\'';
+		output.append(quote);
+		for (int i = 0; i < name.length(); i++) {
+			char character = name.charAt(i);
+			if (character == quote) {
+				output.append(quote);
+			}
+			output.append(character);
+		}
+		output.append(quote);
+	}
+
+}
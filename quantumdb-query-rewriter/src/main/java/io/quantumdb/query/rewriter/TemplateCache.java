@@ -0,0 +1,57 @@
+package io.quantumdb.query.rewriter;
+
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Caches the compiled templates of queries by their SQL text. Since templates do not depend on any table mapping, a
+ * single cached template serves every version, and each distinct query only has to be parsed once. The capacity of
+ * the cache is expressed in characters of the cached queries.
+ */
+public class TemplateCache {
+
+	private final QueryRewriter compiler;
+	private final Cache<String, RewriteTemplate> templates;
+
+	/**
+	 * @param compiler The QueryRewriter which compiles the queries into templates.
+	 * @param capacity The maximum number of characters of all cached queries combined.
+	 */
+	public TemplateCache(QueryRewriter compiler, long capacity) {
+		this.compiler = compiler;
+		this.templates = CacheBuilder.newBuilder()
+				.maximumWeight(capacity)
+				.weigher((String query, RewriteTemplate template) -> query.length())
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * @return The template of the specified query, which is compiled if it is not cached yet.
+	 * @throws IllegalArgumentException When the specified 'query' is NULL.
+	 */
+	public RewriteTemplate get(String query) {
+		if (query == null) {
+			throw new IllegalArgumentException("You must specify specify a 'query'.");
+		}
+
+		try {
+			return templates.get(query, () -> compiler.compile(query));
+		}
+		catch (UncheckedExecutionException e) {
+			throw (RuntimeException) e.getCause();
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	public CacheStats getStats() {
+		return templates.stats();
+	}
+
+}
@@ -0,0 +1,39 @@
+package io.quantumdb.query.rewriter;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+public class NameMatcherTest {
+
+	private final NameMatcher matcher = new NameMatcher(ImmutableList.of("users", "user_roles", "accounts", "sers_x"));
+
+	@Test
+	public void testMatchesNamesIgnoringCase() {
+		assertTrue(matcher.matches("SELECT * FROM Users WHERE id = 1"));
+		assertTrue(matcher.matches("INSERT INTO \"ACCOUNTS\" VALUES (1)"));
+	}
+
+	@Test
+	public void testMatchesNamesWhichOverlapWithPartialMatches() {
+		assertTrue(matcher.matches("SELECT * FROM usesers_x"));
+		assertTrue(matcher.matches("SELECT * FROM user_users"));
+	}
+
+	@Test
+	public void testDoesNotMatchQueriesWithoutNames() {
+		assertFalse(matcher.matches("SELECT * FROM user_role WHERE name = 'user'"));
+		assertFalse(matcher.matches("SELECT * FROM transactions WHERE amount > 100"));
+		assertFalse(matcher.matches(""));
+	}
+
+	@Test
+	public void testWithoutNamesNothingMatches() {
+		assertFalse(new NameMatcher(Collections.emptyList()).matches("SELECT * FROM users"));
+	}
+
+}
@@ -0,0 +1,168 @@
+package io.quantumdb.query.rewriter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Locale;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PostgresqlAstQueryRewriterTest {
+
+	private PostgresqlAstQueryRewriter rewriter;
+
+	@Before
+	public void setUp() {
+		rewriter = new PostgresqlAstQueryRewriter();
+		rewriter.setTableMapping(ImmutableMap.of(
+				"users", "users_v2",
+				"accounts", "accounts_v2",
+				"transactions", "transactions"));
+	}
+
+	@Test
+	public void testImplicitJoin() {
+		String input = "SELECT * FROM users, accounts WHERE users.id = accounts.owner_id";
+		String expected = "SELECT * FROM users_v2, accounts_v2 WHERE users_v2.id = accounts_v2.owner_id";
+		assertEquals(expected, rewriter.rewrite(input));
+	}
+
+	@Test
+	public void testImplicitJoinWithAliases() {
+		String input = "SELECT users.* FROM users AS users, accounts accounts WHERE users.id = accounts.owner_id";
+		String expected = "SELECT users.* FROM users_v2 AS users, accounts_v2 accounts WHERE users.id = accounts.owner_id";
+		assertEquals(expected, rewriter.rewrite(input));
+	}
+
+	@Test
+	public void testQualifiedColumnsInSelectListAndJoins() {
+		String input = "SELECT public.users.name, a.balance FROM public.users LEFT OUTER JOIN accounts a "
+				+ "ON a.owner_id = users.id ORDER BY users.name";
+		String expected = "SELECT public.users_v2.name, a.balance FROM public.users_v2 LEFT OUTER JOIN accounts_v2 a "
+				+ "ON a.owner_id = users_v2.id ORDER BY users_v2.name";
+		assertEquals(expected, rewriter.rewrite(input));
+	}
+
+	@Test
+	public void testCorrelatedSubqueries() {
+		String input = "SELECT * FROM users WHERE EXISTS (SELECT 1 FROM accounts WHERE accounts.owner_id = users.id) "
+				+ "AND id IN (SELECT owner_id FROM (SELECT * FROM accounts) users)";
+		String expected = "SELECT * FROM users_v2 WHERE EXISTS (SELECT 1 FROM accounts_v2 WHERE "
+				+ "accounts_v2.owner_id = users_v2.id) AND id IN (SELECT owner_id FROM (SELECT * FROM accounts_v2) users)";
+		assertEquals(expected, rewriter.rewrite(input));
+	}
+
+	@Test
+	public void testCommonTableExpressionsShadowTables() {
+		String input = "WITH users AS (SELECT * FROM users WHERE active), rich AS (SELECT * FROM accounts) "
+				+ "SELECT users.id FROM users JOIN rich ON rich.owner_id = users.id";
+		String expected = "WITH users AS (SELECT * FROM users_v2 WHERE active), rich AS (SELECT * FROM accounts_v2) "
+				+ "SELECT users.id FROM users JOIN rich ON rich.owner_id = users.id";
+		assertEquals(expected, rewriter.rewrite(input));
+	}
+
+	@Test
+	public void testRecursiveCommonTableExpression() {
+		String input = "WITH RECURSIVE users(id) AS (SELECT 1 UNION ALL SELECT id + 1 FROM users) SELECT * FROM users";
+		assertEquals(input, rewriter.rewrite(input));
+	}
+
+	@Test
+	public void testDeleteUsing() {
+		String input = "DELETE FROM accounts USING users WHERE accounts.owner_id = users.id AND users.name = 'x'";
+		String expected = "DELETE FROM accounts_v2 USING users_v2 WHERE accounts_v2.owner_id = users_v2.id "
+				+ "AND users_v2.name = 'x'";
+		assertEquals(expected, rewriter.rewrite(input));
+	}
+
+	@Test
+	public void testUpdateFrom() {
+		String input = "UPDATE accounts SET balance = 0 FROM users WHERE accounts.owner_id = users.id";
+		String expected = "UPDATE accounts_v2 SET balance = 0 FROM users_v2 WHERE accounts_v2.owner_id = users_v2.id";
+		assertEquals(expected, rewriter.rewrite(input));
+	}
+
+	@Test
+	public void testInsertWithUpsert() {
+		String input = "INSERT INTO users (id, name) SELECT id, name FROM accounts "
+				+ "ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name";
+		String expected = "INSERT INTO users_v2 (id, name) SELECT id, name FROM accounts_v2 "
+				+ "ON CONFLICT (id) DO UPDATE SET name = EXCLUDED.name";
+		assertEquals(expected, rewriter.rewrite(input));
+	}
+
+	@Test
+	public void testUtilityStatements() {
+		assertEquals("COPY users_v2 (id, name) FROM STDIN", rewriter.rewrite("COPY users (id, name) FROM STDIN"));
+		assertEquals("COPY (SELECT * FROM accounts_v2) TO STDOUT",
+				rewriter.rewrite("COPY (SELECT * FROM accounts) TO STDOUT"));
+		assertEquals("TRUNCATE TABLE users_v2, ONLY accounts_v2 RESTART IDENTITY",
+				rewriter.rewrite("TRUNCATE TABLE users, ONLY accounts RESTART IDENTITY"));
+		assertEquals("LOCK TABLE users_v2 IN ACCESS EXCLUSIVE MODE",
+				rewriter.rewrite("LOCK TABLE users IN ACCESS EXCLUSIVE MODE"));
+		assertEquals("ALTER TABLE IF EXISTS users_v2 ADD FOREIGN KEY (account_id) REFERENCES accounts_v2 (id)",
+				rewriter.rewrite("ALTER TABLE IF EXISTS users ADD FOREIGN KEY (account_id) REFERENCES accounts (id)"));
+		assertEquals("TABLE users_v2 UNION TABLE accounts_v2", rewriter.rewrite("TABLE users UNION TABLE accounts"));
+	}
+
+	@Test
+	public void testExplainedStatements() {
+		assertEquals("EXPLAIN UPDATE users_v2 SET name = 'x'", rewriter.rewrite("EXPLAIN UPDATE users SET name = 'x'"));
+		assertEquals("EXPLAIN ANALYZE VERBOSE UPDATE users_v2 SET name = 'x' FROM accounts_v2",
+				rewriter.rewrite("EXPLAIN ANALYZE VERBOSE UPDATE users SET name = 'x' FROM accounts"));
+		assertEquals("EXPLAIN (ANALYZE, BUFFERS) UPDATE users_v2 SET name = 'x'",
+				rewriter.rewrite("EXPLAIN (ANALYZE, BUFFERS) UPDATE users SET name = 'x'"));
+		assertEquals("SELECT * FROM users_v2 FOR UPDATE OF users",
+				rewriter.rewrite("SELECT * FROM users FOR UPDATE OF users"));
+	}
+
+	@Test
+	public void testNamesAreFoldedIndependentOfDefaultLocale() {
+		Locale locale = Locale.getDefault();
+		try {
+			Locale.setDefault(new Locale("tr", "TR"));
+			rewriter.setTableMapping(ImmutableMap.of("items", "items_v2"));
+			assertEquals("SELECT items_v2.id FROM items_v2 WHERE items_v2.id = 1",
+					rewriter.rewrite("SELECT items.id FROM items WHERE ITEMS.id = 1"));
+		}
+		finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	@Test
+	public void testKeywordsInExpressionsAreNotClauses() {
+		String input = "SELECT EXTRACT(YEAR FROM created), SUBSTRING(name FROM 1 FOR 3) FROM users "
+				+ "WHERE name IS DISTINCT FROM accounts FOR UPDATE OF users";
+		String expected = "SELECT EXTRACT(YEAR FROM created), SUBSTRING(name FROM 1 FOR 3) FROM users_v2 "
+				+ "WHERE name IS DISTINCT FROM accounts FOR UPDATE OF users";
+		assertEquals(expected, rewriter.rewrite(input));
+	}
+
+	@Test
+	public void testSetReturningFunctionsAndOtherSchemas() {
+		String input = "SELECT * FROM generate_series(1, 10) s, audit.users au, \"users\" u JOIN (accounts a "
+				+ "JOIN users ON users.id = a.owner_id) ON true WHERE s.x = 1";
+		String expected = "SELECT * FROM generate_series(1, 10) s, audit.users au, \"users_v2\" u JOIN (accounts_v2 a "
+				+ "JOIN users_v2 ON users_v2.id = a.owner_id) ON true WHERE s.x = 1";
+		assertEquals(expected, rewriter.rewrite(input));
+	}
+
+	@Test
+	public void testAliasedSubqueriesHideTables() {
+		String input = "SELECT users.id FROM (SELECT * FROM users) AS users, generate_series(1, 2) accounts(id) "
+				+ "WHERE accounts.id = users.id";
+		String expected = "SELECT users.id FROM (SELECT * FROM users_v2) AS users, generate_series(1, 2) accounts(id) "
+				+ "WHERE accounts.id = users.id";
+		assertEquals(expected, rewriter.rewrite(input));
+	}
+
+	@Test
+	public void testMultipleStatements() {
+		String input = "DELETE FROM users; SELECT * FROM accounts -- FROM users\n;";
+		String expected = "DELETE FROM users_v2; SELECT * FROM accounts_v2 -- FROM users\n;";
+		assertEquals(expected, rewriter.rewrite(input));
+	}
+
+}
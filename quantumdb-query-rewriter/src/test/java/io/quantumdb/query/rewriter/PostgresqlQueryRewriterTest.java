@@ -1,11 +1,16 @@
 package io.quantumdb.query.rewriter;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
+import com.google.common.collect.ImmutableMap;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -98,9 +103,96 @@ public class PostgresqlQueryRewriterTest {
 		assertEquals(expected, rewrite(input));
 	}
 
+	@Test
+	public void testQuotedIdentifierIsCaseSensitive() throws SQLException {
+		assertEquals("SELECT * FROM \"users_v2\"", rewrite("SELECT * FROM \"users\""));
+		assertEquals("SELECT * FROM \"Users\"", rewrite("SELECT * FROM \"Users\""));
+	}
+
+	@Test
+	public void testInsertWithColumnList() throws SQLException {
+		String input = "INSERT INTO users(id, name) VALUES (?, 'from accounts');";
+		String expected = "INSERT INTO users_v2(id, name) VALUES (?, 'from accounts');";
+		assertEquals(expected, rewrite(input));
+	}
+
+	@Test
+	public void testKeywordsInCommentsAndStringsAreIgnored() throws SQLException {
+		String input = "SELECT 'it''s from users', E'\\' from accounts', $tag$ FROM users $tag$ "
+				+ "/* from /* nested */ users */ FROM -- from users\n users";
+		String expected = "SELECT 'it''s from users', E'\\' from accounts', $tag$ FROM users $tag$ "
+				+ "/* from /* nested */ users */ FROM -- from users\n users_v2";
+		assertEquals(expected, rewrite(input));
+	}
+
+	@Test
+	public void testPositionalParameterIsNotDollarQuote() throws SQLException {
+		String input = "UPDATE users SET name = $1 FROM accounts WHERE users.id = $2";
+		String expected = "UPDATE users_v2 SET name = $1 FROM accounts_v2 WHERE users.id = $2";
+		assertEquals(expected, rewrite(input));
+	}
+
+	@Test
+	public void testCopyStatements() throws SQLException {
+		assertEquals("COPY users_v2 (id, name) FROM STDIN WITH (FORMAT csv)",
+				rewrite("COPY users (id, name) FROM STDIN WITH (FORMAT csv)"));
+		assertEquals("COPY public.accounts_v2 TO STDOUT", rewrite("COPY public.accounts TO STDOUT"));
+		assertEquals("COPY (SELECT * FROM users_v2) TO STDOUT", rewrite("COPY (SELECT * FROM users) TO STDOUT"));
+	}
+
+	@Test
+	public void testTableInOtherSchemaIsNotRewritten() throws SQLException {
+		String input = "SELECT * FROM audit.users JOIN users ON true";
+		String expected = "SELECT * FROM audit.users JOIN users_v2 ON true";
+		assertEquals(expected, rewrite(input));
+	}
+
+	@Test
+	public void testQueryWithoutChangesIsReturnedAsIs() throws SQLException {
+		String input = "SELECT * FROM transactions WHERE id IN (1, 2, 3)";
+		assertSame(input, rewrite(input));
+	}
+
+	@Test
+	public void testQueriesWithoutChangedTablesCanBeSkipped() throws SQLException {
+		rewriter.setTableMapping(tableMappings);
+		assertTrue(rewriter.canSkip("SELECT * FROM transactions WHERE amount > 100"));
+		assertFalse(rewriter.canSkip("SELECT * FROM transactions JOIN Accounts ON true"));
+		assertEquals("SELECT * FROM Transactions", rewrite("SELECT * FROM Transactions"));
+	}
+
+	@Test
+	public void testTemplateCanBeRenderedForDifferentMappings() throws SQLException {
+		RewriteTemplate template = rewriter.compile("SELECT * FROM public.users JOIN \"accounts\" ON true");
+		assertEquals(2, template.getSlotCount());
+		assertEquals("users", template.getTableName(0));
+		assertEquals("accounts", template.getTableName(1));
+
+		rewriter.setTableMapping(tableMappings);
+		assertEquals("SELECT * FROM public.users_v2 JOIN \"accounts_v2\" ON true", rewriter.rewrite(template));
+
+		rewriter.setTableMapping(ImmutableMap.of("users", "users_v3"));
+		assertEquals("SELECT * FROM public.users_v3 JOIN \"accounts\" ON true", rewriter.rewrite(template));
+	}
+
+	@Test
+	public void testNamesAreFoldedIndependentOfDefaultLocale() throws SQLException {
+		Locale locale = Locale.getDefault();
+		try {
+			Locale.setDefault(new Locale("tr", "TR"));
+			tableMappings.put("Invoices", "invoices_v2");
+			assertEquals("SELECT * FROM invoices_v2", rewrite("SELECT * FROM INVOICES"));
+		}
+		finally {
+			Locale.setDefault(locale);
+		}
+	}
+
 	private String rewrite(String query) throws SQLException {
 		rewriter.setTableMapping(tableMappings);
-		return rewriter.rewrite(query);
+		String result = rewriter.rewrite(query);
+		assertEquals(result, rewriter.rewrite(rewriter.compile(query)));
+		return result;
 	}
 
 }